@@ -0,0 +1,65 @@
+package com.jojos.report.benchmarks;
+
+import com.jojos.report.data.AgeBuckets;
+import com.jojos.report.data.AgeRange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looking up the age range of an age, in lookups per microsecond, with the fixed decades of {@link AgeRange}
+ * and with 5-year {@link AgeBuckets}
+ *
+ * @author karanikasg@gmail.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AgeRangeBenchmark {
+
+    private static final int AGES = 1024;
+
+    private final AgeBuckets fiveYears = AgeBuckets.ofWidth(5, 130, true);
+    private int[] ages;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        Random random = new Random(42);
+        ages = new int[AGES];
+        for (int i = 0; i < AGES; i++) {
+            ages[i] = random.nextInt(140);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(AGES)
+    public void forAge(Blackhole blackhole) {
+        for (int age : ages) {
+            blackhole.consume(AgeRange.forAge(age));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(AGES)
+    public void bucket(Blackhole blackhole) {
+        for (int age : ages) {
+            blackhole.consume(fiveYears.bucket(age));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.jojos.report.benchmarks;
+
+import com.jojos.report.App;
+import com.jojos.report.Options;
+import com.jojos.report.jobs.ParseMode;
+import com.jojos.report.jobs.StoreType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Complete runs of the application, from reading the input files to writing the reports, comparing the default
+ * settings with the fastest ones. Single shots, since a run is long and mostly I/O.
+ *
+ * @author karanikasg@gmail.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AppBenchmark {
+
+    @Param({"100000", "1000000"})
+    private long employees;
+
+    @Param({"0", "1.5"})
+    private double skew;
+
+    private File directory;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        directory = InputData.generate(employees, skew);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        InputData.delete(directory);
+    }
+
+    @Benchmark
+    public void defaults() {
+        new App(directory.getPath()).start();
+    }
+
+    @Benchmark
+    public void tuned() {
+        new App(directory.getPath(), new Options()
+                .withParseMode(ParseMode.PARALLEL)
+                .withStoreType(StoreType.COLUMNAR)).start();
+    }
+}
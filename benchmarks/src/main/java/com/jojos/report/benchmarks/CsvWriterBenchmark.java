@@ -0,0 +1,92 @@
+package com.jojos.report.benchmarks;
+
+import com.jojos.report.jobs.CsvWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Writing a report of 10<sup>2</sup> to 10<sup>6</sup> lines of a department and an income with two decimals,
+ * the way reports were written before, a stream join and {@link String#format} per line through a
+ * {@link BufferedWriter}, and with the {@link CsvWriter}.
+ *
+ * @author karanikasg@gmail.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CsvWriterBenchmark {
+
+    @Param({"100", "10000", "1000000"})
+    private int lines;
+
+    private String[] departments;
+    private double[] incomes;
+    private File file;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        Random random = new Random(42);
+        departments = new String[lines];
+        incomes = new double[lines];
+        for (int i = 0; i < lines; i++) {
+            departments[i] = "Department " + random.nextInt(1000);
+            incomes[i] = 3000 * Math.exp(0.4 * random.nextGaussian());
+        }
+        file = File.createTempFile("report", ".csv");
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    /**
+     * The original path
+     */
+    @Benchmark
+    public long bufferedWriter() throws IOException {
+        try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)))) {
+            for (int i = 0; i < lines; i++) {
+                bw.write(Arrays.stream(new String[]{departments[i], String.format("%.2f", incomes[i])})
+                        .collect(Collectors.joining(",")));
+                bw.newLine();
+            }
+        }
+        return file.length();
+    }
+
+    @Benchmark
+    public long csvWriter() throws IOException {
+        try (CsvWriter writer = new CsvWriter(file)) {
+            for (int i = 0; i < lines; i++) {
+                writer.field(departments[i]).field(incomes[i]).endLine();
+            }
+        }
+        return file.length();
+    }
+}
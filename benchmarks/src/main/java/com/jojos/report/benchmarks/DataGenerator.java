@@ -0,0 +1,170 @@
+package com.jojos.report.benchmarks;
+
+import com.jojos.report.ApplicationException;
+import com.jojos.report.Util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import static com.jojos.report.Util.AGES_FILE;
+import static com.jojos.report.Util.DEPARTMENTS_FILE;
+import static com.jojos.report.Util.EMPLOYEES_FILE;
+
+/**
+ * Generates input files of arbitrary size in the format of the application. The same settings always generate
+ * the same files.
+ *
+ * Departments are picked with a Zipf distribution of the configured skew: 0 spreads the employees evenly,
+ * 1 gives the first of twenty departments over a quarter of the employees, the higher the more
+ * concentrated. Incomes are log-normal around 3000 with two decimals, ages uniform between 18 and 67.
+ * A configurable fraction of the employees has no age.
+ *
+ * Can be run from the command line, e.g.
+ * java -cp benchmarks.jar com.jojos.report.benchmarks.DataGenerator -output /tmp/data -employees 1000000 -skew 1
+ *
+ * @author karanikasg@gmail.com
+ */
+public class DataGenerator {
+    private final Logger log = Logger.getLogger(getClass().getName());
+
+    private static final String[] FIRST_NAMES = {"Opal", "Otis", "Francis", "Ada", "Bruno", "Clara", "Dario", "Elena",
+            "Fotis", "Greta", "Hugo", "Irene", "Jonas", "Katia", "Leon", "Maria", "Nikos", "Olga", "Petros", "Rhea"};
+    private static final String[] LAST_NAMES = {"Ballard", "Bell", "Hayes", "Novak", "Rossi", "Smith", "Weber",
+            "Costa", "Petrou", "Meyer", "Silva", "Dubois", "Jansen", "Kowalski", "Nielsen", "Papas", "Horvat"};
+    private static final String[] GENRES = {"m", "f"};
+
+    private long seed = 42;
+    private int departments = 20;
+    private long employees = 100_000;
+    private double skew;
+    private double missingAges = 0.01;
+
+    public DataGenerator withSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public DataGenerator withDepartments(int departments) {
+        this.departments = departments;
+        return this;
+    }
+
+    public DataGenerator withEmployees(long employees) {
+        this.employees = employees;
+        return this;
+    }
+
+    /**
+     * @param skew the exponent of the Zipf distribution of the employees over the departments, 0 for uniform
+     * @return this generator
+     */
+    public DataGenerator withSkew(double skew) {
+        this.skew = skew;
+        return this;
+    }
+
+    /**
+     * @param missingAges the fraction of employees left out of the ages file
+     * @return this generator
+     */
+    public DataGenerator withMissingAges(double missingAges) {
+        this.missingAges = missingAges;
+        return this;
+    }
+
+    /**
+     * Writes the departments, ages and employees files into the directory, replacing existing ones.
+     *
+     * @param directory where to write the files, created if it doesn't exist
+     */
+    public void generate(File directory) {
+        Random random = new Random(seed);
+        double[] cumulative = cumulativeWeights();
+        try {
+            Files.createDirectories(directory.toPath());
+            try (BufferedWriter departmentsWriter = writer(directory, DEPARTMENTS_FILE)) {
+                for (int i = 1; i <= departments; i++) {
+                    departmentsWriter.write(String.format("Department %04d", i));
+                    departmentsWriter.newLine();
+                }
+            }
+            try (BufferedWriter agesWriter = writer(directory, AGES_FILE);
+                 BufferedWriter employeesWriter = writer(directory, EMPLOYEES_FILE)) {
+                StringBuilder line = new StringBuilder(64);
+                for (long i = 0; i < employees; i++) {
+                    String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + ' '
+                            + LAST_NAMES[random.nextInt(LAST_NAMES.length)] + ' ' + i;
+                    if (random.nextDouble() >= missingAges) {
+                        line.setLength(0);
+                        line.append(name).append(',').append(18 + random.nextInt(50));
+                        agesWriter.write(line.toString());
+                        agesWriter.newLine();
+                    }
+                    int department = Arrays.binarySearch(cumulative, random.nextDouble());
+                    department = department < 0 ? -department - 1 : department;
+                    long incomeCents = Math.round(3000 * Math.exp(0.4 * random.nextGaussian()) * 100);
+                    line.setLength(0);
+                    line.append(Math.min(department, departments - 1) + 1).append(',').append(name).append(',')
+                            .append(GENRES[random.nextInt(GENRES.length)]).append(',')
+                            .append(incomeCents / 100).append('.').append(incomeCents % 100 < 10 ? "0" : "").append(incomeCents % 100);
+                    employeesWriter.write(line.toString());
+                    employeesWriter.newLine();
+                }
+            }
+        } catch (IOException e) {
+            throw new ApplicationException(String.format("Can't generate data into %s. Exception %s", directory, e.getMessage()));
+        }
+        log.info(String.format("Generated %d employees of %d departments with skew %.2f into %s", employees, departments, skew, directory));
+    }
+
+    /**
+     * The cumulative Zipf probabilities of the departments, the first one being the most popular
+     */
+    private double[] cumulativeWeights() {
+        double[] cumulative = new double[departments];
+        double total = 0;
+        for (int i = 0; i < departments; i++) {
+            total += 1 / Math.pow(i + 1, skew);
+            cumulative[i] = total;
+        }
+        for (int i = 0; i < departments; i++) {
+            cumulative[i] /= total;
+        }
+        return cumulative;
+    }
+
+    private static BufferedWriter writer(File directory, String fileName) throws IOException {
+        return Files.newBufferedWriter(new File(directory, fileName).toPath(), StandardCharsets.UTF_8);
+    }
+
+    public static void main(String[] args) {
+        String output = Util.getArgument(args, "output");
+        if (output == null) {
+            throw new ApplicationException("Usage: -output <directory> [-employees n] [-departments n] [-skew s] [-seed n] [-missingAges fraction]");
+        }
+        DataGenerator generator = new DataGenerator();
+        String value;
+        if ((value = Util.getArgument(args, "employees")) != null) {
+            generator.withEmployees(Long.parseLong(value));
+        }
+        if ((value = Util.getArgument(args, "departments")) != null) {
+            generator.withDepartments(Integer.parseInt(value));
+        }
+        if ((value = Util.getArgument(args, "skew")) != null) {
+            generator.withSkew(Double.parseDouble(value));
+        }
+        if ((value = Util.getArgument(args, "seed")) != null) {
+            generator.withSeed(Long.parseLong(value));
+        }
+        if ((value = Util.getArgument(args, "missingAges")) != null) {
+            generator.withMissingAges(Double.parseDouble(value));
+        }
+        generator.generate(new File(output));
+    }
+}
@@ -0,0 +1,32 @@
+package com.jojos.report.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Input files generated into a temporary directory, to be deleted after the benchmark
+ *
+ * @author karanikasg@gmail.com
+ */
+class InputData {
+
+    private InputData() {
+    }
+
+    static File generate(long employees, double skew) throws IOException {
+        File directory = Files.createTempDirectory("report-benchmark-").toFile();
+        new DataGenerator().withEmployees(employees).withSkew(skew).generate(directory);
+        return directory;
+    }
+
+    static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
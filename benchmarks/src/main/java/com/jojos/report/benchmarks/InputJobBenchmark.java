@@ -0,0 +1,60 @@
+package com.jojos.report.benchmarks;
+
+import com.jojos.report.jobs.EmployeeStore;
+import com.jojos.report.jobs.InputJob;
+import com.jojos.report.jobs.ParseMode;
+import com.jojos.report.jobs.StoreType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing the input files with every {@link ParseMode} into the columnar store, which loads the least
+ *
+ * @author karanikasg@gmail.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InputJobBenchmark {
+
+    @Param({"10000", "1000000"})
+    private long employees;
+
+    @Param({"SCANNER", "MAPPED", "PARALLEL"})
+    private ParseMode parseMode;
+
+    private File directory;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        directory = InputData.generate(employees, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        InputData.delete(directory);
+    }
+
+    @Benchmark
+    public EmployeeStore parse() {
+        return new InputJob(directory.getPath(), parseMode).parseAndLoad(StoreType.COLUMNAR);
+    }
+}
@@ -0,0 +1,85 @@
+package com.jojos.report.benchmarks;
+
+import com.jojos.report.data.Department;
+import com.jojos.report.data.Employee;
+import com.jojos.report.data.Genre;
+import com.jojos.report.jobs.ColumnarStore;
+import com.jojos.report.jobs.EmployeeStore;
+import com.jojos.report.jobs.Loader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of loading employees that are already parsed, in employees per second. Every invocation loads
+ * a fresh store with all employees.
+ *
+ * @author karanikasg@gmail.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoaderBenchmark {
+
+    private static final int DEPARTMENTS = 20;
+    private static final int EMPLOYEES = 100_000;
+
+    private Department[] departmentData;
+    private Employee[] employeeData;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        Random random = new Random(42);
+        departmentData = new Department[DEPARTMENTS];
+        for (int i = 0; i < DEPARTMENTS; i++) {
+            departmentData[i] = new Department(String.format("Department %04d", i + 1));
+        }
+        employeeData = new Employee[EMPLOYEES];
+        for (int i = 0; i < EMPLOYEES; i++) {
+            employeeData[i] = new Employee(1 + random.nextInt(DEPARTMENTS), "Employee " + i,
+                    random.nextBoolean() ? Genre.MALE : Genre.FEMALE,
+                    Math.round(3000 * Math.exp(0.4 * random.nextGaussian()) * 100) / 100d, 18 + random.nextInt(50));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EMPLOYEES)
+    public EmployeeStore loader() {
+        Loader loader = new Loader();
+        for (Department department : departmentData) {
+            loader.load(department);
+        }
+        for (Employee employee : employeeData) {
+            loader.load(employee);
+        }
+        return loader;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EMPLOYEES)
+    public EmployeeStore columnar() {
+        ColumnarStore.Builder builder = ColumnarStore.builder();
+        for (Department department : departmentData) {
+            builder.load(department);
+        }
+        for (Employee employee : employeeData) {
+            builder.load(employee);
+        }
+        return builder.build();
+    }
+}
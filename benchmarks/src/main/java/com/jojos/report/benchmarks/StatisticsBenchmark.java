@@ -0,0 +1,73 @@
+package com.jojos.report.benchmarks;
+
+import com.jojos.report.jobs.PercentileStrategy;
+import com.jojos.report.jobs.Statistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calculating statistics of incomes, from 10<sup>2</sup> to 10<sup>7</sup> of them, over a collection and over
+ * a primitive array with either percentile strategy. Every invocation works on a fresh copy of the same numbers,
+ * since the calculation reorders them.
+ *
+ * @author karanikasg@gmail.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StatisticsBenchmark {
+
+    @Param({"100", "10000", "1000000", "10000000"})
+    private int size;
+
+    @Param({"SORT", "SELECT"})
+    private PercentileStrategy strategy;
+
+    private double[] values;
+    private double[] scratch;
+    private List<Double> collection;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        Random random = new Random(42);
+        values = new double[size];
+        collection = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values[i] = Math.round(3000 * Math.exp(0.4 * random.nextGaussian()) * 100) / 100d;
+            collection.add(values[i]);
+        }
+        scratch = new double[size];
+    }
+
+    @Benchmark
+    public Statistics primitive() {
+        System.arraycopy(values, 0, scratch, 0, size);
+        return Statistics.calculateInPlace(scratch, 0, size, strategy);
+    }
+
+    /**
+     * The original boxed path, which only sorts
+     */
+    @Benchmark
+    public Statistics collection() {
+        return Statistics.calculate(collection);
+    }
+}
@@ -1,9 +1,20 @@
 package com.jojos.report;
 
+import com.jojos.report.jobs.AggregationMode;
+import com.jojos.report.jobs.EmployeeStore;
+import com.jojos.report.jobs.IngestPipeline;
 import com.jojos.report.jobs.InputJob;
-import com.jojos.report.jobs.Loader;
 import com.jojos.report.jobs.OutputJob;
+import com.jojos.report.jobs.ReportCache;
+import com.jojos.report.jobs.ReportExecutors;
+import com.jojos.report.jobs.ReportPlan;
+import com.jojos.report.jobs.RunMetrics;
+import com.jojos.report.jobs.SpillingAggregation;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 /**
@@ -14,20 +25,55 @@ import java.util.logging.Logger;
 public class App {
     private static final Logger log = Logger.getLogger(App.class.getName());
     private final String directoryPath;
+    private final Options options;
+    private Consumer<EmployeeStore> storeListener = store -> {
+    };
+    private Consumer<RunMetrics> metricsListener = metrics -> {
+    };
 
     public App(String directoryPath) {
+        this(directoryPath, new Options());
+    }
+
+    public App(String directoryPath, Options options) {
         this.directoryPath = directoryPath;
+        this.options = options;
     }
 
-    public void start() {
-        log.info(String.format("Application started with input file directory: \"%s\"", directoryPath));
-        long start = System.currentTimeMillis();
+    /**
+     * @param storeListener notified of every store of employees loaded by {@link AggregationMode#EXACT}
+     * @return this app
+     */
+    public App withStoreListener(Consumer<EmployeeStore> storeListener) {
+        this.storeListener = storeListener;
+        return this;
+    }
 
+    /**
+     * @param metricsListener notified of the metrics of every run once it completed, whether it succeeded or not
+     * @return this app
+     */
+    public App withMetricsListener(Consumer<RunMetrics> metricsListener) {
+        this.metricsListener = metricsListener;
+        return this;
+    }
 
-        InputJob inputJob = new InputJob(directoryPath);
-        Loader loader = inputJob.parseAndLoad();
-        OutputJob outputJob = new OutputJob(loader, directoryPath);
-        outputJob.generateReports();
+    public void start() {
+        log.info(String.format("Application started with input file directory: \"%s\", %s", directoryPath, options));
+        long start = System.currentTimeMillis();
+        RunMetrics metrics = new RunMetrics();
+        boolean succeeded = false;
+        try {
+            run(metrics);
+            succeeded = true;
+        } finally {
+            metrics.complete(succeeded);
+            log.info("Run metrics: " + metrics);
+            if (options.isSummary()) {
+                metrics.publishSummary(new File(directoryPath), options.getDurability());
+            }
+            metricsListener.accept(metrics);
+        }
 
         String time = Util.longDuration(start);
         String processingCompleted = String.format("Application completed in %s", time);
@@ -35,11 +81,93 @@ public class App {
 
     }
 
-    public static void main(String[] args) {
+    private void run(RunMetrics metrics) {
+        InputJob inputJob = new InputJob(directoryPath, options.getParseMode()).withJoinMode(options.getJoinMode())
+                .withPipeline(new IngestPipeline().withParsers(options.getParserThreads()).withBatchBytes(options.getBatchSize()))
+                .withSnapshot(options.isSnapshot())
+                .withMetrics(metrics);
+        ReportPlan plan = ReportPlan.compile(options.getReports(), options.getAgeBuckets());
+        OutputJob outputJob;
+        SpillingAggregation spillingAggregation = null;
+        ReportCache cache = null;
+        if (options.isIncremental() && options.getAggregationMode() != AggregationMode.EXACT) {
+            log.warning("Incremental reports need the exact aggregation, recalculating all groups");
+        }
+        switch (options.getAggregationMode()) {
+            case SKETCH:
+                outputJob = new OutputJob(inputJob.parseAndAggregate(plan, options.getRelativeAccuracy()), directoryPath, plan);
+                break;
+            case EXTERNAL:
+                spillingAggregation = inputJob.parseAndSpill(plan, options.getMemoryBudget(), options.getSpillDirectory());
+                outputJob = new OutputJob(spillingAggregation, directoryPath, plan);
+                break;
+            default:
+                EmployeeStore store = inputJob.parseAndLoad(options.getStoreType());
+                storeListener.accept(store);
+                if (options.isIncremental()) {
+                    cache = ReportCache.load(new File(directoryPath), options.getPercentileStrategy());
+                    outputJob = new OutputJob(plan.execute(store, options.getPercentileStrategy(), cache), directoryPath, plan);
+                } else {
+                    outputJob = new OutputJob(store, directoryPath, options.getPercentileStrategy(), plan);
+                }
+                break;
+        }
+        ExecutorService executor = ReportExecutors.create(options.getReportThreads());
+        try {
+            outputJob.withExecutor(executor)
+                    .withFailurePolicy(options.getFailurePolicy())
+                    .withDurability(options.getDurability())
+                    .withManifest(options.isManifest())
+                    .withMetrics(metrics)
+                    .generateReports();
+        } finally {
+            // the groups calculated are valid whatever became of the reports
+            if (cache != null) {
+                cache.save();
+            }
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            if (spillingAggregation != null) {
+                spillingAggregation.close();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
         String inputPath = Util.getArgument(args, "input");
+        Options options = Options.fromArguments(args);
 
-        App app = new App(inputPath);
-        app.start();
+        App app = new App(inputPath, options);
+        if (options.isDaemon() || options.getServerPort() != null) {
+            // resident, the metrics of every run are published through JMX
+            ReportMetrics metrics = new ReportMetrics().register();
+            app.withMetricsListener(metrics::completed);
+        }
+        if (options.getServerPort() != null) {
+            if (options.getAggregationMode() != AggregationMode.EXACT) {
+                throw new ApplicationException("Serving statistics needs the exact aggregation");
+            }
+            ReportServer server = new ReportServer(options.getServerPort(), options.getPercentileStrategy(),
+                    options.getAgeBuckets(), ReportServer.DEFAULT_CACHE_SIZE);
+            app.withStoreListener(server::reload);
+            server.start();
+            // the server keeps the application running once the reports are generated
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        }
+        if (!options.isDaemon()) {
+            app.start();
+            return;
+        }
+        ReportDaemon daemon = new ReportDaemon(app, inputPath, options.getDebounceMillis());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                daemon.close();
+            } catch (IOException e) {
+                log.warning("Can't stop watching " + inputPath + ". Exception " + e.getMessage());
+            }
+        }));
+        daemon.run();
 
     }
 }
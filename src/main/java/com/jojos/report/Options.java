@@ -0,0 +1,462 @@
+package com.jojos.report;
+
+import com.jojos.report.data.AgeBuckets;
+import com.jojos.report.jobs.AggregationMode;
+import com.jojos.report.jobs.Durability;
+import com.jojos.report.jobs.FailurePolicy;
+import com.jojos.report.jobs.IngestPipeline;
+import com.jojos.report.jobs.JoinMode;
+import com.jojos.report.jobs.ParseMode;
+import com.jojos.report.jobs.PercentileStrategy;
+import com.jojos.report.jobs.QuantileSketch;
+import com.jojos.report.jobs.ReportDefinition;
+import com.jojos.report.jobs.StoreType;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * The optional settings of the application, each one with a sensible default.
+ *
+ * @author karanikasg@gmail.com
+ */
+public class Options {
+
+    /**
+     * The default memory budget of {@link AggregationMode#EXTERNAL}, in bytes
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 256L << 20;
+
+    private ParseMode parseMode = ParseMode.SCANNER;
+    private int parserThreads = Runtime.getRuntime().availableProcessors();
+    private int batchSize = IngestPipeline.DEFAULT_BATCH_BYTES;
+    private JoinMode joinMode = JoinMode.HASH;
+    private StoreType storeType = StoreType.OBJECTS;
+    private PercentileStrategy percentileStrategy = PercentileStrategy.SORT;
+    private String reportThreads;
+    private FailurePolicy failurePolicy = FailurePolicy.CONTINUE;
+    private Durability durability = Durability.NONE;
+    private boolean manifest;
+    private boolean summary;
+    private AggregationMode aggregationMode = AggregationMode.EXACT;
+    private double relativeAccuracy = QuantileSketch.DEFAULT_RELATIVE_ACCURACY;
+    private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+    private File spillDirectory = new File(System.getProperty("java.io.tmpdir"));
+    private AgeBuckets ageBuckets = AgeBuckets.DECADES;
+    private boolean incremental;
+    private boolean snapshot;
+    private boolean daemon;
+    private long debounceMillis = ReportDaemon.DEFAULT_DEBOUNCE_MILLIS;
+    private Integer serverPort;
+    private List<ReportDefinition> reports = ReportDefinition.DEFAULTS;
+
+    /**
+     * Extracts the options from command line arguments of the form
+     * -parser mapped -store columnar
+     *
+     * @param commandLineArguments an array containing all the command line arguments
+     * @return the options, defaults for the ones not present
+     * @see Util#getArgument(String[], String)
+     */
+    public static Options fromArguments(String[] commandLineArguments) {
+        return new Options()
+                .withParseMode(ParseMode.forName(Util.getArgument(commandLineArguments, "parser")))
+                .withParserThreads(parseParserThreads(Util.getArgument(commandLineArguments, "parserThreads")))
+                .withBatchSize(parseBatchSize(Util.getArgument(commandLineArguments, "batchSize")))
+                .withJoinMode(JoinMode.forName(Util.getArgument(commandLineArguments, "join")))
+                .withStoreType(StoreType.forName(Util.getArgument(commandLineArguments, "store")))
+                .withPercentileStrategy(PercentileStrategy.forName(Util.getArgument(commandLineArguments, "percentiles")))
+                .withReportThreads(Util.getArgument(commandLineArguments, "reportThreads"))
+                .withFailurePolicy(FailurePolicy.forName(Util.getArgument(commandLineArguments, "onFailure")))
+                .withDurability(Durability.forName(Util.getArgument(commandLineArguments, "durability")))
+                .withManifest(parseBoolean("manifest", Util.getArgument(commandLineArguments, "manifest"), false))
+                .withSummary(parseBoolean("summary", Util.getArgument(commandLineArguments, "summary"), false))
+                .withAggregationMode(AggregationMode.forName(Util.getArgument(commandLineArguments, "aggregation")))
+                .withRelativeAccuracy(parseAccuracy(Util.getArgument(commandLineArguments, "accuracy")))
+                .withMemoryBudget(parseMemoryBudget(Util.getArgument(commandLineArguments, "memoryBudget")))
+                .withSpillDirectory(parseSpillDirectory(Util.getArgument(commandLineArguments, "spillDirectory")))
+                .withAgeBuckets(AgeBuckets.parse(Util.getArgument(commandLineArguments, "ageRanges")))
+                .withIncremental(parseBoolean("incremental", Util.getArgument(commandLineArguments, "incremental"), false))
+                .withSnapshot(parseBoolean("snapshot", Util.getArgument(commandLineArguments, "snapshot"), false))
+                .withDaemon(parseBoolean("daemon", Util.getArgument(commandLineArguments, "daemon"), false))
+                .withDebounceMillis(parseDebounce(Util.getArgument(commandLineArguments, "debounce")))
+                .withServerPort(parsePort(Util.getArgument(commandLineArguments, "serve")))
+                .withReports(parseReports(Util.getArgument(commandLineArguments, "reports")));
+    }
+
+    private static long parseMemoryBudget(String megabytes) {
+        if (megabytes == null) {
+            return DEFAULT_MEMORY_BUDGET;
+        }
+        try {
+            long value = Long.parseLong(megabytes);
+            if (value > 0) {
+                return value << 20;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new ApplicationException(String.format("Invalid memory budget %s, expected a positive number of megabytes", megabytes));
+    }
+
+    private static int parseParserThreads(String threads) {
+        if (threads == null) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        try {
+            int value = Integer.parseInt(threads);
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new ApplicationException(String.format("Invalid parser threads %s, expected a positive number", threads));
+    }
+
+    private static int parseBatchSize(String kilobytes) {
+        if (kilobytes == null) {
+            return IngestPipeline.DEFAULT_BATCH_BYTES;
+        }
+        try {
+            int value = Integer.parseInt(kilobytes);
+            if (value > 0 && value <= Integer.MAX_VALUE >> 11) {
+                return value << 10;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new ApplicationException(String.format("Invalid batch size %s, expected a positive number of kilobytes", kilobytes));
+    }
+
+    private static boolean parseBoolean(String name, String value, boolean defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+            return Boolean.parseBoolean(value);
+        }
+        throw new ApplicationException(String.format("Invalid %s %s, expected true or false", name, value));
+    }
+
+    private static long parseDebounce(String millis) {
+        if (millis == null) {
+            return ReportDaemon.DEFAULT_DEBOUNCE_MILLIS;
+        }
+        try {
+            long value = Long.parseLong(millis);
+            if (value >= 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new ApplicationException(String.format("Invalid debounce %s, expected a number of milliseconds", millis));
+    }
+
+    private static Integer parsePort(String port) {
+        if (port == null) {
+            return null;
+        }
+        try {
+            int value = Integer.parseInt(port);
+            if (value >= 0 && value <= 0xffff) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new ApplicationException(String.format("Invalid port %s, expected a number between 0 and 65535", port));
+    }
+
+    private static List<ReportDefinition> parseReports(String path) {
+        return path == null ? ReportDefinition.DEFAULTS : ReportDefinition.withDefaults(ReportDefinition.load(new File(path)));
+    }
+
+    private static File parseSpillDirectory(String path) {
+        return path == null ? new File(System.getProperty("java.io.tmpdir")) : new File(path);
+    }
+
+    private static double parseAccuracy(String accuracy) {
+        if (accuracy == null) {
+            return QuantileSketch.DEFAULT_RELATIVE_ACCURACY;
+        }
+        try {
+            double value = Double.parseDouble(accuracy);
+            if (value > 0 && value < 1) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new ApplicationException(String.format("Invalid accuracy %s, expected a number between 0 and 1", accuracy));
+    }
+
+    public ParseMode getParseMode() {
+        return parseMode;
+    }
+
+    public Options withParseMode(ParseMode parseMode) {
+        this.parseMode = parseMode;
+        return this;
+    }
+
+    /**
+     * @return the threads parsing the employees file in {@link ParseMode#PIPELINE}
+     */
+    public int getParserThreads() {
+        return parserThreads;
+    }
+
+    public Options withParserThreads(int parserThreads) {
+        this.parserThreads = parserThreads;
+        return this;
+    }
+
+    /**
+     * @return the bytes of the batches the employees file is read in by {@link ParseMode#PIPELINE}
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public Options withBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public JoinMode getJoinMode() {
+        return joinMode;
+    }
+
+    public Options withJoinMode(JoinMode joinMode) {
+        this.joinMode = joinMode;
+        return this;
+    }
+
+    public StoreType getStoreType() {
+        return storeType;
+    }
+
+    public Options withStoreType(StoreType storeType) {
+        this.storeType = storeType;
+        return this;
+    }
+
+    public PercentileStrategy getPercentileStrategy() {
+        return percentileStrategy;
+    }
+
+    public Options withPercentileStrategy(PercentileStrategy percentileStrategy) {
+        this.percentileStrategy = percentileStrategy;
+        return this;
+    }
+
+    /**
+     * @return the specification of the executor reports are generated on
+     * @see com.jojos.report.jobs.ReportExecutors#create(String)
+     */
+    public String getReportThreads() {
+        return reportThreads;
+    }
+
+    public Options withReportThreads(String reportThreads) {
+        this.reportThreads = reportThreads;
+        return this;
+    }
+
+    public FailurePolicy getFailurePolicy() {
+        return failurePolicy;
+    }
+
+    public Options withFailurePolicy(FailurePolicy failurePolicy) {
+        this.failurePolicy = failurePolicy;
+        return this;
+    }
+
+    /**
+     * @return whether and when reports are forced to the disk before they are published
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public Options withDurability(Durability durability) {
+        this.durability = durability;
+        return this;
+    }
+
+    /**
+     * @return whether a manifest of the reports is published after them
+     * @see com.jojos.report.jobs.OutputJob#withManifest(boolean)
+     */
+    public boolean isManifest() {
+        return manifest;
+    }
+
+    public Options withManifest(boolean manifest) {
+        this.manifest = manifest;
+        return this;
+    }
+
+    /**
+     * @return whether a JSON summary of the metrics of the run is published after the reports
+     * @see com.jojos.report.jobs.RunMetrics#publishSummary(File, Durability)
+     */
+    public boolean isSummary() {
+        return summary;
+    }
+
+    public Options withSummary(boolean summary) {
+        this.summary = summary;
+        return this;
+    }
+
+    public AggregationMode getAggregationMode() {
+        return aggregationMode;
+    }
+
+    public Options withAggregationMode(AggregationMode aggregationMode) {
+        this.aggregationMode = aggregationMode;
+        return this;
+    }
+
+    /**
+     * @return the relative error of medians and percentiles in {@link AggregationMode#SKETCH}
+     */
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    public Options withRelativeAccuracy(double relativeAccuracy) {
+        this.relativeAccuracy = relativeAccuracy;
+        return this;
+    }
+
+    /**
+     * @return the bytes the buffered values of {@link AggregationMode#EXTERNAL} may take
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public Options withMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        return this;
+    }
+
+    /**
+     * @return where {@link AggregationMode#EXTERNAL} writes its temporary files
+     */
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public Options withSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+        return this;
+    }
+
+    /**
+     * @return the age ranges of the reports by age range
+     */
+    public AgeBuckets getAgeBuckets() {
+        return ageBuckets;
+    }
+
+    public Options withAgeBuckets(AgeBuckets ageBuckets) {
+        this.ageBuckets = ageBuckets;
+        return this;
+    }
+
+    /**
+     * @return whether the statistics of the previous run are reused for the groups whose input didn't change
+     * @see com.jojos.report.jobs.ReportCache
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public Options withIncremental(boolean incremental) {
+        this.incremental = incremental;
+        return this;
+    }
+
+    /**
+     * @return whether the loaded employees are restored from and saved to a snapshot of the input files
+     * @see com.jojos.report.jobs.Snapshot
+     */
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    public Options withSnapshot(boolean snapshot) {
+        this.snapshot = snapshot;
+        return this;
+    }
+
+    /**
+     * @return whether the application stays resident and regenerates the reports when the input files change
+     * @see ReportDaemon
+     */
+    public boolean isDaemon() {
+        return daemon;
+    }
+
+    public Options withDaemon(boolean daemon) {
+        this.daemon = daemon;
+        return this;
+    }
+
+    /**
+     * @return the quiet period after the last change of the input files before the daemon generates the reports
+     */
+    public long getDebounceMillis() {
+        return debounceMillis;
+    }
+
+    public Options withDebounceMillis(long debounceMillis) {
+        this.debounceMillis = debounceMillis;
+        return this;
+    }
+
+    /**
+     * @return the port statistics are served at, null if they are not served
+     * @see ReportServer
+     */
+    public Integer getServerPort() {
+        return serverPort;
+    }
+
+    public Options withServerPort(Integer serverPort) {
+        this.serverPort = serverPort;
+        return this;
+    }
+
+    /**
+     * @return the reports to generate, the default ones followed by the configured ones
+     * @see ReportDefinition#load(File)
+     */
+    public List<ReportDefinition> getReports() {
+        return reports;
+    }
+
+    public Options withReports(List<ReportDefinition> reports) {
+        this.reports = reports;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "parser: " + parseMode
+                + (parseMode == ParseMode.PIPELINE ? " with " + parserThreads + " threads and batches of " + (batchSize >> 10) + "KB" : "")
+                + ", join: " + joinMode + ", store: " + storeType + ", percentiles: " + percentileStrategy
+                + ", report threads: " + (reportThreads == null ? "none" : reportThreads) + ", on failure: " + failurePolicy
+                + ", durability: " + durability + ", manifest: " + manifest + ", summary: " + summary
+                + ", reports: " + reports.size() + ", age ranges: " + ageBuckets + ", incremental: " + incremental + ", snapshot: " + snapshot
+                + (daemon ? ", daemon with debounce: " + debounceMillis + "ms" : "")
+                + (serverPort != null ? ", serving at port: " + serverPort : "")
+                + ", aggregation: " + aggregationMode + (aggregationMode == AggregationMode.SKETCH ? ", accuracy: " + relativeAccuracy : "")
+                + (aggregationMode == AggregationMode.EXTERNAL ? ", memory budget: " + (memoryBudget >> 20) + "MB in " + spillDirectory : "");
+    }
+}
@@ -0,0 +1,184 @@
+package com.jojos.report;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static com.jojos.report.Util.AGES_FILE;
+import static com.jojos.report.Util.COMPRESSED_EXTENSION;
+import static com.jojos.report.Util.DEPARTMENTS_FILE;
+import static com.jojos.report.Util.EMPLOYEES_FILE;
+
+/**
+ * Keeps the application resident and regenerates the reports whenever the input files change, so that every run
+ * after the first one finds a warm JVM.
+ *
+ * The input directory is watched for changes of the input files. Changes are debounced: the reports are generated
+ * once no further change arrived for the debounce period, so that a file being written or several files being
+ * replaced one after the other cause a single generation. Generations run on a single thread, never two at once;
+ * changes arriving during a generation are coalesced into one more generation after it.
+ *
+ * @author karanikasg@gmail.com
+ */
+public class ReportDaemon implements Closeable {
+
+    /**
+     * The default quiet period after the last change before the reports are generated, in milliseconds
+     */
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 500;
+
+    private static final List<String> INPUT_FILES = Arrays.asList(AGES_FILE, DEPARTMENTS_FILE, EMPLOYEES_FILE,
+            AGES_FILE + COMPRESSED_EXTENSION, DEPARTMENTS_FILE + COMPRESSED_EXTENSION, EMPLOYEES_FILE + COMPRESSED_EXTENSION);
+
+    private final Logger log = Logger.getLogger(getClass().getName());
+
+    private final Path directory;
+    private final Runnable generation;
+    private final long debounceMillis;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "report-daemon");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicLong generations = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile long lastLatencyMillis = -1;
+    private volatile WatchService watchService;
+    // guarded by this
+    private ScheduledFuture<?> pending;
+
+    /**
+     * @param app            the application generating the reports of the directory
+     * @param directoryPath  the input directory of the application
+     * @param debounceMillis the quiet period after the last change before the reports are generated
+     */
+    public ReportDaemon(App app, String directoryPath, long debounceMillis) {
+        this(Paths.get(directoryPath), app::start, debounceMillis);
+    }
+
+    ReportDaemon(Path directory, Runnable generation, long debounceMillis) {
+        this.directory = directory;
+        this.generation = generation;
+        this.debounceMillis = debounceMillis;
+    }
+
+    /**
+     * Generates the reports once and then again on every change of the input files, until {@link #close()} is
+     * called or the thread is interrupted.
+     *
+     * @throws IOException if the directory can't be watched
+     */
+    public void run() throws IOException {
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            watchService = watcher;
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            log.info(String.format("Watching %s for changes of %s", directory, INPUT_FILES));
+            changed();
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watcher.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    // an overflow may have lost changes of the input files
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || INPUT_FILES.contains(event.context().toString())) {
+                        changed();
+                    }
+                }
+                if (!key.reset()) {
+                    log.severe(String.format("%s can't be watched any more", directory));
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // closed
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Records a change and (re)starts the debounce period
+     */
+    synchronized void changed() {
+        queueDepth.incrementAndGet();
+        if (pending != null) {
+            // a generation already running completes, the next one is only postponed
+            pending.cancel(false);
+        }
+        pending = scheduler.schedule(this::generate, debounceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void generate() {
+        int changes = queueDepth.getAndSet(0);
+        long start = System.nanoTime();
+        try {
+            generation.run();
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            log.severe("Can't generate the reports. Exception " + e);
+        } finally {
+            lastLatencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            generations.incrementAndGet();
+        }
+        log.info(String.format("Generated the reports of %d changes in %dms, %d changes queued",
+                changes, lastLatencyMillis, queueDepth.get()));
+    }
+
+    /**
+     * @return the changes that arrived since the last generation started, to be covered by the next one
+     */
+    public int queueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * @return how long the last generation took, -1 if there was none yet
+     */
+    public long lastLatencyMillis() {
+        return lastLatencyMillis;
+    }
+
+    /**
+     * @return the number of completed generations, failed ones included
+     */
+    public long generations() {
+        return generations.get();
+    }
+
+    /**
+     * @return the number of failed generations
+     */
+    public long failures() {
+        return failures.get();
+    }
+
+    /**
+     * Stops watching, a generation in progress is interrupted
+     */
+    @Override
+    public void close() throws IOException {
+        WatchService watcher = watchService;
+        if (watcher != null) {
+            watcher.close();
+        }
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,196 @@
+package com.jojos.report;
+
+import com.jojos.report.jobs.RunMetrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Publishes the {@link RunMetrics} of every completed run of the application through JMX, under
+ * {@value #OBJECT_NAME}, for applications that stay resident and run again and again. Reading an attribute only
+ * reads the metrics of the last run, the runs themselves pay nothing for it.
+ *
+ * @author karanikasg@gmail.com
+ */
+public class ReportMetrics implements ReportMetricsMXBean, Closeable {
+
+    public static final String OBJECT_NAME = "com.jojos.report:type=ReportMetrics";
+
+    private static final RunMetrics NONE = new RunMetrics();
+
+    static {
+        NONE.complete(false);
+    }
+
+    private final Logger log = Logger.getLogger(getClass().getName());
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong failedRuns = new AtomicLong();
+    private volatile RunMetrics last;
+    private MBeanServer server;
+    private ObjectName name;
+
+    /**
+     * Registers the metrics with the platform MBean server, replacing any registered before under the same name
+     *
+     * @return this metrics
+     */
+    public ReportMetrics register() {
+        try {
+            server = ManagementFactory.getPlatformMBeanServer();
+            name = new ObjectName(OBJECT_NAME);
+            try {
+                server.registerMBean(this, name);
+            } catch (InstanceAlreadyExistsException e) {
+                server.unregisterMBean(name);
+                server.registerMBean(this, name);
+            }
+            log.info("Publishing the metrics of every run as " + OBJECT_NAME);
+        } catch (JMException e) {
+            throw new ApplicationException(String.format("Can't register %s. Exception %s", OBJECT_NAME, e));
+        }
+        return this;
+    }
+
+    /**
+     * @param metrics the metrics of a run that completed
+     */
+    public void completed(RunMetrics metrics) {
+        runs.incrementAndGet();
+        if (!metrics.isSucceeded()) {
+            failedRuns.incrementAndGet();
+        }
+        last = metrics;
+    }
+
+    @Override
+    public long getRuns() {
+        return runs.get();
+    }
+
+    @Override
+    public long getFailedRuns() {
+        return failedRuns.get();
+    }
+
+    @Override
+    public long getLastStartMillis() {
+        return last().getStartMillis();
+    }
+
+    @Override
+    public long getLastElapsedMillis() {
+        return last().getElapsedMillis();
+    }
+
+    @Override
+    public long getLastRows() {
+        return last().getRows();
+    }
+
+    @Override
+    public long getLastBytes() {
+        return last().getBytes();
+    }
+
+    @Override
+    public double getLastRowsPerSecond() {
+        return last().getRowsPerSecond();
+    }
+
+    @Override
+    public double getLastBytesPerSecond() {
+        return last().getBytesPerSecond();
+    }
+
+    @Override
+    public long getLastRejectedLines() {
+        return last().getRejectedLines();
+    }
+
+    @Override
+    public long getLastJoinMisses() {
+        return last().getJoinMisses();
+    }
+
+    @Override
+    public long getLastFailedReports() {
+        return last().getFailedReports();
+    }
+
+    @Override
+    public long getLastGcMillis() {
+        return last().getGcMillis();
+    }
+
+    @Override
+    public Map<String, Long> getLastPhaseMillis() {
+        Map<String, Long> millis = new LinkedHashMap<>();
+        RunMetrics metrics = last();
+        metrics.getPhases().forEach(phase -> millis.put(phase.getName(), phase.getMillis()));
+        metrics.getReports().forEach(report -> millis.put(report.getName(), report.getMillis()));
+        return millis;
+    }
+
+    @Override
+    public String getLastSummary() {
+        RunMetrics metrics = last;
+        return metrics == null ? "" : metrics.toJson();
+    }
+
+    @Override
+    public long getHeapUsedBytes() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    @Override
+    public long getGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    @Override
+    public long getGcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * Unregisters the metrics, if they were registered
+     */
+    @Override
+    public void close() {
+        if (name == null) {
+            return;
+        }
+        try {
+            server.unregisterMBean(name);
+        } catch (InstanceNotFoundException e) {
+            // replaced by another instance and unregistered already
+        } catch (JMException e) {
+            log.warning(String.format("Can't unregister %s. Exception %s", OBJECT_NAME, e));
+        }
+        name = null;
+    }
+
+    private RunMetrics last() {
+        RunMetrics metrics = last;
+        return metrics == null ? NONE : metrics;
+    }
+}
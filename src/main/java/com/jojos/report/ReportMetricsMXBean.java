@@ -0,0 +1,53 @@
+package com.jojos.report;
+
+import java.util.Map;
+
+/**
+ * The metrics of the runs of a resident application, i.e. a {@link ReportDaemon} or one serving statistics through
+ * {@link ReportServer}, as an MXBean. Attributes named last are the ones of the last completed run, the heap and the
+ * garbage collections are the current ones of the JVM.
+ *
+ * @author karanikasg@gmail.com
+ */
+public interface ReportMetricsMXBean {
+
+    long getRuns();
+
+    long getFailedRuns();
+
+    long getLastStartMillis();
+
+    long getLastElapsedMillis();
+
+    long getLastRows();
+
+    long getLastBytes();
+
+    double getLastRowsPerSecond();
+
+    double getLastBytesPerSecond();
+
+    long getLastRejectedLines();
+
+    long getLastJoinMisses();
+
+    long getLastFailedReports();
+
+    long getLastGcMillis();
+
+    /**
+     * @return the milliseconds of every phase and every report of the last run, by name
+     */
+    Map<String, Long> getLastPhaseMillis();
+
+    /**
+     * @return the JSON summary of the last run, empty if none completed yet
+     */
+    String getLastSummary();
+
+    long getHeapUsedBytes();
+
+    long getGcCount();
+
+    long getGcMillis();
+}
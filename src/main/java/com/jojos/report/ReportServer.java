@@ -0,0 +1,297 @@
+package com.jojos.report;
+
+import com.jojos.report.data.AgeBuckets;
+import com.jojos.report.jobs.AggregationResults;
+import com.jojos.report.jobs.Dimension;
+import com.jojos.report.jobs.EmployeeStore;
+import com.jojos.report.jobs.Json;
+import com.jojos.report.jobs.Measure;
+import com.jojos.report.jobs.PercentileStrategy;
+import com.jojos.report.jobs.ReportPlan;
+import com.jojos.report.jobs.Statistics;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Serves the statistics of the loaded employees over HTTP, for ad-hoc queries without reading the reports.
+ *
+ * GET /statistics/{dimension}[/{group}][?measure=income|age] answers with the {@link Statistics} of every group of
+ * the dimension, or of the one group, as JSON. The dimensions are department, age-range and genre, the groups
+ * are identified by their labels in the reports, e.g. /statistics/age-range/30-39?measure=income.
+ *
+ * The statistics of an aggregation are calculated on its first query and the responses are kept in a bounded LRU
+ * cache, so a repeated query only looks its response up. Both are replaced as a whole by {@link #reload(EmployeeStore)},
+ * a query never sees statistics of different loads. Thread safe.
+ *
+ * @author karanikasg@gmail.com
+ */
+public class ReportServer implements Closeable {
+
+    /**
+     * The default number of responses kept in the cache
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    private static final String CONTEXT = "/statistics/";
+    private static final String JSON = "application/json; charset=utf-8";
+
+    private final Logger log = Logger.getLogger(getClass().getName());
+
+    private final PercentileStrategy percentileStrategy;
+    private final ReportPlan plan;
+    private final int cacheSize;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile State state;
+
+    /**
+     * @param port               the port to listen to, 0 for any free one
+     * @param percentileStrategy the way to locate medians and percentiles
+     * @param ageBuckets         the age ranges of the age-range groups
+     * @param cacheSize          the number of responses kept in the cache
+     * @throws IOException if the port can't be bound
+     */
+    public ReportServer(int port, PercentileStrategy percentileStrategy, AgeBuckets ageBuckets, int cacheSize) throws IOException {
+        this.percentileStrategy = percentileStrategy;
+        this.cacheSize = cacheSize;
+        List<ReportPlan.Aggregation> aggregations = new ArrayList<>();
+        for (Dimension dimension : Dimension.values()) {
+            for (Measure measure : Measure.values()) {
+                aggregations.add(new ReportPlan.Aggregation(dimension, measure));
+            }
+        }
+        this.plan = ReportPlan.of(aggregations, ageBuckets);
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "report-server-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(CONTEXT, this::handle);
+    }
+
+    /**
+     * Starts answering queries, with 503 until the employees are loaded
+     */
+    public void start() {
+        server.start();
+        log.info(String.format("Serving statistics at http://localhost:%d%s", getPort(), CONTEXT));
+    }
+
+    /**
+     * Serves the statistics of newly loaded employees from now on, dropping the cached responses of the previous ones
+     *
+     * @param store the employees
+     */
+    public void reload(EmployeeStore store) {
+        state = new State(plan.execute(store, percentileStrategy), cacheSize);
+        log.info(String.format("Serving the statistics of %d employees", store.employeesSize()));
+    }
+
+    /**
+     * @return the port the server listens to
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return the number of queries answered from the cache
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of queries whose response had to be created
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    /**
+     * Stops the server, letting queries in progress complete for a second
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, error("Only GET is supported"));
+                return;
+            }
+            State current = state;
+            if (current == null) {
+                respond(exchange, 503, error("The employees are not loaded yet"));
+                return;
+            }
+            String query = exchange.getRequestURI().getRawPath() + '?' + exchange.getRequestURI().getRawQuery();
+            byte[] response = current.get(query);
+            if (response != null) {
+                hits.incrementAndGet();
+                respond(exchange, 200, response);
+                return;
+            }
+            misses.incrementAndGet();
+            try {
+                response = query(current.results, exchange.getRequestURI().getRawPath(), exchange.getRequestURI().getRawQuery());
+            } catch (ApplicationException e) {
+                respond(exchange, 404, error(e.getMessage()));
+                return;
+            }
+            current.put(query, response);
+            respond(exchange, 200, response);
+        } catch (RuntimeException e) {
+            log.severe(String.format("Can't answer %s. Exception %s", exchange.getRequestURI(), e));
+            respond(exchange, 500, error(e.toString()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @return the JSON of the statistics a query asks for
+     * @throws ApplicationException if the query asks for an unknown dimension, group or measure
+     */
+    private static byte[] query(AggregationResults results, String path, String parameters) {
+        String[] segments = path.substring(CONTEXT.length()).split("/", -1);
+        if (segments.length > 2) {
+            throw new ApplicationException("Unknown path " + path);
+        }
+        Dimension dimension = Dimension.forName(segments[0]);
+        Measure measure = measure(parameters);
+        String group = segments.length == 2 ? decode(segments[1]) : null;
+
+        Statistics[] statistics = results.statistics(new ReportPlan.Aggregation(dimension, measure));
+        StringBuilder json = new StringBuilder(256);
+        if (group != null) {
+            for (int key = 0; key < statistics.length; key++) {
+                String label = dimension.label(results.getDepartments(), results.getAgeBuckets(), key);
+                if (label.equals(group)) {
+                    appendGroup(json, label, statistics[key]);
+                    return json.toString().getBytes(StandardCharsets.UTF_8);
+                }
+            }
+            throw new ApplicationException(String.format("Unknown %s %s", segments[0], group));
+        }
+        json.append("{\"dimension\":");
+        Json.appendString(json, segments[0]);
+        json.append(",\"measure\":");
+        Json.appendString(json, measure.name().toLowerCase(Locale.ROOT));
+        json.append(",\"groups\":[");
+        for (int key = 0; key < statistics.length; key++) {
+            if (key > 0) {
+                json.append(',');
+            }
+            appendGroup(json, dimension.label(results.getDepartments(), results.getAgeBuckets(), key), statistics[key]);
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Measure measure(String parameters) {
+        if (parameters == null) {
+            return Measure.INCOME;
+        }
+        for (String parameter : parameters.split("&")) {
+            if (parameter.startsWith("measure=")) {
+                String name = decode(parameter.substring("measure=".length()));
+                return Measure.forName(name);
+            }
+        }
+        return Measure.INCOME;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            throw new ApplicationException("Invalid encoding of " + value);
+        }
+    }
+
+    private static void appendGroup(StringBuilder json, String label, Statistics statistics) {
+        json.append("{\"group\":");
+        Json.appendString(json, label);
+        json.append(",\"observations\":").append(statistics.getObservations());
+        Json.appendNumber(json, "min", statistics.getMin());
+        Json.appendNumber(json, "max", statistics.getMax());
+        Json.appendNumber(json, "avg", statistics.getAvg());
+        Json.appendNumber(json, "std", statistics.getStd());
+        Json.appendNumber(json, "median", statistics.getMedian());
+        Json.appendNumber(json, "p90", statistics.get90thPercentile());
+        Json.appendNumber(json, "p95", statistics.get95thPercentile());
+        Json.appendNumber(json, "p99", statistics.get99thPercentile());
+        json.append('}');
+    }
+
+    private static byte[] error(String message) {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        Json.appendString(json, message);
+        return json.append('}').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * The statistics of one load together with the responses created from them
+     */
+    private static final class State {
+        private final AggregationResults results;
+        // guarded by itself
+        private final Map<String, byte[]> responses;
+
+        private State(AggregationResults results, int cacheSize) {
+            this.results = results;
+            this.responses = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                    return size() > cacheSize;
+                }
+            };
+        }
+
+        private byte[] get(String query) {
+            synchronized (responses) {
+                return responses.get(query);
+            }
+        }
+
+        private void put(String query, byte[] response) {
+            synchronized (responses) {
+                responses.put(query, response);
+            }
+        }
+    }
+}
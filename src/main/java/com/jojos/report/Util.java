@@ -18,12 +18,16 @@ public class Util {
     public static final String AGES_FILE = "ages.csv";
     public static final String DEPARTMENTS_FILE = "departments.csv";
     public static final String EMPLOYEES_FILE = "employees.csv";
+    // the extension of gzip compressed input files
+    public static final String COMPRESSED_EXTENSION = ".gz";
 
     // output files
     public static final String INCOME_BY_DEPARTMENT = "income-by-department.csv";
     public static final String INCOME_95_BY_DEPARTMENT = "income-95-by-department.csv";
     public static final String INCOME_AVERAGE_BY_AGE_RANGE = "income-average-by-age-range.csv";
     public static final String EMPLOYEE_AGE_BY_DEPARTMENT = "employee-age-by-department.csv";
+    public static final String REPORTS_MANIFEST = "reports.manifest";
+    public static final String RUN_SUMMARY = "run-summary.json";
 
     public static final String DELIMITER = ",";
 
@@ -104,4 +108,30 @@ public class Util {
         return existingSet.add(value);
     }
 
+
+    /**
+     * Case insensitive lookup of a constant of an enum by its name, with - or _ or a space between words,
+     * the way every option and every part of a report definition is looked up.
+     *
+     * @param type         the enum
+     * @param name         the name of the constant, may be null
+     * @param defaultValue the constant if no name was provided, null if a name is required
+     * @param description  what the constant is, e.g. dimension, for the error message
+     * @return the matching constant, or the default one if no name was provided
+     * @throws ApplicationException if no constant has the name, or no name was provided and one is required
+     */
+    public static <E extends Enum<E>> E forName(Class<E> type, String name, E defaultValue, String description) {
+        if (name == null && defaultValue != null) {
+            return defaultValue;
+        }
+        if (name != null) {
+            String normalized = name.trim().replace('-', '_').replace(' ', '_');
+            for (E constant : type.getEnumConstants()) {
+                if (constant.name().equalsIgnoreCase(normalized)) {
+                    return constant;
+                }
+            }
+        }
+        throw new ApplicationException(String.format("Unknown %s %s", description, name));
+    }
 }
@@ -0,0 +1,195 @@
+package com.jojos.report.data;
+
+import com.jojos.report.ApplicationException;
+
+import java.util.Arrays;
+
+/**
+ * A scheme of consecutive age ranges the employees are grouped by, e.g. decades or 5-year ranges or any custom
+ * bounds, without the need of a constant per range like {@link AgeRange} has.
+ *
+ * The ranges are defined by their lower bounds, starting at 0, and a limit: every range ends where the next one
+ * starts, the last one at the limit. Ages from the limit on fall into the overflow bucket, which is reported as
+ * a range of its own only if the scheme is open ended. Negative ages, i.e. unknown ones, fall into the first range
+ * as they always did with {@link AgeRange#forAge(int)}.
+ *
+ * The bucket of an age is looked up in an array indexed by age, in constant time. Immutable and thread safe.
+ *
+ * @author karanikasg@gmail.com
+ */
+public final class AgeBuckets {
+
+    /**
+     * The highest limit of a scheme, it keeps the lookup array small
+     */
+    public static final int MAX_LIMIT = 1 << 16;
+
+    /**
+     * The ranges of {@link AgeRange}, 0-9 until 120-129 with the ages from 130 on left out
+     */
+    public static final AgeBuckets DECADES = ofWidth(10, 130, false);
+
+    private static final String OPEN_END = "+";
+
+    private final int[] bounds;
+    private final boolean openEnded;
+    // the bucket of every age below the limit
+    private final int[] bucketOfAge;
+
+    private AgeBuckets(int[] bounds, boolean openEnded) {
+        this.bounds = bounds;
+        this.openEnded = openEnded;
+        this.bucketOfAge = new int[bounds[bounds.length - 1]];
+        for (int bucket = 0; bucket < bounds.length - 1; bucket++) {
+            Arrays.fill(bucketOfAge, bounds[bucket], bounds[bucket + 1], bucket);
+        }
+    }
+
+    /**
+     * @param width     the years every range spans, up to the limit
+     * @param limit     the age the last range ends at, exclusive. Rounded up to a multiple of the width
+     * @param openEnded whether the ages from the limit on form a range of their own
+     * @return ranges of the same width from 0 up to the limit
+     */
+    public static AgeBuckets ofWidth(int width, int limit, boolean openEnded) {
+        // a width up to the limit keeps the count of the bounds from overflowing too
+        if (width < 1 || limit < 1 || limit > MAX_LIMIT || width > limit) {
+            throw new ApplicationException(String.format("Invalid age ranges of width %d up to %d", width, limit));
+        }
+        int[] bounds = new int[(limit + width - 1) / width + 1];
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = Math.min(i * width, MAX_LIMIT);
+        }
+        return new AgeBuckets(bounds, openEnded);
+    }
+
+    /**
+     * @param openEnded whether the ages from the last bound on form a range of their own
+     * @param bounds    the lower bound of every range starting at 0, followed by the exclusive upper bound of
+     *                  the last one, in ascending order
+     * @return the ranges between the bounds
+     */
+    public static AgeBuckets of(boolean openEnded, int... bounds) {
+        if (bounds.length < 2 || bounds[0] != 0 || bounds[bounds.length - 1] > MAX_LIMIT) {
+            throw new ApplicationException("Invalid age ranges " + Arrays.toString(bounds) +
+                    ". The first one has to start at 0 and the last one end before " + MAX_LIMIT);
+        }
+        for (int i = 1; i < bounds.length; i++) {
+            if (bounds[i] <= bounds[i - 1]) {
+                throw new ApplicationException("Age range bounds not in ascending order " + Arrays.toString(bounds));
+            }
+        }
+        return new AgeBuckets(bounds.clone(), openEnded);
+    }
+
+    /**
+     * Parses a scheme of age ranges. A single number is the width of ranges up to 130, e.g. "5".
+     * A list of numbers are the bounds of the ranges, e.g. "0,18,30,65". A trailing "+" makes the scheme open
+     * ended, e.g. "5+" or "0,18,30,65+".
+     *
+     * @param spec the scheme
+     * @return the age ranges, {@link #DECADES} if the scheme is null
+     * @throws ApplicationException if the scheme is not valid
+     */
+    public static AgeBuckets parse(String spec) {
+        if (spec == null) {
+            return DECADES;
+        }
+        String trimmed = spec.trim();
+        boolean openEnded = trimmed.endsWith(OPEN_END);
+        if (openEnded) {
+            trimmed = trimmed.substring(0, trimmed.length() - OPEN_END.length());
+        }
+        try {
+            String[] values = trimmed.split("\\s*,\\s*");
+            if (values.length == 1) {
+                return ofWidth(Integer.parseInt(values[0]), DECADES.limit(), openEnded);
+            }
+            int[] bounds = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                bounds[i] = Integer.parseInt(values[i]);
+            }
+            return of(openEnded, bounds);
+        } catch (NumberFormatException e) {
+            throw new ApplicationException("Invalid age ranges " + spec);
+        }
+    }
+
+    /**
+     * @param age the age of an employee
+     * @return the index of the range of the age, {@link #overflow()} if it is beyond the last one
+     */
+    public int bucket(int age) {
+        if (age < 0) {
+            return 0;
+        }
+        return age < bucketOfAge.length ? bucketOfAge[age] : bounds.length - 1;
+    }
+
+    /**
+     * @return the number of ranges up to the limit
+     */
+    public int size() {
+        return bounds.length - 1;
+    }
+
+    /**
+     * @return the bucket of the ages from the limit on
+     */
+    public int overflow() {
+        return bounds.length - 1;
+    }
+
+    /**
+     * @return the age the last range ends at, exclusive
+     */
+    public int limit() {
+        return bounds[bounds.length - 1];
+    }
+
+    public boolean isOpenEnded() {
+        return openEnded;
+    }
+
+    /**
+     * @return the number of buckets employees are grouped into, the overflow included if the scheme is open ended
+     */
+    public int groups() {
+        return openEnded ? size() + 1 : size();
+    }
+
+    /**
+     * @param bucket the index of the bucket
+     * @return the text identifying the range in a report, e.g. 30-39 or 130+ for the overflow
+     */
+    public String label(int bucket) {
+        if (bucket == overflow()) {
+            return limit() + OPEN_END;
+        }
+        return bounds[bucket] + "-" + (bounds[bucket + 1] - 1);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        AgeBuckets that = (AgeBuckets) o;
+
+        return openEnded == that.openEnded && Arrays.equals(bounds, that.bounds);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(bounds) + (openEnded ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int bound : bounds) {
+            text.append(text.length() == 0 ? "" : ",").append(bound);
+        }
+        return openEnded ? text.append(OPEN_END).toString() : text.toString();
+    }
+}
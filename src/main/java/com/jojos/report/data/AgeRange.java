@@ -3,7 +3,8 @@ package com.jojos.report.data;
 /**
  * enumeration that represents the age range with factor of ten.
  *
- * Assumed maximum life expectancy if not more than 129 years old.
+ * Assumed maximum life expectancy if not more than 129 years old, older employees are put in the explicit
+ * overflow range {@link #YEAR_130_PLUS}. Negative ages, i.e. unknown ones, are put in the first range.
  *
  * For each age-range assume that the lower limit is inclusive and the upper is exclusive,
  * e.g.:
@@ -25,7 +26,19 @@ public enum AgeRange {
     YEAR_90_100(90, 99),
     YEAR_100_110(100, 109),
     YEAR_110_120(110, 119),
-    YEAR_120_130(120, 129);
+    YEAR_120_130(120, 129),
+    YEAR_130_PLUS(130, Integer.MAX_VALUE);
+
+    // the range of every age below the overflow, values() clones the array on every call
+    private static final AgeRange[] BY_AGE = new AgeRange[YEAR_130_PLUS.min];
+
+    static {
+        for (AgeRange ageRange : values()) {
+            for (int age = ageRange.min; age <= ageRange.max && age < BY_AGE.length; age++) {
+                BY_AGE[age] = ageRange;
+            }
+        }
+    }
 
     private final int min;
     private final int max;
@@ -37,15 +50,17 @@ public enum AgeRange {
 
     @Override
     public String toString() {
-        return min + "-" + max;
+        return max == Integer.MAX_VALUE ? min + "+" : min + "-" + max;
     }
 
+    /**
+     * @param age the age of an employee
+     * @return the range of the age, never null
+     */
     public static AgeRange forAge(int age) {
-        for (AgeRange ageRange : values()) {
-            if (age <= ageRange.max) {
-                return ageRange;
-            }
+        if (age < 0) {
+            return YEAR_0_10;
         }
-        return null;
+        return age < BY_AGE.length ? BY_AGE[age] : YEAR_130_PLUS;
     }
 }
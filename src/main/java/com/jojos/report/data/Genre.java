@@ -1,5 +1,7 @@
 package com.jojos.report.data;
 
+import java.nio.ByteBuffer;
+
 /**
  * Enumerate the genres, N/A if not determined
  *
@@ -10,18 +12,69 @@ public enum Genre {
     MALE("M"),
     NA("N/A");
 
+    // values() clones the array on every call, keep one copy around for the lookups
+    private static final Genre[] VALUES = values();
+
     private final String abbreviation;
 
     Genre(String abbreviation) {
         this.abbreviation = abbreviation;
     }
 
+    /**
+     * A compact representation of the genre, suitable for storing in a byte column.
+     *
+     * @return the code of the genre
+     * @see #forCode(byte)
+     */
+    public byte code() {
+        return (byte) ordinal();
+    }
+
+    public static Genre forCode(byte code) {
+        return VALUES[code];
+    }
+
     public static Genre forCaseInsensitiveAbbreviation(String abbreviation) {
-        for (Genre genre : values()) {
-            if (genre.abbreviation.toUpperCase().equals(abbreviation)) {
+        for (Genre genre : VALUES) {
+            if (genre.abbreviation.equalsIgnoreCase(abbreviation)) {
                 return genre;
             }
         }
         return NA;
     }
+
+    /**
+     * Same as {@link #forCaseInsensitiveAbbreviation(String)} for an abbreviation found between two
+     * absolute positions of a buffer.
+     *
+     * @param buffer the buffer holding the abbreviation
+     * @param start  the inclusive start position
+     * @param end    the exclusive end position
+     * @return the matching genre or {@link #NA}
+     */
+    public static Genre forCaseInsensitiveAbbreviation(ByteBuffer buffer, int start, int end) {
+        for (Genre genre : VALUES) {
+            if (genre.abbreviation.length() == end - start && regionMatches(buffer, start, genre.abbreviation)) {
+                return genre;
+            }
+        }
+        return NA;
+    }
+
+    /**
+     * Compares ignoring the case of ASCII letters, the only ones abbreviations consist of
+     */
+    private static boolean regionMatches(ByteBuffer buffer, int start, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            byte b = buffer.get(start + i);
+            if (b >= 'a' && b <= 'z') {
+                b -= 'a' - 'A';
+            }
+            if (b != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -0,0 +1,49 @@
+package com.jojos.report.jobs;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Looks up the ages of the employees by name while the employees file is parsed, counting the employees
+ * without an age.
+ *
+ * @author karanikasg@gmail.com
+ */
+interface AgeJoin extends AutoCloseable {
+
+    /**
+     * The age of an employee missing from the ages file
+     */
+    int MISSING = -1;
+
+    /**
+     * @param name the name of the employee
+     * @return the age of the employee or {@link #MISSING}
+     */
+    int age(String name);
+
+    /**
+     * Same as {@link #age(String)} for a name held by a buffer
+     *
+     * @param buffer the buffer holding the UTF-8 bytes of the name
+     * @param start  the inclusive absolute start position of the name
+     * @param end    the exclusive absolute end position of the name
+     * @return the age of the employee or {@link #MISSING}
+     */
+    default int age(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return age(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the number of lookups of names missing from the ages file
+     */
+    long misses();
+
+    @Override
+    default void close() {
+    }
+}
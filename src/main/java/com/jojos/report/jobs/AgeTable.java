@@ -0,0 +1,202 @@
+package com.jojos.report.jobs;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The ages of the employees by name, the join of the ages file with the employees file.
+ *
+ * A compact replacement of a {@code Map<String, Integer>}: an open addressing table with linear probing over
+ * primitive arrays. Every slot keeps the 64-bit hash of the name, the age and the position of the name in a single
+ * byte array holding the UTF-8 bytes of all names. A lookup compares hashes first and verifies a match against the
+ * bytes of the name, so colliding hashes are harmless. Names can be looked up straight from a {@link ByteBuffer},
+ * without decoding them into a {@link String}.
+ *
+ * A slot takes 20 bytes and the table is kept between a quarter and a half full, so a name takes its UTF-8 bytes
+ * plus 40 to 80 bytes of slots, instead of the hundred bytes or so of a string, a boxed integer and a map entry.
+ * Not thread safe.
+ *
+ * @author karanikasg@gmail.com
+ */
+class AgeTable {
+
+    // the empty slot marker, no name hashes to it
+    private static final long EMPTY = 0;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] hashes;
+    private int[] ages;
+    private int[] offsets;
+    private int[] lengths;
+    private byte[] names = new byte[INITIAL_CAPACITY * 16];
+    private int namesSize;
+    private int size;
+    private int mask;
+
+    AgeTable() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Sets the age of a name, replacing the previous one if the name is already present
+     */
+    void put(String name, int age) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        put(ByteBuffer.wrap(bytes), 0, bytes.length, age);
+    }
+
+    /**
+     * Same as {@link #put(String, int)} for a name held by a buffer
+     *
+     * @param buffer the buffer holding the UTF-8 bytes of the name
+     * @param start  the inclusive absolute start position of the name
+     * @param end    the exclusive absolute end position of the name
+     * @param age    the age
+     */
+    void put(ByteBuffer buffer, int start, int end, int age) {
+        long hash = hash(buffer, start, end);
+        int slot = find(hash, buffer, start, end);
+        if (hashes[slot] != EMPTY) {
+            ages[slot] = age;
+            return;
+        }
+        hashes[slot] = hash;
+        ages[slot] = age;
+        offsets[slot] = append(buffer, start, end);
+        lengths[slot] = end - start;
+        if (++size > (mask + 1) / 2) {
+            rehash();
+        }
+    }
+
+    /**
+     * Copies all ages of another table into this one, replacing the ones of names present in both
+     */
+    void putAll(AgeTable other) {
+        for (int slot = 0; slot < other.hashes.length; slot++) {
+            if (other.hashes[slot] != EMPTY) {
+                int offset = other.offsets[slot];
+                put(ByteBuffer.wrap(other.names), offset, offset + other.lengths[slot], other.ages[slot]);
+            }
+        }
+    }
+
+    /**
+     * @return the age of the name or {@code missing} if there is none
+     */
+    int get(String name, int missing) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return get(ByteBuffer.wrap(bytes), 0, bytes.length, missing);
+    }
+
+    /**
+     * Same as {@link #get(String, int)} for a name held by a buffer
+     *
+     * @param buffer  the buffer holding the UTF-8 bytes of the name
+     * @param start   the inclusive absolute start position of the name
+     * @param end     the exclusive absolute end position of the name
+     * @param missing the value to return if the name has no age
+     * @return the age of the name or {@code missing} if there is none
+     */
+    int get(ByteBuffer buffer, int start, int end, int missing) {
+        int slot = find(hash(buffer, start, end), buffer, start, end);
+        return hashes[slot] == EMPTY ? missing : ages[slot];
+    }
+
+    /**
+     * @return the slot of the name, or the empty slot it belongs to if it's not present
+     */
+    private int find(long hash, ByteBuffer buffer, int start, int end) {
+        int slot = (int) hash & mask;
+        while (hashes[slot] != EMPTY && (hashes[slot] != hash || !sameName(slot, buffer, start, end))) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean sameName(int slot, ByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        if (lengths[slot] != length) {
+            return false;
+        }
+        int offset = offsets[slot];
+        for (int i = 0; i < length; i++) {
+            if (names[offset + i] != buffer.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int append(ByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        if (names.length - namesSize < length) {
+            long grown = Math.max((long) names.length * 2, (long) namesSize + length);
+            if (grown > Integer.MAX_VALUE - 8) {
+                grown = Integer.MAX_VALUE - 8;
+                if (grown - namesSize < length) {
+                    throw new IllegalStateException("The names don't fit in " + grown + " bytes");
+                }
+            }
+            names = Arrays.copyOf(names, (int) grown);
+        }
+        int offset = namesSize;
+        for (int i = 0; i < length; i++) {
+            names[offset + i] = buffer.get(start + i);
+        }
+        namesSize += length;
+        return offset;
+    }
+
+    private void allocate(int capacity) {
+        hashes = new long[capacity];
+        ages = new int[capacity];
+        offsets = new int[capacity];
+        lengths = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private void rehash() {
+        long[] oldHashes = hashes;
+        int[] oldAges = ages;
+        int[] oldOffsets = offsets;
+        int[] oldLengths = lengths;
+        allocate(oldHashes.length * 2);
+        for (int i = 0; i < oldHashes.length; i++) {
+            if (oldHashes[i] != EMPTY) {
+                // names are unique already, only an empty slot has to be found
+                int slot = (int) oldHashes[i] & mask;
+                while (hashes[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                hashes[slot] = oldHashes[i];
+                ages[slot] = oldAges[i];
+                offsets[slot] = oldOffsets[i];
+                lengths[slot] = oldLengths[i];
+            }
+        }
+    }
+
+    /**
+     * FNV-1a over the bytes, finished with the MurmurHash3 mixer so that the low bits used for the slot depend
+     * on every byte
+     */
+    static long hash(ByteBuffer buffer, int start, int end) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            hash ^= buffer.get(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == EMPTY ? 1 : hash;
+    }
+}
@@ -0,0 +1,38 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.Util;
+
+/**
+ * Enumerates the ways the statistics of the reports can be aggregated.
+ *
+ * @author karanikasg@gmail.com
+ */
+public enum AggregationMode {
+
+    /**
+     * Load all employees into an {@link EmployeeStore} and calculate exact statistics
+     */
+    EXACT,
+
+    /**
+     * Stream the employees into a {@link SketchAggregation} without keeping them, medians and percentiles are
+     * approximate
+     */
+    SKETCH,
+
+    /**
+     * Stream the employees into a {@link SpillingAggregation}, which calculates exact statistics within a memory
+     * budget by spilling sorted runs to disk
+     */
+    EXTERNAL;
+
+    /**
+     * Looks up an aggregation mode by its name as {@link Util#forName(Class, String, Enum, String)} does.
+     *
+     * @param name the name of the aggregation mode, may be null
+     * @return the matching aggregation mode or {@link #EXACT} if no name was provided
+     */
+    public static AggregationMode forName(String name) {
+        return Util.forName(AggregationMode.class, name, EXACT, "aggregation");
+    }
+}
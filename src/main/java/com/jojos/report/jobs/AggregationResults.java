@@ -0,0 +1,31 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.data.AgeBuckets;
+import com.jojos.report.data.Department;
+
+import java.util.List;
+
+/**
+ * The statistics of the groups of the aggregations of a {@link ReportPlan}, everything a report is written from.
+ * Implementations are thread safe.
+ *
+ * @author karanikasg@gmail.com
+ */
+public interface AggregationResults {
+
+    /**
+     * @return the departments, in the order of the keys of {@link Dimension#DEPARTMENT}
+     */
+    List<Department> getDepartments();
+
+    /**
+     * @return the age ranges, the groups of {@link Dimension#AGE_RANGE}
+     */
+    AgeBuckets getAgeBuckets();
+
+    /**
+     * @param aggregation one of the aggregations of the plan
+     * @return the statistics of each group, indexed by the key of the group
+     */
+    Statistics[] statistics(ReportPlan.Aggregation aggregation);
+}
@@ -0,0 +1,438 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.ApplicationException;
+import com.jojos.report.data.AgeRange;
+import com.jojos.report.data.Department;
+import com.jojos.report.data.Employee;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Logger;
+
+/**
+ * Column oriented {@link EmployeeStore}. Every attribute of the employees is kept in its own primitive array
+ * and the names as their UTF-8 bytes in a single byte array, costing 29 bytes plus the bytes of the name per employee
+ * instead of an {@link Employee} object and its name string held by two hash sets.
+ *
+ * @implNote The rows are ordered by department, so the employees of a department occupy a contiguous range of
+ * every column, delimited by {@code departmentOffsets}. The employees of an {@link AgeRange} are listed in
+ * {@code ageRangeRows} in a similar fashion, delimited by {@code ageRangeOffsets}. The name of a row is found
+ * through its {@code nameCode}, delimited by {@code nameOffsets}, and decoded whenever it is visited, names being
+ * close to unique there is nothing to share between rows.
+ * An instance is immutable and is created through a {@link Builder}, or restored from a {@link Snapshot}.
+ *
+ * @author karanikasg@gmail.com
+ */
+public class ColumnarStore implements EmployeeStore {
+
+    private final List<Department> departments;
+    private final double[] income;
+    private final int[] age;
+    private final int[] departmentIndex;
+    private final byte[] genre;
+    private final int[] nameCode;
+    // the UTF-8 bytes of the names, delimited by nameOffsets
+    private final byte[] nameBytes;
+    private final int[] nameOffsets;
+    private final int[] departmentOffsets;
+    private final int[] ageRangeOffsets;
+    private final int[] ageRangeRows;
+
+    private ColumnarStore(List<Department> departments, double[] income, int[] age, int[] departmentIndex,
+                          byte[] genre, int[] nameCode, byte[] nameBytes, int[] nameOffsets,
+                          int[] departmentOffsets, int[] ageRangeOffsets, int[] ageRangeRows) {
+        this.departments = Collections.unmodifiableList(departments);
+        this.income = income;
+        this.age = age;
+        this.departmentIndex = departmentIndex;
+        this.genre = genre;
+        this.nameCode = nameCode;
+        this.nameBytes = nameBytes;
+        this.nameOffsets = nameOffsets;
+        this.departmentOffsets = departmentOffsets;
+        this.ageRangeOffsets = ageRangeOffsets;
+        this.ageRangeRows = ageRangeRows;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<Department> getDepartments() {
+        return departments;
+    }
+
+    @Override
+    public int departmentsSize() {
+        return departments.size();
+    }
+
+    @Override
+    public int employeesSize() {
+        return income.length;
+    }
+
+    @Override
+    public Collection<Double> getEmployeesIncomeForDepartment(Department department) {
+        int index = Collections.binarySearch(departments, department);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        int from = departmentOffsets[index];
+        int to = departmentOffsets[index + 1];
+        return new AbstractList<Double>() {
+            @Override
+            public Double get(int i) {
+                return income[from + i];
+            }
+
+            @Override
+            public int size() {
+                return to - from;
+            }
+        };
+    }
+
+    @Override
+    public Collection<Integer> getEmployeesAgeForDepartment(Department department) {
+        int index = Collections.binarySearch(departments, department);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        int from = departmentOffsets[index];
+        int to = departmentOffsets[index + 1];
+        return new AbstractList<Integer>() {
+            @Override
+            public Integer get(int i) {
+                return age[from + i];
+            }
+
+            @Override
+            public int size() {
+                return to - from;
+            }
+        };
+    }
+
+    @Override
+    public Collection<Double> getEmployeesIncomeForAgeRange(AgeRange ageRange) {
+        int from = ageRangeOffsets[ageRange.ordinal()];
+        int to = ageRangeOffsets[ageRange.ordinal() + 1];
+        return new AbstractList<Double>() {
+            @Override
+            public Double get(int i) {
+                return income[ageRangeRows[from + i]];
+            }
+
+            @Override
+            public int size() {
+                return to - from;
+            }
+        };
+    }
+
+    @Override
+    public void forEachEmployee(EmployeeVisitor visitor) {
+        boolean visitNames = visitor.visitsNames();
+        for (int row = 0; row < income.length; row++) {
+            visitor.visit(departmentIndex[row], visitNames ? name(nameCode[row]) : null, genre[row], income[row], age[row]);
+        }
+    }
+
+    private String name(int code) {
+        return new String(nameBytes, nameOffsets[code], nameOffsets[code + 1] - nameOffsets[code], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the columns in the layout {@link #read(List, ByteBuffer)} expects, every number big-endian
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(income.length);
+        out.writeInt(nameOffsets.length - 1);
+        out.writeInt(nameBytes.length);
+        out.writeInt(ageRangeRows.length);
+        for (double value : income) {
+            out.writeDouble(value);
+        }
+        writeInts(out, age);
+        writeInts(out, departmentIndex);
+        out.write(genre);
+        writeInts(out, nameCode);
+        writeInts(out, nameOffsets);
+        out.write(nameBytes);
+        writeInts(out, departmentOffsets);
+        writeInts(out, ageRangeOffsets);
+        writeInts(out, ageRangeRows);
+    }
+
+    /**
+     * Writes the employees of any store in the layout of {@link #write(DataOutputStream)}, column by column in one
+     * pass over the store per column, instead of building the columns in memory first. Only the offsets of the names
+     * and the rows of the age ranges are collected, every row gets a name of its own.
+     */
+    static void write(EmployeeStore store, DataOutputStream out) throws IOException {
+        int size = store.employeesSize();
+        int[] departmentOffsets = new int[store.departmentsSize() + 1];
+        int[] ageRangeOffsets = new int[AgeRange.values().length + 1];
+        int[] nameOffsets = new int[size + 1];
+        int[] row = new int[1];
+        forEachRow(store, true, (departmentIndex, name, genre, income, age) -> {
+            departmentOffsets[departmentIndex + 1]++;
+            ageRangeOffsets[AgeRange.forAge(age).ordinal() + 1]++;
+            long offset = (long) nameOffsets[row[0]] + name.getBytes(StandardCharsets.UTF_8).length;
+            if (offset > Integer.MAX_VALUE) {
+                throw new IOException("The names take too many bytes for a snapshot");
+            }
+            nameOffsets[++row[0]] = (int) offset;
+        });
+        for (int i = 1; i < departmentOffsets.length; i++) {
+            departmentOffsets[i] += departmentOffsets[i - 1];
+        }
+        for (int i = 1; i < ageRangeOffsets.length; i++) {
+            ageRangeOffsets[i] += ageRangeOffsets[i - 1];
+        }
+        int[] next = Arrays.copyOf(ageRangeOffsets, ageRangeOffsets.length - 1);
+        int[] ageRangeRows = new int[size];
+        row[0] = 0;
+        forEachRow(store, false, (departmentIndex, name, genre, income, age) ->
+                ageRangeRows[next[AgeRange.forAge(age).ordinal()]++] = row[0]++);
+
+        out.writeInt(size);
+        out.writeInt(size);
+        out.writeInt(nameOffsets[size]);
+        out.writeInt(size);
+        forEachRow(store, false, (departmentIndex, name, genre, income, age) -> out.writeDouble(income));
+        forEachRow(store, false, (departmentIndex, name, genre, income, age) -> out.writeInt(age));
+        forEachRow(store, false, (departmentIndex, name, genre, income, age) -> out.writeInt(departmentIndex));
+        forEachRow(store, false, (departmentIndex, name, genre, income, age) -> out.writeByte(genre));
+        for (int code = 0; code < size; code++) {
+            out.writeInt(code);
+        }
+        writeInts(out, nameOffsets);
+        forEachRow(store, true, (departmentIndex, name, genre, income, age) -> out.write(name.getBytes(StandardCharsets.UTF_8)));
+        writeInts(out, departmentOffsets);
+        writeInts(out, ageRangeOffsets);
+        writeInts(out, ageRangeRows);
+    }
+
+    /**
+     * An {@link EmployeeVisitor} that may fail to write
+     */
+    private interface RowWriter {
+        void write(int departmentIndex, String name, byte genre, double income, int age) throws IOException;
+    }
+
+    private static void forEachRow(EmployeeStore store, boolean names, RowWriter writer) throws IOException {
+        try {
+            store.forEachEmployee(new EmployeeVisitor() {
+                @Override
+                public void visit(int departmentIndex, String name, byte genre, double income, int age) {
+                    try {
+                        writer.write(departmentIndex, name, genre, income, age);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+
+                @Override
+                public boolean visitsNames() {
+                    return names;
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * Restores a store written by {@link #write(DataOutputStream)}, with bulk copies of the columns out of the buffer.
+     * No object is created per employee, the names are decoded when they are visited.
+     *
+     * @param departments the departments of the store
+     * @param buffer      positioned at the columns, left positioned after them
+     * @return the store
+     */
+    static ColumnarStore read(List<Department> departments, ByteBuffer buffer) {
+        int size = buffer.getInt();
+        int namesSize = buffer.getInt();
+        int nameBytesSize = buffer.getInt();
+        int ageRangeRowsSize = buffer.getInt();
+
+        double[] income = new double[size];
+        buffer.asDoubleBuffer().get(income);
+        buffer.position(buffer.position() + size * Double.BYTES);
+        int[] age = readInts(buffer, size);
+        int[] departmentIndex = readInts(buffer, size);
+        byte[] genre = new byte[size];
+        buffer.get(genre);
+        int[] nameCode = readInts(buffer, size);
+        int[] nameOffsets = readInts(buffer, namesSize + 1);
+        byte[] nameBytes = new byte[nameBytesSize];
+        buffer.get(nameBytes);
+        int[] departmentOffsets = readInts(buffer, departments.size() + 1);
+        int[] ageRangeOffsets = readInts(buffer, AgeRange.values().length + 1);
+        int[] ageRangeRows = readInts(buffer, ageRangeRowsSize);
+
+        return new ColumnarStore(new ArrayList<>(departments), income, age, departmentIndex, genre, nameCode,
+                nameBytes, nameOffsets, departmentOffsets, ageRangeOffsets, ageRangeRows);
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int length) {
+        int[] values = new int[length];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + length * Integer.BYTES);
+        return values;
+    }
+
+    /**
+     * Collects departments and employees the same way {@link Loader} does, and lays them out in columns once
+     * {@link #build()} is called. Not thread safe.
+     */
+    public static class Builder {
+
+        private final Logger log = Logger.getLogger(getClass().getName());
+
+        private final List<Department> departments = new ArrayList<>();
+        private double[] income = new double[1024];
+        private int[] age = new int[1024];
+        private int[] departmentIndex = new int[1024];
+        private byte[] genre = new byte[1024];
+        // the name of every row in load order, the code of a row being its load position
+        private byte[] nameBytes = new byte[1024 * 16];
+        private int[] nameOffsets = new int[1024 + 1];
+        private int size;
+
+        private Builder() {
+        }
+
+        /**
+         * @see Loader#load(Department)
+         */
+        public void load(Department department) {
+            if (Objects.isNull(department)) {
+                throw new NullPointerException("Null values not allowed for departments");
+            }
+            int pos = Collections.binarySearch(departments, department);
+            if (pos < 0) {
+                departments.add(-pos - 1, department);
+            }
+        }
+
+        /**
+         * @see Loader#load(Employee)
+         */
+        public void load(Employee employee) {
+            if (Objects.isNull(employee)) {
+                throw new NullPointerException("Null values not allowed for employees");
+            }
+            int departmentId = employee.getDepartmentId();
+            if (departmentId < 1 || departmentId > departments.size()) {
+                log.severe(String.format("Skipping employee %s. Invalid department id: %d. Departments size is %d", employee.getName(), departmentId, departments.size()));
+                return;
+            }
+            if (size == income.length) {
+                int capacity = size * 2;
+                income = Arrays.copyOf(income, capacity);
+                age = Arrays.copyOf(age, capacity);
+                departmentIndex = Arrays.copyOf(departmentIndex, capacity);
+                genre = Arrays.copyOf(genre, capacity);
+                nameOffsets = Arrays.copyOf(nameOffsets, capacity + 1);
+            }
+            income[size] = employee.getIncome();
+            age[size] = employee.getAge();
+            departmentIndex[size] = departmentId - 1;
+            genre[size] = employee.getGenre().code();
+            appendName(employee.getName());
+            size++;
+        }
+
+        public int departmentsSize() {
+            return departments.size();
+        }
+
+        public int employeesSize() {
+            return size;
+        }
+
+        /**
+         * Orders the collected employees by department and indexes them by age range.
+         * @return the store holding everything loaded so far
+         */
+        public ColumnarStore build() {
+            // counting sort by department, stable so that the load order is kept within a department
+            int[] departmentOffsets = new int[departments.size() + 1];
+            for (int row = 0; row < size; row++) {
+                departmentOffsets[departmentIndex[row] + 1]++;
+            }
+            for (int i = 0; i < departments.size(); i++) {
+                departmentOffsets[i + 1] += departmentOffsets[i];
+            }
+            int[] next = Arrays.copyOf(departmentOffsets, departments.size());
+            double[] sortedIncome = new double[size];
+            int[] sortedAge = new int[size];
+            int[] sortedDepartmentIndex = new int[size];
+            byte[] sortedGenre = new byte[size];
+            int[] sortedNameCode = new int[size];
+            for (int row = 0; row < size; row++) {
+                int target = next[departmentIndex[row]]++;
+                sortedIncome[target] = income[row];
+                sortedAge[target] = age[row];
+                sortedDepartmentIndex[target] = departmentIndex[row];
+                sortedGenre[target] = genre[row];
+                sortedNameCode[target] = row;
+            }
+
+            // the same for the age ranges, only the row numbers are kept for those
+            AgeRange[] ageRanges = AgeRange.values();
+            int[] ageRangeOfRow = new int[size];
+            int[] ageRangeOffsets = new int[ageRanges.length + 1];
+            for (int row = 0; row < size; row++) {
+                ageRangeOfRow[row] = AgeRange.forAge(sortedAge[row]).ordinal();
+                ageRangeOffsets[ageRangeOfRow[row] + 1]++;
+            }
+            for (int i = 0; i < ageRanges.length; i++) {
+                ageRangeOffsets[i + 1] += ageRangeOffsets[i];
+            }
+            next = Arrays.copyOf(ageRangeOffsets, ageRanges.length);
+            int[] ageRangeRows = new int[size];
+            for (int row = 0; row < size; row++) {
+                ageRangeRows[next[ageRangeOfRow[row]]++] = row;
+            }
+
+            return new ColumnarStore(new ArrayList<>(departments), sortedIncome, sortedAge, sortedDepartmentIndex,
+                    sortedGenre, sortedNameCode, Arrays.copyOf(nameBytes, nameOffsets[size]),
+                    Arrays.copyOf(nameOffsets, size + 1), departmentOffsets, ageRangeOffsets, ageRangeRows);
+        }
+
+        private void appendName(String name) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            int offset = nameOffsets[size];
+            if (offset + bytes.length > nameBytes.length || offset + bytes.length < 0) {
+                long capacity = Math.max(2L * nameBytes.length, (long) offset + bytes.length);
+                if (capacity > Integer.MAX_VALUE - 8) {
+                    throw new ApplicationException("The names of the employees take too many bytes for a columnar store");
+                }
+                nameBytes = Arrays.copyOf(nameBytes, (int) capacity);
+            }
+            System.arraycopy(bytes, 0, nameBytes, offset, bytes.length);
+            nameOffsets[size + 1] = offset + bytes.length;
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.ApplicationException;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import static com.jojos.report.Util.COMPRESSED_EXTENSION;
+
+/**
+ * Reads input files that are gzip compressed, recognized by their .gz extension, without decompressing them to the
+ * disk first.
+ *
+ * A file is decompressed on a thread of its own, ahead of the parser, into chunks handed over through a bounded
+ * queue: the parser never waits for the disk and the decompression never runs further ahead than the queue allows.
+ * Files made of BGZF blocks, the blocked gzip of bgzip and htslib, have the compressed size of every block in its
+ * header. Their blocks are inflated on the {@link ForkJoinPool} in parallel instead, the thread only reads them,
+ * and the parser gets the blocks in the order of the file. Any other gzip file, several concatenated members
+ * included, is inflated on the thread, since where a member ends is only known after inflating it.
+ *
+ * @author karanikasg@gmail.com
+ */
+final class CompressedInput {
+
+    static final int CHUNK_SIZE = 1 << 18;
+    private static final int MIN_QUEUED_CHUNKS = 16;
+    private static final int LINE_BUFFER_SIZE = 1 << 20;
+    // a fixed gzip header and the longest extra field
+    private static final int MAX_HEADER_SIZE = 12 + 0xffff;
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FEXTRA = 4;
+    private static final int BGZF_FIXED_HEADER = 12;
+    private static final int GZIP_TRAILER = 8;
+    // a BGZF block holds at most 64KB of input
+    private static final int MAX_BLOCK_INPUT = 1 << 16;
+    // the end of the file, compared by identity, an empty block is no end
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private CompressedInput() {
+    }
+
+    /**
+     * @param file an input file
+     * @return whether the file is gzip compressed
+     */
+    static boolean isCompressed(File file) {
+        return file.getName().endsWith(COMPRESSED_EXTENSION);
+    }
+
+    /**
+     * @param file an input file
+     * @return the name of the file when decompressed, the name itself if it's not compressed
+     */
+    static String decompressedName(File file) {
+        String name = file.getName();
+        return isCompressed(file) ? name.substring(0, name.length() - COMPRESSED_EXTENSION.length()) : name;
+    }
+
+    /**
+     * Opens an input file, decompressing it ahead of the reader if it is compressed
+     *
+     * @param file the file to read
+     * @return the decompressed content of the file
+     * @throws IOException if the file can't be opened
+     */
+    static InputStream open(File file) throws IOException {
+        if (!isCompressed(file)) {
+            return Files.newInputStream(file.toPath());
+        }
+        Pipeline pipeline = new Pipeline(file, ForkJoinPool.commonPool());
+        pipeline.start();
+        return pipeline;
+    }
+
+    /**
+     * @param pool the pool inflating the blocks of BGZF files
+     * @return how many decompressed chunks are queued at most ahead of the reader
+     */
+    static int queuedChunks(ForkJoinPool pool) {
+        return Math.max(MIN_QUEUED_CHUNKS, pool.getParallelism() * 2);
+    }
+
+    /**
+     * Reports every decompressed line of a compressed file to the handler, the same lines as
+     * {@link MappedLineReader} reports of the decompressed file.
+     *
+     * @param file    the file to read
+     * @param handler the receiver of the lines
+     * @throws IOException if the file can't be read or decompressed
+     */
+    static void forEachLine(File file, MappedLineReader.LineHandler handler) throws IOException {
+        try (InputStream in = open(file)) {
+            byte[] bytes = new byte[LINE_BUFFER_SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            // bytes holds the start of a line that continues in the bytes not read yet
+            int filled = 0;
+            int read;
+            while ((read = in.read(bytes, filled, bytes.length - filled)) >= 0) {
+                int lineStart = 0;
+                for (int i = filled; i < filled + read; i++) {
+                    if (bytes[i] == '\n') {
+                        handler.onLine(buffer, lineStart, MappedLineReader.withoutCarriageReturn(buffer, lineStart, i));
+                        lineStart = i + 1;
+                    }
+                }
+                filled += read;
+                if (lineStart > 0) {
+                    System.arraycopy(bytes, lineStart, bytes, 0, filled - lineStart);
+                    filled -= lineStart;
+                } else if (filled == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                    buffer = ByteBuffer.wrap(bytes);
+                }
+            }
+            if (filled > 0) {
+                handler.onLine(buffer, 0, MappedLineReader.withoutCarriageReturn(buffer, 0, filled));
+            }
+        }
+    }
+
+    /**
+     * The decompressed content of a file, produced by a thread of its own into a bounded queue of chunks
+     */
+    private static final class Pipeline extends InputStream {
+
+        private final Logger log = Logger.getLogger(getClass().getName());
+
+        private final File file;
+        private final ForkJoinPool pool;
+        private final BlockingQueue<Future<ByteBuffer>> chunks;
+        private final Thread producer;
+        private ByteBuffer current = ByteBuffer.allocate(0);
+
+        private Pipeline(File file, ForkJoinPool pool) {
+            this.file = file;
+            this.pool = pool;
+            this.chunks = new ArrayBlockingQueue<>(queuedChunks(pool));
+            this.producer = new Thread(this::produce, "decompress-" + file.getName());
+            producer.setDaemon(true);
+        }
+
+        private void start() {
+            producer.start();
+        }
+
+        @Override
+        public int read() throws IOException {
+            return next() ? current.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!next()) {
+                return -1;
+            }
+            int read = Math.min(length, current.remaining());
+            current.get(bytes, offset, read);
+            return read;
+        }
+
+        @Override
+        public void close() {
+            producer.interrupt();
+            chunks.clear();
+        }
+
+        /**
+         * @return whether there are bytes left, moving to the next chunk when the current one is consumed
+         */
+        private boolean next() throws IOException {
+            while (!current.hasRemaining()) {
+                if (current == END) {
+                    return false;
+                }
+                try {
+                    current = chunks.take().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while decompressing " + file.getName());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException(String.format("Can't decompress %s. Exception %s", file.getName(), e.getCause()));
+                }
+            }
+            return true;
+        }
+
+        private void produce() {
+            try (BufferedInputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()), CHUNK_SIZE)) {
+                in.mark(MAX_HEADER_SIZE);
+                boolean blocked = isBgzf(new DataInputStream(in));
+                in.reset();
+                if (blocked) {
+                    inflateBlocks(new DataInputStream(in));
+                } else {
+                    inflateStream(new GZIPInputStream(in, CHUNK_SIZE));
+                }
+                chunks.put(CompletableFuture.completedFuture(END));
+            } catch (InterruptedException | InterruptedIOException | ClosedByInterruptException e) {
+                // closed by the reader
+            } catch (IOException | RuntimeException e) {
+                CompletableFuture<ByteBuffer> failure = new CompletableFuture<>();
+                failure.completeExceptionally(e);
+                try {
+                    // waits for the reader like any chunk, the reader waits for the failure otherwise
+                    chunks.put(failure);
+                } catch (InterruptedException interrupted) {
+                    log.fine(String.format("Can't decompress %s, closed meanwhile. Exception %s", file.getName(), e));
+                }
+            }
+        }
+
+        private void inflateStream(InputStream in) throws IOException, InterruptedException {
+            while (true) {
+                byte[] chunk = new byte[CHUNK_SIZE];
+                int filled = 0;
+                int read;
+                while (filled < chunk.length && (read = in.read(chunk, filled, chunk.length - filled)) >= 0) {
+                    filled += read;
+                }
+                if (filled > 0) {
+                    chunks.put(CompletableFuture.completedFuture(ByteBuffer.wrap(chunk, 0, filled)));
+                }
+                if (filled < chunk.length) {
+                    return;
+                }
+            }
+        }
+
+        private void inflateBlocks(DataInputStream in) throws IOException, InterruptedException {
+            byte[] header = new byte[BGZF_FIXED_HEADER];
+            while (true) {
+                int read = in.read(header, 0, 1);
+                if (read < 0) {
+                    return;
+                }
+                in.readFully(header, 1, header.length - 1);
+                int extraLength = unsignedShort(header, 10);
+                byte[] extra = new byte[extraLength];
+                in.readFully(extra);
+                int blockSize = blockSize(header, extra);
+                if (blockSize < 0) {
+                    throw new IOException(String.format("%s is not made of BGZF blocks only", file.getName()));
+                }
+                byte[] block = new byte[blockSize];
+                int dataStart = BGZF_FIXED_HEADER + extraLength;
+                in.readFully(block, dataStart, blockSize - dataStart);
+                chunks.put(CompletableFuture.supplyAsync(() -> inflateBlock(block, dataStart), pool));
+            }
+        }
+
+        private ByteBuffer inflateBlock(byte[] block, int dataStart) {
+            int trailer = block.length - GZIP_TRAILER;
+            // untrusted, checked before anything is allocated for it
+            long claimed = unsignedInt(block, trailer + 4);
+            if (claimed > MAX_BLOCK_INPUT) {
+                throw new ApplicationException(String.format("Corrupt BGZF block in %s, it claims %d bytes", file.getName(), claimed));
+            }
+            int size = (int) claimed;
+            byte[] inflated = new byte[size];
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(block, dataStart, trailer - dataStart);
+                int filled = 0;
+                while (filled < size && !inflater.finished()) {
+                    int inflatedBytes = inflater.inflate(inflated, filled, size - filled);
+                    if (inflatedBytes == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    filled += inflatedBytes;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(inflated, 0, filled);
+                if (filled != size || crc.getValue() != unsignedInt(block, trailer)) {
+                    throw new ApplicationException(String.format("Corrupt BGZF block in %s", file.getName()));
+                }
+                return ByteBuffer.wrap(inflated);
+            } catch (DataFormatException e) {
+                throw new ApplicationException(String.format("Corrupt BGZF block in %s. Exception %s", file.getName(), e.getMessage()));
+            } finally {
+                inflater.end();
+            }
+        }
+
+        private static boolean isBgzf(DataInputStream in) throws IOException {
+            byte[] header = new byte[BGZF_FIXED_HEADER];
+            try {
+                in.readFully(header);
+                if (unsignedShort(header, 0) != GZIP_MAGIC || (header[3] & FEXTRA) == 0) {
+                    return false;
+                }
+                byte[] extra = new byte[unsignedShort(header, 10)];
+                in.readFully(extra);
+                return blockSize(header, extra) >= 0;
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+
+        /**
+         * @return the size of the BGZF block of the header, header and trailer included, -1 if it is no BGZF block
+         */
+        private static int blockSize(byte[] header, byte[] extra) {
+            if (unsignedShort(header, 0) != GZIP_MAGIC || (header[3] & FEXTRA) == 0) {
+                return -1;
+            }
+            int i = 0;
+            while (i + 4 <= extra.length) {
+                int fieldLength = unsignedShort(extra, i + 2);
+                if (extra[i] == 'B' && extra[i + 1] == 'C' && fieldLength == 2 && i + 6 <= extra.length) {
+                    int blockSize = unsignedShort(extra, i + 4) + 1;
+                    return blockSize >= BGZF_FIXED_HEADER + extra.length + GZIP_TRAILER ? blockSize : -1;
+                }
+                i += 4 + fieldLength;
+            }
+            return -1;
+        }
+
+        private static int unsignedShort(byte[] bytes, int offset) {
+            return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+        }
+
+        private static long unsignedInt(byte[] bytes, int offset) {
+            return unsignedShort(bytes, offset) | (long) unsignedShort(bytes, offset + 2) << 16;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.ApplicationException;
+import com.jojos.report.data.AgeRange;
+import com.jojos.report.data.Department;
+import com.jojos.report.data.Employee;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Loads employees from several threads at once into a {@link Loader}, which itself can only be loaded from one.
+ *
+ * The departments are loaded first, from a single thread. Every loading thread then gets an {@link Appender} of
+ * its own, which collects the employees per department and per {@link AgeRange} in plain lists without any
+ * synchronization. {@link #freeze()} merges the appenders into the loader once all threads are done, every
+ * department and age range in parallel. The appenders are merged in the order they were created in, so a loader
+ * filled by appenders created in the order of the input is the same as one filled sequentially.
+ *
+ * @author karanikasg@gmail.com
+ */
+public class ConcurrentLoader {
+
+    private static final AgeRange[] AGE_RANGES = AgeRange.values();
+
+    private final Loader loader = new Loader();
+    // guarded by itself, only touched by the threads creating appenders
+    private final List<Appender> appenders = new ArrayList<>();
+    private boolean frozen;
+
+    /**
+     * Same as {@link Loader#load(Department)}. Not thread safe, all departments have to be loaded before the
+     * first appender is created.
+     *
+     * @param department the department to store in memory
+     */
+    public void load(Department department) {
+        synchronized (appenders) {
+            if (!appenders.isEmpty()) {
+                throw new ApplicationException("Departments can't be loaded along with employees");
+            }
+        }
+        loader.load(department);
+    }
+
+    /**
+     * @return a new appender, to be used by a single thread
+     */
+    public Appender appender() {
+        synchronized (appenders) {
+            if (frozen) {
+                throw new ApplicationException("Employees can't be loaded once frozen");
+            }
+            Appender appender = new Appender(loader.getDepartments().size());
+            appenders.add(appender);
+            return appender;
+        }
+    }
+
+    /**
+     * Merges the employees of all appenders into the loader. The appenders must not be used any more.
+     *
+     * @return the loader holding all departments and employees
+     */
+    public Loader freeze() {
+        List<Appender> merged;
+        synchronized (appenders) {
+            frozen = true;
+            merged = new ArrayList<>(appenders);
+        }
+        List<Department> departments = loader.getDepartments();
+        List<Set<Employee>> byDepartment = merge(departments.size(), merged, appender -> appender.byDepartment);
+        List<Set<Employee>> byAgeRange = merge(AGE_RANGES.length, merged, appender -> appender.byAgeRange);
+        for (int i = 0; i < departments.size(); i++) {
+            loader.putEmployees(departments.get(i), byDepartment.get(i));
+        }
+        for (int i = 0; i < AGE_RANGES.length; i++) {
+            loader.putEmployees(AGE_RANGES[i], byAgeRange.get(i));
+        }
+        return loader;
+    }
+
+    /**
+     * Merges the lists of every group of all appenders into one set per group, the groups in parallel
+     */
+    private static List<Set<Employee>> merge(int groups, List<Appender> appenders, Function<Appender, List<Employee>[]> lists) {
+        // an ordered stream, the sets are collected in the order of the groups
+        return IntStream.range(0, groups).parallel().mapToObj(group -> {
+            int size = 0;
+            for (Appender appender : appenders) {
+                size += lists.apply(appender)[group].size();
+            }
+            Set<Employee> set = new HashSet<>(Math.max(16, (int) (size / .75f) + 1));
+            for (Appender appender : appenders) {
+                set.addAll(lists.apply(appender)[group]);
+            }
+            return set;
+        }).collect(Collectors.toList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Employee>[] newLists(int length) {
+        List<Employee>[] lists = (List<Employee>[]) new List<?>[length];
+        for (int i = 0; i < length; i++) {
+            lists[i] = new ArrayList<>();
+        }
+        return lists;
+    }
+
+    /**
+     * Collects the employees loaded by one thread. Not thread safe.
+     */
+    public static final class Appender implements Consumer<Employee> {
+
+        private final Logger log = Logger.getLogger(getClass().getName());
+
+        private final List<Employee>[] byDepartment;
+        private final List<Employee>[] byAgeRange;
+
+        private Appender(int departments) {
+            this.byDepartment = newLists(departments);
+            this.byAgeRange = newLists(AGE_RANGES.length);
+        }
+
+        /**
+         * Same as {@link Loader#load(Employee)}
+         *
+         * @param employee the employee to store in memory
+         */
+        public void load(Employee employee) {
+            if (Objects.isNull(employee)) {
+                throw new NullPointerException("Null values not allowed for employees");
+            }
+            int departmentId = employee.getDepartmentId();
+            if (departmentId < 1 || departmentId > byDepartment.length) {
+                log.severe(String.format("Skipping employee %s. Invalid department id: %d. Departments size is %d", employee.getName(), departmentId, byDepartment.length));
+                return;
+            }
+            byDepartment[departmentId - 1].add(employee);
+            byAgeRange[AgeRange.forAge(employee.getAge()).ordinal()].add(employee);
+        }
+
+        @Override
+        public void accept(Employee employee) {
+            load(employee);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.data.Genre;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Byte level tokenizer of a single comma separated line. An instance is meant to be reused for every line of a file,
+ * so that no objects are created unless a field is explicitly requested as a {@link String}.
+ *
+ * The fields are identical to the ones produced by {@code line.split("\\s*,\\s*")}: whitespace surrounding a comma
+ * is not part of a field and trailing empty fields are dropped.
+ * Text is decoded as UTF-8.
+ *
+ * @author karanikasg@gmail.com
+ */
+class CsvLine {
+
+    // 2^53, the largest mantissa a double holds exactly
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1d;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10d;
+        }
+    }
+
+    private ByteBuffer buffer;
+    private int lineStart;
+    private int lineEnd;
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private int fields;
+    private byte[] scratch = new byte[64];
+
+    /**
+     * Splits the line found between two absolute positions of the buffer.
+     *
+     * @param buffer the buffer holding the line
+     * @param start  the inclusive start position
+     * @param end    the exclusive end position
+     * @return the number of fields found
+     */
+    int split(ByteBuffer buffer, int start, int end) {
+        this.buffer = buffer;
+        this.lineStart = start;
+        this.lineEnd = end;
+        this.fields = 0;
+
+        int fieldStart = start;
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == ',') {
+                int fieldEnd = i;
+                while (fieldEnd > fieldStart && isWhitespace(buffer.get(fieldEnd - 1))) {
+                    fieldEnd--;
+                }
+                addField(fieldStart, fieldEnd);
+                fieldStart = i + 1;
+                while (fieldStart < end && isWhitespace(buffer.get(fieldStart))) {
+                    fieldStart++;
+                }
+                // the whitespace we skipped has to be searched for commas as well
+                i = fieldStart - 1;
+            }
+        }
+        addField(fieldStart, end);
+
+        while (fields > 0 && starts[fields - 1] == ends[fields - 1]) {
+            fields--;
+        }
+        return fields;
+    }
+
+    int fields() {
+        return fields;
+    }
+
+    boolean isEmpty() {
+        return lineStart == lineEnd;
+    }
+
+    /**
+     * @param field the index of the field
+     * @return the age of the name the field holds
+     */
+    int age(AgeJoin ages, int field) {
+        return ages.age(buffer, starts[field], ends[field]);
+    }
+
+    /**
+     * Sets the age of the name the field holds
+     *
+     * @param field the index of the field
+     */
+    void putAge(AgeTable ages, int field, int age) {
+        ages.put(buffer, starts[field], ends[field], age);
+    }
+
+    /**
+     * @param field the index of the field
+     * @return the field decoded as text
+     */
+    String string(int field) {
+        return decode(starts[field], ends[field]);
+    }
+
+    /**
+     * @return the whole line decoded as text
+     */
+    String line() {
+        return decode(lineStart, lineEnd);
+    }
+
+    /**
+     * Parses a field the same way {@link Integer#parseInt(String)} does.
+     *
+     * @param field the index of the field
+     * @return the value of the field
+     * @throws NumberFormatException if the field isn't an integer
+     */
+    int parseInt(int field) {
+        int start = starts[field];
+        int end = ends[field];
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        if (i == end) {
+            throw numberFormatException(field);
+        }
+        // accumulate negatively so that Integer.MIN_VALUE fits
+        long limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        long result = 0;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b < 0) {
+                // not ascii, let the JDK decide about unicode digits
+                return Integer.parseInt(string(field));
+            }
+            if (b < '0' || b > '9') {
+                throw numberFormatException(field);
+            }
+            result = result * 10 - (b - '0');
+            if (result < limit) {
+                throw numberFormatException(field);
+            }
+        }
+        return (int) (negative ? result : -result);
+    }
+
+    /**
+     * Parses a field the same way {@link Double#parseDouble(String)} does. Plain decimals that fit in the mantissa of
+     * a double are converted with a single, correctly rounded division, anything else is left to the JDK.
+     *
+     * @param field the index of the field
+     * @return the value of the field
+     * @throws NumberFormatException if the field isn't a number
+     */
+    double parseDouble(int field) {
+        int start = starts[field];
+        int end = ends[field];
+        // Double.parseDouble trims the input
+        while (start < end && (buffer.get(start) & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (buffer.get(end - 1) & 0xff) <= ' ') {
+            end--;
+        }
+
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = 0;
+        boolean point = false;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                if (++digits > 18) {
+                    return Double.parseDouble(string(field));
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (point) {
+                    decimals++;
+                }
+            } else if (b == '.' && !point) {
+                point = true;
+            } else {
+                return Double.parseDouble(string(field));
+            }
+        }
+        if (digits == 0 || mantissa > MAX_EXACT_MANTISSA || decimals >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(string(field));
+        }
+        double value = mantissa / POWERS_OF_TEN[decimals];
+        return negative ? -value : value;
+    }
+
+    /**
+     * @param field the index of the field
+     * @return the {@link Genre#code()} of the field
+     * @see Genre#forCaseInsensitiveAbbreviation(String)
+     */
+    byte genreCode(int field) {
+        return Genre.forCaseInsensitiveAbbreviation(buffer, starts[field], ends[field]).code();
+    }
+
+    private void addField(int start, int end) {
+        if (fields == starts.length) {
+            starts = Arrays.copyOf(starts, fields * 2);
+            ends = Arrays.copyOf(ends, fields * 2);
+        }
+        starts[fields] = start;
+        ends[fields] = end;
+        fields++;
+    }
+
+    private String decode(int start, int end) {
+        int length = end - start;
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            scratch[i] = buffer.get(start + i);
+        }
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private NumberFormatException numberFormatException(int field) {
+        return new NumberFormatException("For input string: \"" + string(field) + "\"");
+    }
+
+    // the characters matched by \s
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+}
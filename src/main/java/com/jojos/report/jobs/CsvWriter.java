@@ -0,0 +1,270 @@
+package com.jojos.report.jobs;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes the lines of a report to a file, a field at a time, without creating objects per field.
+ *
+ * Fields are encoded as UTF-8 straight into a direct buffer, which is written to a {@link FileChannel} whenever it
+ * fills up. Closed writers return their buffer to a pool of a buffer per core, which the next writers take theirs from,
+ * so there are no more idle buffers than cores whatever the threads writing. Text fields are escaped as RFC 4180 requires:
+ * a field holding a comma, a quote or a line break is quoted, its quotes doubled. Numbers are written with
+ * {@link Locale#ROOT}, with a point as the decimal separator whatever the locale of the host. Lines end with \n.
+ *
+ * Numbers of two decimals, the format of most reports, are written digit by digit. The outcome is the same as the
+ * one of {@code String.format(Locale.ROOT, "%.2f", value)}, which is still used for the rare values where the
+ * rounding is not obvious, and for any other format. Not thread safe.
+ *
+ * @author karanikasg@gmail.com
+ */
+public class CsvWriter implements Closeable {
+
+    /**
+     * The format written digit by digit
+     */
+    public static final String TWO_DECIMALS = "%.2f";
+
+    private static final int BUFFER_SIZE = 1 << 18;
+    // the buffers of the writers closed last, taken by the next ones opened, the ones beyond its capacity are dropped
+    private static final BlockingQueue<ByteBuffer> BUFFERS = new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+    // below it, a hundredth of the value has enough precision left to tell the rounding of the third decimal
+    private static final double FAST_LIMIT = 1e7;
+    private static final double TIE_MARGIN = 1e-6;
+    // the longest UTF-8 encoding of a char or a surrogate pair
+    private static final int MAX_CHAR_BYTES = 4;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private boolean lineStarted;
+    private boolean closed;
+
+    /**
+     * Creates the file or truncates it if it exists
+     *
+     * @param file the file to write
+     * @throws IOException if the file can't be opened
+     */
+    public CsvWriter(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer pooled = BUFFERS.poll();
+        this.buffer = pooled == null ? ByteBuffer.allocateDirect(BUFFER_SIZE) : pooled;
+        buffer.clear();
+    }
+
+    /**
+     * Writes a text field, escaped if needed
+     *
+     * @param value the text
+     * @return this writer
+     */
+    public CsvWriter field(String value) throws IOException {
+        separate();
+        if (!needsQuotes(value)) {
+            encode(value);
+            return this;
+        }
+        ensure(1);
+        buffer.put((byte) '"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                ensure(1);
+                buffer.put((byte) '"');
+            }
+            i = encode(value, i);
+        }
+        ensure(1);
+        buffer.put((byte) '"');
+        return this;
+    }
+
+    /**
+     * Writes several text fields, e.g. the labels of a group in every dimension
+     *
+     * @param values the texts
+     * @return this writer
+     */
+    public CsvWriter fields(String... values) throws IOException {
+        for (String value : values) {
+            field(value);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a number with two decimals, same as {@code String.format(Locale.ROOT, "%.2f", value)}
+     *
+     * @param value the number
+     * @return this writer
+     */
+    public CsvWriter field(double value) throws IOException {
+        separate();
+        double absolute = Math.abs(value);
+        if (!(absolute < FAST_LIMIT)) {
+            // NaN, infinite or too big
+            return raw(String.format(Locale.ROOT, TWO_DECIMALS, value));
+        }
+        double hundredths = absolute * 100;
+        long whole = (long) hundredths;
+        double fraction = hundredths - whole;
+        if (Math.abs(fraction - 0.5) < TIE_MARGIN) {
+            // too close to a tie to round it the way the formatter rounds the shortest decimal of the value
+            return raw(String.format(Locale.ROOT, TWO_DECIMALS, value));
+        }
+        if (fraction > 0.5) {
+            whole++;
+        }
+        ensure(24);
+        // the formatter keeps the sign of negative values rounded to zero, -0.0 included
+        if (Double.doubleToRawLongBits(value) < 0) {
+            buffer.put((byte) '-');
+        }
+        putDigits(whole / 100);
+        buffer.put((byte) '.');
+        int decimals = (int) (whole % 100);
+        buffer.put((byte) ('0' + decimals / 10));
+        buffer.put((byte) ('0' + decimals % 10));
+        return this;
+    }
+
+    /**
+     * Writes a number with a {@link java.util.Formatter} pattern, digit by digit if it is {@link #TWO_DECIMALS}
+     *
+     * @param value  the number
+     * @param format the pattern
+     * @return this writer
+     */
+    public CsvWriter field(double value, String format) throws IOException {
+        if (TWO_DECIMALS.equals(format)) {
+            return field(value);
+        }
+        return field(String.format(Locale.ROOT, format, value));
+    }
+
+    /**
+     * Ends the current line
+     *
+     * @return this writer
+     */
+    public CsvWriter endLine() throws IOException {
+        ensure(1);
+        buffer.put((byte) '\n');
+        lineStarted = false;
+        return this;
+    }
+
+    /**
+     * Writes what is buffered and forces it, along with the size of the file, to the disk
+     */
+    public void sync() throws IOException {
+        flush();
+        channel.force(true);
+    }
+
+    /**
+     * Writes what is buffered and closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+        } finally {
+            channel.close();
+            BUFFERS.offer(buffer);
+        }
+    }
+
+    private CsvWriter raw(String value) throws IOException {
+        encode(value);
+        return this;
+    }
+
+    private void separate() throws IOException {
+        if (lineStarted) {
+            ensure(1);
+            buffer.put((byte) ',');
+        }
+        lineStarted = true;
+    }
+
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void encode(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            i = encode(value, i);
+        }
+    }
+
+    /**
+     * Encodes the char at an index as UTF-8, together with the next one if they are a surrogate pair
+     *
+     * @return the index of the last char encoded
+     */
+    private int encode(String value, int index) throws IOException {
+        ensure(MAX_CHAR_BYTES);
+        char c = value.charAt(index);
+        if (c < 0x80) {
+            buffer.put((byte) c);
+        } else if (c < 0x800) {
+            buffer.put((byte) (0xc0 | c >> 6));
+            buffer.put((byte) (0x80 | c & 0x3f));
+        } else if (Character.isHighSurrogate(c) && index + 1 < value.length() && Character.isLowSurrogate(value.charAt(index + 1))) {
+            int codePoint = Character.toCodePoint(c, value.charAt(index + 1));
+            buffer.put((byte) (0xf0 | codePoint >> 18));
+            buffer.put((byte) (0x80 | codePoint >> 12 & 0x3f));
+            buffer.put((byte) (0x80 | codePoint >> 6 & 0x3f));
+            buffer.put((byte) (0x80 | codePoint & 0x3f));
+            return index + 1;
+        } else if (Character.isSurrogate(c)) {
+            // unpaired, replaced like String.getBytes() does
+            buffer.put((byte) '?');
+        } else {
+            buffer.put((byte) (0xe0 | c >> 12));
+            buffer.put((byte) (0x80 | c >> 6 & 0x3f));
+            buffer.put((byte) (0x80 | c & 0x3f));
+        }
+        return index;
+    }
+
+    private void putDigits(long value) {
+        if (value >= 10) {
+            putDigits(value / 10);
+        }
+        buffer.put((byte) ('0' + value % 10));
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,107 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.Util;
+import com.jojos.report.data.AgeBuckets;
+import com.jojos.report.data.Department;
+import com.jojos.report.data.Genre;
+
+import java.util.List;
+
+/**
+ * Enumerates what the employees can be grouped by in a report. Every group of a dimension is identified by
+ * an integer key from 0 (inclusive) to the cardinality of the dimension (exclusive). The groups of
+ * {@link #AGE_RANGE} are the ones of the {@link AgeBuckets} of the plan, the ones of {@link #GENRE} the
+ * {@link Genre}s in the order of their codes.
+ *
+ * @author karanikasg@gmail.com
+ */
+public enum Dimension {
+
+    DEPARTMENT {
+        @Override
+        public int cardinality(List<Department> departments, AgeBuckets ageBuckets) {
+            return departments.size();
+        }
+
+        @Override
+        public int key(AgeBuckets ageBuckets, int departmentIndex, byte genre, int age) {
+            return departmentIndex;
+        }
+
+        @Override
+        public String label(List<Department> departments, AgeBuckets ageBuckets, int key) {
+            return departments.get(key).getName();
+        }
+    },
+
+    AGE_RANGE {
+        @Override
+        public int cardinality(List<Department> departments, AgeBuckets ageBuckets) {
+            return ageBuckets.groups();
+        }
+
+        @Override
+        public int key(AgeBuckets ageBuckets, int departmentIndex, byte genre, int age) {
+            int bucket = ageBuckets.bucket(age);
+            // the overflow is a group only if the scheme is open ended
+            return bucket < ageBuckets.groups() ? bucket : NO_GROUP;
+        }
+
+        @Override
+        public String label(List<Department> departments, AgeBuckets ageBuckets, int key) {
+            return ageBuckets.label(key);
+        }
+    },
+
+    GENRE {
+        @Override
+        public int cardinality(List<Department> departments, AgeBuckets ageBuckets) {
+            return Genre.values().length;
+        }
+
+        @Override
+        public int key(AgeBuckets ageBuckets, int departmentIndex, byte genre, int age) {
+            return genre;
+        }
+
+        @Override
+        public String label(List<Department> departments, AgeBuckets ageBuckets, int key) {
+            return Genre.forCode((byte) key).name();
+        }
+    };
+
+    /**
+     * The key of an employee that doesn't belong to any group of the dimension
+     */
+    public static final int NO_GROUP = -1;
+
+    /**
+     * Looks up a dimension by its name as {@link Util#forName(Class, String, Enum, String)} does.
+     *
+     * @param name the name of the dimension, e.g. age-range
+     * @return the matching dimension
+     */
+    public static Dimension forName(String name) {
+        return Util.forName(Dimension.class, name, null, "dimension");
+    }
+
+    /**
+     * @param departments the loaded departments
+     * @param ageBuckets  the age ranges of the plan
+     * @return the number of groups
+     */
+    public abstract int cardinality(List<Department> departments, AgeBuckets ageBuckets);
+
+    /**
+     * @return the key of the group the employee with the provided attributes belongs to, or {@link #NO_GROUP}
+     */
+    public abstract int key(AgeBuckets ageBuckets, int departmentIndex, byte genre, int age);
+
+    /**
+     * @param departments the loaded departments
+     * @param ageBuckets  the age ranges of the plan
+     * @param key         the key of the group
+     * @return the text identifying the group in a report
+     */
+    public abstract String label(List<Department> departments, AgeBuckets ageBuckets, int key);
+}
@@ -0,0 +1,39 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.Util;
+
+/**
+ * Enumerates how far {@link OutputJob} makes sure the published reports survive a crash of the host. Reports are
+ * always written to temporary files and renamed atomically, so a crash never leaves a truncated report behind,
+ * whatever the durability. It only decides whether a published report may still turn out missing or empty after
+ * the host comes back.
+ *
+ * @author karanikasg@gmail.com
+ */
+public enum Durability {
+
+    /**
+     * Leave it to the operating system to write the reports to the disk
+     */
+    NONE,
+
+    /**
+     * Write all reports to the disk at once after all of them are generated, then publish them together
+     */
+    BATCH,
+
+    /**
+     * Write every report to the disk and publish it as soon as it is generated
+     */
+    FILE;
+
+    /**
+     * Looks up a durability by its name as {@link Util#forName(Class, String, Enum, String)} does.
+     *
+     * @param name the name of the durability, may be null
+     * @return the matching durability or {@link #NONE} if no name was provided
+     */
+    public static Durability forName(String name) {
+        return Util.forName(Durability.class, name, NONE, "durability");
+    }
+}
@@ -0,0 +1,77 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.data.AgeRange;
+import com.jojos.report.data.Department;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Read access to loaded departments and employees, as needed by the reports.
+ *
+ * Departments are always kept in alphabetical order, the position of a department in {@link #getDepartments()}
+ * is referred to as its department index.
+ *
+ * @author karanikasg@gmail.com
+ */
+public interface EmployeeStore {
+
+    /**
+     * Receives the attributes of one employee at a time, see {@link #forEachEmployee(EmployeeVisitor)}
+     */
+    interface EmployeeVisitor {
+        void visit(int departmentIndex, String name, byte genre, double income, int age);
+
+        /**
+         * @return whether the visitor needs the names, a store may visit null names otherwise
+         */
+        default boolean visitsNames() {
+            return true;
+        }
+    }
+
+    /**
+     * Getter for all departments
+     * @return stored departments in alphabetical order
+     */
+    List<Department> getDepartments();
+
+    /**
+     * The size of all departments
+     * @return departments' size
+     */
+    int departmentsSize();
+
+    /**
+     * The number of all stored employees
+     * @return employees' size
+     */
+    int employeesSize();
+
+    /**
+     * Gets all employees income for a specific department
+     * @param department the department in question
+     * @return an (unordered) collection of income
+     */
+    Collection<Double> getEmployeesIncomeForDepartment(Department department);
+
+    /**
+     * Gets all employees age for a specific department
+     * @param department the department in question
+     * @return an (unordered) collection of ages
+     */
+    Collection<Integer> getEmployeesAgeForDepartment(Department department);
+
+    /**
+     * Gets all employees income for a specific {@link AgeRange}
+     * @param ageRange the range of age in question
+     * @return an (unordered) collection of income
+     */
+    Collection<Double> getEmployeesIncomeForAgeRange(AgeRange ageRange);
+
+    /**
+     * Visits every stored employee, grouped by department in the order of the departments.
+     * @param visitor the receiver of the employees' attributes
+     */
+    void forEachEmployee(EmployeeVisitor visitor);
+}
@@ -0,0 +1,31 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.Util;
+
+/**
+ * Enumerates how {@link OutputJob} reacts when a report fails.
+ *
+ * @author karanikasg@gmail.com
+ */
+public enum FailurePolicy {
+
+    /**
+     * Cancel the reports that haven't completed yet
+     */
+    FAIL_FAST,
+
+    /**
+     * Generate all other reports anyway
+     */
+    CONTINUE;
+
+    /**
+     * Looks up a policy by its name as {@link Util#forName(Class, String, Enum, String)} does.
+     *
+     * @param name the name of the policy, may be null
+     * @return the matching policy or {@link #CONTINUE} if no name was provided
+     */
+    public static FailurePolicy forName(String name) {
+        return Util.forName(FailurePolicy.class, name, CONTINUE, "failure policy");
+    }
+}
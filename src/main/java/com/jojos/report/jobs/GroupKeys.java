@@ -0,0 +1,75 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.data.AgeBuckets;
+import com.jojos.report.data.Department;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Extracts the keys of the groups an employee belongs to in several groupings at once. The key of every dimension
+ * is extracted once per employee, no matter how many groupings combine it, and the keys of the dimensions of every
+ * grouping are combined in mixed radix, the cardinality of every dimension being its radix, which is the key
+ * {@link Grouping#labels(List, AgeBuckets, int)} takes apart. Not thread safe.
+ *
+ * @author karanikasg@gmail.com
+ */
+final class GroupKeys {
+
+    private final List<Dimension> dimensions = new ArrayList<>();
+    private final AgeBuckets ageBuckets;
+    // per grouping, the indexes of its dimensions and their cardinalities
+    private final int[][] groupingDimensions;
+    private final int[][] radixes;
+    // the keys of the dimensions of the last employee extracted
+    private final int[] dimensionKeys;
+
+    /**
+     * @throws com.jojos.report.ApplicationException if the groups of a grouping don't fit in integer keys
+     */
+    GroupKeys(List<Grouping> groupings, List<Department> departments, AgeBuckets ageBuckets) {
+        this.ageBuckets = ageBuckets;
+        this.groupingDimensions = new int[groupings.size()][];
+        this.radixes = new int[groupings.size()][];
+        for (int i = 0; i < groupings.size(); i++) {
+            Grouping grouping = groupings.get(i);
+            grouping.cardinality(departments, ageBuckets);
+            for (Dimension dimension : grouping.getDimensions()) {
+                if (!dimensions.contains(dimension)) {
+                    dimensions.add(dimension);
+                }
+            }
+            groupingDimensions[i] = grouping.getDimensions().stream().mapToInt(dimensions::indexOf).toArray();
+            radixes[i] = grouping.radixes(departments, ageBuckets);
+        }
+        this.dimensionKeys = new int[dimensions.size()];
+    }
+
+    /**
+     * Extracts the keys of the dimensions of an employee, for {@link #key(int)} to combine
+     */
+    void extract(int departmentIndex, byte genre, int age) {
+        for (int i = 0; i < dimensionKeys.length; i++) {
+            dimensionKeys[i] = dimensions.get(i).key(ageBuckets, departmentIndex, genre, age);
+        }
+    }
+
+    /**
+     * @param grouping the index of the grouping
+     * @return the key of the group of the employee last extracted, or {@link Dimension#NO_GROUP} if it belongs to no
+     * group of any dimension of the grouping
+     */
+    int key(int grouping) {
+        int[] indexes = groupingDimensions[grouping];
+        int[] groupingRadixes = radixes[grouping];
+        int key = 0;
+        for (int i = 0; i < indexes.length; i++) {
+            int dimensionKey = dimensionKeys[indexes[i]];
+            if (dimensionKey == Dimension.NO_GROUP) {
+                return Dimension.NO_GROUP;
+            }
+            key = key * groupingRadixes[i] + dimensionKey;
+        }
+        return key;
+    }
+}
@@ -0,0 +1,153 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.ApplicationException;
+import com.jojos.report.data.AgeBuckets;
+import com.jojos.report.data.Department;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.jojos.report.Util.DELIMITER;
+
+/**
+ * What the employees of a report are grouped by: one {@link Dimension} or a combination of several ones,
+ * e.g. department and genre, in which case there is a group per combination of their groups.
+ *
+ * The key of a group is a composite integer, the keys of its dimensions in mixed radix with the last dimension
+ * varying fastest, so that the groups of any combination are counted and sorted into primitive arrays the same way
+ * the ones of a single dimension are. Immutable and thread safe.
+ *
+ * @author karanikasg@gmail.com
+ */
+public final class Grouping {
+
+    private static final String COMBINATION = "*";
+
+    private final List<Dimension> dimensions;
+
+    private Grouping(List<Dimension> dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    /**
+     * @param dimensions the dimensions to combine, at least one, each one once
+     * @return the grouping by the combination of the dimensions
+     */
+    public static Grouping of(Dimension... dimensions) {
+        if (dimensions.length == 0 || Arrays.stream(dimensions).distinct().count() != dimensions.length) {
+            throw new ApplicationException("Invalid grouping by " + Arrays.toString(dimensions));
+        }
+        return new Grouping(Collections.unmodifiableList(new ArrayList<>(Arrays.asList(dimensions))));
+    }
+
+    /**
+     * Parses a grouping of the form department*genre, case insensitive, with - or _ between words.
+     *
+     * @param spec the dimensions of the grouping
+     * @return the grouping
+     * @throws ApplicationException if a dimension is unknown
+     */
+    public static Grouping parse(String spec) {
+        String[] names = spec.trim().split("\\s*\\" + COMBINATION + "\\s*");
+        Dimension[] dimensions = new Dimension[names.length];
+        for (int i = 0; i < names.length; i++) {
+            dimensions[i] = Dimension.forName(names[i]);
+        }
+        return of(dimensions);
+    }
+
+    public List<Dimension> getDimensions() {
+        return dimensions;
+    }
+
+    /**
+     * @param departments the loaded departments
+     * @param ageBuckets  the age ranges of the plan
+     * @return the number of groups, the product of the cardinalities of the dimensions
+     * @throws ApplicationException if there are more groups than integer keys
+     */
+    public int cardinality(List<Department> departments, AgeBuckets ageBuckets) {
+        int cardinality = 1;
+        for (Dimension dimension : dimensions) {
+            try {
+                cardinality = Math.multiplyExact(cardinality, dimension.cardinality(departments, ageBuckets));
+            } catch (ArithmeticException e) {
+                throw new ApplicationException("Too many groups by " + this);
+            }
+        }
+        return cardinality;
+    }
+
+    /**
+     * @param departments the loaded departments
+     * @param ageBuckets  the age ranges of the plan
+     * @return the cardinality of every dimension, in the order of the dimensions
+     */
+    public int[] radixes(List<Department> departments, AgeBuckets ageBuckets) {
+        int[] radixes = new int[dimensions.size()];
+        for (int i = 0; i < radixes.length; i++) {
+            radixes[i] = dimensions.get(i).cardinality(departments, ageBuckets);
+        }
+        return radixes;
+    }
+
+    /**
+     * @param departments the loaded departments
+     * @param ageBuckets  the age ranges of the plan
+     * @param key         the key of the group
+     * @return the label of the group in every dimension, in the order of the dimensions
+     */
+    public String[] labels(List<Department> departments, AgeBuckets ageBuckets, int key) {
+        int[] radixes = radixes(departments, ageBuckets);
+        String[] labels = new String[radixes.length];
+        for (int i = radixes.length - 1; i >= 0; i--) {
+            labels[i] = dimensions.get(i).label(departments, ageBuckets, key % radixes[i]);
+            key /= radixes[i];
+        }
+        return labels;
+    }
+
+    /**
+     * @return the text identifying the group in a report, the labels of its dimensions separated like the columns
+     */
+    public String label(List<Department> departments, AgeBuckets ageBuckets, int key) {
+        return String.join(DELIMITER, labels(departments, ageBuckets, key));
+    }
+
+    /**
+     * @return the column headers of the dimensions in a report, e.g. DEPARTMENT and AGE RANGE
+     */
+    public String[] headers() {
+        return dimensions.stream().map(dimension -> dimension.name().replace('_', ' ')).toArray(String[]::new);
+    }
+
+    /**
+     * @return the names of the dimensions, e.g. DEPARTMENT*GENRE, just the name of the dimension if there is one
+     */
+    public String name() {
+        return dimensions.stream().map(Dimension::name).collect(Collectors.joining(COMBINATION));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Grouping that = (Grouping) o;
+
+        return dimensions.equals(that.dimensions);
+    }
+
+    @Override
+    public int hashCode() {
+        return dimensions.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return name();
+    }
+}
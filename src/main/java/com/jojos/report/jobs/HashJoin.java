@@ -0,0 +1,41 @@
+package com.jojos.report.jobs;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Joins the employees with an {@link AgeTable} of all ages. Lookups are thread safe once the table is complete.
+ *
+ * @author karanikasg@gmail.com
+ */
+class HashJoin implements AgeJoin {
+
+    private final AgeTable ages;
+    private final LongAdder misses = new LongAdder();
+
+    HashJoin(AgeTable ages) {
+        this.ages = ages;
+    }
+
+    @Override
+    public int age(String name) {
+        return count(ages.get(name, MISSING));
+    }
+
+    @Override
+    public int age(ByteBuffer buffer, int start, int end) {
+        return count(ages.get(buffer, start, end, MISSING));
+    }
+
+    @Override
+    public long misses() {
+        return misses.sum();
+    }
+
+    private int count(int age) {
+        if (age == MISSING) {
+            misses.increment();
+        }
+        return age;
+    }
+}
@@ -0,0 +1,480 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.ApplicationException;
+import com.jojos.report.data.Employee;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Parses the employees file in three stages running at the same time, so that reading the file overlaps with
+ * parsing it:
+ *
+ * a reader thread reads batches of whole lines of a configurable size, decompressing them if the file is compressed,
+ * several parser threads split, parse and join the lines of a batch with their ages into an array of employees each,
+ * and the calling thread hands the employees of every batch to the sink, in the order of the file.
+ *
+ * The stages are connected by {@link ArrayBlockingQueue}s, ring buffers of batches. The batches read but not handed
+ * to the sink yet are bounded as well, so a fast reader waits for the parsers and the parsers for the sink instead of
+ * filling up the memory. Every stage counts the batches and records it processed, the time it spent on them and the
+ * time it waited for the previous stage or the next one, which tells the slowest stage.
+ *
+ * The outcome is the same as the one of a sequential parse. The age join must be thread safe.
+ *
+ * @author karanikasg@gmail.com
+ */
+public class IngestPipeline {
+
+    /**
+     * The default size of the batches the file is read in, in bytes
+     */
+    public static final int DEFAULT_BATCH_BYTES = 256 << 10;
+
+    private static final int QUEUED_BATCHES_PER_PARSER = 2;
+    // a guess of the bytes per line, to size the arrays of the employees of a batch
+    private static final int ESTIMATED_LINE_BYTES = 32;
+    private static final Chunk END = new Chunk(-1, new byte[0], 0);
+    private static final Batch DONE = new Batch(-1, new Employee[0], 0, null);
+
+    private final Logger log = Logger.getLogger(getClass().getName());
+
+    private final StageCounters reader = new StageCounters("reader", "bytes");
+    private final StageCounters parser = new StageCounters("parsers", "employees");
+    private final StageCounters aggregator = new StageCounters("aggregator", "employees");
+    private int parsers = Runtime.getRuntime().availableProcessors();
+    private int batchBytes = DEFAULT_BATCH_BYTES;
+    private int queueCapacity;
+
+    /**
+     * @param parsers the number of parser threads, all cores by default
+     * @return this pipeline
+     */
+    public IngestPipeline withParsers(int parsers) {
+        if (parsers < 1) {
+            throw new ApplicationException(String.format("Invalid number of parsers %d", parsers));
+        }
+        this.parsers = parsers;
+        return this;
+    }
+
+    /**
+     * @param batchBytes the size of the batches the file is read in, a batch is extended to the end of a line longer
+     *                   than that
+     * @return this pipeline
+     */
+    public IngestPipeline withBatchBytes(int batchBytes) {
+        if (batchBytes < 1) {
+            throw new ApplicationException(String.format("Invalid batch size %d", batchBytes));
+        }
+        this.batchBytes = batchBytes;
+        return this;
+    }
+
+    /**
+     * @param queueCapacity the batches every queue holds, twice the parsers by default
+     * @return this pipeline
+     */
+    public IngestPipeline withQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new ApplicationException(String.format("Invalid queue capacity %d", queueCapacity));
+        }
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    public int getParsers() {
+        return parsers;
+    }
+
+    public int getBatchBytes() {
+        return batchBytes;
+    }
+
+    /**
+     * @return the counters of the reader stage, of all files parsed so far, in bytes
+     */
+    public StageCounters getReader() {
+        return reader;
+    }
+
+    /**
+     * @return the counters of the parser stage, of all files parsed so far, all parser threads together
+     */
+    public StageCounters getParser() {
+        return parser;
+    }
+
+    /**
+     * @return the counters of the aggregator stage, of all files parsed so far
+     */
+    public StageCounters getAggregator() {
+        return aggregator;
+    }
+
+    /**
+     * Parses the employees of the file into the sink, on the calling thread
+     *
+     * @param employees the employees file, compressed or not
+     * @param namesAges the ages of the employees, looked up from all parser threads
+     * @param sink      the receiver of the employees, called from the calling thread only
+     */
+    void parseEmployees(File employees, AgeJoin namesAges, Consumer<Employee> sink) {
+        parseEmployees(employees, namesAges, sink, new LongAdder());
+    }
+
+    /**
+     * Same as {@link #parseEmployees(File, AgeJoin, Consumer)}, counting the lines rejected for their format
+     *
+     * @param rejectedLines the counter of the rejected lines, shared by all parser threads
+     */
+    void parseEmployees(File employees, AgeJoin namesAges, Consumer<Employee> sink, LongAdder rejectedLines) {
+        int capacity = queueCapacity > 0 ? queueCapacity : parsers * QUEUED_BATCHES_PER_PARSER;
+        Run run = new Run(employees, namesAges, capacity, rejectedLines);
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread(run::read, "ingest-reader"));
+        for (int i = 0; i < parsers; i++) {
+            threads.add(new Thread(run::parse, "ingest-parser-" + i));
+        }
+        threads.forEach(thread -> {
+            thread.setDaemon(true);
+            thread.start();
+        });
+        boolean completed = false;
+        try {
+            run.aggregate(sink);
+            completed = true;
+        } finally {
+            if (!completed) {
+                threads.forEach(Thread::interrupt);
+            }
+            join(threads);
+        }
+        log.info(String.format("Ingested %s: %s, %s, %s", employees.getName(), reader, parser, aggregator));
+    }
+
+    private static void join(List<Thread> threads) {
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            threads.forEach(Thread::interrupt);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The state of parsing one file, shared by the threads of all stages
+     */
+    private final class Run {
+
+        private final File file;
+        private final AgeJoin namesAges;
+        private final LongAdder rejectedLines;
+        private final BlockingQueue<Chunk> chunks;
+        private final BlockingQueue<Batch> batches;
+        // the batches read but not handed to the sink yet, so that the batches waiting for an earlier one are bounded
+        private final Semaphore inFlight;
+
+        private Run(File file, AgeJoin namesAges, int capacity, LongAdder rejectedLines) {
+            this.file = file;
+            this.namesAges = namesAges;
+            this.rejectedLines = rejectedLines;
+            this.chunks = new ArrayBlockingQueue<>(capacity);
+            // never full, a parser never waits for the sink to take a batch the sink waits for
+            this.batches = new ArrayBlockingQueue<>(2 * capacity + parsers);
+            this.inFlight = new Semaphore(2 * capacity);
+        }
+
+        private void read() {
+            try (InputStream in = CompressedInput.open(file)) {
+                long sequence = 0;
+                // the start of a line that continues in the next batch
+                byte[] carry = new byte[0];
+                int carryStart = 0;
+                int carried = 0;
+                boolean end = false;
+                while (!end) {
+                    long start = System.nanoTime();
+                    byte[] bytes = new byte[Math.max(batchBytes, 2 * carried)];
+                    System.arraycopy(carry, carryStart, bytes, 0, carried);
+                    int filled = carried;
+                    int read;
+                    while (filled < bytes.length && (read = in.read(bytes, filled, bytes.length - filled)) >= 0) {
+                        filled += read;
+                    }
+                    end = filled < bytes.length;
+                    int length = end ? filled : lastLineEnd(bytes, filled);
+                    carry = bytes;
+                    carryStart = length;
+                    carried = filled - length;
+                    reader.worked(start);
+                    if (length > 0) {
+                        reader.processed(length);
+                        long waiting = System.nanoTime();
+                        inFlight.acquire();
+                        chunks.put(new Chunk(sequence++, bytes, length));
+                        reader.waitedForOutput(waiting);
+                    }
+                }
+                long waiting = System.nanoTime();
+                for (int i = 0; i < parsers; i++) {
+                    chunks.put(END);
+                }
+                reader.waitedForOutput(waiting);
+            } catch (InterruptedException | ClosedByInterruptException e) {
+                // stopped by the aggregator
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void parse() {
+            MappedParser mappedParser = new MappedParser(rejectedLines);
+            try {
+                while (true) {
+                    long waiting = System.nanoTime();
+                    Chunk chunk = chunks.take();
+                    parser.waitedForInput(waiting);
+                    if (chunk == END) {
+                        batches.put(DONE);
+                        return;
+                    }
+                    long start = System.nanoTime();
+                    Collector collector = new Collector(chunk.length / ESTIMATED_LINE_BYTES + 1);
+                    mappedParser.parseEmployees(ByteBuffer.wrap(chunk.bytes), 0, chunk.length, file.getName(), namesAges, collector);
+                    parser.worked(start);
+                    parser.processed(collector.size);
+                    waiting = System.nanoTime();
+                    batches.put(new Batch(chunk.sequence, collector.employees, collector.size, null));
+                    parser.waitedForOutput(waiting);
+                }
+            } catch (InterruptedException e) {
+                // stopped by the aggregator
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Hands the employees of the batches to the sink in the order of the batches, until all parsers are done
+         */
+        private void aggregate(Consumer<Employee> sink) {
+            Map<Long, Batch> pending = new HashMap<>();
+            long next = 0;
+            int done = 0;
+            try {
+                while (done < parsers) {
+                    long waiting = System.nanoTime();
+                    Batch batch = batches.take();
+                    aggregator.waitedForInput(waiting);
+                    if (batch == DONE) {
+                        done++;
+                        continue;
+                    }
+                    if (batch.failure != null) {
+                        if (batch.failure instanceof RuntimeException) {
+                            throw (RuntimeException) batch.failure;
+                        }
+                        throw new ApplicationException(String.format("Can't read %s. Exception %s", file.getName(), batch.failure));
+                    }
+                    pending.put(batch.sequence, batch);
+                    for (Batch ready; (ready = pending.remove(next)) != null; next++) {
+                        long start = System.nanoTime();
+                        for (int i = 0; i < ready.size; i++) {
+                            sink.accept(ready.employees[i]);
+                        }
+                        aggregator.worked(start);
+                        aggregator.processed(ready.size);
+                        inFlight.release();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ApplicationException("Interrupted while parsing " + file.getName());
+            }
+        }
+
+        /**
+         * Hands a failure over to the aggregator, unless the aggregator stopped the stage
+         */
+        private void fail(Exception e) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            try {
+                batches.put(new Batch(-1, null, 0, e));
+            } catch (InterruptedException stopped) {
+                // stopped by the aggregator
+            }
+        }
+    }
+
+    /**
+     * @return the length of the lines of the bytes that end with a terminator, 0 if there is none
+     */
+    private static int lastLineEnd(byte[] bytes, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (bytes[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The bytes of whole lines, read from a file
+     */
+    private static final class Chunk {
+        private final long sequence;
+        private final byte[] bytes;
+        private final int length;
+
+        private Chunk(long sequence, byte[] bytes, int length) {
+            this.sequence = sequence;
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+
+    /**
+     * The employees parsed out of a chunk, or the failure of a stage
+     */
+    private static final class Batch {
+        private final long sequence;
+        private final Employee[] employees;
+        private final int size;
+        private final Exception failure;
+
+        private Batch(long sequence, Employee[] employees, int size, Exception failure) {
+            this.sequence = sequence;
+            this.employees = employees;
+            this.size = size;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * Collects the employees of a chunk into an array
+     */
+    private static final class Collector implements Consumer<Employee> {
+        private Employee[] employees;
+        private int size;
+
+        private Collector(int capacity) {
+            this.employees = new Employee[capacity];
+        }
+
+        @Override
+        public void accept(Employee employee) {
+            if (size == employees.length) {
+                employees = Arrays.copyOf(employees, 2 * size);
+            }
+            employees[size++] = employee;
+        }
+    }
+
+    /**
+     * The throughput of a stage and how long it waited for the others. Thread safe.
+     */
+    public static final class StageCounters {
+
+        private final String name;
+        private final String unit;
+        private final LongAdder batches = new LongAdder();
+        private final LongAdder records = new LongAdder();
+        private final LongAdder workNanos = new LongAdder();
+        private final LongAdder inputWaitNanos = new LongAdder();
+        private final LongAdder outputWaitNanos = new LongAdder();
+
+        private StageCounters(String name, String unit) {
+            this.name = name;
+            this.unit = unit;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the batches processed
+         */
+        public long getBatches() {
+            return batches.sum();
+        }
+
+        /**
+         * @return the records processed, bytes for the reader and employees for the others
+         */
+        public long getRecords() {
+            return records.sum();
+        }
+
+        /**
+         * @return the time spent processing, of all threads of the stage
+         */
+        public long getWorkMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(workNanos.sum());
+        }
+
+        /**
+         * @return the time spent waiting for the previous stage, of all threads of the stage
+         */
+        public long getInputWaitMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(inputWaitNanos.sum());
+        }
+
+        /**
+         * @return the time spent waiting for the next stage to catch up, of all threads of the stage
+         */
+        public long getOutputWaitMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(outputWaitNanos.sum());
+        }
+
+        /**
+         * @return the records processed per second of processing
+         */
+        public double getThroughput() {
+            long nanos = workNanos.sum();
+            return nanos == 0 ? 0 : records.sum() * 1e9 / nanos;
+        }
+
+        private void processed(long count) {
+            batches.increment();
+            records.add(count);
+        }
+
+        private void worked(long startNanos) {
+            workNanos.add(System.nanoTime() - startNanos);
+        }
+
+        private void waitedForInput(long startNanos) {
+            inputWaitNanos.add(System.nanoTime() - startNanos);
+        }
+
+        private void waitedForOutput(long startNanos) {
+            outputWaitNanos.add(System.nanoTime() - startNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %d %s in %d batches at %.0f/s, waited %dms for input and %dms for output", name,
+                    getRecords(), unit, getBatches(), getThroughput(), getInputWaitMillis(), getOutputWaitMillis());
+        }
+    }
+}
@@ -6,11 +6,10 @@ import com.jojos.report.data.Employee;
 import com.jojos.report.data.Genre;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
 import java.util.Objects;
 import java.util.Scanner;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 import static com.jojos.report.Util.AGES_FILE;
@@ -25,6 +24,8 @@ import static com.jojos.report.Util.EMPLOYEES_FILE;
  * departments.csv
  * employees.csv
  *
+ * any of which may be gzip compressed instead, e.g. employees.csv.gz, and is then decompressed while parsed.
+ *
  * @author karanikasg@gmail.com
  */
 public class InputJob {
@@ -34,9 +35,18 @@ public class InputJob {
     private final File ages;
     private final File departments;
     private final File employees;
-    private final Loader loader;
+    private final ParseMode parseMode;
+    private JoinMode joinMode = JoinMode.HASH;
+    private IngestPipeline pipeline = new IngestPipeline();
+    private boolean snapshot;
+    private RunMetrics metrics = new RunMetrics();
+    private long joinMisses;
 
     public InputJob(String path) {
+        this(path, ParseMode.SCANNER);
+    }
+
+    public InputJob(String path, ParseMode parseMode) {
         File tmpAges = null;
         File tmpDepartments = null;
         File tmpEmployees = null;
@@ -51,15 +61,15 @@ public class InputJob {
 
         for (File file : files) {
             if (file.isFile()) {
-                switch (file.getName()) {
+                switch (CompressedInput.decompressedName(file)) {
                     case AGES_FILE:
-                        tmpAges = file;
+                        tmpAges = either(tmpAges, file);
                         break;
                     case DEPARTMENTS_FILE:
-                        tmpDepartments = file;
+                        tmpDepartments = either(tmpDepartments, file);
                         break;
                     case EMPLOYEES_FILE:
-                        tmpEmployees = file;
+                        tmpEmployees = either(tmpEmployees, file);
                         break;
                     default:
                         log.warning(String.format("skipping %s, not a valid file", file.getName()));
@@ -76,75 +86,352 @@ public class InputJob {
         this.ages = tmpAges;
         this.departments = tmpDepartments;
         this.employees = tmpEmployees;
-        this.loader = new Loader();
+        this.parseMode = parseMode;
 
     }
 
+    /**
+     * @return the file, unless both the file and its compressed counterpart are there, in which case it's
+     * unclear which one is up to date
+     */
+    private static File either(File found, File file) {
+        if (found != null) {
+            throw new ApplicationException(String.format("Both %s and %s are in the provided path, remove one of them",
+                    found.getName(), file.getName()));
+        }
+        return file;
+    }
+
+    /**
+     * @param joinMode how to join the employees with their ages
+     * @return this job
+     */
+    public InputJob withJoinMode(JoinMode joinMode) {
+        this.joinMode = joinMode;
+        return this;
+    }
+
+    /**
+     * @param pipeline the stages parsing the employees file in {@link ParseMode#PIPELINE}
+     * @return this job
+     */
+    public InputJob withPipeline(IngestPipeline pipeline) {
+        this.pipeline = pipeline;
+        return this;
+    }
+
+    /**
+     * @param snapshot whether to load the store from a {@link Snapshot} of the input files when they didn't change,
+     *                 and to write one after parsing them otherwise
+     * @return this job
+     */
+    public InputJob withSnapshot(boolean snapshot) {
+        this.snapshot = snapshot;
+        return this;
+    }
+
+    /**
+     * @param metrics where to record the time, rows and bytes of every file parsed and the lines rejected
+     * @return this job
+     */
+    public InputJob withMetrics(RunMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * @return the number of employees of the last parse that have no age in the ages file
+     */
+    public long getJoinMisses() {
+        return joinMisses;
+    }
+
     public Loader parseAndLoad() {
-        // departments first
-        try (Scanner scanner = new Scanner(departments)) {
+        ColumnarStore restored = restoreSnapshot();
+        if (restored != null) {
+            return Snapshot.toLoader(restored);
+        }
+        Loader loader;
+        if (parseMode == ParseMode.PARALLEL) {
+            // every range of the employees file is loaded by the thread parsing it
+            ConcurrentLoader concurrentLoader = new ConcurrentLoader();
+            parseDepartments(concurrentLoader::load);
+            joinEmployees(namesAges -> new ParallelParser(metrics.rejectedLines())
+                    .parseEmployeesConcurrently(employees, namesAges, concurrentLoader::appender));
+            loader = concurrentLoader.freeze();
+        } else {
+            loader = new Loader();
+            parse(loader::load, loader::load);
+        }
+        log.info(String.format("Loaded %d departments", loader.departmentsSize()));
+        log.info(String.format("Loaded %d employees", loader.employeesSize()));
+        metrics.phase(RunMetrics.DEPARTMENTS).addRows(loader.departmentsSize());
+        metrics.phase(RunMetrics.EMPLOYEES).addRows(loader.employeesSize());
+        writeSnapshot(loader);
+        return loader;
+    }
+
+    /**
+     * Same as {@link #parseAndLoad()} for any kind of store
+     *
+     * @param storeType the kind of store to load into
+     * @return the loaded store
+     */
+    public EmployeeStore parseAndLoad(StoreType storeType) {
+        if (storeType != StoreType.COLUMNAR) {
+            return parseAndLoad();
+        }
+        ColumnarStore restored = restoreSnapshot();
+        if (restored != null) {
+            return restored;
+        }
+        ColumnarStore.Builder builder = ColumnarStore.builder();
+        parse(builder::load, builder::load);
+        log.info(String.format("Loaded %d departments", builder.departmentsSize()));
+        log.info(String.format("Loaded %d employees", builder.employeesSize()));
+        metrics.phase(RunMetrics.DEPARTMENTS).addRows(builder.departmentsSize());
+        metrics.phase(RunMetrics.EMPLOYEES).addRows(builder.employeesSize());
+        ColumnarStore store = builder.build();
+        writeSnapshot(store);
+        return store;
+    }
+
+    private ColumnarStore restoreSnapshot() {
+        if (!snapshot) {
+            return null;
+        }
+        long start = System.nanoTime();
+        Snapshot restored = Snapshot.read(snapshotFile(), departments, ages, employees);
+        if (restored == null) {
+            return null;
+        }
+        ColumnarStore store = restored.getStore();
+        log.info(String.format("Restored %d departments and %d employees from %s", store.departmentsSize(),
+                store.employeesSize(), Snapshot.FILE_NAME));
+        metrics.phase(RunMetrics.SNAPSHOT).timeSince(start).addRows(store.employeesSize()).addBytes(snapshotFile().length());
+        // reported the same as when the files were parsed
+        joinMisses = restored.getJoinMisses();
+        metrics.joinMisses(joinMisses);
+        metrics.rejectedLines().add(restored.getRejectedLines());
+        if (joinMisses > 0) {
+            log.warning(String.format("%d employees have no age in %s", joinMisses, ages.getName()));
+        }
+        if (restored.getRejectedLines() > 0) {
+            log.warning(String.format("%d lines of the input files were rejected when parsed", restored.getRejectedLines()));
+        }
+        return store;
+    }
+
+    private void writeSnapshot(EmployeeStore store) {
+        if (snapshot) {
+            Snapshot.write(store, joinMisses, metrics.getRejectedLines(), snapshotFile(), departments, ages, employees);
+        }
+    }
+
+    private File snapshotFile() {
+        return new File(employees.getParentFile(), Snapshot.FILE_NAME);
+    }
+
+    /**
+     * Streams the employees into an approximate aggregation of the plan instead of loading them, so the employees file
+     * may be bigger than the memory. Only the departments and the ages are kept in memory.
+     *
+     * @param plan             the reports to aggregate for
+     * @param relativeAccuracy the relative error of medians and percentiles
+     * @return the aggregation of all employees
+     * @see QuantileSketch
+     */
+    public SketchAggregation parseAndAggregate(ReportPlan plan, double relativeAccuracy) {
+        // the loader keeps the departments sorted and unique, no employees are loaded into it
+        Loader departmentsLoader = new Loader();
+        parseDepartments(departmentsLoader::load);
+        SketchAggregation aggregation = plan.sketch(departmentsLoader.getDepartments(), relativeAccuracy);
+        parseEmployees(aggregation::load);
+        log.info(String.format("Loaded %d departments", departmentsLoader.departmentsSize()));
+        log.info(String.format("Aggregated %d employees", aggregation.employeesSize()));
+        metrics.phase(RunMetrics.DEPARTMENTS).addRows(departmentsLoader.departmentsSize());
+        metrics.phase(RunMetrics.EMPLOYEES).addRows(aggregation.employeesSize());
+        return aggregation;
+    }
+
+    /**
+     * Streams the employees into an exact aggregation of the plan that keeps at most the memory budget worth
+     * of values in memory and spills the rest to sorted run files.
+     *
+     * @param plan            the reports to aggregate for
+     * @param memoryBudget    the bytes the buffered values may take
+     * @param parentDirectory where to create the temporary directory of the run files
+     * @return the aggregation of all employees, to be closed when the reports are generated
+     * @see SpillingAggregation
+     */
+    public SpillingAggregation parseAndSpill(ReportPlan plan, long memoryBudget, File parentDirectory) {
+        Loader departmentsLoader = new Loader();
+        parseDepartments(departmentsLoader::load);
+        SpillingAggregation aggregation = plan.spill(departmentsLoader.getDepartments(), memoryBudget, parentDirectory);
+        parseEmployees(aggregation::load);
+        log.info(String.format("Loaded %d departments", departmentsLoader.departmentsSize()));
+        log.info(String.format("Aggregated %d employees, spilled %d run files", aggregation.employeesSize(), aggregation.runFiles()));
+        metrics.phase(RunMetrics.DEPARTMENTS).addRows(departmentsLoader.departmentsSize());
+        metrics.phase(RunMetrics.EMPLOYEES).addRows(aggregation.employeesSize());
+        return aggregation;
+    }
+
+    private void parse(Consumer<Department> departmentSink, Consumer<Employee> employeeSink) {
+        parseDepartments(departmentSink);
+        parseEmployees(employeeSink);
+    }
+
+    private void parseDepartments(Consumer<Department> sink) {
+        long start = System.nanoTime();
+        if (parseMode == ParseMode.SCANNER) {
+            scanDepartments(sink);
+        } else {
+            // departments are few, no point in splitting them in parallel mode
+            new MappedParser(metrics.rejectedLines()).parseDepartments(departments, sink);
+        }
+        metrics.phase(RunMetrics.DEPARTMENTS).timeSince(start).addBytes(departments.length());
+    }
+
+    private void parseEmployees(Consumer<Employee> sink) {
+        joinEmployees(namesAges -> {
+            switch (parseMode) {
+                case MAPPED:
+                    new MappedParser(metrics.rejectedLines()).parseEmployees(employees, namesAges, sink);
+                    break;
+                case PARALLEL:
+                    new ParallelParser(metrics.rejectedLines()).parseEmployees(employees, namesAges, sink);
+                    break;
+                case PIPELINE:
+                    pipeline.parseEmployees(employees, namesAges, sink, metrics.rejectedLines());
+                    break;
+                default:
+                    scanEmployees(namesAges, sink);
+                    break;
+            }
+        });
+    }
+
+    /**
+     * Joins the employees with their ages while the parser parses them. A merge join reads the ages along with the
+     * employees, the time of reading them then counts as the time of the employees.
+     */
+    private void joinEmployees(Consumer<AgeJoin> parser) {
+        long start = System.nanoTime();
+        try (AgeJoin namesAges = join()) {
+            metrics.phase(RunMetrics.AGES).timeSince(start).addBytes(ages.length());
+            start = System.nanoTime();
+            parser.accept(namesAges);
+            joinMisses = namesAges.misses();
+        }
+        metrics.phase(RunMetrics.EMPLOYEES).timeSince(start).addBytes(employees.length());
+        metrics.joinMisses(joinMisses);
+        if (joinMisses > 0) {
+            log.warning(String.format("%d employees have no age in %s", joinMisses, ages.getName()));
+        }
+    }
+
+    private AgeJoin join() {
+        if (joinMode == JoinMode.MERGE) {
+            if (parseMode != ParseMode.PARALLEL && parseMode != ParseMode.PIPELINE) {
+                return MergeJoin.create(ages, this::hashJoin);
+            }
+            log.warning("The merge join needs the employees in order, joining the " + parseMode.name().toLowerCase()
+                    + " parser with a hash table");
+        }
+        return hashJoin();
+    }
+
+    private AgeJoin hashJoin() {
+        AgeTable namesAges = new AgeTable();
+        switch (parseMode) {
+            case MAPPED:
+                new MappedParser(metrics.rejectedLines()).parseAges(ages, namesAges);
+                break;
+            case PARALLEL:
+            case PIPELINE:
+                new ParallelParser(metrics.rejectedLines()).parseAges(ages, namesAges);
+                break;
+            default:
+                scanAges(namesAges);
+                break;
+        }
+        metrics.phase(RunMetrics.AGES).addRows(namesAges.size());
+        return new HashJoin(namesAges);
+    }
+
+    private void scanDepartments(Consumer<Department> sink) {
+        try (Scanner scanner = new Scanner(CompressedInput.open(departments))) {
             while (scanner.hasNextLine()) {
                 String line = scanner.nextLine();
                 validateLineOrThrow(line);
-                loader.load(new Department(line));
+                sink.accept(new Department(line));
             }
-            log.info(String.format("Loaded %d departments", loader.departmentsSize()));
-        } catch (FileNotFoundException e) {
-            // highly unlikely
+            throwInputException(scanner);
+        } catch (IOException e) {
             throw new ApplicationException(e.getMessage());
         }
+    }
 
-        Map<String, Integer> namesAges = new HashMap<>();
-        // secondly store the ages
-        try (Scanner scanner = new Scanner(this.ages)) {
+    private void scanAges(AgeTable namesAges) {
+        try (Scanner scanner = new Scanner(CompressedInput.open(ages))) {
             while (scanner.hasNextLine()) {
                 String line = scanner.nextLine();
                 validateLineOrThrow(line);
                 String[] nameAge = line.split("\\s*,\\s*");
                 if (isInvalidSplitOfLine(nameAge, 2)) {
-                    log.severe(String.format("Wrong format in input %s at line %d", ages.getName(), line));
+                    log.severe(String.format("Wrong format in input %s at line %s", ages.getName(), line));
+                    metrics.rejectedLines().increment();
                     continue;
                 }
                 namesAges.put(nameAge[0], Integer.parseInt(nameAge[1]));
             }
-        } catch (FileNotFoundException e) {
-            // highly unlikely
+            throwInputException(scanner);
+        } catch (IOException e) {
             throw new ApplicationException(e.getMessage());
         }
+    }
 
-        // at last create the employees objects
-        try (Scanner scanner = new Scanner(this.employees)) {
+    private void scanEmployees(AgeJoin namesAges, Consumer<Employee> sink) {
+        try (Scanner scanner = new Scanner(CompressedInput.open(employees))) {
             while (scanner.hasNextLine()) {
                 String line = scanner.nextLine();
                 validateLineOrThrow(line);
                 String[] employeeData = line.split("\\s*,\\s*");
                 if (isInvalidSplitOfLine(employeeData, 4)) {
                     log.severe(String.format("Wrong format in input %s at line %s", employees.getName(), line));
+                    metrics.rejectedLines().increment();
                     continue;
                 }
                 Employee employee = extractEmployeeFromArray(employeeData, namesAges);
                 if (Objects.isNull(employee)) {
                     log.severe("Skipping employee " + line);
+                    metrics.rejectedLines().increment();
                 } else {
-                    loader.load(employee);
+                    sink.accept(employee);
                 }
             }
-            log.info(String.format("Loaded %d employees", loader.getAllEmployees().size()));
-        } catch (FileNotFoundException e) {
-            // highly unlikely
+            throwInputException(scanner);
+        } catch (IOException e) {
             throw new ApplicationException(e.getMessage());
         }
+    }
 
-        return loader;
+    /**
+     * A scanner takes an exception of its input, e.g. a corrupt compressed file, for the end of the input
+     */
+    private static void throwInputException(Scanner scanner) throws IOException {
+        if (scanner.ioException() != null) {
+            throw scanner.ioException();
+        }
     }
 
-    private Employee extractEmployeeFromArray(String[] employeeData, Map<String, Integer> ages) {
+    private Employee extractEmployeeFromArray(String[] employeeData, AgeJoin ages) {
         try {
             int departmentId = Integer.parseInt(employeeData[0]);
             String name = employeeData[1];
             Genre genre = Genre.forCaseInsensitiveAbbreviation(employeeData[2]);
             double income = Double.parseDouble(employeeData[3]);
-            int age = ages.getOrDefault(name, -1);
+            int age = ages.age(name);
             return new Employee(departmentId, name, genre, income, age);
         } catch (NumberFormatException e) {
             log.severe(e.getMessage());
@@ -0,0 +1,32 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.Util;
+
+/**
+ * Enumerates the ways {@link InputJob} joins the employees with their ages.
+ *
+ * @author karanikasg@gmail.com
+ */
+public enum JoinMode {
+
+    /**
+     * Load all ages into a table by name, then look up every employee
+     */
+    HASH,
+
+    /**
+     * Walk the ages along with the employees, for files sorted by name. Takes constant memory, falls back to
+     * {@link #HASH} if the files turn out not to be sorted.
+     */
+    MERGE;
+
+    /**
+     * Looks up a join mode by its name as {@link Util#forName(Class, String, Enum, String)} does.
+     *
+     * @param name the name of the join mode, may be null
+     * @return the matching join mode or {@link #HASH} if no name was provided
+     */
+    public static JoinMode forName(String name) {
+        return Util.forName(JoinMode.class, name, HASH, "join");
+    }
+}
@@ -0,0 +1,72 @@
+package com.jojos.report.jobs;
+
+import java.util.Locale;
+
+/**
+ * Appends the values of the JSON documents the application writes, i.e. the summary of a run and the responses of
+ * the statistics server, to a {@link StringBuilder}.
+ *
+ * Strings are quoted with their quotes, backslashes and control characters escaped. Numbers are written with
+ * {@link Locale#ROOT}, and since JSON has no NaN or infinities those are written as null.
+ *
+ * @author karanikasg@gmail.com
+ */
+public final class Json {
+
+    private Json() {
+    }
+
+    /**
+     * Appends a number field, preceded by a comma, with all the digits of the value.
+     *
+     * @param json  the document
+     * @param name  the name of the field
+     * @param value the value of the field
+     */
+    public static void appendNumber(StringBuilder json, String name, double value) {
+        json.append(",\"").append(name).append("\":");
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            json.append("null");
+        } else {
+            json.append(value);
+        }
+    }
+
+    /**
+     * Appends a number field, preceded by a comma, rounded to the given decimals.
+     *
+     * @param json     the document
+     * @param name     the name of the field
+     * @param value    the value of the field
+     * @param decimals the decimals to round the value to
+     */
+    public static void appendNumber(StringBuilder json, String name, double value, int decimals) {
+        json.append(",\"").append(name).append("\":");
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            json.append("null");
+        } else {
+            json.append(String.format(Locale.ROOT, "%." + decimals + "f", value));
+        }
+    }
+
+    /**
+     * Appends a quoted string.
+     *
+     * @param json  the document
+     * @param value the string
+     */
+    public static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
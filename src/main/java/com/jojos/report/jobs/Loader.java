@@ -32,9 +32,11 @@ import java.util.stream.Stream;
  * is implemented as an {@link EnumMap} since the AgeRange is just an enumeration. The latter is initialized at
  * construction time.
  *
+ * Loading is not thread safe, employees are loaded from several threads with a {@link ConcurrentLoader}.
+ *
  * @author karanikasg@gmail.com
  */
-public class Loader {
+public class Loader implements EmployeeStore {
 
     private final Logger log = Logger.getLogger(getClass().getName());
 
@@ -89,18 +91,42 @@ public class Loader {
         ageRanges.get(ageRange).add(employee);
     }
 
+    /**
+     * Replaces the employees of a loaded department with the ones merged by a {@link ConcurrentLoader}
+     */
+    void putEmployees(Department department, Set<Employee> employees) {
+        departmentToEmployee.put(department, employees);
+    }
+
+    /**
+     * Replaces the employees of an age range with the ones merged by a {@link ConcurrentLoader}
+     */
+    void putEmployees(AgeRange ageRange, Set<Employee> employees) {
+        ageRanges.put(ageRange, employees);
+    }
+
     /**
      * The size of all departments
      * @return departments' size
      */
+    @Override
     public int departmentsSize() {
         return departments.size();
     }
 
+    @Override
+    public int employeesSize() {
+        return departmentToEmployee.values()
+                .stream()
+                .mapToInt(Set::size)
+                .sum();
+    }
+
     /**
      * Getter for all departments
      * @return stored departments
      */
+    @Override
     public List<Department> getDepartments() {
         return departments;
     }
@@ -130,6 +156,7 @@ public class Loader {
      * @param department the department in question
      * @return an (unordered) collection of income
      */
+    @Override
     public Collection<Double> getEmployeesIncomeForDepartment(Department department) {
         return getEmployeesForDepartment(department)
                 .stream()
@@ -142,6 +169,7 @@ public class Loader {
      * @param department the department in question
      * @return an (unordered) collection of ages
      */
+    @Override
     public Collection<Integer> getEmployeesAgeForDepartment(Department department) {
         return getEmployeesForDepartment(department)
                 .stream()
@@ -154,6 +182,7 @@ public class Loader {
      * @param ageRange the range of age in question
      * @return an (unordered) collection of income
      */
+    @Override
     public Collection<Double> getEmployeesIncomeForAgeRange(AgeRange ageRange) {
         return ageRanges.get(ageRange)
                 .stream()
@@ -161,6 +190,15 @@ public class Loader {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public void forEachEmployee(EmployeeVisitor visitor) {
+        for (int i = 0; i < departments.size(); i++) {
+            for (Employee employee : departmentToEmployee.get(departments.get(i))) {
+                visitor.visit(i, employee.getName(), employee.getGenre().code(), employee.getIncome(), employee.getAge());
+            }
+        }
+    }
+
     /**
      * Getter for the {@link EnumMap} of all the age ranges
      * @return the map of age ranges to set of employees
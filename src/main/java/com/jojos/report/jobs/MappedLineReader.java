@@ -0,0 +1,113 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.ApplicationException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Walks the lines of a file through read-only memory mappings of its {@link FileChannel}.
+ *
+ * A single mapping can't exceed {@link Integer#MAX_VALUE} bytes, so big files are mapped in consecutive windows.
+ * Every window starts at the beginning of a line, a line that crosses the end of a window is handed over
+ * from the next one.
+ *
+ * Lines are terminated by either "\n" or "\r\n", the terminator is never part of the reported line.
+ * The last line of the file does not need a terminator.
+ *
+ * @author karanikasg@gmail.com
+ */
+class MappedLineReader {
+
+    static final long MAX_WINDOW = Integer.MAX_VALUE;
+
+    /**
+     * Callback receiving each line as a range of absolute positions within a buffer.
+     * The buffer is only valid during the call.
+     */
+    interface LineHandler {
+        void onLine(ByteBuffer buffer, int start, int end);
+    }
+
+    private MappedLineReader() {
+    }
+
+    /**
+     * Reports every line of the channel to the handler.
+     *
+     * @param channel the channel to read
+     * @param handler the receiver of the lines
+     * @throws IOException if mapping the file fails
+     */
+    static void forEachLine(FileChannel channel, LineHandler handler) throws IOException {
+        forEachLine(channel, 0, channel.size(), MAX_WINDOW, handler);
+    }
+
+    /**
+     * Reports every line found between two positions of the channel to the handler. The first position
+     * must denote the start of a line and the last one either the end of the file or the position right after a
+     * line terminator.
+     *
+     * @param channel the channel to read
+     * @param from    the inclusive start position
+     * @param to      the exclusive end position
+     * @param window  the maximum number of bytes to map at once
+     * @param handler the receiver of the lines
+     * @throws IOException if mapping the file fails
+     */
+    static void forEachLine(FileChannel channel, long from, long to, long window, LineHandler handler) throws IOException {
+        long position = from;
+        while (position < to) {
+            int length = (int) Math.min(to - position, window);
+            boolean lastWindow = position + length >= to;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+            int lineStart = 0;
+            for (int i = 0; i < length; i++) {
+                if (buffer.get(i) == '\n') {
+                    handler.onLine(buffer, lineStart, withoutCarriageReturn(buffer, lineStart, i));
+                    lineStart = i + 1;
+                }
+            }
+
+            if (lastWindow) {
+                if (lineStart < length) {
+                    handler.onLine(buffer, lineStart, withoutCarriageReturn(buffer, lineStart, length));
+                }
+                return;
+            }
+            if (lineStart == 0) {
+                throw new ApplicationException(String.format("Line starting at position %d is longer than %d bytes", position, window));
+            }
+            position += lineStart;
+        }
+    }
+
+    /**
+     * Reports every line found between two positions of a buffer to the handler, the same way as the lines of
+     * a channel. The last line of the range does not need a terminator.
+     *
+     * @param buffer  the buffer to read
+     * @param from    the inclusive start position, the start of a line
+     * @param to      the exclusive end position
+     * @param handler the receiver of the lines
+     */
+    static void forEachLine(ByteBuffer buffer, int from, int to, LineHandler handler) {
+        int lineStart = from;
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == '\n') {
+                handler.onLine(buffer, lineStart, withoutCarriageReturn(buffer, lineStart, i));
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart < to) {
+            handler.onLine(buffer, lineStart, withoutCarriageReturn(buffer, lineStart, to));
+        }
+    }
+
+    static int withoutCarriageReturn(ByteBuffer buffer, int start, int end) {
+        return end > start && buffer.get(end - 1) == '\r' ? end - 1 : end;
+    }
+}
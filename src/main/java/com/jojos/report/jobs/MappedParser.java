@@ -0,0 +1,147 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.ApplicationException;
+import com.jojos.report.data.Department;
+import com.jojos.report.data.Employee;
+import com.jojos.report.data.Genre;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Parses the input files through {@link MappedLineReader} and {@link CsvLine}, the counterpart of
+ * the {@link java.util.Scanner} based parsing of {@link InputJob}.
+ *
+ * No line is turned into a {@link String} and no regular expression is involved, the department id, genre and
+ * income are read straight from the mapped bytes, names are joined with their ages by their bytes as well.
+ * Only the names of the employees end up as text. Compressed files are read the same way, out of their decompressed
+ * bytes instead of a mapping.
+ * The outcome is the same {@link Loader} the scanner would produce.
+ *
+ * An instance is not thread safe, but it can parse any range of a file that starts at the beginning of a line,
+ * or any such range of it already in memory. Lines it rejects are counted on a counter that may be shared.
+ *
+ * @author karanikasg@gmail.com
+ */
+class MappedParser {
+
+    private final Logger log = Logger.getLogger(getClass().getName());
+
+    private final CsvLine csvLine = new CsvLine();
+    private final LongAdder rejectedLines;
+
+    MappedParser() {
+        this(new LongAdder());
+    }
+
+    /**
+     * @param rejectedLines the counter of the lines rejected for their format
+     */
+    MappedParser(LongAdder rejectedLines) {
+        this.rejectedLines = rejectedLines;
+    }
+
+    void parseDepartments(File departments, Consumer<Department> sink) {
+        forEachLine(departments, () -> sink.accept(new Department(csvLine.line())));
+    }
+
+    void parseAges(File ages, AgeTable namesAges) {
+        forEachLine(ages, ageParser(ages.getName(), namesAges));
+    }
+
+    void parseAges(FileChannel channel, long from, long to, String fileName, AgeTable namesAges) throws IOException {
+        forEachLine(channel, from, to, ageParser(fileName, namesAges));
+    }
+
+    void parseEmployees(File employees, AgeJoin namesAges, Consumer<Employee> sink) {
+        forEachLine(employees, employeeParser(employees.getName(), namesAges, sink));
+    }
+
+    void parseEmployees(FileChannel channel, long from, long to, String fileName,
+                        AgeJoin namesAges, Consumer<Employee> sink) throws IOException {
+        forEachLine(channel, from, to, employeeParser(fileName, namesAges, sink));
+    }
+
+    void parseEmployees(ByteBuffer buffer, int from, int to, String fileName, AgeJoin namesAges, Consumer<Employee> sink) {
+        MappedLineReader.forEachLine(buffer, from, to, lineHandler(employeeParser(fileName, namesAges, sink)));
+    }
+
+    private Runnable ageParser(String fileName, AgeTable namesAges) {
+        return () -> {
+            if (csvLine.fields() != 2) {
+                log.severe(String.format("Wrong format in input %s at line %s", fileName, csvLine.line()));
+                rejectedLines.increment();
+                return;
+            }
+            csvLine.putAge(namesAges, 0, csvLine.parseInt(1));
+        };
+    }
+
+    private Runnable employeeParser(String fileName, AgeJoin namesAges, Consumer<Employee> sink) {
+        return () -> {
+            if (csvLine.fields() != 4) {
+                log.severe(String.format("Wrong format in input %s at line %s", fileName, csvLine.line()));
+                rejectedLines.increment();
+                return;
+            }
+            try {
+                int departmentId = csvLine.parseInt(0);
+                String name = csvLine.string(1);
+                Genre genre = Genre.forCode(csvLine.genreCode(2));
+                double income = csvLine.parseDouble(3);
+                int age = csvLine.age(namesAges, 1);
+                sink.accept(new Employee(departmentId, name, genre, income, age));
+            } catch (NumberFormatException e) {
+                log.severe(e.getMessage());
+                log.severe("Skipping employee " + csvLine.line());
+                rejectedLines.increment();
+            }
+        };
+    }
+
+    static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    /**
+     * Splits every line of the file into {@link #csvLine} before running the action, the file is mapped unless
+     * it is compressed, in which case it is decompressed ahead of the parsing by {@link CompressedInput}
+     */
+    private void forEachLine(File file, Runnable action) {
+        try {
+            if (CompressedInput.isCompressed(file)) {
+                CompressedInput.forEachLine(file, lineHandler(action));
+            } else {
+                try (FileChannel channel = open(file)) {
+                    MappedLineReader.forEachLine(channel, lineHandler(action));
+                }
+            }
+        } catch (IOException e) {
+            throw new ApplicationException(e.getMessage());
+        }
+    }
+
+    /**
+     * Splits every line of the range into {@link #csvLine} before running the action.
+     * Empty lines are not tolerated.
+     */
+    private void forEachLine(FileChannel channel, long from, long to, Runnable action) throws IOException {
+        MappedLineReader.forEachLine(channel, from, to, MappedLineReader.MAX_WINDOW, lineHandler(action));
+    }
+
+    private MappedLineReader.LineHandler lineHandler(Runnable action) {
+        return (buffer, start, end) -> {
+            csvLine.split(buffer, start, end);
+            if (csvLine.isEmpty()) {
+                throw new ApplicationException("Invalid line ");
+            }
+            action.run();
+        };
+    }
+}
@@ -0,0 +1,40 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.Util;
+
+/**
+ * Enumerates the attributes of the employees that statistics can be calculated for.
+ *
+ * @author karanikasg@gmail.com
+ */
+public enum Measure {
+
+    INCOME {
+        @Override
+        public double value(double income, int age) {
+            return income;
+        }
+    },
+
+    AGE {
+        @Override
+        public double value(double income, int age) {
+            return age;
+        }
+    };
+
+    /**
+     * @return the value of the measure for an employee with the provided attributes
+     */
+    public abstract double value(double income, int age);
+
+    /**
+     * Looks up a measure by its name as {@link Util#forName(Class, String, Enum, String)} does.
+     *
+     * @param name the name of the measure, e.g. income
+     * @return the matching measure
+     */
+    public static Measure forName(String name) {
+        return Util.forName(Measure.class, name, null, "measure");
+    }
+}
@@ -0,0 +1,254 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.ApplicationException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Joins employees sorted by name with an ages file sorted by name, reading the ages file along with the employees
+ * in constant memory. Names are compared with {@link String#compareTo(String)}, names held by a buffer straight by
+ * their UTF-8 bytes in the same order, without decoding them.
+ *
+ * The ages file is verified to be sorted up front, the employees as they are looked up. Should the employees turn out
+ * not to be sorted, the employees looked up so far are joined correctly already and the rest are joined by the
+ * fallback, normally a {@link HashJoin}. Like the hash join, a name that appears more than once in the ages file gets
+ * the age of its last line. Lookups have to happen in the order of the employees file, from a single thread.
+ *
+ * @author karanikasg@gmail.com
+ */
+class MergeJoin implements AgeJoin {
+
+    private final Logger log = Logger.getLogger(getClass().getName());
+
+    private final File ages;
+    private final Supplier<AgeJoin> fallbackFactory;
+    private final AgesReader reader;
+    private AgeJoin fallback;
+    private long misses;
+
+    // the UTF-8 bytes of the name of the employee last looked up, reused across lookups
+    private byte[] previousEmployee = new byte[64];
+    private int previousLength = -1;
+    // the name and age the reader is positioned at, duplicates collapsed
+    private String name;
+    private byte[] nameBytes;
+    private int age;
+    // whether the reader holds the line following the current name already
+    private boolean lookahead;
+
+    private MergeJoin(File ages, Supplier<AgeJoin> fallbackFactory) throws IOException {
+        this.ages = ages;
+        this.fallbackFactory = fallbackFactory;
+        this.reader = new AgesReader(ages, true);
+        advance();
+    }
+
+    /**
+     * @param ages            the ages file
+     * @param fallbackFactory creates the join to fall back to
+     * @return a merge join if the ages file is sorted by name, the fallback otherwise
+     */
+    static AgeJoin create(File ages, Supplier<AgeJoin> fallbackFactory) {
+        Logger log = Logger.getLogger(MergeJoin.class.getName());
+        try {
+            if (!isSorted(ages)) {
+                log.info(String.format("%s is not sorted by name, joining with a hash table instead", ages.getName()));
+                return fallbackFactory.get();
+            }
+            return new MergeJoin(ages, fallbackFactory);
+        } catch (IOException e) {
+            throw new ApplicationException(e.getMessage());
+        }
+    }
+
+    static boolean isSorted(File ages) throws IOException {
+        try (AgesReader reader = new AgesReader(ages, false)) {
+            String previous = null;
+            while (reader.next()) {
+                if (previous != null && reader.name.compareTo(previous) < 0) {
+                    return false;
+                }
+                previous = reader.name;
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public int age(String employee) {
+        byte[] bytes = employee.getBytes(StandardCharsets.UTF_8);
+        return age(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    @Override
+    public int age(ByteBuffer buffer, int start, int end) {
+        if (fallback == null && previousLength >= 0 && compare(buffer, start, end, previousEmployee, previousLength) < 0) {
+            byte[] bytes = new byte[end - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(start + i);
+            }
+            log.info(String.format("Employees are not sorted by name at %s, joining the rest with a hash table",
+                    new String(bytes, StandardCharsets.UTF_8)));
+            close();
+            fallback = fallbackFactory.get();
+        }
+        if (fallback != null) {
+            return fallback.age(buffer, start, end);
+        }
+        remember(buffer, start, end);
+        int comparison = 1;
+        try {
+            while (name != null && (comparison = compare(buffer, start, end, nameBytes, nameBytes.length)) > 0) {
+                advance();
+            }
+        } catch (IOException e) {
+            throw new ApplicationException(e.getMessage());
+        }
+        if (name != null && comparison == 0) {
+            return age;
+        }
+        misses++;
+        return MISSING;
+    }
+
+    @Override
+    public long misses() {
+        return fallback == null ? misses : misses + fallback.misses();
+    }
+
+    @Override
+    public void close() {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            log.warning(String.format("Can't close %s. Exception %s", ages.getName(), e.getMessage()));
+        }
+    }
+
+    /**
+     * Moves to the next distinct name, keeping the age of its last line
+     */
+    private void advance() throws IOException {
+        if (!lookahead && !reader.next()) {
+            name = null;
+            nameBytes = null;
+            return;
+        }
+        name = reader.name;
+        nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        age = reader.age;
+        lookahead = false;
+        while (reader.next()) {
+            if (!reader.name.equals(name)) {
+                lookahead = true;
+                return;
+            }
+            age = reader.age;
+        }
+    }
+
+    private void remember(ByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        if (length > previousEmployee.length) {
+            previousEmployee = Arrays.copyOf(previousEmployee, Math.max(length, previousEmployee.length * 2));
+        }
+        for (int i = 0; i < length; i++) {
+            previousEmployee[i] = buffer.get(start + i);
+        }
+        previousLength = length;
+    }
+
+    /**
+     * Compares a name held by a buffer to another one, both in UTF-8, in the order of
+     * {@link String#compareTo(String)}. The bytes compare unsigned in the order of the code points, which is the order
+     * of the UTF-16 chars except for the supplementary code points: their surrogate chars come before the chars from
+     * {@code U+E000} on, so the lead bytes of both are swapped around.
+     *
+     * @return a negative number, zero or a positive number as the name of the buffer is less than, equal to or greater
+     * than the other one
+     */
+    static int compare(ByteBuffer buffer, int start, int end, byte[] other, int otherLength) {
+        int length = end - start;
+        int common = Math.min(length, otherLength);
+        for (int i = 0; i < common; i++) {
+            int a = buffer.get(start + i) & 0xff;
+            int b = other[i] & 0xff;
+            if (a != b) {
+                return utf16Rank(a) - utf16Rank(b);
+            }
+        }
+        return length - otherLength;
+    }
+
+    /**
+     * @return the rank of a byte that differs first between two names, in the order of the UTF-16 chars it encodes
+     */
+    private static int utf16Rank(int b) {
+        if (b >= 0xf0) {
+            // the lead byte of a supplementary code point, a surrogate pair from U+D800 on
+            return b - 0x02;
+        }
+        if (b == 0xee || b == 0xef) {
+            // the lead byte of U+E000 to U+FFFF
+            return b + 0x10;
+        }
+        return b;
+    }
+
+    /**
+     * Reads the name and age of every valid line of the ages file, one at a time, with the validations of the
+     * scanner based parsing of {@link InputJob}
+     */
+    private static class AgesReader implements AutoCloseable {
+        private final Logger log = Logger.getLogger(getClass().getName());
+
+        private final File file;
+        private final boolean logWrongFormat;
+        private final BufferedReader in;
+        private String name;
+        private int age;
+
+        private AgesReader(File file, boolean logWrongFormat) throws IOException {
+            this.file = file;
+            this.logWrongFormat = logWrongFormat;
+            this.in = new BufferedReader(new InputStreamReader(CompressedInput.open(file), StandardCharsets.UTF_8));
+        }
+
+        /**
+         * @return whether a line was read into the name and age
+         */
+        private boolean next() throws IOException {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (Objects.equals(line, "")) {
+                    throw new ApplicationException("Invalid line " + line);
+                }
+                String[] nameAge = line.split("\\s*,\\s*");
+                if (nameAge.length != 2) {
+                    if (logWrongFormat) {
+                        log.severe(String.format("Wrong format in input %s at line %s", file.getName(), line));
+                    }
+                    continue;
+                }
+                name = nameAge[0];
+                age = Integer.parseInt(nameAge[1]);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
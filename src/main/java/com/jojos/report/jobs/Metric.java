@@ -0,0 +1,43 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.Util;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Enumerates the values of {@link Statistics} a report can present.
+ *
+ * @author karanikasg@gmail.com
+ */
+public enum Metric {
+
+    MIN(Statistics::getMin),
+    MAX(Statistics::getMax),
+    AVERAGE(Statistics::getAvg),
+    STANDARD_DEVIATION(Statistics::getStd),
+    MEDIAN(Statistics::getMedian),
+    PERCENTILE_90(Statistics::get90thPercentile),
+    PERCENTILE_95(Statistics::get95thPercentile),
+    PERCENTILE_99(Statistics::get99thPercentile),
+    COUNT(Statistics::getObservations);
+
+    private final ToDoubleFunction<Statistics> extractor;
+
+    Metric(ToDoubleFunction<Statistics> extractor) {
+        this.extractor = extractor;
+    }
+
+    public double of(Statistics statistics) {
+        return extractor.applyAsDouble(statistics);
+    }
+
+    /**
+     * Looks up a metric by its name as {@link Util#forName(Class, String, Enum, String)} does.
+     *
+     * @param name the name of the metric, e.g. percentile-95
+     * @return the matching metric
+     */
+    public static Metric forName(String name) {
+        return Util.forName(Metric.class, name, null, "metric");
+    }
+}
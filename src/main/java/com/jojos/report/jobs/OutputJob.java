@@ -1,22 +1,34 @@
 package com.jojos.report.jobs;
 
-import com.jojos.report.data.AgeRange;
-import com.jojos.report.data.Department;
+import com.jojos.report.ApplicationException;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.util.Arrays;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
-import static com.jojos.report.Util.INCOME_BY_DEPARTMENT;
-import static com.jojos.report.Util.INCOME_95_BY_DEPARTMENT;
-import static com.jojos.report.Util.INCOME_AVERAGE_BY_AGE_RANGE;
-import static com.jojos.report.Util.EMPLOYEE_AGE_BY_DEPARTMENT;
 import static com.jojos.report.Util.DELIMITER;
+import static com.jojos.report.Util.REPORTS_MANIFEST;
 
 /**
  * The job that outputs the following files
@@ -25,110 +37,413 @@ import static com.jojos.report.Util.DELIMITER;
  * income-average-by-age-range.csv - average income by age ranges with factor of ten
  * employee-age-by-department.csv - median employee age by department
  *
+ * as well as any further reports of the {@link ReportPlan}, e.g. by combinations of dimensions.
+ *
+ * The reports are generated from a {@link ReportPlan}, which makes sure reports sharing the same statistics
+ * calculate them once. Reports are generated one after the other on the calling thread, or concurrently on
+ * an executor when one is provided.
+ *
+ * Every report is written to a hidden temporary file next to it and published by renaming it atomically, so readers
+ * of a report find either the previous one or the complete new one, never a truncated one. When and whether reports
+ * are forced to the disk before they are published depends on the {@link Durability}. Once all reports are published,
+ * a manifest listing them can be published the same way for consumers to poll. Temporary files of the reports left
+ * behind by a run that was killed are deleted when the next one starts, one run at a time per directory is assumed.
+ *
+ * Under {@link FailurePolicy#FAIL_FAST} the reports still running when one fails are cancelled. A report is either
+ * published and part of the outcomes, or cancelled and its temporary file deleted, whichever way the cancellation
+ * races with it, so the outcomes and the manifest always match the reports on the disk.
+ *
  * @author karanikasg@gmail.com
  */
 public class OutputJob {
     private final Logger log = Logger.getLogger(getClass().getName());
 
-    private final Loader loader;
     private final String directoryPath;
+    private final ReportPlan plan;
+    private final Supplier<AggregationResults> aggregator;
+    private ExecutorService executor;
+    private FailurePolicy failurePolicy = FailurePolicy.CONTINUE;
+    private Durability durability = Durability.NONE;
+    private Publisher publisher;
+    private boolean manifest;
+    private RunMetrics metrics = new RunMetrics();
+
+    public OutputJob(EmployeeStore store, String directoryPath) {
+        this(store, directoryPath, PercentileStrategy.SORT);
+    }
+
+    public OutputJob(EmployeeStore store, String directoryPath, PercentileStrategy percentileStrategy) {
+        this(store, directoryPath, percentileStrategy, ReportDefinition.DEFAULTS);
+    }
+
+    public OutputJob(EmployeeStore store, String directoryPath, PercentileStrategy percentileStrategy,
+                     List<ReportDefinition> definitions) {
+        this(store, directoryPath, percentileStrategy, ReportPlan.compile(definitions));
+    }
 
-    public OutputJob(Loader loader, String directoryPath) {
-        this.loader = loader;
+    public OutputJob(EmployeeStore store, String directoryPath, PercentileStrategy percentileStrategy, ReportPlan plan) {
         this.directoryPath = directoryPath;
+        this.publisher = new Publisher(new File(directoryPath), durability);
+        this.plan = plan;
+        this.aggregator = () -> plan.execute(store, percentileStrategy);
+    }
+
+    /**
+     * Generates the reports of a plan out of statistics that are already aggregated,
+     * e.g. by {@link InputJob#parseAndAggregate(ReportPlan, double)}.
+     *
+     * @param results       the statistics of the aggregations of the plan
+     * @param directoryPath where to write the reports
+     * @param plan          the reports
+     */
+    public OutputJob(AggregationResults results, String directoryPath, ReportPlan plan) {
+        this.directoryPath = directoryPath;
+        this.publisher = new Publisher(new File(directoryPath), durability);
+        this.plan = plan;
+        this.aggregator = () -> results;
+    }
+
+    /**
+     * Generate the reports on an executor instead of the calling thread. The executor is not shut down by this job.
+     *
+     * @param executor the executor, null for the calling thread
+     * @return this job
+     */
+    public OutputJob withExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * @param failurePolicy how to react to a failed report
+     * @return this job
+     */
+    public OutputJob withFailurePolicy(FailurePolicy failurePolicy) {
+        this.failurePolicy = failurePolicy;
+        return this;
+    }
+
+    /**
+     * @param durability whether and when reports are forced to the disk before they are published
+     * @return this job
+     */
+    public OutputJob withDurability(Durability durability) {
+        this.durability = durability;
+        this.publisher = new Publisher(new File(directoryPath), durability);
+        return this;
+    }
+
+    /**
+     * Publish a manifest of the reports once all of them are, {@value com.jojos.report.Util#REPORTS_MANIFEST}
+     * with the name and size of every published report, in the order of the plan.
+     *
+     * @param manifest whether to publish the manifest
+     * @return this job
+     */
+    public OutputJob withManifest(boolean manifest) {
+        this.manifest = manifest;
+        return this;
+    }
+
+    /**
+     * @param metrics where to record the time of the statistics and the time, lines and bytes of every report
+     * @return this job
+     */
+    public OutputJob withMetrics(RunMetrics metrics) {
+        this.metrics = metrics;
+        return this;
     }
 
     /**
      * The main functionality of the class is reflected in this class which
      * will generate the reports for all described statistics.
+     *
+     * @return the outcome of every report that was generated or failed, in the order of completion
+     * @throws ApplicationException if any report failed, carrying every failure as a suppressed exception
      */
-    public void generateReports() {
-        generateMedianIncomeByDepartment();
-        generate95PercentileIncomeByDepartment();
-        generateAverageIncomeByAgeRange();
-        generateMedianEmployeeAgeByDepartment();
+    public List<ReportOutcome> generateReports() {
+        List<String> fileNames = plan.getDefinitions().stream().map(ReportDefinition::getFileName).collect(Collectors.toList());
+        fileNames.add(REPORTS_MANIFEST);
+        publisher.deleteTemporaryFiles(fileNames);
+        long start = System.nanoTime();
+        AggregationResults results = aggregator.get();
+        metrics.phase(RunMetrics.STATISTICS).timeSince(start);
+        Publication publication = new Publication();
+        if (executor == null) {
+            generateSequentially(results, publication);
+        } else {
+            generateConcurrently(results, publication);
+        }
+        // no report is published or enqueued from now on, whatever is still running
+        publication.close();
+        List<ReportOutcome> outcomes = publication.outcomes();
+        if (!publication.unpublished.isEmpty()) {
+            outcomes = publishBatch(outcomes, publication.unpublished);
+        }
+        if (manifest) {
+            publishManifest(outcomes);
+        }
+        for (ReportOutcome outcome : outcomes) {
+            RunMetrics.Phase report = metrics.report(outcome.getFileName()).addNanos(outcome.getNanos());
+            if (outcome.isFailed()) {
+                report.failed();
+            }
+        }
+
+        List<ReportOutcome> failures = outcomes.stream().filter(ReportOutcome::isFailed).collect(Collectors.toList());
+        if (!failures.isEmpty()) {
+            ApplicationException exception = new ApplicationException(String.format("%d of %d reports failed: %s",
+                    failures.size(), plan.getDefinitions().size(),
+                    failures.stream().map(ReportOutcome::getFileName).collect(Collectors.joining(DELIMITER))));
+            failures.forEach(failure -> exception.addSuppressed(failure.getFailure()));
+            throw exception;
+        }
+        return outcomes;
+    }
+
+    private void generateSequentially(AggregationResults results, Publication publication) {
+        for (ReportDefinition definition : plan.getDefinitions()) {
+            ReportOutcome outcome = timedReport(definition, results, publication);
+            if (outcome.isFailed() && failurePolicy == FailurePolicy.FAIL_FAST) {
+                break;
+            }
+        }
+    }
+
+    private void generateConcurrently(AggregationResults results, Publication publication) {
+        CompletionService<ReportOutcome> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<ReportOutcome>> futures = new ArrayList<>();
+        for (ReportDefinition definition : plan.getDefinitions()) {
+            futures.add(completionService.submit(() -> timedReport(definition, results, publication)));
+        }
+
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                Future<ReportOutcome> future = completionService.take();
+                if (future.isCancelled()) {
+                    continue;
+                }
+                ReportOutcome outcome = future.get();
+                if (outcome != null && outcome.isFailed() && failurePolicy == FailurePolicy.FAIL_FAST) {
+                    // before cancelling, so that the reports published until then are all part of the outcomes
+                    publication.close();
+                    futures.forEach(pending -> pending.cancel(true));
+                }
+            }
+        } catch (InterruptedException e) {
+            publication.close();
+            futures.forEach(pending -> pending.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new ApplicationException("Interrupted while generating reports");
+        } catch (ExecutionException e) {
+            // timedReport() catches everything
+            throw new ApplicationException(e.getCause().toString());
+        }
     }
 
     /**
-     * Generates report for median income by department
+     * Generates a report and publishes it, or enqueues it in {@link Durability#BATCH}, unless the publication closed
+     * meanwhile
+     *
+     * @return the outcome of the report, null if it was cancelled
      */
-    private void generateMedianIncomeByDepartment() {
-        File medianIncomeByDepartmentFile = new File(directoryPath, INCOME_BY_DEPARTMENT);
-        try (FileOutputStream fos = new FileOutputStream(medianIncomeByDepartmentFile);
-             BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(fos))) {
-            writeLine(bw, "DEPARTMENT", "MEDIAN INCOME");
-
-            for (Department department : loader.getDepartments()) {
-                Statistics stats = Statistics.calculate(loader.getEmployeesIncomeForDepartment(department));
-                writeLine(bw, department.getName(), String.format("%.2f", stats.getMedian()));
-            }
+    private ReportOutcome timedReport(ReportDefinition definition, AggregationResults results, Publication publication) {
+        long start = System.nanoTime();
+        Throwable failure = null;
+        Path temporary = null;
+        try {
+            temporary = generateReport(definition, results.statistics(definition.getAggregation()), results);
         } catch (IOException e) {
-            logExceptionOnFileWrite(e, INCOME_BY_DEPARTMENT);
+            logExceptionOnFileWrite(e, definition.getFileName());
+            failure = e;
+        } catch (RuntimeException e) {
+            log.severe("Can't generate report " + definition.getFileName() + ". Exception " + e);
+            failure = e;
+        }
+
+        ReportOutcome outcome;
+        publication.lock.readLock().lock();
+        try {
+            if (publication.closed) {
+                if (temporary != null) {
+                    publisher.deleteQuietly(temporary);
+                }
+                log.info("Report " + definition.getFileName() + " cancelled");
+                return null;
+            }
+            if (temporary != null) {
+                try {
+                    if (durability == Durability.BATCH) {
+                        publication.unpublished.put(definition.getFileName(), temporary);
+                    } else {
+                        publisher.publish(temporary, definition.getFileName());
+                    }
+                } catch (IOException e) {
+                    logExceptionOnFileWrite(e, definition.getFileName());
+                    failure = e;
+                }
+            }
+            outcome = new ReportOutcome(definition.getFileName(), System.nanoTime() - start, failure);
+            publication.outcomes.add(outcome);
+        } finally {
+            publication.lock.readLock().unlock();
         }
+        log.info(outcome.toString());
+        return outcome;
     }
 
     /**
-     * Generates the report for 95-percentile income by department
+     * Generates the report of the definition into a temporary file, one line per group, with a column per dimension
+     * of the grouping, and forces it to the disk in {@link Durability#FILE}
+     *
+     * @return the temporary file
      */
-    private void generate95PercentileIncomeByDepartment() {
-        File income95ByDepartmentFile = new File(directoryPath, INCOME_95_BY_DEPARTMENT);
-        try (FileOutputStream fos = new FileOutputStream(income95ByDepartmentFile);
-             BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(fos))) {
-            writeLine(bw, "DEPARTMENT", "95-PERCENTILE INCOME");
-
-            for (Department department : loader.getDepartments()) {
-                Statistics stats = Statistics.calculate(loader.getEmployeesIncomeForDepartment(department));
-                writeLine(bw, department.getName(), String.format("%.2f", stats.get95thPercentile()));
+    private Path generateReport(ReportDefinition definition, Statistics[] statistics, AggregationResults results) throws IOException {
+        Path temporary = publisher.temporaryFile(definition.getFileName());
+        try (CsvWriter writer = new CsvWriter(temporary.toFile())) {
+            writer.fields(definition.groupHeaders()).field(definition.getValueHeader()).endLine();
+
+            for (int key = 0; key < statistics.length; key++) {
+                double value = definition.getMetric().of(statistics[key]);
+                writer.fields(definition.getGrouping().labels(results.getDepartments(), results.getAgeBuckets(), key))
+                        .field(value, definition.getFormat())
+                        .endLine();
             }
-        } catch (IOException e) {
-            logExceptionOnFileWrite(e, INCOME_95_BY_DEPARTMENT);
+            if (durability == Durability.FILE) {
+                writer.sync();
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
         }
+        metrics.report(definition.getFileName()).addRows(statistics.length).addBytes(Files.size(temporary));
+        return temporary;
     }
 
     /**
-     * Generates the report for average income by age ranges with factor of ten
+     * Forces all reports generated in {@link Durability#BATCH} to the disk, publishes them and forces the renames
+     * to the disk, all at once. The files are forced concurrently on the executor, if there is one.
+     *
+     * @return the outcomes, the reports that failed to be published turned into failures
      */
-    private void generateAverageIncomeByAgeRange() {
-        File averageIncomeByAgeRangeFile = new File(directoryPath, INCOME_AVERAGE_BY_AGE_RANGE);
-        try (FileOutputStream fos = new FileOutputStream(averageIncomeByAgeRangeFile);
-             BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(fos))) {
-            writeLine(bw, "AGE RANGE", "AVERAGE INCOME");
-
-            for (AgeRange ageRange : AgeRange.values()) {
-                Statistics stats = Statistics.calculate(loader.getEmployeesIncomeForAgeRange(ageRange));
-                writeLine(bw, ageRange.toString(), String.format("%.2f", stats.getAvg()));
+    private List<ReportOutcome> publishBatch(List<ReportOutcome> outcomes, Map<String, Path> unpublished) {
+        Map<String, Future<?>> syncs = new LinkedHashMap<>();
+        unpublished.forEach((fileName, temporary) -> {
+            Runnable sync = () -> {
+                try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                } catch (IOException e) {
+                    throw new ApplicationException(String.format("Can't force %s to the disk. Exception %s", fileName, e));
+                }
+            };
+            syncs.put(fileName, executor == null ? completed(sync) : executor.submit(sync));
+        });
+
+        Map<String, Throwable> failures = new LinkedHashMap<>();
+        syncs.forEach((fileName, sync) -> {
+            Path temporary = unpublished.get(fileName);
+            try {
+                sync.get();
+                publisher.publish(temporary, fileName);
+            } catch (ExecutionException e) {
+                failures.put(fileName, e.getCause());
+                publisher.deleteQuietly(temporary);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures.put(fileName, e);
+                publisher.deleteQuietly(temporary);
+            } catch (IOException e) {
+                failures.put(fileName, e);
+            }
+        });
+        publisher.syncDirectory();
+
+        if (failures.isEmpty()) {
+            return outcomes;
+        }
+        List<ReportOutcome> published = new ArrayList<>();
+        for (ReportOutcome outcome : outcomes) {
+            Throwable failure = failures.get(outcome.getFileName());
+            if (failure == null) {
+                published.add(outcome);
+            } else {
+                log.severe("Can't publish report " + outcome.getFileName() + ". Exception " + failure);
+                published.add(new ReportOutcome(outcome.getFileName(), outcome.getNanos(), failure));
             }
-        } catch (IOException e) {
-            logExceptionOnFileWrite(e, INCOME_AVERAGE_BY_AGE_RANGE);
         }
+        return published;
     }
 
     /**
-     * Generates the report for median employee age by department
+     * Publishes the manifest of the reports published, in the order of the plan, after the reports themselves.
+     * A failure is logged only, the reports are published anyway.
      */
-    private void generateMedianEmployeeAgeByDepartment() {
-        File medianEmployeeAgeByDepartmentFile = new File(directoryPath, EMPLOYEE_AGE_BY_DEPARTMENT);
-        try (FileOutputStream fos = new FileOutputStream(medianEmployeeAgeByDepartmentFile);
-             BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(fos))) {
-            writeLine(bw, "DEPARTMENT", "MEDIAN EMPLOYEE AGE");
-
-            for (Department department : loader.getDepartments()) {
-                Statistics stats = Statistics.calculate(loader.getEmployeesAgeForDepartment(department));
-                writeLine(bw, department.getName(), String.format("%.2f", stats.getMedian()));
+    private void publishManifest(List<ReportOutcome> outcomes) {
+        Map<String, ReportOutcome> byFileName = new LinkedHashMap<>();
+        outcomes.forEach(outcome -> byFileName.put(outcome.getFileName(), outcome));
+        Path temporary = publisher.temporaryFile(REPORTS_MANIFEST);
+        try {
+            try (CsvWriter writer = new CsvWriter(temporary.toFile())) {
+                writer.field("FILE").field("BYTES").endLine();
+                for (ReportDefinition definition : plan.getDefinitions()) {
+                    ReportOutcome outcome = byFileName.get(definition.getFileName());
+                    if (outcome != null && !outcome.isFailed()) {
+                        long bytes = Files.size(new File(directoryPath, definition.getFileName()).toPath());
+                        writer.field(definition.getFileName()).field(Long.toString(bytes)).endLine();
+                    }
+                }
+                if (durability != Durability.NONE) {
+                    writer.sync();
+                }
+            }
+            publisher.publish(temporary, REPORTS_MANIFEST);
+            if (durability == Durability.BATCH) {
+                publisher.syncDirectory();
             }
         } catch (IOException e) {
-            logExceptionOnFileWrite(e, EMPLOYEE_AGE_BY_DEPARTMENT);
+            publisher.deleteQuietly(temporary);
+            logExceptionOnFileWrite(e, REPORTS_MANIFEST);
         }
     }
 
-    private void logExceptionOnFileWrite(Exception ex, String fileName) {
-        log.severe("Can't write to output file " + fileName + ". Exception " + ex.getMessage());
+    /**
+     * The reports of a run published, or enqueued in {@link Durability#BATCH}, until it is closed. Reports publish
+     * concurrently holding the read lock, closing takes the write lock, so it waits for the ones publishing and every
+     * report after it finds the publication closed.
+     */
+    private static final class Publication {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        // the reports generated but not published yet, by file name, only in Durability.BATCH
+        private final Map<String, Path> unpublished = new ConcurrentHashMap<>();
+        private final Queue<ReportOutcome> outcomes = new ConcurrentLinkedQueue<>();
+        // guarded by the lock
+        private boolean closed;
+
+        private void close() {
+            lock.writeLock().lock();
+            try {
+                closed = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * @return the outcomes of the reports published or failed, in the order of completion
+         */
+        private List<ReportOutcome> outcomes() {
+            return new ArrayList<>(outcomes);
+        }
     }
 
-    private void writeLine(BufferedWriter bw, String... values) throws IOException {
-        String value = Arrays.stream(values).collect(Collectors.joining(DELIMITER));
-        bw.write(value);
-        bw.newLine();
+    private static Future<?> completed(Runnable task) {
+        FutureTask<?> future = new FutureTask<>(task, null);
+        future.run();
+        return future;
+    }
+
+    private void logExceptionOnFileWrite(Exception ex, String fileName) {
+        log.severe("Can't write to output file " + fileName + ". Exception " + ex.getMessage());
     }
 
 }
@@ -0,0 +1,212 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.ApplicationException;
+import com.jojos.report.data.Employee;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Parses the ages and employees files on a {@link ForkJoinPool}.
+ *
+ * A file is cut into byte ranges that end right after a line terminator, and every range is parsed
+ * by a separate {@link MappedParser}. The partial results are handed over to the caller in the order of the
+ * ranges, therefore the outcome is exactly the one of a sequential parse of the whole file. Employees are handed over
+ * to a single sink as soon as the ranges before theirs are, from ranges of about the minimum chunk size of which only
+ * a few per thread are parsed ahead, so that no more than those are held in memory however large the file.
+ *
+ * A compressed file can't be cut into ranges of its decompressed bytes, it is parsed on the calling thread instead,
+ * while {@link CompressedInput} decompresses it on others.
+ *
+ * @author karanikasg@gmail.com
+ */
+class ParallelParser {
+
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final long minChunkSize;
+    private final LongAdder rejectedLines;
+
+    ParallelParser() {
+        this(new LongAdder());
+    }
+
+    /**
+     * @param rejectedLines the counter of the lines rejected for their format, shared by the parsers of all ranges
+     */
+    ParallelParser(LongAdder rejectedLines) {
+        this(ForkJoinPool.commonPool(), MIN_CHUNK_SIZE, rejectedLines);
+    }
+
+    ParallelParser(ForkJoinPool pool, long minChunkSize) {
+        this(pool, minChunkSize, new LongAdder());
+    }
+
+    private ParallelParser(ForkJoinPool pool, long minChunkSize, LongAdder rejectedLines) {
+        this.pool = pool;
+        this.minChunkSize = minChunkSize;
+        this.rejectedLines = rejectedLines;
+    }
+
+    void parseAges(File ages, AgeTable namesAges) {
+        if (CompressedInput.isCompressed(ages)) {
+            new MappedParser(rejectedLines).parseAges(ages, namesAges);
+            return;
+        }
+        List<AgeTable> partials = parse(ages, (channel, range) -> () -> {
+            AgeTable partial = new AgeTable();
+            new MappedParser(rejectedLines).parseAges(channel, range[0], range[1], ages.getName(), partial);
+            return partial;
+        });
+        // later lines win, same as a sequential parse
+        partials.forEach(namesAges::putAll);
+    }
+
+    void parseEmployees(File employees, AgeJoin namesAges, Consumer<Employee> sink) {
+        if (CompressedInput.isCompressed(employees)) {
+            new MappedParser(rejectedLines).parseEmployees(employees, namesAges, sink);
+            return;
+        }
+        try (FileChannel channel = MappedParser.open(employees)) {
+            Iterator<long[]> ranges = split(channel, Long.MAX_VALUE).iterator();
+            Deque<Future<List<Employee>>> ahead = new ArrayDeque<>();
+            try {
+                int window = pool.getParallelism() * CHUNKS_PER_THREAD;
+                while (ranges.hasNext() || !ahead.isEmpty()) {
+                    while (ahead.size() < window && ranges.hasNext()) {
+                        long[] range = ranges.next();
+                        ahead.add(pool.submit(() -> {
+                            List<Employee> partial = new ArrayList<>();
+                            new MappedParser(rejectedLines).parseEmployees(channel, range[0], range[1], employees.getName(), namesAges, partial::add);
+                            return partial;
+                        }));
+                    }
+                    ahead.remove().get().forEach(sink);
+                }
+            } finally {
+                ahead.forEach(future -> future.cancel(true));
+            }
+        } catch (IOException | ExecutionException | InterruptedException e) {
+            throw failure(employees, e);
+        }
+    }
+
+    /**
+     * Same as {@link #parseEmployees(File, AgeJoin, Consumer)}, handing the employees of every range to a sink of
+     * its own from the thread parsing the range, instead of collecting them and handing them over in order.
+     *
+     * @param sinkFactory creates the sink of every range, in the order of the ranges, from the calling thread
+     */
+    void parseEmployeesConcurrently(File employees, AgeJoin namesAges, Supplier<? extends Consumer<Employee>> sinkFactory) {
+        if (CompressedInput.isCompressed(employees)) {
+            new MappedParser(rejectedLines).parseEmployees(employees, namesAges, sinkFactory.get());
+            return;
+        }
+        parse(employees, (channel, range) -> {
+            Consumer<Employee> sink = sinkFactory.get();
+            return () -> {
+                new MappedParser(rejectedLines).parseEmployees(channel, range[0], range[1], employees.getName(), namesAges, sink);
+                return null;
+            };
+        });
+    }
+
+    private interface RangeTaskFactory<T> {
+        Callable<T> create(FileChannel channel, long[] range);
+    }
+
+    private <T> List<T> parse(File file, RangeTaskFactory<T> taskFactory) {
+        try (FileChannel channel = MappedParser.open(file)) {
+            List<Callable<T>> tasks = new ArrayList<>();
+            for (long[] range : split(channel, (long) pool.getParallelism() * CHUNKS_PER_THREAD)) {
+                tasks.add(taskFactory.create(channel, range));
+            }
+            List<T> results = new ArrayList<>(tasks.size());
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (IOException | ExecutionException | InterruptedException e) {
+            throw failure(file, e);
+        }
+    }
+
+    private static RuntimeException failure(File file, Exception e) {
+        if (e instanceof ExecutionException) {
+            if (e.getCause() instanceof RuntimeException) {
+                return (RuntimeException) e.getCause();
+            }
+            return new ApplicationException(e.getCause().getMessage());
+        }
+        if (e instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+            return new ApplicationException("Interrupted while parsing " + file.getName());
+        }
+        return new ApplicationException(e.getMessage());
+    }
+
+    /**
+     * Cuts the channel into consecutive ranges of roughly equal size, a few per thread. Each range ends either at the
+     * end of the file or right after a line terminator.
+     *
+     * @param channel the channel to split
+     * @return pairs of inclusive start and exclusive end positions
+     * @throws IOException if the channel can't be read
+     */
+    List<long[]> split(FileChannel channel) throws IOException {
+        return split(channel, (long) pool.getParallelism() * CHUNKS_PER_THREAD);
+    }
+
+    /**
+     * Same as {@link #split(FileChannel)}, into at most the given number of ranges of at least the minimum chunk size
+     */
+    private List<long[]> split(FileChannel channel, long maxChunks) throws IOException {
+        long size = channel.size();
+        long chunks = Math.max(1, Math.min(maxChunks, size / minChunkSize));
+        List<long[]> ranges = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long start = 0;
+        for (long i = 1; i <= chunks && start < size; i++) {
+            long end = i == chunks ? size : nextLineStart(channel, Math.max(start, size * i / chunks), probe);
+            if (end > start) {
+                ranges.add(new long[]{start, end});
+                start = end;
+            }
+        }
+        return ranges;
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, ByteBuffer probe) throws IOException {
+        long size = channel.size();
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,43 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.Util;
+
+/**
+ * Enumerates the strategies available to {@link InputJob} for reading the input files.
+ *
+ * @author karanikasg@gmail.com
+ */
+public enum ParseMode {
+
+    /**
+     * Line by line through {@link java.util.Scanner}, splitting every line with a regular expression
+     */
+    SCANNER,
+
+    /**
+     * Memory-mapped files, tokenized at byte level straight into primitive fields
+     */
+    MAPPED,
+
+    /**
+     * Same as {@link #MAPPED}, with the ages and employees files split in ranges that are parsed on all cores
+     */
+    PARALLEL,
+
+    /**
+     * Same as {@link #MAPPED}, with the employees file read, parsed and loaded by stages running at the same time
+     *
+     * @see IngestPipeline
+     */
+    PIPELINE;
+
+    /**
+     * Looks up a parse mode by its name as {@link Util#forName(Class, String, Enum, String)} does.
+     *
+     * @param name the name of the parse mode, may be null
+     * @return the matching parse mode or {@link #SCANNER} if no name was provided
+     */
+    public static ParseMode forName(String name) {
+        return Util.forName(ParseMode.class, name, SCANNER, "parser");
+    }
+}
@@ -0,0 +1,33 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.Util;
+
+/**
+ * Enumerates the ways {@link Statistics} can locate the median and the percentiles of the numbers.
+ *
+ * @author karanikasg@gmail.com
+ */
+public enum PercentileStrategy {
+
+    /**
+     * Sort all numbers, O(n log n)
+     */
+    SORT,
+
+    /**
+     * Select only the needed order statistics with a multi-quickselect, expected O(n). The order statistics are
+     * identical to the ones of {@link #SORT}, the average and standard deviation are summed in the original order of
+     * the numbers and differ within the bounds of {@link Statistics#calculateInPlace(double[], int, int, PercentileStrategy)}.
+     */
+    SELECT;
+
+    /**
+     * Looks up a strategy by its name as {@link Util#forName(Class, String, Enum, String)} does.
+     *
+     * @param name the name of the strategy, may be null
+     * @return the matching strategy or {@link #SORT} if no name was provided
+     */
+    public static PercentileStrategy forName(String name) {
+        return Util.forName(PercentileStrategy.class, name, SORT, "percentile strategy");
+    }
+}
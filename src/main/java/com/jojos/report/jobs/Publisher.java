@@ -0,0 +1,134 @@
+package com.jojos.report.jobs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Publishes the files of a directory the way {@link OutputJob} publishes reports: every file is written to a hidden
+ * temporary file next to it and renamed atomically over the previous one once it is complete, so readers find either
+ * the previous file or the complete new one. When the files and the renames are forced to the disk depends on the
+ * {@link Durability}.
+ *
+ * @author karanikasg@gmail.com
+ */
+final class Publisher {
+
+    private static final Pattern TEMPORARY_FILE = Pattern.compile("\\.(.+)\\.[0-9a-f]{1,16}\\.tmp");
+
+    private final Logger log = Logger.getLogger(getClass().getName());
+
+    private final File directory;
+    private final Durability durability;
+
+    Publisher(File directory, Durability durability) {
+        this.directory = directory;
+        this.durability = durability;
+    }
+
+    /**
+     * @return a hidden file next to the published one, unique among concurrent runs
+     */
+    Path temporaryFile(String fileName) {
+        return new File(directory, "." + fileName + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp").toPath();
+    }
+
+    /**
+     * Deletes the {@link #temporaryFile(String) temporary files} of the files that a run killed while publishing them
+     * left behind. Files of other names are left alone.
+     *
+     * @param fileNames the names of the published files
+     */
+    void deleteTemporaryFiles(Collection<String> fileNames) {
+        File[] temporaryFiles = directory.listFiles((dir, name) -> {
+            Matcher matcher = TEMPORARY_FILE.matcher(name);
+            return matcher.matches() && fileNames.contains(matcher.group(1));
+        });
+        if (temporaryFiles == null) {
+            return;
+        }
+        for (File temporary : temporaryFiles) {
+            log.info("Deleting " + temporary.getName() + " left behind by a previous run");
+            deleteQuietly(temporary.toPath());
+        }
+    }
+
+    /**
+     * Renames a temporary file to the published one, atomically unless the file system can't, replacing the previous
+     * one, and forces the rename to the disk in {@link Durability#FILE}. The temporary file is deleted if it fails.
+     */
+    void publish(Path temporary, String fileName) throws IOException {
+        Path published = new File(directory, fileName).toPath();
+        try {
+            try {
+                Files.move(temporary, published, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                log.warning("Can't publish " + fileName + " atomically, replacing it");
+                Files.move(temporary, published, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        if (durability == Durability.FILE) {
+            syncDirectory();
+        }
+    }
+
+    /**
+     * Publishes a file of the content on its own, forcing it to the disk first unless in {@link Durability#NONE}
+     * and forcing its rename as well in {@link Durability#BATCH}, since there is no batch to wait for.
+     */
+    void publish(String fileName, byte[] content) throws IOException {
+        Path temporary = temporaryFile(fileName);
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (durability != Durability.NONE) {
+                    channel.force(true);
+                }
+            }
+            publish(temporary, fileName);
+            if (durability == Durability.BATCH) {
+                syncDirectory();
+            }
+        } catch (IOException e) {
+            deleteQuietly(temporary);
+            throw e;
+        }
+    }
+
+    /**
+     * Forces the entries of the directory, i.e. the renames of the published files, to the disk. Not every platform
+     * can open a directory, where it can't this is a no-op.
+     */
+    void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.fine("Can't force directory " + directory + " to the disk. Exception " + e.getMessage());
+        }
+    }
+
+    void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warning("Can't delete " + path + ". Exception " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.ApplicationException;
+
+/**
+ * A mergeable summary of a stream of numbers that answers quantile queries with a bounded relative error,
+ * in memory that depends on the range of the numbers and not on how many they are.
+ *
+ * The numbers are counted in buckets of exponentially growing width: bucket {@code i} holds the numbers in
+ * (&gamma;<sup>i-1</sup>, &gamma;<sup>i</sup>] with &gamma; = (1 + &alpha;) / (1 - &alpha;), and every number of a
+ * bucket is represented by 2&gamma;<sup>i</sup> / (&gamma; + 1). Negative numbers are counted the same way by their
+ * magnitude, numbers too close to zero to have a bucket are counted as zero.
+ *
+ * The error bound: a quantile returned for rank {@code r} is within a relative error of &alpha; of the number
+ * that has rank {@code r} in the sorted stream, i.e. |returned - exact| &le; &alpha; |exact|. The count, minimum,
+ * maximum, average and standard deviation are exact, apart from the summation order.
+ * Merging two sketches of the same accuracy gives the sketch of the concatenated streams, with the same bound.
+ *
+ * For incomes between 1 and 10<sup>9</sup> and &alpha; = 1% a sketch has at most about a thousand buckets.
+ *
+ * @author karanikasg@gmail.com
+ */
+public class QuantileSketch {
+
+    /**
+     * The default relative accuracy &alpha;
+     */
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double multiplier;
+    private final double minIndexable;
+
+    private final Buckets positives = new Buckets();
+    private final Buckets negatives = new Buckets();
+    private long zeros;
+
+    private long count;
+    private double total;
+    private double sumOfSquares;
+    private double smallest = Double.POSITIVE_INFINITY;
+    private double largest = Double.NEGATIVE_INFINITY;
+
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    /**
+     * @param relativeAccuracy the relative error &alpha; of the quantiles, between 0 and 1 exclusive
+     */
+    public QuantileSketch(double relativeAccuracy) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+            throw new ApplicationException(String.format("Invalid relative accuracy %s", relativeAccuracy));
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.multiplier = 1 / Math.log(gamma);
+        // subnormal numbers don't get a bucket of their own
+        this.minIndexable = Double.MIN_NORMAL * gamma;
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Counts a number. NaN is not a number and is ignored.
+     *
+     * @param value the number
+     */
+    public void add(double value) {
+        if (value != value) {
+            return;
+        }
+        if (value >= minIndexable) {
+            positives.add(index(value), 1);
+        } else if (value <= -minIndexable) {
+            negatives.add(index(-value), 1);
+        } else {
+            zeros++;
+        }
+        count++;
+        total += value;
+        sumOfSquares += value * value;
+        if (value < smallest) {
+            smallest = value;
+        }
+        if (value > largest) {
+            largest = value;
+        }
+    }
+
+    /**
+     * Adds the numbers counted by another sketch to this one.
+     *
+     * @param other a sketch of the same relative accuracy
+     */
+    public void merge(QuantileSketch other) {
+        if (other.gamma != gamma) {
+            throw new ApplicationException(String.format("Can't merge a sketch of accuracy %s into one of %s",
+                    other.relativeAccuracy, relativeAccuracy));
+        }
+        positives.addAll(other.positives);
+        negatives.addAll(other.negatives);
+        zeros += other.zeros;
+        count += other.count;
+        total += other.total;
+        sumOfSquares += other.sumOfSquares;
+        smallest = Math.min(smallest, other.smallest);
+        largest = Math.max(largest, other.largest);
+    }
+
+    /**
+     * @param quantile between 0 and 1 inclusive
+     * @return the approximate number below which the quantile of the numbers lies, NaN if there are none
+     */
+    public double quantile(double quantile) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        return valueAtRank(Math.max(0, (long) Math.ceil(quantile * count) - 1));
+    }
+
+    /**
+     * The statistics of the counted numbers, with the same definitions of median and percentiles as
+     * {@link Statistics#calculate(double[], int, int)}.
+     *
+     * @return approximate statistics of the counted numbers
+     */
+    public Statistics statistics() {
+        if (count == 0) {
+            return Statistics.of(0, 0, 0, 0, 0, 0, 0, 0, 0);
+        }
+        if (count > Integer.MAX_VALUE) {
+            throw new ApplicationException(String.format("%d observations don't fit in statistics", count));
+        }
+        int length = (int) count;
+        long middle = length / 2;
+        double median = length % 2 == 0 ? (valueAtRank(middle - 1) + valueAtRank(middle)) / 2d : valueAtRank(middle);
+        double average = total / (double) length;
+        double meanOfSquares = sumOfSquares / (double) length;
+        double standardDeviation = Math.sqrt(meanOfSquares - (average * average));
+        // same bounds as Statistics, which starts the minimum at Double.MAX_VALUE and the maximum at 0
+        return Statistics.of(Math.min(smallest, Double.MAX_VALUE), Math.max(largest, 0), average, standardDeviation,
+                median, quantile(0.99), quantile(0.95), quantile(0.9), length);
+    }
+
+    /**
+     * The representative number of the bucket the number of the provided rank is counted in, clamped to the
+     * exact minimum and maximum. The first and last ranks are exact.
+     */
+    private double valueAtRank(long rank) {
+        if (rank == 0) {
+            return smallest;
+        }
+        if (rank == count - 1) {
+            return largest;
+        }
+        double value;
+        long negativeCount = negatives.total;
+        if (rank < negativeCount) {
+            // the largest magnitudes come first
+            value = -representative(negatives.indexAtRank(negativeCount - 1 - rank));
+        } else if (rank < negativeCount + zeros) {
+            value = 0;
+        } else {
+            value = representative(positives.indexAtRank(rank - negativeCount - zeros));
+        }
+        return Math.max(smallest, Math.min(largest, value));
+    }
+
+    private int index(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) * multiplier);
+    }
+
+    private double representative(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    /**
+     * Counts per bucket index, in an array that grows in both directions as needed
+     */
+    private static class Buckets {
+        private long[] counts = new long[0];
+        private int offset;
+        private long total;
+
+        private void add(int index, long count) {
+            if (counts.length == 0) {
+                counts = new long[16];
+                offset = index - counts.length / 2;
+            }
+            if (index < offset || index >= offset + counts.length) {
+                grow(index);
+            }
+            counts[index - offset] += count;
+            total += count;
+        }
+
+        private void addAll(Buckets other) {
+            for (int i = 0; i < other.counts.length; i++) {
+                if (other.counts[i] != 0) {
+                    add(other.offset + i, other.counts[i]);
+                }
+            }
+        }
+
+        private void grow(int index) {
+            int from = Math.min(index, offset);
+            int to = Math.max(index + 1, offset + counts.length);
+            // leave some room in the direction of the growth, buckets tend to be added next to each other
+            int slack = Math.max(16, (to - from) / 2);
+            int newOffset = index < offset ? from - slack : from;
+            long[] grown = new long[to - from + slack];
+            System.arraycopy(counts, 0, grown, offset - newOffset, counts.length);
+            counts = grown;
+            offset = newOffset;
+        }
+
+        /**
+         * @return the index of the bucket holding the number of the provided rank, ranks starting at the lowest index
+         */
+        private int indexAtRank(long rank) {
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen > rank) {
+                    return offset + i;
+                }
+            }
+            throw new IllegalStateException("Rank " + rank + " out of " + total);
+        }
+    }
+}
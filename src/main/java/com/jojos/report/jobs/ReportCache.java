@@ -0,0 +1,248 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.ApplicationException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * The statistics of the groups of a previous run, kept in a file next to the reports, so that a run over mostly
+ * unchanged input recalculates only the groups whose input changed.
+ *
+ * Every group is identified by its aggregation and its label, e.g. the department name, and carries a
+ * {@link Fingerprint} of the values it was calculated from. A group is clean if the values of the current run have
+ * the same fingerprint, its statistics are then taken from the cache instead of being calculated again. Only the
+ * groups of the current run are saved, so departments and age ranges that disappeared are dropped.
+ *
+ * The cache is discarded as a whole if it was written by another version or with another {@link PercentileStrategy}.
+ * Thread safe.
+ *
+ * @author karanikasg@gmail.com
+ */
+public class ReportCache {
+
+    /**
+     * The name of the cache file in the directory of the reports
+     */
+    public static final String FILE_NAME = ".report-cache";
+
+    private static final int VERSION = 1;
+
+    private final Logger log = Logger.getLogger(getClass().getName());
+
+    private final File file;
+    private final PercentileStrategy percentileStrategy;
+    private final Map<String, Entry> previous;
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    private ReportCache(File file, PercentileStrategy percentileStrategy, Map<String, Entry> previous) {
+        this.file = file;
+        this.percentileStrategy = percentileStrategy;
+        this.previous = previous;
+    }
+
+    /**
+     * Reads the cache of the reports of a directory. A missing, unreadable or incompatible cache file is an empty cache.
+     *
+     * @param directory          the directory of the reports
+     * @param percentileStrategy the strategy the statistics are calculated with
+     * @return the cache
+     */
+    public static ReportCache load(File directory, PercentileStrategy percentileStrategy) {
+        Logger log = Logger.getLogger(ReportCache.class.getName());
+        File file = new File(directory, FILE_NAME);
+        if (!file.isFile()) {
+            return new ReportCache(file, percentileStrategy, Collections.emptyMap());
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != VERSION || !in.readUTF().equals(percentileStrategy.name())) {
+                log.info(String.format("%s was written differently, recalculating all groups", file));
+                return new ReportCache(file, percentileStrategy, Collections.emptyMap());
+            }
+            int size = in.readInt();
+            Map<String, Entry> entries = new ConcurrentHashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                String key = in.readUTF();
+                Fingerprint fingerprint = new Fingerprint(in.readInt(), in.readLong(), in.readLong());
+                Statistics statistics = Statistics.of(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(),
+                        in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(), in.readInt());
+                entries.put(key, new Entry(fingerprint, statistics));
+            }
+            return new ReportCache(file, percentileStrategy, entries);
+        } catch (IOException e) {
+            log.warning(String.format("Can't read %s, recalculating all groups. Exception %s", file, e.getMessage()));
+            return new ReportCache(file, percentileStrategy, Collections.emptyMap());
+        }
+    }
+
+    /**
+     * @param aggregation the aggregation of the group
+     * @param label       the label of the group
+     * @param fingerprint the fingerprint of the values of the group in the current run
+     * @return the statistics of the previous run if the values are the same, null otherwise
+     */
+    Statistics get(ReportPlan.Aggregation aggregation, String label, Fingerprint fingerprint) {
+        String key = key(aggregation, label);
+        Entry entry = previous.get(key);
+        if (entry == null || !entry.fingerprint.equals(fingerprint)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        current.put(key, entry);
+        return entry.statistics;
+    }
+
+    /**
+     * Keeps the statistics of a group calculated in the current run
+     */
+    void put(ReportPlan.Aggregation aggregation, String label, Fingerprint fingerprint, Statistics statistics) {
+        current.put(key(aggregation, label), new Entry(fingerprint, statistics));
+    }
+
+    /**
+     * @return the number of groups taken from the cache
+     */
+    public int hits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of groups that had to be calculated
+     */
+    public int misses() {
+        return misses.get();
+    }
+
+    /**
+     * Writes the groups of the current run to the cache file, replacing it at once so that an interrupted write
+     * leaves the previous one in place. The groups are saved even if reports failed, since every group was calculated
+     * from the values of its fingerprint all the same. If there are no groups at all, e.g. the run failed before
+     * calculating any statistics, the previous cache file is kept instead.
+     */
+    public void save() {
+        if (current.isEmpty()) {
+            return;
+        }
+        File temporary = new File(file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                out.writeInt(VERSION);
+                out.writeUTF(percentileStrategy.name());
+                out.writeInt(current.size());
+                for (Map.Entry<String, Entry> entry : current.entrySet()) {
+                    Fingerprint fingerprint = entry.getValue().fingerprint;
+                    Statistics statistics = entry.getValue().statistics;
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(fingerprint.count);
+                    out.writeLong(fingerprint.sum);
+                    out.writeLong(fingerprint.mixedSum);
+                    out.writeDouble(statistics.getMin());
+                    out.writeDouble(statistics.getMax());
+                    out.writeDouble(statistics.getAvg());
+                    out.writeDouble(statistics.getStd());
+                    out.writeDouble(statistics.getMedian());
+                    out.writeDouble(statistics.get99thPercentile());
+                    out.writeDouble(statistics.get95thPercentile());
+                    out.writeDouble(statistics.get90thPercentile());
+                    out.writeInt(statistics.getObservations());
+                }
+            }
+            try {
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new ApplicationException(String.format("Can't write %s. Exception %s", file, e.getMessage()));
+        }
+        log.info(String.format("Cached %d groups in %s, %d reused and %d recalculated", current.size(), file, hits(), misses()));
+    }
+
+    private static String key(ReportPlan.Aggregation aggregation, String label) {
+        return aggregation.getGrouping().name() + '/' + aggregation.getMeasure().name() + '/' + label;
+    }
+
+    private static final class Entry {
+        private final Fingerprint fingerprint;
+        private final Statistics statistics;
+
+        private Entry(Fingerprint fingerprint, Statistics statistics) {
+            this.fingerprint = fingerprint;
+            this.statistics = statistics;
+        }
+    }
+
+    /**
+     * Identifies the multiset of values of a group regardless of their order: the count and two sums of 64-bit
+     * hashes of the values. Different values having the same fingerprint is as likely as a 128-bit hash collision.
+     */
+    static final class Fingerprint {
+        private final int count;
+        private final long sum;
+        private final long mixedSum;
+
+        private Fingerprint(int count, long sum, long mixedSum) {
+            this.count = count;
+            this.sum = sum;
+            this.mixedSum = mixedSum;
+        }
+
+        /**
+         * @return the fingerprint of a range of an array of values
+         */
+        static Fingerprint of(double[] values, int offset, int length) {
+            long sum = 0;
+            long mixedSum = 0;
+            for (int i = offset; i < offset + length; i++) {
+                long bits = Double.doubleToLongBits(values[i]);
+                sum += mix(bits);
+                mixedSum += mix(bits ^ 0x9e3779b97f4a7c15L);
+            }
+            return new Fingerprint(length, sum, mixedSum);
+        }
+
+        /**
+         * The MurmurHash3 finalizer
+         */
+        private static long mix(long hash) {
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Fingerprint that = (Fingerprint) o;
+
+            return count == that.count && sum == that.sum && mixedSum == that.mixedSum;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (31 * (31 * count + sum) + mixedSum);
+        }
+    }
+}
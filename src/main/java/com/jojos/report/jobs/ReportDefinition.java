@@ -0,0 +1,302 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.ApplicationException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IllegalFormatException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import static com.jojos.report.Util.DELIMITER;
+import static com.jojos.report.Util.EMPLOYEE_AGE_BY_DEPARTMENT;
+import static com.jojos.report.Util.INCOME_95_BY_DEPARTMENT;
+import static com.jojos.report.Util.INCOME_AVERAGE_BY_AGE_RANGE;
+import static com.jojos.report.Util.INCOME_BY_DEPARTMENT;
+
+/**
+ * Describes a report: a file with one line per group of a {@link Grouping}, presenting a {@link Metric}
+ * of a {@link Measure} of the employees of the group, formatted with a number format. A grouping by several
+ * dimensions has a column per dimension.
+ *
+ * Reports are defined with a constructor, with a {@link Builder} or parsed from a line of a reports file.
+ * Any number of them is compiled into one {@link ReportPlan}, which calculates the statistics of reports of the
+ * same grouping and measure once, whatever their metrics and formats.
+ *
+ * @author karanikasg@gmail.com
+ */
+public class ReportDefinition {
+
+    /**
+     * The number format of the values of a report unless another one is defined
+     */
+    public static final String DEFAULT_FORMAT = "%.2f";
+
+    /**
+     * The reports the application generates
+     */
+    public static final List<ReportDefinition> DEFAULTS = Collections.unmodifiableList(Arrays.asList(
+            new ReportDefinition(INCOME_BY_DEPARTMENT, "DEPARTMENT", "MEDIAN INCOME",
+                    Dimension.DEPARTMENT, Measure.INCOME, Metric.MEDIAN),
+            new ReportDefinition(INCOME_95_BY_DEPARTMENT, "DEPARTMENT", "95-PERCENTILE INCOME",
+                    Dimension.DEPARTMENT, Measure.INCOME, Metric.PERCENTILE_95),
+            new ReportDefinition(INCOME_AVERAGE_BY_AGE_RANGE, "AGE RANGE", "AVERAGE INCOME",
+                    Dimension.AGE_RANGE, Measure.INCOME, Metric.AVERAGE),
+            new ReportDefinition(EMPLOYEE_AGE_BY_DEPARTMENT, "DEPARTMENT", "MEDIAN EMPLOYEE AGE",
+                    Dimension.DEPARTMENT, Measure.AGE, Metric.MEDIAN)));
+
+    private final String fileName;
+    // a header per dimension
+    private final String[] groupHeaders;
+    private final String valueHeader;
+    private final Grouping grouping;
+    private final Measure measure;
+    private final Metric metric;
+    private final String format;
+
+    public ReportDefinition(String fileName, String groupHeader, String valueHeader,
+                            Dimension dimension, Measure measure, Metric metric) {
+        this(fileName, groupHeader, valueHeader, Grouping.of(dimension), measure, metric);
+    }
+
+    /**
+     * @param groupHeader the headers of the dimensions of the grouping, separated like the columns
+     */
+    public ReportDefinition(String fileName, String groupHeader, String valueHeader,
+                            Grouping grouping, Measure measure, Metric metric) {
+        this(fileName, groupHeader.split(DELIMITER), valueHeader, grouping, measure, metric, DEFAULT_FORMAT);
+    }
+
+    private ReportDefinition(String fileName, String[] groupHeaders, String valueHeader,
+                             Grouping grouping, Measure measure, Metric metric, String format) {
+        this.fileName = fileName;
+        this.groupHeaders = groupHeaders;
+        this.valueHeader = valueHeader;
+        this.grouping = grouping;
+        this.measure = measure;
+        this.metric = metric;
+        this.format = format;
+    }
+
+    /**
+     * @param fileName the file the report is written to
+     * @return a builder of a report
+     */
+    public static Builder builder(String fileName) {
+        return new Builder(fileName);
+    }
+
+    /**
+     * Parses a report of the form file;grouping;measure;metric[;format], e.g.
+     * income-by-department-and-genre.csv;department*genre;income;median
+     * The headers are derived from the dimensions, the metric and the measure, e.g. DEPARTMENT,GENRE and MEDIAN INCOME.
+     * The format is a {@link java.util.Formatter} pattern of a double, e.g. %.0f, {@link #DEFAULT_FORMAT} if omitted.
+     *
+     * @param line the report
+     * @return the definition of the report
+     * @throws ApplicationException if the line is not a valid report
+     * @see Grouping#parse(String)
+     */
+    public static ReportDefinition parse(String line) {
+        String[] fields = line.split(";");
+        if (fields.length < 4 || fields.length > 5) {
+            throw new ApplicationException("Invalid report " + line + ", expected file;grouping;measure;metric[;format]");
+        }
+        Builder builder = builder(fields[0].trim())
+                .withGrouping(Grouping.parse(fields[1]))
+                .withMeasure(Measure.forName(fields[2]))
+                .withMetric(Metric.forName(fields[3]));
+        if (fields.length == 5) {
+            builder.withFormat(fields[4].trim());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Reads the reports of a file, one per line as expected by {@link #parse(String)}. Empty lines and lines
+     * starting with # are skipped.
+     *
+     * @param file the file of the reports
+     * @return the definitions of the reports
+     * @throws ApplicationException if the file can't be read, a report is invalid or file names repeat
+     */
+    public static List<ReportDefinition> load(File file) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new ApplicationException(String.format("Can't read the reports of %s. Exception %s", file, e.getMessage()));
+        }
+        List<ReportDefinition> definitions = new ArrayList<>();
+        for (String line : lines) {
+            if (!line.trim().isEmpty() && !line.trim().startsWith("#")) {
+                definitions.add(parse(line));
+            }
+        }
+        return definitions;
+    }
+
+    /**
+     * @return the default reports followed by the provided ones
+     * @throws ApplicationException if two reports are written to the same file
+     */
+    public static List<ReportDefinition> withDefaults(List<ReportDefinition> definitions) {
+        List<ReportDefinition> all = new ArrayList<>(DEFAULTS);
+        all.addAll(definitions);
+        Set<String> fileNames = new HashSet<>();
+        for (ReportDefinition definition : all) {
+            if (!fileNames.add(definition.getFileName())) {
+                throw new ApplicationException("More than one report written to " + definition.getFileName());
+            }
+        }
+        return Collections.unmodifiableList(all);
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return the headers of the dimensions of the grouping, separated like the columns
+     */
+    public String getGroupHeader() {
+        return String.join(DELIMITER, groupHeaders);
+    }
+
+    /**
+     * @return the header of every dimension of the grouping, not to be modified
+     */
+    String[] groupHeaders() {
+        return groupHeaders;
+    }
+
+    public String getValueHeader() {
+        return valueHeader;
+    }
+
+    public Grouping getGrouping() {
+        return grouping;
+    }
+
+    public Measure getMeasure() {
+        return measure;
+    }
+
+    public Metric getMetric() {
+        return metric;
+    }
+
+    /**
+     * @return the {@link java.util.Formatter} pattern the values of the report are written with
+     */
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * @param value a value of the report
+     * @return the value as written in the report, whatever the locale of the host
+     */
+    public String format(double value) {
+        return String.format(Locale.ROOT, format, value);
+    }
+
+    /**
+     * @return the grouping and measure the statistics of this report are calculated over
+     */
+    public ReportPlan.Aggregation getAggregation() {
+        return new ReportPlan.Aggregation(grouping, measure);
+    }
+
+    @Override
+    public String toString() {
+        return "ReportDefinition{" + fileName + ", " + metric + " " + measure + " by " + grouping + '}';
+    }
+
+    /**
+     * Defines a report step by step. The grouping and the metric are required, the measure defaults to the income,
+     * the headers are derived from the rest unless provided.
+     */
+    public static class Builder {
+        private final String fileName;
+        private Grouping grouping;
+        private Measure measure = Measure.INCOME;
+        private Metric metric;
+        private String format = DEFAULT_FORMAT;
+        private String groupHeader;
+        private String valueHeader;
+
+        private Builder(String fileName) {
+            this.fileName = fileName;
+        }
+
+        public Builder withGrouping(Grouping grouping) {
+            this.grouping = grouping;
+            return this;
+        }
+
+        /**
+         * @param dimensions the dimensions to group by, several ones for a group per combination of their groups
+         * @return this builder
+         */
+        public Builder withGrouping(Dimension... dimensions) {
+            return withGrouping(Grouping.of(dimensions));
+        }
+
+        public Builder withMeasure(Measure measure) {
+            this.measure = measure;
+            return this;
+        }
+
+        public Builder withMetric(Metric metric) {
+            this.metric = metric;
+            return this;
+        }
+
+        /**
+         * @param format a {@link java.util.Formatter} pattern of a double, e.g. %.0f
+         * @return this builder
+         */
+        public Builder withFormat(String format) {
+            this.format = format;
+            return this;
+        }
+
+        /**
+         * @param groupHeader the headers of the dimensions of the grouping, separated like the columns
+         * @param valueHeader the header of the values
+         * @return this builder
+         */
+        public Builder withHeaders(String groupHeader, String valueHeader) {
+            this.groupHeader = groupHeader;
+            this.valueHeader = valueHeader;
+            return this;
+        }
+
+        /**
+         * @return the definition of the report
+         * @throws ApplicationException if the definition is incomplete or the format doesn't format a double
+         */
+        public ReportDefinition build() {
+            if (fileName == null || fileName.isEmpty() || grouping == null || measure == null || metric == null) {
+                throw new ApplicationException(String.format("Incomplete report %s, a file name, grouping, measure and metric are required", fileName));
+            }
+            try {
+                String.format(Locale.ROOT, format, 0d);
+            } catch (IllegalFormatException | NullPointerException e) {
+                throw new ApplicationException(String.format("Invalid format %s of report %s", format, fileName));
+            }
+            return new ReportDefinition(fileName,
+                    groupHeader == null ? grouping.headers() : groupHeader.split(DELIMITER),
+                    valueHeader == null ? metric.name().replace('_', ' ') + " " + measure.name() : valueHeader,
+                    grouping, measure, metric, format);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.ApplicationException;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * Creates the executors {@link OutputJob} can generate reports on.
+ *
+ * @author karanikasg@gmail.com
+ */
+public class ReportExecutors {
+
+    private static final Logger log = Logger.getLogger(ReportExecutors.class.getName());
+
+    /**
+     * The specification of an executor starting a virtual thread per report
+     */
+    public static final String VIRTUAL = "virtual";
+
+    private ReportExecutors() {
+    }
+
+    /**
+     * Creates an executor out of its specification:
+     * nothing or 0 for no executor at all, i.e. reports are generated one after the other on the calling thread,
+     * a positive number for a pool with that many threads,
+     * {@value #VIRTUAL} for a virtual thread per report, on runtimes that support them.
+     *
+     * @param specification the specification, may be null
+     * @return the executor or null if the calling thread should be used
+     */
+    public static ExecutorService create(String specification) {
+        if (specification == null) {
+            return null;
+        }
+        if (VIRTUAL.equalsIgnoreCase(specification)) {
+            return virtualThreadPerTask();
+        }
+        int threads;
+        try {
+            threads = Integer.parseInt(specification);
+        } catch (NumberFormatException e) {
+            throw new ApplicationException(String.format("Invalid report threads %s", specification));
+        }
+        if (threads < 0) {
+            throw new ApplicationException(String.format("Invalid report threads %s", specification));
+        }
+        return threads == 0 ? null : Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * The virtual thread executor is looked up reflectively, so that the application still runs on Java 8.
+     * Without virtual threads a pool with a thread per core is used instead.
+     */
+    private static ExecutorService virtualThreadPerTask() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            log.warning(String.format("Virtual threads are not supported by this runtime, using %d threads instead", threads));
+            return Executors.newFixedThreadPool(threads);
+        }
+    }
+}
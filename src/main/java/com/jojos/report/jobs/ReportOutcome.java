@@ -0,0 +1,46 @@
+package com.jojos.report.jobs;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How the generation of a single report went: how long it took and why it failed, if it did.
+ *
+ * @author karanikasg@gmail.com
+ */
+public class ReportOutcome {
+
+    private final String fileName;
+    private final long nanos;
+    private final Throwable failure;
+
+    ReportOutcome(String fileName, long nanos, Throwable failure) {
+        this.fileName = fileName;
+        this.nanos = nanos;
+        this.failure = failure;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public long getMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        return fileName + (isFailed() ? " failed after " : " generated in ") + getMillis() + "ms";
+    }
+}
@@ -0,0 +1,365 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.ApplicationException;
+import com.jojos.report.data.AgeBuckets;
+import com.jojos.report.data.Department;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+
+/**
+ * The execution plan of a set of {@link ReportDefinition}s.
+ *
+ * Reports that group by the same {@link Grouping} and measure the same {@link Measure} share an {@link Aggregation},
+ * so their statistics are calculated once no matter how many metrics are presented. All aggregations are fed
+ * by a single scan over the {@link EmployeeStore}, which extracts the key of every dimension once per employee,
+ * combines them into the composite key of every grouping and extracts the value of every measure needed into
+ * primitive arrays. Those are then grouped per aggregation with a counting sort and
+ * the {@link Statistics} of every group are calculated on the grouped array, as soon as a report asks for them.
+ *
+ * @author karanikasg@gmail.com
+ */
+public class ReportPlan {
+
+    private final List<ReportDefinition> definitions;
+    private final List<Aggregation> aggregations;
+    private final List<Grouping> groupings;
+    private final List<Measure> measures;
+    private final AgeBuckets ageBuckets;
+
+    private ReportPlan(List<ReportDefinition> definitions, List<Aggregation> aggregations, List<Grouping> groupings,
+                       List<Measure> measures, AgeBuckets ageBuckets) {
+        this.definitions = definitions;
+        this.aggregations = aggregations;
+        this.groupings = groupings;
+        this.measures = measures;
+        this.ageBuckets = ageBuckets;
+    }
+
+    /**
+     * Same as {@link #compile(List, AgeBuckets)} grouping ages by decade
+     */
+    public static ReportPlan compile(List<ReportDefinition> definitions) {
+        return compile(definitions, AgeBuckets.DECADES);
+    }
+
+    /**
+     * Works out the aggregations, groupings, dimensions and measures the definitions need, each one of them once.
+     *
+     * @param definitions the reports to generate
+     * @param ageBuckets  the age ranges the reports by {@link Dimension#AGE_RANGE} present
+     * @return the plan
+     */
+    public static ReportPlan compile(List<ReportDefinition> definitions, AgeBuckets ageBuckets) {
+        List<Aggregation> aggregations = new ArrayList<>();
+        List<Grouping> groupings = new ArrayList<>();
+        List<Measure> measures = new ArrayList<>();
+        for (ReportDefinition definition : definitions) {
+            addIfAbsent(aggregations, definition.getAggregation());
+            addIfAbsent(groupings, definition.getGrouping());
+            addIfAbsent(measures, definition.getMeasure());
+        }
+        return new ReportPlan(Collections.unmodifiableList(new ArrayList<>(definitions)),
+                Collections.unmodifiableList(aggregations), groupings, measures, ageBuckets);
+    }
+
+    /**
+     * Plans the aggregations themselves, without any report presenting them, e.g. to query their statistics.
+     *
+     * @param aggregations the aggregations to calculate
+     * @param ageBuckets   the age ranges of {@link Dimension#AGE_RANGE}
+     * @return the plan
+     */
+    public static ReportPlan of(List<Aggregation> aggregations, AgeBuckets ageBuckets) {
+        List<Aggregation> distinct = new ArrayList<>();
+        List<Grouping> groupings = new ArrayList<>();
+        List<Measure> measures = new ArrayList<>();
+        for (Aggregation aggregation : aggregations) {
+            addIfAbsent(distinct, aggregation);
+            addIfAbsent(groupings, aggregation.grouping);
+            addIfAbsent(measures, aggregation.measure);
+        }
+        return new ReportPlan(Collections.emptyList(), Collections.unmodifiableList(distinct), groupings, measures, ageBuckets);
+    }
+
+    public List<ReportDefinition> getDefinitions() {
+        return definitions;
+    }
+
+    public List<Aggregation> getAggregations() {
+        return aggregations;
+    }
+
+    public AgeBuckets getAgeBuckets() {
+        return ageBuckets;
+    }
+
+    /**
+     * Scans the store once, extracting everything the aggregations need. The statistics of an aggregation are
+     * calculated the first time they are asked for, once, even if several threads ask at the same time.
+     *
+     * @param store              the employees
+     * @param percentileStrategy the way to locate medians and percentiles
+     * @return the statistics of each aggregation
+     */
+    public AggregationResults execute(EmployeeStore store, PercentileStrategy percentileStrategy) {
+        List<Department> departments = store.getDepartments();
+        Scan scan = new Scan(departments, store.employeesSize());
+        store.forEachEmployee(scan);
+
+        return new LazyResults(departments, ageBuckets, aggregation -> {
+            int cardinality = aggregation.grouping.cardinality(departments, ageBuckets);
+            int[] keys = scan.keys[groupings.indexOf(aggregation.grouping)];
+            double[] values = scan.values[measures.indexOf(aggregation.measure)];
+            return calculate(keys, values, scan.rows, cardinality, percentileStrategy);
+        });
+    }
+
+    /**
+     * Same as {@link #execute(EmployeeStore, PercentileStrategy)}, taking the statistics of every group whose values
+     * didn't change since the previous run from the cache and keeping the ones calculated in it. The store is still
+     * scanned as a whole, only the calculation of the statistics of the unchanged groups is saved.
+     *
+     * @param store              the employees
+     * @param percentileStrategy the way to locate medians and percentiles
+     * @param cache              the statistics of the previous run
+     * @return the statistics of each aggregation
+     */
+    public AggregationResults execute(EmployeeStore store, PercentileStrategy percentileStrategy, ReportCache cache) {
+        List<Department> departments = store.getDepartments();
+        Scan scan = new Scan(departments, store.employeesSize());
+        store.forEachEmployee(scan);
+
+        return new LazyResults(departments, ageBuckets, aggregation -> {
+            int cardinality = aggregation.grouping.cardinality(departments, ageBuckets);
+            int[] keys = scan.keys[groupings.indexOf(aggregation.grouping)];
+            double[] values = scan.values[measures.indexOf(aggregation.measure)];
+            int[] offsets = new int[cardinality + 1];
+            double[] grouped = group(keys, values, scan.rows, offsets);
+
+            Statistics[] statistics = new Statistics[cardinality];
+            for (int key = 0; key < cardinality; key++) {
+                int length = offsets[key + 1] - offsets[key];
+                String label = aggregation.grouping.label(departments, ageBuckets, key);
+                ReportCache.Fingerprint fingerprint = ReportCache.Fingerprint.of(grouped, offsets[key], length);
+                statistics[key] = cache.get(aggregation, label, fingerprint);
+                if (statistics[key] == null) {
+                    statistics[key] = Statistics.calculateInPlace(grouped, offsets[key], length, percentileStrategy);
+                    cache.put(aggregation, label, fingerprint, statistics[key]);
+                }
+            }
+            return statistics;
+        });
+    }
+
+    /**
+     * Prepares a streaming aggregation of the plan, which approximates the statistics with a {@link QuantileSketch}
+     * per group instead of keeping the employees. Used for inputs too big to be loaded into a store.
+     *
+     * @param departments      the departments, in the order their index is visited with
+     * @param relativeAccuracy the relative error of medians and percentiles
+     * @return an aggregation to feed the employees to
+     */
+    public SketchAggregation sketch(List<Department> departments, double relativeAccuracy) {
+        return new SketchAggregation(aggregations, departments, ageBuckets, relativeAccuracy);
+    }
+
+    /**
+     * Prepares an aggregation of the plan that calculates exact statistics within a memory budget, spilling sorted
+     * runs of values to files when the budget is exceeded. Used for inputs too big to be loaded into a store.
+     *
+     * @param departments     the departments, in the order their index is visited with
+     * @param memoryBudget    the bytes the buffered values may take
+     * @param parentDirectory where to create the temporary directory of the run files
+     * @return an aggregation to feed the employees to, to be closed when the reports are generated
+     */
+    public SpillingAggregation spill(List<Department> departments, long memoryBudget, File parentDirectory) {
+        return new SpillingAggregation(aggregations, departments, ageBuckets, memoryBudget, parentDirectory);
+    }
+
+    /**
+     * Groups the values by their keys and calculates the statistics of each group.
+     */
+    static Statistics[] calculate(int[] keys, double[] values, int rows, int cardinality, PercentileStrategy percentileStrategy) {
+        int[] offsets = new int[cardinality + 1];
+        double[] grouped = group(keys, values, rows, offsets);
+
+        Statistics[] statistics = new Statistics[cardinality];
+        for (int key = 0; key < cardinality; key++) {
+            statistics[key] = Statistics.calculateInPlace(grouped, offsets[key], offsets[key + 1] - offsets[key], percentileStrategy);
+        }
+        return statistics;
+    }
+
+    /**
+     * Counting sort of the values by their keys, skipping the ones of no group
+     *
+     * @param offsets filled with the start of every group, the last one being the number of grouped values
+     * @return the grouped values
+     */
+    private static double[] group(int[] keys, double[] values, int rows, int[] offsets) {
+        int cardinality = offsets.length - 1;
+        for (int row = 0; row < rows; row++) {
+            if (keys[row] != Dimension.NO_GROUP) {
+                offsets[keys[row] + 1]++;
+            }
+        }
+        for (int key = 0; key < cardinality; key++) {
+            offsets[key + 1] += offsets[key];
+        }
+        int[] next = Arrays.copyOf(offsets, cardinality);
+        double[] grouped = new double[offsets[cardinality]];
+        for (int row = 0; row < rows; row++) {
+            if (keys[row] != Dimension.NO_GROUP) {
+                grouped[next[keys[row]]++] = values[row];
+            }
+        }
+        return grouped;
+    }
+
+    /**
+     * Calculates the statistics of an aggregation on first demand. Concurrent demands for the same aggregation wait
+     * for the one calculation, demands for different aggregations don't block each other.
+     */
+    static class LazyResults implements AggregationResults {
+        private final List<Department> departments;
+        private final AgeBuckets ageBuckets;
+        private final Function<Aggregation, Statistics[]> calculation;
+        private final ConcurrentMap<Aggregation, FutureTask<Statistics[]>> statistics = new ConcurrentHashMap<>();
+
+        LazyResults(List<Department> departments, AgeBuckets ageBuckets, Function<Aggregation, Statistics[]> calculation) {
+            this.departments = departments;
+            this.ageBuckets = ageBuckets;
+            this.calculation = calculation;
+        }
+
+        @Override
+        public List<Department> getDepartments() {
+            return departments;
+        }
+
+        @Override
+        public AgeBuckets getAgeBuckets() {
+            return ageBuckets;
+        }
+
+        @Override
+        public Statistics[] statistics(Aggregation aggregation) {
+            FutureTask<Statistics[]> task = statistics.get(aggregation);
+            if (task == null) {
+                FutureTask<Statistics[]> newTask = new FutureTask<>(() -> calculation.apply(aggregation));
+                task = statistics.putIfAbsent(aggregation, newTask);
+                if (task == null) {
+                    task = newTask;
+                    task.run();
+                }
+            }
+            try {
+                return task.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new ApplicationException(e.getCause().toString());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ApplicationException("Interrupted while calculating " + aggregation);
+            }
+        }
+    }
+
+    private static <T> void addIfAbsent(List<T> list, T element) {
+        if (!list.contains(element)) {
+            list.add(element);
+        }
+    }
+
+    /**
+     * Extracts the keys of all groupings and the values of all measures of the plan, one array per grouping and
+     * measure, in a single pass.
+     */
+    private class Scan implements EmployeeStore.EmployeeVisitor {
+        private final int[][] keys;
+        private final double[][] values;
+        private final GroupKeys groupKeys;
+        private int rows;
+
+        private Scan(List<Department> departments, int size) {
+            // fails early if the groups don't fit in integer keys
+            groupKeys = new GroupKeys(groupings, departments, ageBuckets);
+            keys = new int[groupings.size()][size];
+            values = new double[measures.size()][size];
+        }
+
+        @Override
+        public boolean visitsNames() {
+            return false;
+        }
+
+        @Override
+        public void visit(int departmentIndex, String name, byte genre, double income, int age) {
+            groupKeys.extract(departmentIndex, genre, age);
+            for (int i = 0; i < keys.length; i++) {
+                keys[i][rows] = groupKeys.key(i);
+            }
+            for (int i = 0; i < values.length; i++) {
+                values[i][rows] = measures.get(i).value(income, age);
+            }
+            rows++;
+        }
+    }
+
+    /**
+     * A grouping together with the measure statistics are calculated for.
+     */
+    public static final class Aggregation {
+        private final Grouping grouping;
+        private final Measure measure;
+
+        public Aggregation(Dimension dimension, Measure measure) {
+            this(Grouping.of(dimension), measure);
+        }
+
+        public Aggregation(Grouping grouping, Measure measure) {
+            this.grouping = grouping;
+            this.measure = measure;
+        }
+
+        public Grouping getGrouping() {
+            return grouping;
+        }
+
+        public Measure getMeasure() {
+            return measure;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Aggregation that = (Aggregation) o;
+
+            return grouping.equals(that.grouping) && measure == that.measure;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(grouping, measure);
+        }
+
+        @Override
+        public String toString() {
+            return measure + " by " + grouping;
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package com.jojos.report.jobs;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import static com.jojos.report.Util.RUN_SUMMARY;
+
+/**
+ * The metrics of one run: the time, rows and bytes of every phase, i.e. parsing the departments, the ages and the
+ * employees, restoring a snapshot, calculating the statistics, and of every report, the input lines that were
+ * rejected, the employees without an age, and the heap used and the garbage collections of the JVM during the run.
+ *
+ * Metrics are recorded once per phase or report and never per row, rejected lines are counted on a
+ * {@link LongAdder} that is only touched when a line is rejected, so collecting them costs next to nothing and they
+ * are always collected. {@link InputJob} and {@link OutputJob} record into the instance they are given, which may
+ * happen from several threads at once. Once the run completed its summary can be published as JSON by
+ * {@link #publishSummary(File, Durability)}.
+ *
+ * @author karanikasg@gmail.com
+ */
+public final class RunMetrics {
+
+    private final Logger log = Logger.getLogger(getClass().getName());
+
+    public static final String DEPARTMENTS = "departments";
+    public static final String AGES = "ages";
+    public static final String EMPLOYEES = "employees";
+    public static final String SNAPSHOT = "snapshot";
+    public static final String STATISTICS = "statistics";
+
+    private final long startMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final long startGcCount;
+    private final long startGcMillis;
+    // both guarded by themselves, in the order of recording
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+    private final Map<String, Phase> reports = new LinkedHashMap<>();
+    private final LongAdder rejectedLines = new LongAdder();
+    private volatile long joinMisses;
+    // set once the run completed, until then the values are the current ones
+    private volatile boolean completed;
+    private volatile boolean succeeded;
+    private volatile long elapsedNanos;
+    private volatile long heapUsedBytes;
+    private volatile long gcCount;
+    private volatile long gcMillis;
+
+    public RunMetrics() {
+        long[] gc = garbageCollections();
+        this.startGcCount = gc[0];
+        this.startGcMillis = gc[1];
+    }
+
+    /**
+     * @param name the name of the phase, e.g. {@link #EMPLOYEES}
+     * @return the phase, created on its first use
+     */
+    public Phase phase(String name) {
+        synchronized (phases) {
+            return phases.computeIfAbsent(name, Phase::new);
+        }
+    }
+
+    /**
+     * @param fileName the file of the report
+     * @return the report, created on its first use
+     */
+    public Phase report(String fileName) {
+        synchronized (reports) {
+            return reports.computeIfAbsent(fileName, Phase::new);
+        }
+    }
+
+    /**
+     * @return the counter of the input lines rejected, to be incremented by the parsers
+     */
+    LongAdder rejectedLines() {
+        return rejectedLines;
+    }
+
+    void joinMisses(long joinMisses) {
+        this.joinMisses = joinMisses;
+    }
+
+    /**
+     * Ends the run, freezing its elapsed time and the state of the JVM. Does nothing if it already ended.
+     *
+     * @param succeeded whether the run generated all reports
+     */
+    public synchronized void complete(boolean succeeded) {
+        if (completed) {
+            return;
+        }
+        long[] gc = garbageCollections();
+        this.elapsedNanos = System.nanoTime() - startNanos;
+        this.heapUsedBytes = heapUsed();
+        this.gcCount = gc[0] - startGcCount;
+        this.gcMillis = gc[1] - startGcMillis;
+        this.succeeded = succeeded;
+        this.completed = true;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return whether the run generated all reports, false until it completed
+     */
+    public boolean isSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * @return when the run started, in milliseconds since the epoch
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(completed ? elapsedNanos : System.nanoTime() - startNanos);
+    }
+
+    public List<Phase> getPhases() {
+        synchronized (phases) {
+            return new ArrayList<>(phases.values());
+        }
+    }
+
+    public List<Phase> getReports() {
+        synchronized (reports) {
+            return new ArrayList<>(reports.values());
+        }
+    }
+
+    public long getRejectedLines() {
+        return rejectedLines.sum();
+    }
+
+    /**
+     * @return the employees that have no age in the ages file
+     */
+    public long getJoinMisses() {
+        return joinMisses;
+    }
+
+    /**
+     * @return the employees parsed or restored
+     */
+    public long getRows() {
+        return recorded(EMPLOYEES).getRows() + recorded(SNAPSHOT).getRows();
+    }
+
+    /**
+     * @return the bytes of the input files parsed or of the snapshot restored, as stored on the disk
+     */
+    public long getBytes() {
+        return input().getBytes();
+    }
+
+    /**
+     * @return the employees parsed or restored per second of reading the input
+     */
+    public double getRowsPerSecond() {
+        return perSecond(getRows(), input().getNanos());
+    }
+
+    /**
+     * @return the bytes of the input read per second of reading it
+     */
+    public double getBytesPerSecond() {
+        Phase input = input();
+        return perSecond(input.getBytes(), input.getNanos());
+    }
+
+    /**
+     * @return the bytes of heap in use when the run completed, or now if it didn't yet
+     */
+    public long getHeapUsedBytes() {
+        return completed ? heapUsedBytes : heapUsed();
+    }
+
+    /**
+     * @return the garbage collections during the run
+     */
+    public long getGcCount() {
+        return completed ? gcCount : garbageCollections()[0] - startGcCount;
+    }
+
+    /**
+     * @return the milliseconds the garbage collections during the run took
+     */
+    public long getGcMillis() {
+        return completed ? gcMillis : garbageCollections()[1] - startGcMillis;
+    }
+
+    /**
+     * @return the reports that failed
+     */
+    public long getFailedReports() {
+        return getReports().stream().filter(Phase::isFailed).count();
+    }
+
+    /**
+     * @return the summary of the run as a JSON object
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\"startMillis\":").append(startMillis)
+                .append(",\"elapsedMillis\":").append(getElapsedMillis());
+        if (completed) {
+            json.append(",\"succeeded\":").append(succeeded);
+        }
+        json.append(",\"rows\":").append(getRows())
+                .append(",\"bytes\":").append(getBytes());
+        Json.appendNumber(json, "rowsPerSecond", getRowsPerSecond(), 1);
+        Json.appendNumber(json, "bytesPerSecond", getBytesPerSecond(), 1);
+        json.append(",\"rejectedLines\":").append(getRejectedLines())
+                .append(",\"joinMisses\":").append(getJoinMisses())
+                .append(",\"failedReports\":").append(getFailedReports())
+                .append(",\"heapUsedBytes\":").append(getHeapUsedBytes())
+                .append(",\"gcCount\":").append(getGcCount())
+                .append(",\"gcMillis\":").append(getGcMillis())
+                .append(",\"phases\":");
+        appendPhases(json, getPhases());
+        json.append(",\"reports\":");
+        appendPhases(json, getReports());
+        return json.append('}').toString();
+    }
+
+    /**
+     * Publish the {@link #toJson() summary} as {@link com.jojos.report.Util#RUN_SUMMARY} in the directory, atomically
+     * the same way as the reports. It is meant to be called once the run {@link #complete(boolean) completed}, so that
+     * it tells whether the run succeeded and the elapsed time and the state of the JVM are those at its end. A summary
+     * that can't be published is logged and doesn't fail the run.
+     *
+     * @param directory the directory of the reports
+     * @param durability whether and when the summary is forced to the disk
+     */
+    public void publishSummary(File directory, Durability durability) {
+        try {
+            Publisher publisher = new Publisher(directory, durability);
+            publisher.deleteTemporaryFiles(Collections.singletonList(RUN_SUMMARY));
+            publisher.publish(RUN_SUMMARY, toJson().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            log.severe("Can't publish " + RUN_SUMMARY + ". Exception " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d rows and %d bytes in %dms, %.0f rows/s, %d rejected lines, %d reports failed, "
+                        + "%dMB heap used, %d garbage collections in %dms", getRows(), getBytes(), getElapsedMillis(),
+                getRowsPerSecond(), getRejectedLines(), getFailedReports(), getHeapUsedBytes() >> 20, getGcCount(), getGcMillis());
+    }
+
+    /**
+     * @return the input phases added up
+     */
+    private Phase input() {
+        Phase input = new Phase("input");
+        for (String name : new String[]{DEPARTMENTS, AGES, EMPLOYEES, SNAPSHOT}) {
+            Phase phase = recorded(name);
+            input.addNanos(phase.getNanos()).addBytes(phase.getBytes());
+        }
+        return input;
+    }
+
+    /**
+     * @return the phase, an empty one if it was never recorded
+     */
+    private Phase recorded(String name) {
+        synchronized (phases) {
+            Phase phase = phases.get(name);
+            return phase == null ? new Phase(name) : phase;
+        }
+    }
+
+    private static void appendPhases(StringBuilder json, List<Phase> phases) {
+        json.append('[');
+        for (int i = 0; i < phases.size(); i++) {
+            Phase phase = phases.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"name\":");
+            Json.appendString(json, phase.getName());
+            json.append(",\"millis\":").append(phase.getMillis())
+                    .append(",\"rows\":").append(phase.getRows())
+                    .append(",\"bytes\":").append(phase.getBytes());
+            Json.appendNumber(json, "rowsPerSecond", perSecond(phase.getRows(), phase.getNanos()), 1);
+            Json.appendNumber(json, "bytesPerSecond", perSecond(phase.getBytes(), phase.getNanos()), 1);
+            if (phase.isFailed()) {
+                json.append(",\"failed\":true");
+            }
+            json.append('}');
+        }
+        json.append(']');
+    }
+
+    private static double perSecond(long count, long nanos) {
+        return nanos == 0 ? 0 : count * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    private static long heapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * @return the count and the milliseconds of all garbage collections so far, of the collectors that tell
+     */
+    private static long[] garbageCollections() {
+        long[] gc = new long[2];
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gc[0] += Math.max(0, collector.getCollectionCount());
+            gc[1] += Math.max(0, collector.getCollectionTime());
+        }
+        return gc;
+    }
+
+    /**
+     * The time, rows and bytes of a phase or a report, added up over every time it was recorded
+     */
+    public static final class Phase {
+        private final String name;
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private volatile boolean failed;
+
+        private Phase(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getNanos() {
+            return nanos.sum();
+        }
+
+        public long getMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(getNanos());
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+
+        /**
+         * @param startNanos the {@link System#nanoTime()} the phase started at
+         * @return this phase, having taken from then until now
+         */
+        public Phase timeSince(long startNanos) {
+            return addNanos(System.nanoTime() - startNanos);
+        }
+
+        public Phase addNanos(long nanos) {
+            this.nanos.add(nanos);
+            return this;
+        }
+
+        public Phase addRows(long rows) {
+            this.rows.add(rows);
+            return this;
+        }
+
+        public Phase addBytes(long bytes) {
+            this.bytes.add(bytes);
+            return this;
+        }
+
+        Phase failed() {
+            this.failed = true;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.jojos.report.jobs;
+
+import java.util.Arrays;
+
+/**
+ * Multi-quickselect over a range of doubles. Moves the elements of requested ranks to the position they would have
+ * if the range was sorted with {@link Arrays#sort(double[], int, int)}, in expected linear time.
+ *
+ * Every partitioning step splits the range in three parts (smaller than, equal to and greater than the pivot) and
+ * hands each requested rank to the part it falls into, so all ranks share the same partitioning passes.
+ * Like an introselect, a range that keeps partitioning badly is sorted instead, bounding the worst case
+ * to O(n log n).
+ *
+ * The ordering is the one of {@link Double#compare(double, double)}: -0.0 comes before 0.0 and NaN comes last.
+ *
+ * @author karanikasg@gmail.com
+ */
+class Selection {
+
+    private static final int SORT_THRESHOLD = 16;
+
+    private Selection() {
+    }
+
+    /**
+     * Selects five ranks at once, the ones {@link Statistics} needs, without allocating anything.
+     *
+     * @param values the array holding the range, the range gets reordered
+     * @param from   the inclusive start of the range
+     * @param to     the exclusive end of the range
+     * @param r0     the first absolute position to select, r1 to r4 being the rest in any order, repeats allowed
+     */
+    static void select(double[] values, int from, int to, int r0, int r1, int r2, int r3, int r4) {
+        // NaNs go to the end, as they do when sorting. Zeros are told apart later on, for the partitioning
+        // -0.0 and 0.0 are equal.
+        int end = to;
+        int negativeZeros = 0;
+        int negatives = 0;
+        for (int i = from; i < end; ) {
+            double value = values[i];
+            if (value != value) {
+                values[i] = values[--end];
+                values[end] = value;
+                continue;
+            }
+            if (value < 0) {
+                negatives++;
+            } else if (value == 0 && Double.doubleToRawLongBits(value) != 0) {
+                negativeZeros++;
+            }
+            i++;
+        }
+
+        int depthLimit = 2 * (32 - Integer.numberOfLeadingZeros(Math.max(1, end - from)));
+        // ranks beyond the end belong to the NaNs
+        select(values, from, end, depthLimit, r0, r1, r2, r3, r4);
+
+        int smallerThanZero = negatives + negativeZeros;
+        signZero(values, from, end, smallerThanZero, r0);
+        signZero(values, from, end, smallerThanZero, r1);
+        signZero(values, from, end, smallerThanZero, r2);
+        signZero(values, from, end, smallerThanZero, r3);
+        signZero(values, from, end, smallerThanZero, r4);
+    }
+
+    private static void select(double[] values, int from, int to, int depthLimit, int r0, int r1, int r2, int r3, int r4) {
+        while (to - from > 1 && anyWithin(from, to, r0, r1, r2, r3, r4)) {
+            if (to - from <= SORT_THRESHOLD || depthLimit-- == 0) {
+                Arrays.sort(values, from, to);
+                return;
+            }
+
+            double pivot = medianOfThree(values[from], values[(from + to) >>> 1], values[to - 1]);
+            // three way partitioning: [from, lt) < pivot, [lt, gt) == pivot, [gt, to) > pivot
+            int lt = from;
+            int gt = to;
+            int i = from;
+            while (i < gt) {
+                double value = values[i];
+                if (value < pivot) {
+                    values[i++] = values[lt];
+                    values[lt++] = value;
+                } else if (value > pivot) {
+                    values[i] = values[--gt];
+                    values[gt] = value;
+                } else {
+                    i++;
+                }
+            }
+
+            // ranks within [lt, gt) are in place already
+            boolean left = anyWithin(from, lt, r0, r1, r2, r3, r4);
+            boolean right = anyWithin(gt, to, r0, r1, r2, r3, r4);
+            if (left && right) {
+                // recurse into the smaller part, keep looping on the bigger one
+                if (lt - from < to - gt) {
+                    select(values, from, lt, depthLimit, r0, r1, r2, r3, r4);
+                    from = gt;
+                } else {
+                    select(values, gt, to, depthLimit, r0, r1, r2, r3, r4);
+                    to = lt;
+                }
+            } else if (left) {
+                to = lt;
+            } else if (right) {
+                from = gt;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static boolean anyWithin(int from, int to, int r0, int r1, int r2, int r3, int r4) {
+        return within(from, to, r0) || within(from, to, r1) || within(from, to, r2) || within(from, to, r3) || within(from, to, r4);
+    }
+
+    private static boolean within(int from, int to, int rank) {
+        return rank >= from && rank < to;
+    }
+
+    /**
+     * Gives a zero at a rank the sign it would have if the range was sorted
+     */
+    private static void signZero(double[] values, int from, int end, int smallerThanZero, int rank) {
+        if (rank < end && values[rank] == 0) {
+            values[rank] = rank - from < smallerThanZero ? -0.0d : 0.0d;
+        }
+    }
+
+    private static double medianOfThree(double a, double b, double c) {
+        if (a < b) {
+            return b < c ? b : Math.max(a, c);
+        }
+        return a < c ? a : Math.max(b, c);
+    }
+}
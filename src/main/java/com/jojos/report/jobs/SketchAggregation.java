@@ -0,0 +1,142 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.ApplicationException;
+import com.jojos.report.data.AgeBuckets;
+import com.jojos.report.data.Department;
+import com.jojos.report.data.Employee;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Aggregates a stream of employees into a {@link QuantileSketch} per group of every aggregation of a
+ * {@link ReportPlan}, so that the employees don't have to be kept in memory.
+ *
+ * The departments have to be known before the first employee is visited. Medians and percentiles are approximate,
+ * see {@link QuantileSketch} for the error bound. Aggregations over separate parts of the input can be
+ * {@link #merge(SketchAggregation) merged}. Aggregating is not thread safe, reading the statistics of a complete
+ * aggregation is.
+ *
+ * @author karanikasg@gmail.com
+ */
+public class SketchAggregation implements EmployeeStore.EmployeeVisitor, AggregationResults {
+
+    private final Logger log = Logger.getLogger(getClass().getName());
+
+    private final List<ReportPlan.Aggregation> aggregations;
+    private final List<Department> departments;
+    private final AgeBuckets ageBuckets;
+    private final double relativeAccuracy;
+    private final QuantileSketch[][] sketches;
+    private final int[] keys;
+    private final GroupKeys groupKeys;
+    private long employees;
+
+    SketchAggregation(List<ReportPlan.Aggregation> aggregations, List<Department> departments, AgeBuckets ageBuckets,
+                      double relativeAccuracy) {
+        this.aggregations = aggregations;
+        this.departments = departments;
+        this.ageBuckets = ageBuckets;
+        this.relativeAccuracy = relativeAccuracy;
+        this.sketches = new QuantileSketch[aggregations.size()][];
+        for (int i = 0; i < sketches.length; i++) {
+            Grouping grouping = aggregations.get(i).getGrouping();
+            sketches[i] = new QuantileSketch[grouping.cardinality(departments, ageBuckets)];
+            for (int key = 0; key < sketches[i].length; key++) {
+                sketches[i][key] = new QuantileSketch(relativeAccuracy);
+            }
+        }
+        this.keys = new int[sketches.length];
+        this.groupKeys = new GroupKeys(aggregations.stream().map(ReportPlan.Aggregation::getGrouping).collect(Collectors.toList()),
+                departments, ageBuckets);
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    /**
+     * @return the number of employees aggregated
+     */
+    public long employeesSize() {
+        return employees;
+    }
+
+    /**
+     * Aggregates an employee, skipping the ones of unknown departments like {@link Loader#load(Employee)} does.
+     *
+     * @param employee the employee
+     */
+    public void load(Employee employee) {
+        if (Objects.isNull(employee)) {
+            throw new NullPointerException("Null values not allowed for employees");
+        }
+        int departmentId = employee.getDepartmentId();
+        if (departmentId < 1 || departmentId > departments.size()) {
+            log.severe(String.format("Skipping employee %s. Invalid department id: %d. Departments size is %d", employee.getName(), departmentId, departments.size()));
+            return;
+        }
+        visit(departmentId - 1, employee.getName(), employee.getGenre().code(), employee.getIncome(), employee.getAge());
+    }
+
+    @Override
+    public boolean visitsNames() {
+        return false;
+    }
+
+    @Override
+    public void visit(int departmentIndex, String name, byte genre, double income, int age) {
+        groupKeys.extract(departmentIndex, genre, age);
+        for (int i = 0; i < sketches.length; i++) {
+            keys[i] = groupKeys.key(i);
+        }
+        for (int i = 0; i < sketches.length; i++) {
+            if (keys[i] != Dimension.NO_GROUP) {
+                sketches[i][keys[i]].add(aggregations.get(i).getMeasure().value(income, age));
+            }
+        }
+        employees++;
+    }
+
+    /**
+     * Adds the employees aggregated by another aggregation of the same plan and departments to this one.
+     *
+     * @param other the other aggregation
+     */
+    public void merge(SketchAggregation other) {
+        if (!aggregations.equals(other.aggregations) || !departments.equals(other.departments) || !ageBuckets.equals(other.ageBuckets)) {
+            throw new ApplicationException("Can't merge aggregations of different plans or departments");
+        }
+        for (int i = 0; i < sketches.length; i++) {
+            for (int key = 0; key < sketches[i].length; key++) {
+                sketches[i][key].merge(other.sketches[i][key]);
+            }
+        }
+        employees += other.employees;
+    }
+
+    @Override
+    public List<Department> getDepartments() {
+        return departments;
+    }
+
+    @Override
+    public AgeBuckets getAgeBuckets() {
+        return ageBuckets;
+    }
+
+    @Override
+    public Statistics[] statistics(ReportPlan.Aggregation aggregation) {
+        int i = aggregations.indexOf(aggregation);
+        if (i < 0) {
+            throw new ApplicationException(String.format("%s is not part of the plan", aggregation));
+        }
+        Statistics[] statistics = new Statistics[sketches[i].length];
+        for (int key = 0; key < statistics.length; key++) {
+            statistics[key] = sketches[i][key].statistics();
+        }
+        return statistics;
+    }
+}
@@ -0,0 +1,186 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.data.Department;
+import com.jojos.report.data.Employee;
+import com.jojos.report.data.Genre;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * A binary image of loaded departments and employees, so that a run over unchanged input files restores the store
+ * instead of parsing them.
+ *
+ * The snapshot starts with the size and the modification time of every input file it was loaded from and is only
+ * restored if they all still match, the content of the files is not compared. The number of employees without an age
+ * and of the lines rejected while parsing follow, so that a restored run reports them the same as a parsed one.
+ * Then the departments, and the columns of a {@link ColumnarStore}: the employees ordered by department, the
+ * dictionary of their names and the rows of every {@link com.jojos.report.data.AgeRange}.
+ * Restoring maps the file into memory and copies every column in bulk, without parsing or creating objects per
+ * employee. Stores of other types are written in the columnar layout straight out of the store, and restored
+ * through a conversion.
+ *
+ * @author karanikasg@gmail.com
+ */
+public final class Snapshot {
+
+    /**
+     * The name of the snapshot file in the directory of the input files
+     */
+    public static final String FILE_NAME = ".employees.snapshot";
+
+    // "EMPS"
+    private static final int MAGIC = 0x454d5053;
+    // 2: genres parsed case insensitively, 3: join misses and rejected lines
+    private static final int VERSION = 3;
+
+    private static final Logger log = Logger.getLogger(Snapshot.class.getName());
+
+    private final ColumnarStore store;
+    private final long joinMisses;
+    private final long rejectedLines;
+
+    private Snapshot(ColumnarStore store, long joinMisses, long rejectedLines) {
+        this.store = store;
+        this.joinMisses = joinMisses;
+        this.rejectedLines = rejectedLines;
+    }
+
+    /**
+     * @return the restored store
+     */
+    ColumnarStore getStore() {
+        return store;
+    }
+
+    /**
+     * @return the employees that had no age in the ages file when they were parsed
+     */
+    long getJoinMisses() {
+        return joinMisses;
+    }
+
+    /**
+     * @return the lines of the input files rejected when they were parsed
+     */
+    long getRejectedLines() {
+        return rejectedLines;
+    }
+
+    /**
+     * Restores a snapshot
+     *
+     * @param snapshot the snapshot file
+     * @param sources  the input files the store has to be loaded from, in the order the snapshot was written with
+     * @return the snapshot, or null if there is no snapshot, it is unreadable or any input file changed since
+     */
+    static Snapshot read(File snapshot, File... sources) {
+        if (!snapshot.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                log.info(String.format("%s is too big to be mapped, parsing the input files", snapshot));
+                return null;
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != sources.length) {
+                log.info(String.format("%s was written differently, parsing the input files", snapshot));
+                return null;
+            }
+            for (File source : sources) {
+                if (buffer.getLong() != source.length() || buffer.getLong() != source.lastModified()) {
+                    log.info(String.format("%s changed since %s was written, parsing the input files", source.getName(), snapshot));
+                    return null;
+                }
+            }
+            long joinMisses = buffer.getLong();
+            long rejectedLines = buffer.getLong();
+            List<Department> departments = new ArrayList<>();
+            int departmentsSize = buffer.getInt();
+            for (int i = 0; i < departmentsSize; i++) {
+                byte[] name = new byte[buffer.getInt()];
+                buffer.get(name);
+                departments.add(new Department(new String(name, StandardCharsets.UTF_8)));
+            }
+            return new Snapshot(ColumnarStore.read(departments, buffer), joinMisses, rejectedLines);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            log.warning(String.format("Can't read %s, parsing the input files. Exception %s", snapshot, e));
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot of a store, replacing the file at once so that an interrupted write leaves no partial
+     * snapshot behind. A failure is logged only, the snapshot is just an optimization.
+     *
+     * @param store         the loaded store
+     * @param joinMisses    the employees that had no age in the ages file
+     * @param rejectedLines the lines of the input files rejected by the parser
+     * @param snapshot      the snapshot file
+     * @param sources       the input files the store was loaded from
+     */
+    static void write(EmployeeStore store, long joinMisses, long rejectedLines, File snapshot, File... sources) {
+        File temporary = new File(snapshot.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(sources.length);
+                for (File source : sources) {
+                    out.writeLong(source.length());
+                    out.writeLong(source.lastModified());
+                }
+                out.writeLong(joinMisses);
+                out.writeLong(rejectedLines);
+                out.writeInt(store.departmentsSize());
+                for (Department department : store.getDepartments()) {
+                    byte[] name = department.getName().getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(name.length);
+                    out.write(name);
+                }
+                if (store instanceof ColumnarStore) {
+                    ((ColumnarStore) store).write(out);
+                } else {
+                    ColumnarStore.write(store, out);
+                }
+            }
+            try {
+                Files.move(temporary.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            log.info(String.format("Wrote %s of %d employees", snapshot, store.employeesSize()));
+        } catch (IOException e) {
+            log.warning(String.format("Can't write %s. Exception %s", snapshot, e.getMessage()));
+            if (!temporary.delete() && temporary.exists()) {
+                log.warning("Can't delete " + temporary);
+            }
+        }
+    }
+
+    /**
+     * Loads the employees of a store into a {@link Loader}
+     */
+    static Loader toLoader(EmployeeStore store) {
+        Loader loader = new Loader();
+        store.getDepartments().forEach(loader::load);
+        store.forEachEmployee((departmentIndex, name, genre, income, age) ->
+                loader.load(new Employee(departmentIndex + 1, name, Genre.forCode(genre), income, age)));
+        return loader;
+    }
+}
@@ -0,0 +1,503 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.ApplicationException;
+import com.jojos.report.data.AgeBuckets;
+import com.jojos.report.data.Department;
+import com.jojos.report.data.Employee;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Aggregates a stream of employees into exact statistics for every aggregation of a {@link ReportPlan}, within
+ * a memory budget.
+ *
+ * The key and value of every employee are buffered per aggregation. Whenever a buffer exceeds its share of
+ * the budget, it is grouped by key and every group is sorted, in place, and the values are written to a binary run
+ * file, one after the other, group by group. The statistics of a group are then calculated by a k-way merge of the sorted
+ * group of every run and of the buffer, feeding the values in ascending order to the same accumulator
+ * {@link Statistics#calculate(double[], int, int)} uses, so the outcome is identical to the in-memory one. The groups
+ * are merged in the order of their keys, which is the order they are written in, so every run file is read once from
+ * start to end through a single buffer. At most {@link #MAX_FAN_IN} runs are merged at once, more runs are first merged
+ * into fewer, larger ones the same way.
+ *
+ * The departments have to be known before the first employee is visited. Aggregating is not thread safe, reading the
+ * statistics of a complete aggregation is. The run files are written to a temporary directory which is deleted on
+ * {@link #close()}.
+ *
+ * @author karanikasg@gmail.com
+ */
+public class SpillingAggregation implements EmployeeStore.EmployeeVisitor, AggregationResults, Closeable {
+
+    /**
+     * The bytes one buffered employee takes per aggregation at the peak: its key and value, 12 bytes, plus 2 bytes
+     * while a buffer doubles. The arrays are copied one at a time, so next to the new ones only the previous values
+     * or the previous keys of half as many employees are still held.
+     */
+    static final int BYTES_PER_VALUE = Integer.BYTES + Double.BYTES + 2;
+
+    /**
+     * The run files merged at once, each with a read buffer
+     */
+    static final int MAX_FAN_IN = 64;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    private final Logger log = Logger.getLogger(getClass().getName());
+
+    private final List<ReportPlan.Aggregation> aggregations;
+    private final List<Department> departments;
+    private final AgeBuckets ageBuckets;
+    private final File parentDirectory;
+    private final Spill[] spills;
+    private final GroupKeys groupKeys;
+    private final AggregationResults results;
+    private long employees;
+    private int runFiles;
+    private File directory;
+
+    /**
+     * @param aggregations    the aggregations to calculate
+     * @param departments     the departments, in the order their index is visited with
+     * @param ageBuckets      the age ranges of the plan
+     * @param memoryBudget    the bytes the buffered values of all aggregations may take
+     * @param parentDirectory where to create the directory of the run files
+     */
+    SpillingAggregation(List<ReportPlan.Aggregation> aggregations, List<Department> departments, AgeBuckets ageBuckets,
+                        long memoryBudget, File parentDirectory) {
+        this.aggregations = aggregations;
+        this.departments = departments;
+        this.ageBuckets = ageBuckets;
+        this.parentDirectory = parentDirectory;
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, memoryBudget / BYTES_PER_VALUE / Math.max(1, aggregations.size())));
+        this.spills = new Spill[aggregations.size()];
+        for (int i = 0; i < spills.length; i++) {
+            Grouping grouping = aggregations.get(i).getGrouping();
+            spills[i] = new Spill(aggregations.get(i), grouping.cardinality(departments, ageBuckets), capacity);
+        }
+        this.groupKeys = new GroupKeys(aggregations.stream().map(ReportPlan.Aggregation::getGrouping).collect(Collectors.toList()),
+                departments, ageBuckets);
+        this.results = new ReportPlan.LazyResults(departments, ageBuckets, aggregation -> spills[indexOf(aggregation)].statistics());
+    }
+
+    /**
+     * @return the number of employees aggregated
+     */
+    public long employeesSize() {
+        return employees;
+    }
+
+    /**
+     * @return the number of run files written so far
+     */
+    public int runFiles() {
+        return runFiles;
+    }
+
+    /**
+     * Aggregates an employee, skipping the ones of unknown departments like {@link Loader#load(Employee)} does.
+     *
+     * @param employee the employee
+     */
+    public void load(Employee employee) {
+        if (Objects.isNull(employee)) {
+            throw new NullPointerException("Null values not allowed for employees");
+        }
+        int departmentId = employee.getDepartmentId();
+        if (departmentId < 1 || departmentId > departments.size()) {
+            log.severe(String.format("Skipping employee %s. Invalid department id: %d. Departments size is %d", employee.getName(), departmentId, departments.size()));
+            return;
+        }
+        visit(departmentId - 1, employee.getName(), employee.getGenre().code(), employee.getIncome(), employee.getAge());
+    }
+
+    @Override
+    public boolean visitsNames() {
+        return false;
+    }
+
+    @Override
+    public void visit(int departmentIndex, String name, byte genre, double income, int age) {
+        groupKeys.extract(departmentIndex, genre, age);
+        for (int i = 0; i < spills.length; i++) {
+            Spill spill = spills[i];
+            int key = groupKeys.key(i);
+            if (key != Dimension.NO_GROUP) {
+                spill.add(key, spill.aggregation.getMeasure().value(income, age));
+            }
+        }
+        employees++;
+    }
+
+    @Override
+    public List<Department> getDepartments() {
+        return departments;
+    }
+
+    @Override
+    public AgeBuckets getAgeBuckets() {
+        return ageBuckets;
+    }
+
+    @Override
+    public Statistics[] statistics(ReportPlan.Aggregation aggregation) {
+        return results.statistics(aggregation);
+    }
+
+    /**
+     * Deletes the run files and their directory
+     */
+    @Override
+    public void close() {
+        for (Spill spill : spills) {
+            for (Run run : spill.runs) {
+                delete(run.file);
+            }
+            spill.runs.clear();
+        }
+        if (directory != null) {
+            delete(directory);
+            directory = null;
+        }
+    }
+
+    private void delete(File file) {
+        if (!file.delete() && file.exists()) {
+            log.warning("Can't delete " + file);
+        }
+    }
+
+    private File runDirectory() throws IOException {
+        if (directory == null) {
+            Files.createDirectories(parentDirectory.toPath());
+            directory = Files.createTempDirectory(parentDirectory.toPath(), "runs-").toFile();
+        }
+        return directory;
+    }
+
+    private int indexOf(ReportPlan.Aggregation aggregation) {
+        int i = aggregations.indexOf(aggregation);
+        if (i < 0) {
+            throw new ApplicationException(String.format("%s is not part of the plan", aggregation));
+        }
+        return i;
+    }
+
+    /**
+     * The buffer and the run files of an aggregation
+     */
+    private class Spill {
+        private final ReportPlan.Aggregation aggregation;
+        private final int cardinality;
+        private final int capacity;
+        private final List<Run> runs = new ArrayList<>();
+        private int[] keys;
+        private double[] values;
+        private int size;
+
+        private Spill(ReportPlan.Aggregation aggregation, int cardinality, int capacity) {
+            this.aggregation = aggregation;
+            this.cardinality = cardinality;
+            this.capacity = capacity;
+            // a power of two fraction of the capacity, so that the last doubling ends up right at it
+            int initialCapacity = capacity;
+            while (initialCapacity > INITIAL_CAPACITY) {
+                initialCapacity = (initialCapacity + 1) / 2;
+            }
+            this.keys = new int[initialCapacity];
+            this.values = new double[initialCapacity];
+        }
+
+        private void add(int key, double value) {
+            if (size == keys.length) {
+                if (size == capacity) {
+                    spill();
+                } else {
+                    int grown = (int) Math.min(capacity, 2L * size);
+                    values = Arrays.copyOf(values, grown);
+                    keys = Arrays.copyOf(keys, grown);
+                }
+            }
+            keys[size] = key;
+            values[size] = value;
+            size++;
+        }
+
+        /**
+         * Writes the buffer as a run, grouped by key and sorted within every group
+         */
+        private void spill() {
+            int[] offsets = new int[cardinality + 1];
+            group(offsets);
+            File file;
+            try {
+                file = File.createTempFile("run-", ".bin", runDirectory());
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), READ_BUFFER_SIZE))) {
+                    for (int i = 0; i < size; i++) {
+                        out.writeDouble(values[i]);
+                    }
+                }
+            } catch (IOException e) {
+                throw new ApplicationException(String.format("Can't spill %s to %s. Exception %s", aggregation, parentDirectory, e.getMessage()));
+            }
+            runs.add(new Run(file, Arrays.stream(offsets).asLongStream().toArray()));
+            runFiles++;
+            log.fine(String.format("Spilled %d values of %s to %s", size, aggregation, file));
+            size = 0;
+        }
+
+        /**
+         * Counting sort of the buffer by key, then a sort of every group, in place. Every employee is swapped straight
+         * into the next free position of its group, so nothing but the offsets per group is allocated.
+         *
+         * @param offsets filled with the start of every group, the last one being the size
+         */
+        private void group(int[] offsets) {
+            for (int i = 0; i < size; i++) {
+                offsets[keys[i] + 1]++;
+            }
+            for (int key = 0; key < cardinality; key++) {
+                offsets[key + 1] += offsets[key];
+            }
+            int[] next = Arrays.copyOf(offsets, cardinality);
+            for (int key = 0; key < cardinality; key++) {
+                int end = offsets[key + 1];
+                while (next[key] < end) {
+                    int i = next[key];
+                    int other = keys[i];
+                    if (other == key) {
+                        next[key]++;
+                        continue;
+                    }
+                    int j = next[other]++;
+                    keys[i] = keys[j];
+                    keys[j] = other;
+                    double value = values[i];
+                    values[i] = values[j];
+                    values[j] = value;
+                }
+            }
+            for (int key = 0; key < cardinality; key++) {
+                Arrays.sort(values, offsets[key], offsets[key + 1]);
+            }
+        }
+
+        private Statistics[] statistics() {
+            int[] offsets = new int[cardinality + 1];
+            group(offsets);
+            Statistics[] statistics = new Statistics[cardinality];
+            if (runs.isEmpty()) {
+                for (int key = 0; key < cardinality; key++) {
+                    statistics[key] = Statistics.calculateInPlace(values, offsets[key], offsets[key + 1] - offsets[key]);
+                }
+                return statistics;
+            }
+            List<RunReader> readers = new ArrayList<>();
+            try {
+                while (runs.size() > MAX_FAN_IN) {
+                    compact();
+                }
+                for (Run run : runs) {
+                    readers.add(new RunReader(run));
+                }
+                for (int key = 0; key < cardinality; key++) {
+                    long length = offsets[key + 1] - offsets[key] + groupLength(runs, key);
+                    if (length > Integer.MAX_VALUE) {
+                        throw new ApplicationException(String.format("%d observations of %s don't fit in statistics", length, aggregation));
+                    }
+                    Statistics.SortedAccumulator accumulator = new Statistics.SortedAccumulator((int) length);
+                    merge(key, readers, new ArrayCursor(values, offsets[key], offsets[key + 1]), accumulator::accept);
+                    statistics[key] = accumulator.result();
+                }
+                return statistics;
+            } catch (IOException e) {
+                throw new ApplicationException(String.format("Can't merge the runs of %s. Exception %s", aggregation, e.getMessage()));
+            } finally {
+                readers.forEach(RunReader::close);
+            }
+        }
+
+        /**
+         * Merges the first {@link #MAX_FAN_IN} runs into a single one, group by group
+         */
+        private void compact() throws IOException {
+            List<Run> merged = runs.subList(0, MAX_FAN_IN);
+            long[] offsets = new long[cardinality + 1];
+            File file = File.createTempFile("run-", ".bin", runDirectory());
+            List<RunReader> readers = new ArrayList<>();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), READ_BUFFER_SIZE))) {
+                for (Run run : merged) {
+                    readers.add(new RunReader(run));
+                }
+                for (int key = 0; key < cardinality; key++) {
+                    offsets[key + 1] = offsets[key] + groupLength(merged, key);
+                    merge(key, readers, null, out::writeDouble);
+                }
+            } finally {
+                readers.forEach(RunReader::close);
+            }
+            merged.forEach(run -> delete(run.file));
+            merged.clear();
+            runs.add(new Run(file, offsets));
+            log.fine(String.format("Merged %d runs of %s into %s", MAX_FAN_IN, aggregation, file));
+        }
+
+        /**
+         * K-way merge of the group of the key of every run and of the buffer
+         *
+         * @param readers the readers of the runs, all of them at the start of the group
+         * @param buffered the group of the buffer, or null if there is none
+         */
+        private void merge(int key, List<RunReader> readers, ArrayCursor buffered, ValueSink sink) throws IOException {
+            PriorityQueue<Cursor> heads = new PriorityQueue<>();
+            for (RunReader reader : readers) {
+                RunCursor cursor = reader.group(key);
+                if (cursor.hasNext()) {
+                    heads.add(cursor.advance());
+                }
+            }
+            if (buffered != null && buffered.hasNext()) {
+                heads.add(buffered.advance());
+            }
+            while (!heads.isEmpty()) {
+                Cursor cursor = heads.poll();
+                sink.accept(cursor.head);
+                if (cursor.hasNext()) {
+                    heads.add(cursor.advance());
+                }
+            }
+        }
+    }
+
+    private static long groupLength(List<Run> runs, int key) {
+        long length = 0;
+        for (Run run : runs) {
+            length += run.offsets[key + 1] - run.offsets[key];
+        }
+        return length;
+    }
+
+    private interface ValueSink {
+        void accept(double value) throws IOException;
+    }
+
+    /**
+     * A run file and the start of every group in it, in values
+     */
+    private static class Run {
+        private final File file;
+        private final long[] offsets;
+
+        private Run(File file, long[] offsets) {
+            this.file = file;
+            this.offsets = offsets;
+        }
+    }
+
+    /**
+     * The current value of a sorted source of a merge
+     */
+    private abstract static class Cursor implements Comparable<Cursor> {
+        double head;
+
+        abstract boolean hasNext();
+
+        abstract Cursor advance() throws IOException;
+
+        @Override
+        public int compareTo(Cursor that) {
+            // same order as Arrays.sort(), -0.0 before 0.0 and NaN last
+            return Double.compare(head, that.head);
+        }
+    }
+
+    private static class ArrayCursor extends Cursor {
+        private final double[] values;
+        private final int to;
+        private int next;
+
+        private ArrayCursor(double[] values, int from, int to) {
+            this.values = values;
+            this.next = from;
+            this.to = to;
+        }
+
+        @Override
+        boolean hasNext() {
+            return next < to;
+        }
+
+        @Override
+        Cursor advance() {
+            head = values[next++];
+            return this;
+        }
+    }
+
+    /**
+     * Reads a run file from start to end, one group after the other
+     */
+    private static class RunReader implements Closeable {
+        private final Run run;
+        private final DataInputStream in;
+
+        private RunReader(Run run) throws IOException {
+            this.run = run;
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run.file), READ_BUFFER_SIZE));
+        }
+
+        /**
+         * @return the cursor of the group of the key, the groups before it must have been read
+         */
+        private RunCursor group(int key) {
+            return new RunCursor(in, run.offsets[key + 1] - run.offsets[key]);
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // nothing left to read
+            }
+        }
+    }
+
+    private static class RunCursor extends Cursor {
+        private final DataInputStream in;
+        private long remaining;
+
+        private RunCursor(DataInputStream in, long remaining) {
+            this.in = in;
+            this.remaining = remaining;
+        }
+
+        @Override
+        boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        Cursor advance() throws IOException {
+            head = in.readDouble();
+            remaining--;
+            return this;
+        }
+    }
+}
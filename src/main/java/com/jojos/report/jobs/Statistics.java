@@ -1,9 +1,7 @@
 package com.jojos.report.jobs;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
-import java.util.List;
 import java.util.Locale;
 
 /**
@@ -18,7 +16,6 @@ public class Statistics {
 			return "NOT MEASURED";
 		}
 	};
-	private static final Comparator<Number> DOUBLE_COMPARATOR = Comparator.comparingDouble(Number::doubleValue);
 	private final double min;
 	private final double max;
 	private final double avg;
@@ -79,6 +76,17 @@ public class Statistics {
 		return observations;
 	}
 
+	/**
+	 * Statistics calculated elsewhere, e.g. approximated by a {@link QuantileSketch}
+	 */
+	static Statistics of(double min, double max, double avg, double std, double median,
+						 double percentile99, double percentile95, double percentile90, int observations) {
+		if (observations == 0) {
+			return NONE;
+		}
+		return new Statistics(min, max, avg, std, median, percentile99, percentile95, percentile90, observations);
+	}
+
 	/**
 	 * Calculate statistics for the list of numbers. The numbers will be treated like doubles, 
 	 * so avoid sticking longs in here with values that are larger than ints...
@@ -91,31 +99,221 @@ public class Statistics {
 			return NONE;
 		}
 		// copy here, as a queue isn't sortable
-		List<Number> numbers = new ArrayList<>(values);
-		// perform statistics on the time
+		double[] numbers = new double[values.size()];
+		int i = 0;
+		for (Number value : values) {
+			numbers[i++] = value.doubleValue();
+		}
+		return calculateInPlace(numbers, 0, numbers.length);
+	}
+
+	/**
+	 * Calculate statistics for a range of an array. The array is left untouched.
+	 *
+	 * @param values the array holding the numbers
+	 * @param offset the position of the first number
+	 * @param length the amount of numbers
+	 * @return statistics regarding these numbers
+	 */
+	public static Statistics calculate(double[] values, int offset, int length) {
+		return calculate(values, offset, length, new double[length]);
+	}
+
+	/**
+	 * Same as {@link #calculate(double[], int, int)}, sorting a copy of the numbers in the provided scratch
+	 * buffer instead of allocating one.
+	 *
+	 * @param values  the array holding the numbers
+	 * @param offset  the position of the first number
+	 * @param length  the amount of numbers
+	 * @param scratch a buffer of at least {@code length} elements, its content is overwritten
+	 * @return statistics regarding these numbers
+	 */
+	public static Statistics calculate(double[] values, int offset, int length, double[] scratch) {
+		System.arraycopy(values, offset, scratch, 0, length);
+		return calculateInPlace(scratch, 0, length);
+	}
+
+	/**
+	 * Calculate statistics for a range of an array of integers. The array is left untouched.
+	 *
+	 * @param values the array holding the numbers
+	 * @param offset the position of the first number
+	 * @param length the amount of numbers
+	 * @return statistics regarding these numbers
+	 */
+	public static Statistics calculate(int[] values, int offset, int length) {
+		return calculate(values, offset, length, new double[length]);
+	}
+
+	/**
+	 * Same as {@link #calculate(int[], int, int)}, sorting a copy of the numbers in the provided scratch
+	 * buffer instead of allocating one.
+	 *
+	 * @param values  the array holding the numbers
+	 * @param offset  the position of the first number
+	 * @param length  the amount of numbers
+	 * @param scratch a buffer of at least {@code length} elements, its content is overwritten
+	 * @return statistics regarding these numbers
+	 */
+	public static Statistics calculate(int[] values, int offset, int length, double[] scratch) {
+		return calculate(values, offset, length, scratch, PercentileStrategy.SORT);
+	}
+
+	/**
+	 * Same as {@link #calculate(int[], int, int, double[])}, locating the percentiles with the provided strategy.
+	 *
+	 * @param values   the array holding the numbers
+	 * @param offset   the position of the first number
+	 * @param length   the amount of numbers
+	 * @param scratch  a buffer of at least {@code length} elements, its content is overwritten
+	 * @param strategy the way to locate the median and the percentiles
+	 * @return statistics regarding these numbers
+	 */
+	public static Statistics calculate(int[] values, int offset, int length, double[] scratch, PercentileStrategy strategy) {
+		for (int i = 0; i < length; i++) {
+			scratch[i] = values[offset + i];
+		}
+		return calculateInPlace(scratch, 0, length, strategy);
+	}
+
+	/**
+	 * Calculate statistics for a range of an array, sorting the range in place.
+	 * Nothing but the returned statistics is allocated.
+	 *
+	 * @param values the array holding the numbers, the range gets sorted
+	 * @param offset the position of the first number
+	 * @param length the amount of numbers
+	 * @return statistics regarding these numbers
+	 */
+	public static Statistics calculateInPlace(double[] values, int offset, int length) {
+		return calculateInPlace(values, offset, length, PercentileStrategy.SORT);
+	}
+
+	/**
+	 * Calculate statistics for a range of an array, reordering the range in place.
+	 * Nothing but the returned statistics is allocated. With {@link PercentileStrategy#SELECT} the range is never
+	 * sorted, so the sums of the average and the standard deviation are added up in the original order of the
+	 * numbers instead of the ascending one. The minimum, maximum, median, percentiles and observations are identical
+	 * to the sorted ones, the average and the standard deviation are not. With {@code u = 2^-53} and n numbers the
+	 * averages differ by less than 2nu times the mean of the absolute numbers, and the variances, the mean of the
+	 * squares less the square of the average, by less than 6(n + 1)u times the mean of the squares. The standard
+	 * deviation is the square root of the variance, so the smaller it is relative to the numbers the more of its digits
+	 * cancel out, in either order. A variance that cancels below zero makes it NaN.
+	 *
+	 * @param values   the array holding the numbers, the range gets reordered
+	 * @param offset   the position of the first number
+	 * @param length   the amount of numbers
+	 * @param strategy the way to locate the median and the percentiles
+	 * @return statistics regarding these numbers
+	 */
+	public static Statistics calculateInPlace(double[] values, int offset, int length, PercentileStrategy strategy) {
+		if (length == 0) {
+			return NONE;
+		}
+		if (strategy == PercentileStrategy.SELECT) {
+			return fromSelected(values, offset, length);
+		}
+		Arrays.sort(values, offset, offset + length);
+		return fromSorted(values, offset, length);
+	}
+
+	/**
+	 * The statistics of a range of an array, selecting just the order statistics instead of sorting. The sums are
+	 * added up in the order of the range, not the ascending one of {@link #fromSorted(double[], int, int)}, see
+	 * {@link #calculateInPlace(double[], int, int, PercentileStrategy)} for how far apart that gets them.
+	 */
+	private static Statistics fromSelected(double[] numbers, int offset, int length) {
+		// same definitions as in fromSorted()
 		double min = Double.MAX_VALUE;
+		double smallest = Double.NaN;
 		double max = 0;
 		double sumOfSquares = 0;
 		double total = 0;
-		double percentile99 = 0;
-		int percentile99Index = (int) Math.ceil(0.99 * numbers.size()) - 1;
-		double percentile95 = 0;
-		int percentile95Index = (int) Math.ceil(0.95 * numbers.size()) - 1;
-		double percentile90 = 0;
-		int percentile90Index = (int) Math.ceil(0.9 * numbers.size()) - 1;
-		numbers.sort(DOUBLE_COMPARATOR);
-
-		double median;
-        int middle = numbers.size() / 2;
-		if (numbers.size() % 2 == 0) {
-		    median = (numbers.get(middle - 1).doubleValue() + numbers.get(middle).doubleValue()) / 2d;
-        } else {
-		    median = numbers.get(middle).doubleValue();
-        }
-
-		for (int i = 0; i < numbers.size(); i++) {
-			Number number = numbers.get(i);
-			double value = number.doubleValue();
+		for (int i = offset; i < offset + length; i++) {
+			double value = numbers[i];
+			if (value > max) {
+				max = value;
+			}
+			// the first sorted value sets the minimum, -0.0 included
+			if (smallest != smallest || Double.compare(value, smallest) < 0) {
+				smallest = value;
+			}
+			total += value;
+			sumOfSquares += value * value;
+		}
+		if (smallest < min) {
+			min = smallest;
+		}
+
+		int middle = offset + length / 2;
+		int percentile99Index = offset + (int) Math.ceil(0.99 * length) - 1;
+		int percentile95Index = offset + (int) Math.ceil(0.95 * length) - 1;
+		int percentile90Index = offset + (int) Math.ceil(0.9 * length) - 1;
+		// an odd length has a single middle, selected twice
+		int belowMiddle = length % 2 == 0 ? middle - 1 : middle;
+		Selection.select(numbers, offset, offset + length,
+				belowMiddle, middle, percentile90Index, percentile95Index, percentile99Index);
+
+		double median = length % 2 == 0 ? (numbers[middle - 1] + numbers[middle]) / 2d : numbers[middle];
+		double average = total / (double) length;
+		double meanOfSquares = sumOfSquares / (double) length;
+		double standardDeviation = Math.sqrt(meanOfSquares - (average * average));
+
+		return new Statistics(min, max, average, standardDeviation, median, numbers[percentile99Index],
+				numbers[percentile95Index], numbers[percentile90Index], length);
+	}
+
+	/**
+	 * The statistics of a range of an array sorted in ascending order.
+	 */
+	private static Statistics fromSorted(double[] numbers, int offset, int length) {
+		SortedAccumulator accumulator = new SortedAccumulator(length);
+		for (int i = offset; i < offset + length; i++) {
+			accumulator.accept(numbers[i]);
+		}
+		return accumulator.result();
+	}
+
+	/**
+	 * Calculates statistics out of numbers handed over one at a time in ascending order, so that they don't have to
+	 * be in memory all together. The outcome is identical to the one of {@link #calculate(double[], int, int)},
+	 * which uses the accumulator itself.
+	 */
+	static final class SortedAccumulator {
+		private final int length;
+		private final int percentile99Index;
+		private final int percentile95Index;
+		private final int percentile90Index;
+		private final int middle;
+
+		// perform statistics on the time
+		private double min = Double.MAX_VALUE;
+		private double max = 0;
+		private double sumOfSquares = 0;
+		private double total = 0;
+		private double percentile99 = 0;
+		private double percentile95 = 0;
+		private double percentile90 = 0;
+		private double belowMiddle;
+		private double median;
+		private int i;
+
+		/**
+		 * @param length the amount of numbers that will be handed over
+		 */
+		SortedAccumulator(int length) {
+			this.length = length;
+			this.percentile99Index = (int) Math.ceil(0.99 * length) - 1;
+			this.percentile95Index = (int) Math.ceil(0.95 * length) - 1;
+			this.percentile90Index = (int) Math.ceil(0.9 * length) - 1;
+			this.middle = length / 2;
+		}
+
+		/**
+		 * @param value the next number, not smaller than the previous one
+		 */
+		void accept(double value) {
 			if (value > max) {
 				max = value;
 			}
@@ -133,12 +331,35 @@ public class Statistics {
 			if (i == percentile90Index) {
 				percentile90 = value;
 			}
+			if (i == middle - 1) {
+				belowMiddle = value;
+			}
+			if (i == middle) {
+				if (length % 2 == 0) {
+					median = (belowMiddle + value) / 2d;
+				} else {
+					median = value;
+				}
+			}
+			i++;
 		}
-		double average = total / (double) numbers.size();
-		double meanOfSquares = sumOfSquares / (double) numbers.size();
-		double standardDeviation = Math.sqrt(meanOfSquares - (average * average));
 
-		return new Statistics(min, max, average, standardDeviation, median, percentile99, percentile95, percentile90, numbers.size());
+		/**
+		 * @return the statistics of all numbers handed over
+		 */
+		Statistics result() {
+			if (i != length) {
+				throw new IllegalStateException("Expected " + length + " numbers, got " + i);
+			}
+			if (length == 0) {
+				return NONE;
+			}
+			double average = total / (double) length;
+			double meanOfSquares = sumOfSquares / (double) length;
+			double standardDeviation = Math.sqrt(meanOfSquares - (average * average));
+
+			return new Statistics(min, max, average, standardDeviation, median, percentile99, percentile95, percentile90, length);
+		}
 	}
 
 	/**
@@ -0,0 +1,31 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.Util;
+
+/**
+ * Enumerates the {@link EmployeeStore} implementations {@link InputJob} can load into.
+ *
+ * @author karanikasg@gmail.com
+ */
+public enum StoreType {
+
+    /**
+     * {@link Loader}, one {@link com.jojos.report.data.Employee} object per employee
+     */
+    OBJECTS,
+
+    /**
+     * {@link ColumnarStore}, one primitive array per employee attribute
+     */
+    COLUMNAR;
+
+    /**
+     * Looks up a store type by its name as {@link Util#forName(Class, String, Enum, String)} does.
+     *
+     * @param name the name of the store type, may be null
+     * @return the matching store type or {@link #OBJECTS} if no name was provided
+     */
+    public static StoreType forName(String name) {
+        return Util.forName(StoreType.class, name, OBJECTS, "store");
+    }
+}
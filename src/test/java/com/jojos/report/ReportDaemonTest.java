@@ -0,0 +1,97 @@
+package com.jojos.report;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.jojos.report.Util.EMPLOYEES_FILE;
+
+/**
+ * Tests that the daemon coalesces changes and never generates the reports twice at once
+ *
+ * @author karanikasg@gmail.com
+ */
+public class ReportDaemonTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void coalesceChangesDuringGeneration() throws InterruptedException, IOException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        ReportDaemon daemon = new ReportDaemon(folder.getRoot().toPath(), () -> {
+            if (running.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+            }
+        }, 10);
+
+        daemon.changed();
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            daemon.changed();
+        }
+        Assert.assertEquals(5, daemon.queueDepth());
+        release.countDown();
+
+        awaitGenerations(daemon, 2);
+        Thread.sleep(100);
+        Assert.assertEquals(2, daemon.generations());
+        Assert.assertEquals(0, daemon.queueDepth());
+        Assert.assertEquals(0, overlaps.get());
+        Assert.assertTrue(daemon.lastLatencyMillis() >= 0);
+        daemon.close();
+    }
+
+    @Test
+    public void generateOnChangeOfInputFiles() throws InterruptedException, IOException {
+        AtomicInteger generated = new AtomicInteger();
+        ReportDaemon daemon = new ReportDaemon(folder.getRoot().toPath(), generated::incrementAndGet, 50);
+        Thread watcher = new Thread(() -> {
+            try {
+                daemon.run();
+            } catch (IOException e) {
+                throw new ApplicationException(e.getMessage());
+            }
+        });
+        watcher.start();
+        try {
+            awaitGenerations(daemon, 1);
+
+            Files.write(new File(folder.getRoot(), "income-by-department.csv").toPath(), "ignored".getBytes());
+            Files.write(new File(folder.getRoot(), EMPLOYEES_FILE).toPath(), "1,Ada Novak,F,3100.00\n".getBytes());
+            awaitGenerations(daemon, 2);
+            Assert.assertEquals(0, daemon.failures());
+        } finally {
+            daemon.close();
+            watcher.join(5000);
+        }
+        Assert.assertFalse(watcher.isAlive());
+    }
+
+    private static void awaitGenerations(ReportDaemon daemon, long generations) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (daemon.generations() < generations && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(daemon.generations() >= generations);
+    }
+}
@@ -0,0 +1,53 @@
+package com.jojos.report;
+
+import com.jojos.report.jobs.RunMetrics;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Tests the metrics of the runs read through JMX
+ *
+ * @author karanikasg@gmail.com
+ */
+public class ReportMetricsTest {
+
+    @Test
+    public void publishTheLastRun() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(ReportMetrics.OBJECT_NAME);
+        try (ReportMetrics metrics = new ReportMetrics().register()) {
+            Assert.assertEquals(0L, server.getAttribute(name, "Runs"));
+            Assert.assertEquals("", server.getAttribute(name, "LastSummary"));
+
+            RunMetrics failed = new RunMetrics();
+            failed.complete(false);
+            metrics.completed(failed);
+            RunMetrics run = new RunMetrics();
+            run.phase(RunMetrics.EMPLOYEES).addNanos(2_000_000_000L).addRows(1000).addBytes(20_000);
+            run.report("income-by-department.csv").addNanos(3_000_000L).addRows(7);
+            run.complete(true);
+            metrics.completed(run);
+
+            Assert.assertEquals(2L, server.getAttribute(name, "Runs"));
+            Assert.assertEquals(1L, server.getAttribute(name, "FailedRuns"));
+            Assert.assertEquals(1000L, server.getAttribute(name, "LastRows"));
+            Assert.assertEquals(500.0, (Double) server.getAttribute(name, "LastRowsPerSecond"), 0);
+            Assert.assertEquals(10_000.0, (Double) server.getAttribute(name, "LastBytesPerSecond"), 0);
+            Assert.assertEquals(run.toJson(), server.getAttribute(name, "LastSummary"));
+            Assert.assertTrue((Long) server.getAttribute(name, "HeapUsedBytes") > 0);
+
+            TabularData phases = (TabularData) server.getAttribute(name, "LastPhaseMillis");
+            CompositeData employees = phases.get(new Object[]{RunMetrics.EMPLOYEES});
+            Assert.assertEquals(2000L, employees.get("value"));
+            Assert.assertEquals(3L, phases.get(new Object[]{"income-by-department.csv"}).get("value"));
+        }
+        Assert.assertFalse(server.isRegistered(name));
+    }
+}
@@ -0,0 +1,107 @@
+package com.jojos.report;
+
+import com.jojos.report.data.AgeBuckets;
+import com.jojos.report.jobs.EmployeeStore;
+import com.jojos.report.jobs.InputJob;
+import com.jojos.report.jobs.PercentileStrategy;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests the statistics served over HTTP and the invalidation of the cached responses on reload
+ *
+ * @author karanikasg@gmail.com
+ */
+public class ReportServerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ReportServer server;
+
+    @Before
+    public void start() throws IOException {
+        server = new ReportServer(0, PercentileStrategy.SORT, AgeBuckets.DECADES, 16);
+        server.start();
+    }
+
+    @After
+    public void stop() {
+        server.close();
+    }
+
+    @Test
+    public void serveStatisticsPerGroup() throws IOException {
+        Assert.assertEquals(503, status("/statistics/department"));
+        server.reload(load("1,Ada Novak,f,3000\n2,Bruno Rossi,M,2000\n2,Clara Smith,F,4000\n"));
+
+        String departments = get("/statistics/department");
+        Assert.assertTrue(departments, departments.startsWith("{\"dimension\":\"department\",\"measure\":\"income\",\"groups\":["));
+        Assert.assertTrue(departments, departments.contains("{\"group\":\"Sales\",\"observations\":2,\"min\":2000.0,\"max\":4000.0"));
+
+        String ageRange = get("/statistics/age-range/30-39?measure=age");
+        Assert.assertTrue(ageRange, ageRange.startsWith("{\"group\":\"30-39\",\"observations\":2,\"min\":30.0,\"max\":33.0"));
+
+        String female = get("/statistics/genre/FEMALE");
+        Assert.assertTrue(female, female.startsWith("{\"group\":\"FEMALE\",\"observations\":2,\"min\":3000.0,\"max\":4000.0"));
+
+        Assert.assertEquals(404, status("/statistics/department/Marketing"));
+        Assert.assertEquals(404, status("/statistics/salary"));
+        Assert.assertEquals(404, status("/statistics/genre?measure=height"));
+    }
+
+    @Test
+    public void invalidateCacheOnReload() throws IOException {
+        server.reload(load("1,Ada Novak,F,3000\n"));
+        String before = get("/statistics/department/Engineering");
+        Assert.assertEquals(before, get("/statistics/department/Engineering"));
+        Assert.assertEquals(1, server.hits());
+        Assert.assertEquals(1, server.misses());
+
+        server.reload(load("1,Ada Novak,F,3500\n"));
+        String after = get("/statistics/department/Engineering");
+        Assert.assertEquals(2, server.misses());
+        Assert.assertNotEquals(before, after);
+        Assert.assertTrue(after, after.contains("\"max\":3500.0"));
+    }
+
+    private EmployeeStore load(String employees) throws IOException {
+        String path = TestInputs.writeInputFiles(folder.newFolder(), "Engineering\nSales",
+                "Ada Novak,41\nBruno Rossi,30\nClara Smith,33\n", employees);
+        return new InputJob(path).withSnapshot(false).parseAndLoad();
+    }
+
+    private int status(String path) throws IOException {
+        return connect(path).getResponseCode();
+    }
+
+    private String get(String path) throws IOException {
+        HttpURLConnection connection = connect(path);
+        Assert.assertEquals(200, connection.getResponseCode());
+        try (InputStream in = connection.getInputStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private HttpURLConnection connect(String path) throws IOException {
+        return (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+    }
+}
@@ -0,0 +1,33 @@
+package com.jojos.report;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static com.jojos.report.Util.AGES_FILE;
+import static com.jojos.report.Util.DEPARTMENTS_FILE;
+import static com.jojos.report.Util.EMPLOYEES_FILE;
+
+/**
+ * Writes the input files of the tests
+ *
+ * @author karanikasg@gmail.com
+ */
+public final class TestInputs {
+
+    private TestInputs() {
+    }
+
+    /**
+     * Writes the input files to a directory, replacing the ones it holds already
+     *
+     * @return the path of the directory
+     */
+    public static String writeInputFiles(File directory, String departments, String ages, String employees) throws IOException {
+        Files.write(new File(directory, DEPARTMENTS_FILE).toPath(), departments.getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(directory, AGES_FILE).toPath(), ages.getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(directory, EMPLOYEES_FILE).toPath(), employees.getBytes(StandardCharsets.UTF_8));
+        return directory.getPath();
+    }
+}
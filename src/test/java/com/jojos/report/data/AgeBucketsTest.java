@@ -0,0 +1,70 @@
+package com.jojos.report.data;
+
+import com.jojos.report.ApplicationException;
+import com.jojos.report.jobs.Dimension;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the lookup of age ranges
+ *
+ * @author karanikasg@gmail.com
+ */
+public class AgeBucketsTest {
+
+    @Test
+    public void decadesMatchAgeRanges() {
+        AgeBuckets decades = AgeBuckets.parse(null);
+        Assert.assertEquals(AgeBuckets.DECADES, decades);
+        Assert.assertEquals(AgeRange.values().length - 1, decades.groups());
+        for (int age = -1; age < 200; age++) {
+            AgeRange ageRange = AgeRange.forAge(age);
+            Assert.assertEquals(ageRange.ordinal(), decades.bucket(age));
+            if (ageRange != AgeRange.YEAR_130_PLUS) {
+                Assert.assertEquals(ageRange.toString(), decades.label(decades.bucket(age)));
+            }
+        }
+        Assert.assertEquals(AgeRange.YEAR_130_PLUS, AgeRange.forAge(Integer.MAX_VALUE));
+        Assert.assertEquals("130+", AgeRange.YEAR_130_PLUS.toString());
+    }
+
+    @Test
+    public void customRanges() {
+        AgeBuckets buckets = AgeBuckets.parse("0, 18, 30, 65+");
+        Assert.assertEquals(3, buckets.size());
+        Assert.assertEquals(4, buckets.groups());
+        Assert.assertEquals(0, buckets.bucket(17));
+        Assert.assertEquals(1, buckets.bucket(18));
+        Assert.assertEquals(2, buckets.bucket(64));
+        Assert.assertEquals(buckets.overflow(), buckets.bucket(65));
+        Assert.assertEquals("18-29", buckets.label(1));
+        Assert.assertEquals("65+", buckets.label(buckets.overflow()));
+        Assert.assertEquals("0,18,30,65+", buckets.toString());
+
+        AgeBuckets fiveYears = AgeBuckets.parse("5");
+        Assert.assertEquals(26, fiveYears.groups());
+        Assert.assertEquals("125-129", fiveYears.label(25));
+        Assert.assertEquals(Dimension.NO_GROUP, Dimension.AGE_RANGE.key(fiveYears, 0, (byte) 0, 130));
+        Assert.assertEquals(fiveYears.overflow(), Dimension.AGE_RANGE.key(AgeBuckets.parse("5+"), 0, (byte) 0, 130));
+    }
+
+    @Test
+    public void invalidRanges() {
+        for (String spec : new String[]{"0", "x", "10,20", "0,20,20", "0,30,20", "+"}) {
+            try {
+                AgeBuckets.parse(spec);
+                Assert.fail("Expected " + spec + " to be invalid");
+            } catch (ApplicationException e) {
+                // expected
+            }
+        }
+        for (int width : new int[]{131, Integer.MAX_VALUE}) {
+            try {
+                AgeBuckets.ofWidth(width, 130, false);
+                Assert.fail("Expected ranges of width " + width + " to be invalid");
+            } catch (ApplicationException e) {
+                // expected
+            }
+        }
+    }
+}
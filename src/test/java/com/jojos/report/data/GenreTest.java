@@ -0,0 +1,42 @@
+package com.jojos.report.data;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests the lookup of genres by their abbreviations, from a string and from the bytes of a buffer alike
+ *
+ * @author karanikasg@gmail.com
+ */
+public class GenreTest {
+
+    @Test
+    public void lookUpAbbreviationsIgnoringCase() {
+        assertGenre(Genre.FEMALE, "F");
+        assertGenre(Genre.FEMALE, "f");
+        assertGenre(Genre.MALE, "M");
+        assertGenre(Genre.MALE, "m");
+        assertGenre(Genre.NA, "N/A");
+        assertGenre(Genre.NA, "n/a");
+    }
+
+    @Test
+    public void unknownAbbreviationsAreNotDetermined() {
+        assertGenre(Genre.NA, "");
+        assertGenre(Genre.NA, "x");
+        assertGenre(Genre.NA, "FM");
+        assertGenre(Genre.NA, "female");
+    }
+
+    private static void assertGenre(Genre expected, String abbreviation) {
+        Assert.assertEquals(abbreviation, expected, Genre.forCaseInsensitiveAbbreviation(abbreviation));
+        // surrounded by the fields of a line
+        byte[] line = ("1,Ada Novak," + abbreviation + ",3100.00").getBytes(StandardCharsets.UTF_8);
+        int start = "1,Ada Novak,".length();
+        Assert.assertEquals(abbreviation, expected,
+                Genre.forCaseInsensitiveAbbreviation(ByteBuffer.wrap(line), start, start + abbreviation.length()));
+    }
+}
@@ -0,0 +1,76 @@
+package com.jojos.report.jobs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests the age table against a hash map
+ *
+ * @author karanikasg@gmail.com
+ */
+public class AgeTableTest {
+
+    @Test
+    public void likeHashMap() {
+        Random random = new Random(42);
+        AgeTable table = new AgeTable();
+        Map<String, Integer> map = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            // duplicates included, later ages win
+            String name = "Name " + random.nextInt(50_000);
+            int age = random.nextInt(100);
+            table.put(name, age);
+            map.put(name, age);
+        }
+
+        Assert.assertEquals(map.size(), table.size());
+        map.forEach((name, age) -> Assert.assertEquals(name, (int) age, table.get(name, -1)));
+        Assert.assertEquals(-1, table.get("Name 50000", -1));
+        Assert.assertEquals(-1, table.get("", -1));
+    }
+
+    @Test
+    public void lookupFromBuffer() {
+        AgeTable table = new AgeTable();
+        table.put("Opal Ballard", 23);
+        table.put("Ζωή Παπά", 41);
+        table.put("", 7);
+
+        ByteBuffer buffer = ByteBuffer.wrap("6,Opal Ballard,f,Ζωή Παπά,Opal Ballar".getBytes(StandardCharsets.UTF_8));
+        int greekStart = "6,Opal Ballard,f,".getBytes(StandardCharsets.UTF_8).length;
+        int greekEnd = greekStart + "Ζωή Παπά".getBytes(StandardCharsets.UTF_8).length;
+        Assert.assertEquals(23, table.get(buffer, 2, 14, -1));
+        Assert.assertEquals(41, table.get(buffer, greekStart, greekEnd, -1));
+        Assert.assertEquals(-1, table.get(buffer, greekEnd + 1, buffer.limit(), -1));
+        Assert.assertEquals(7, table.get(buffer, 0, 0, -1));
+
+        table.put(buffer, 2, 14, 24);
+        Assert.assertEquals(24, table.get("Opal Ballard", -1));
+        Assert.assertEquals(3, table.size());
+    }
+
+    @Test
+    public void putAllLetsTheOtherTableWin() {
+        AgeTable first = new AgeTable();
+        first.put("Otis Bell", 35);
+        first.put("Francis Hayes", 30);
+        AgeTable second = new AgeTable();
+        second.put("Otis Bell", 36);
+        for (int i = 0; i < 5_000; i++) {
+            second.put("Name " + i, i % 90);
+        }
+
+        first.putAll(second);
+
+        Assert.assertEquals(5_002, first.size());
+        Assert.assertEquals(36, first.get("Otis Bell", -1));
+        Assert.assertEquals(30, first.get("Francis Hayes", -1));
+        Assert.assertEquals(4_999 % 90, first.get("Name 4999", -1));
+    }
+}
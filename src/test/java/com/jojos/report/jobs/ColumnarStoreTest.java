@@ -0,0 +1,110 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.data.AgeRange;
+import com.jojos.report.data.Department;
+import com.jojos.report.data.Employee;
+import com.jojos.report.data.Genre;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests that the columnar store holds the same data as the object based {@link Loader}
+ *
+ * @author karanikasg@gmail.com
+ */
+public class ColumnarStoreTest {
+
+    @Test
+    public void loadEmployees() {
+        ColumnarStore.Builder builder = ColumnarStore.builder();
+        builder.load(new Department("B"));
+        builder.load(new Department("A"));
+        builder.load(new Department("B"));
+        builder.load(new Employee(2, "Opal Ballard", Genre.FEMALE, 4350.00, 23));
+        builder.load(new Employee(1, "Otis Bell", Genre.MALE, 2650.50, 35));
+        builder.load(new Employee(2, "Lynne Ortiz", Genre.FEMALE, 2880.00, 28));
+        builder.load(new Employee(3, "Invalid Department", Genre.FEMALE, 2880.00, 28));
+
+        ColumnarStore store = builder.build();
+
+        Assert.assertEquals(2, store.departmentsSize());
+        Assert.assertEquals(3, store.employeesSize());
+        Assert.assertEquals(sorted(2650.50), sorted(store.getEmployeesIncomeForDepartment(new Department("A"))));
+        Assert.assertEquals(sorted(2880.00, 4350.00), sorted(store.getEmployeesIncomeForDepartment(new Department("B"))));
+        Assert.assertEquals(sorted(23, 28), sorted(store.getEmployeesAgeForDepartment(new Department("B"))));
+        Assert.assertEquals(sorted(2880.00, 4350.00), sorted(store.getEmployeesIncomeForAgeRange(AgeRange.YEAR_20_30)));
+        Assert.assertEquals(sorted(2650.50), sorted(store.getEmployeesIncomeForAgeRange(AgeRange.YEAR_30_40)));
+        Assert.assertTrue(store.getEmployeesIncomeForAgeRange(AgeRange.YEAR_0_10).isEmpty());
+
+        List<String> visited = new ArrayList<>();
+        store.forEachEmployee((departmentIndex, name, genre, income, age) ->
+                visited.add(departmentIndex + "|" + name + "|" + Genre.forCode(genre)));
+        Assert.assertEquals(3, visited.size());
+        Assert.assertEquals("0|Otis Bell|MALE", visited.get(0));
+        Assert.assertTrue(visited.contains("1|Opal Ballard|FEMALE"));
+    }
+
+    @Test
+    public void keepNamesAsBytes() {
+        ColumnarStore.Builder builder = ColumnarStore.builder();
+        builder.load(new Department("A"));
+        builder.load(new Department("B"));
+        List<String> expected = new ArrayList<>();
+        // more rows and name bytes than the initial capacity of the builder
+        for (int i = 0; i < 5000; i++) {
+            String name = (i % 2 == 0 ? "Zoë Ångström " : "Björn Ødegård ") + i;
+            builder.load(new Employee(i % 2 + 1, name, Genre.FEMALE, 1000 + i, 20 + i % 40));
+            expected.add(name);
+        }
+
+        ColumnarStore store = builder.build();
+
+        List<String> visited = new ArrayList<>();
+        store.forEachEmployee((departmentIndex, name, genre, income, age) -> {
+            Assert.assertEquals(expected.get((int) income - 1000), name);
+            visited.add(name);
+        });
+        Assert.assertEquals(sorted(expected), sorted(visited));
+    }
+
+    @Test
+    public void sameContentAsLoader()throws URISyntaxException {
+        String path = ParseModesTest.testDataPath();
+
+        EmployeeStore expected = new InputJob(path, ParseMode.MAPPED).parseAndLoad(StoreType.OBJECTS);
+        EmployeeStore actual = new InputJob(path, ParseMode.MAPPED).parseAndLoad(StoreType.COLUMNAR);
+
+        Assert.assertEquals(expected.getDepartments(), actual.getDepartments());
+        Assert.assertEquals(expected.employeesSize(), actual.employeesSize());
+        for (Department department : expected.getDepartments()) {
+            Assert.assertEquals(sorted(expected.getEmployeesIncomeForDepartment(department)),
+                    sorted(actual.getEmployeesIncomeForDepartment(department)));
+            Assert.assertEquals(sorted(expected.getEmployeesAgeForDepartment(department)),
+                    sorted(actual.getEmployeesAgeForDepartment(department)));
+        }
+        for (AgeRange ageRange : AgeRange.values()) {
+            Assert.assertEquals(sorted(expected.getEmployeesIncomeForAgeRange(ageRange)),
+                    sorted(actual.getEmployeesIncomeForAgeRange(ageRange)));
+        }
+    }
+
+    @SafeVarargs
+    private static <T extends Comparable<T>> List<T> sorted(T... values) {
+        List<T> list = new ArrayList<>();
+        Collections.addAll(list, values);
+        Collections.sort(list);
+        return list;
+    }
+
+    private static <T extends Comparable<T>> List<T> sorted(Collection<T> values) {
+        List<T> list = new ArrayList<>(values);
+        Collections.sort(list);
+        return list;
+    }
+}
@@ -0,0 +1,214 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.ApplicationException;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static com.jojos.report.Util.AGES_FILE;
+import static com.jojos.report.Util.COMPRESSED_EXTENSION;
+import static com.jojos.report.Util.DEPARTMENTS_FILE;
+import static com.jojos.report.Util.EMPLOYEES_FILE;
+
+/**
+ * Tests that compressed input files, plain gzip, multi-member gzip and BGZF, load the same as decompressed ones
+ *
+ * @author karanikasg@gmail.com
+ */
+public class CompressedInputTest {
+
+    private static final int BGZF_BLOCK_INPUT = 0xff00;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void loadCompressedTestDataInEveryParseMode() throws URISyntaxException, IOException {
+        String path = ParseModesTest.testDataPath();
+        List<String> expected = ParseModesTest.describe(new InputJob(path).parseAndLoad());
+
+        File directory = folder.newFolder();
+        gzip(read(path, DEPARTMENTS_FILE), new File(directory, DEPARTMENTS_FILE + COMPRESSED_EXTENSION));
+        bgzip(read(path, AGES_FILE), new File(directory, AGES_FILE + COMPRESSED_EXTENSION), 97);
+        // two concatenated members, as appended by gzip >>
+        byte[] employees = read(path, EMPLOYEES_FILE);
+        File compressedEmployees = new File(directory, EMPLOYEES_FILE + COMPRESSED_EXTENSION);
+        gzip(Arrays.copyOfRange(employees, 0, employees.length / 3), compressedEmployees);
+        try (OutputStream out = Files.newOutputStream(compressedEmployees.toPath(), StandardOpenOption.APPEND);
+             GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(employees, employees.length / 3, employees.length - employees.length / 3);
+        }
+
+        for (ParseMode parseMode : ParseMode.values()) {
+            for (JoinMode joinMode : JoinMode.values()) {
+                InputJob inputJob = new InputJob(directory.getPath(), parseMode).withJoinMode(joinMode);
+                Assert.assertEquals(parseMode + " " + joinMode, expected, ParseModesTest.describe(inputJob.parseAndLoad()));
+            }
+        }
+    }
+
+    @Test
+    public void linesAcrossBlocksInOrder() throws IOException {
+        StringBuilder text = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 200_000; i++) {
+            String line = "Employee " + i + "," + (i % 100);
+            expected.add(line);
+            text.append(line).append(i % 7 == 0 ? "\r\n" : "\n");
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        File blocked = folder.newFile("blocked.csv.gz");
+        bgzip(bytes, blocked, BGZF_BLOCK_INPUT);
+        File streamed = folder.newFile("streamed.csv.gz");
+        gzip(bytes, streamed);
+
+        for (File file : new File[]{blocked, streamed}) {
+            List<String> lines = new ArrayList<>();
+            CompressedInput.forEachLine(file, (buffer, start, end) -> {
+                byte[] line = new byte[end - start];
+                for (int i = start; i < end; i++) {
+                    line[i - start] = buffer.get(i);
+                }
+                lines.add(new String(line, StandardCharsets.UTF_8));
+            });
+            Assert.assertEquals(file.getName(), expected, lines);
+        }
+    }
+
+    @Test(expected = ApplicationException.class)
+    public void rejectCompressedAlongWithPlain() throws URISyntaxException, IOException {
+        File directory = folder.newFolder();
+        for (String name : new String[]{DEPARTMENTS_FILE, AGES_FILE, EMPLOYEES_FILE}) {
+            Files.write(new File(directory, name).toPath(), read(ParseModesTest.testDataPath(), name));
+        }
+        gzip(read(ParseModesTest.testDataPath(), AGES_FILE), new File(directory, AGES_FILE + COMPRESSED_EXTENSION));
+        new InputJob(directory.getPath());
+    }
+
+    @Test(expected = ApplicationException.class)
+    public void rejectCorruptFile() throws URISyntaxException, IOException {
+        File directory = folder.newFolder();
+        for (String name : new String[]{DEPARTMENTS_FILE, AGES_FILE}) {
+            Files.write(new File(directory, name).toPath(), read(ParseModesTest.testDataPath(), name));
+        }
+        File employees = new File(directory, EMPLOYEES_FILE + COMPRESSED_EXTENSION);
+        gzip(read(ParseModesTest.testDataPath(), EMPLOYEES_FILE), employees);
+        byte[] bytes = Files.readAllBytes(employees.toPath());
+        Files.write(employees.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+        new InputJob(directory.getPath(), ParseMode.SCANNER).parseAndLoad();
+    }
+
+    @Test(timeout = 10_000)
+    public void failWhenTruncatedWithTheQueueFull() throws IOException, InterruptedException {
+        // stored instead of deflated, so that the compressed bytes are about as many as the decompressed ones
+        int queued = CompressedInput.queuedChunks(ForkJoinPool.commonPool());
+        byte[] bytes = new byte[(queued + 2) * CompressedInput.CHUNK_SIZE];
+        Arrays.fill(bytes, (byte) 'a');
+        File file = folder.newFile("truncated.csv.gz");
+        try (GZIPOutputStream gzip = new GZIPOutputStream(Files.newOutputStream(file.toPath())) {
+            {
+                def.setLevel(Deflater.NO_COMPRESSION);
+            }
+        }) {
+            gzip.write(bytes);
+        }
+        byte[] compressed = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(compressed, (queued * 2 + 1) * CompressedInput.CHUNK_SIZE / 2));
+
+        try (InputStream in = CompressedInput.open(file)) {
+            // the decompression fails while the queue is full of chunks the reader didn't take yet
+            Thread.sleep(1000);
+            byte[] buffer = new byte[1 << 16];
+            while (in.read(buffer) >= 0) {
+                // drained until the failure
+            }
+            Assert.fail("A truncated file should fail");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void rejectBgzfBlockClaimingTooManyBytes() throws IOException {
+        File file = folder.newFile("oversized.csv.gz");
+        byte[] block = bgzfBlock("a line\n".getBytes(StandardCharsets.UTF_8));
+        // the size of the input, the last 4 bytes, beyond any block
+        Arrays.fill(block, block.length - 4, block.length, (byte) 0xff);
+        Files.write(file.toPath(), block);
+        try {
+            CompressedInput.forEachLine(file, (buffer, start, end) -> Assert.fail("No line expected"));
+            Assert.fail("An oversized block should fail");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("Corrupt BGZF block"));
+        }
+    }
+
+    private static byte[] read(String path, String name) throws IOException {
+        return Files.readAllBytes(new File(path, name).toPath());
+    }
+
+    private static void gzip(byte[] bytes, File file) throws IOException {
+        try (GZIPOutputStream gzip = new GZIPOutputStream(Files.newOutputStream(file.toPath()))) {
+            gzip.write(bytes);
+        }
+    }
+
+    /**
+     * Compresses the bytes the way bgzip does, into blocks of at most the provided bytes followed by an empty block
+     */
+    private static void bgzip(byte[] bytes, File file, int blockInput) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            for (int from = 0; from < bytes.length; from += blockInput) {
+                out.write(bgzfBlock(Arrays.copyOfRange(bytes, from, Math.min(bytes.length, from + blockInput))));
+            }
+            out.write(bgzfBlock(new byte[0]));
+        }
+    }
+
+    private static byte[] bgzfBlock(byte[] input) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(input);
+        deflater.finish();
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1 << 16];
+        while (!deflater.finished()) {
+            deflated.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(input);
+
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        int blockSize = 18 + deflated.size() + 8;
+        block.write(new byte[]{31, (byte) 139, 8, 4, 0, 0, 0, 0, 0, (byte) 255, 6, 0, 'B', 'C', 2, 0}, 0, 16);
+        writeLittleEndian(block, blockSize - 1, 2);
+        block.write(deflated.toByteArray(), 0, deflated.size());
+        writeLittleEndian(block, crc.getValue(), 4);
+        writeLittleEndian(block, input.length, 4);
+        return block.toByteArray();
+    }
+
+    private static void writeLittleEndian(ByteArrayOutputStream out, long value, int bytes) {
+        for (int i = 0; i < bytes; i++) {
+            out.write((int) (value >>> (8 * i)) & 0xff);
+        }
+    }
+}
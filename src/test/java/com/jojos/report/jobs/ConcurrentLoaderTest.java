@@ -0,0 +1,85 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.ApplicationException;
+import com.jojos.report.data.AgeRange;
+import com.jojos.report.data.Department;
+import com.jojos.report.data.Employee;
+import com.jojos.report.data.Genre;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests that employees loaded from several threads at once end up the same as loaded from one
+ *
+ * @author karanikasg@gmail.com
+ */
+public class ConcurrentLoaderTest {
+
+    private static final int THREADS = 4;
+    private static final int EMPLOYEES_PER_THREAD = 10_000;
+
+    @Test
+    public void sameContentAsSequentialLoad() throws InterruptedException {
+        Loader expected = new Loader();
+        ConcurrentLoader concurrentLoader = new ConcurrentLoader();
+        for (String name : new String[]{"C", "A", "B", "A"}) {
+            expected.load(new Department(name));
+            concurrentLoader.load(new Department(name));
+        }
+        List<List<Employee>> partitions = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            List<Employee> partition = new ArrayList<>();
+            for (int i = 0; i < EMPLOYEES_PER_THREAD; i++) {
+                // department 4 doesn't exist
+                Employee employee = new Employee(1 + i % 4, "Employee " + thread + "-" + i,
+                        i % 2 == 0 ? Genre.FEMALE : Genre.MALE, 1000 + i, i % 140);
+                partition.add(employee);
+                expected.load(employee);
+            }
+            partitions.add(partition);
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (List<Employee> partition : partitions) {
+            ConcurrentLoader.Appender appender = concurrentLoader.appender();
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                partition.forEach(appender);
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Loader actual = concurrentLoader.freeze();
+
+        Assert.assertEquals(expected.getDepartments(), actual.getDepartments());
+        Assert.assertEquals(expected.employeesSize(), actual.employeesSize());
+        Assert.assertEquals(THREADS * EMPLOYEES_PER_THREAD * 3 / 4, actual.employeesSize());
+        for (Department department : expected.getDepartments()) {
+            Assert.assertEquals(expected.getEmployeesForDepartment(department), actual.getEmployeesForDepartment(department));
+        }
+        for (AgeRange ageRange : AgeRange.values()) {
+            Assert.assertEquals(expected.getAgeRanges().get(ageRange), actual.getAgeRanges().get(ageRange));
+        }
+    }
+
+    @Test(expected = ApplicationException.class)
+    public void noDepartmentsAlongWithEmployees() {
+        ConcurrentLoader concurrentLoader = new ConcurrentLoader();
+        concurrentLoader.load(new Department("A"));
+        concurrentLoader.appender();
+        concurrentLoader.load(new Department("B"));
+    }
+}
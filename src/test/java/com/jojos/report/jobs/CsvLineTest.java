@@ -0,0 +1,98 @@
+package com.jojos.report.jobs;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests the byte level tokenizing against the JDK's splitting and number parsing
+ *
+ * @author karanikasg@gmail.com
+ */
+public class CsvLineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void splitLikeRegularExpression() {
+        String[] lines = {
+                "a,b,c", "a , b ,c", "a,,b", "a, ,b", "a ,  ,b", ",a", "a,b,,", "a,b, ", ",,,", " a,b ",
+                "a\t,\tb", "a  b , c", "single", "6,Opal Ballard,f,4350.00"
+        };
+        CsvLine csvLine = new CsvLine();
+        for (String line : lines) {
+            String[] expected = line.split("\\s*,\\s*");
+            ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+
+            int fields = csvLine.split(buffer, 0, buffer.capacity());
+
+            String[] actual = new String[fields];
+            for (int i = 0; i < fields; i++) {
+                actual[i] = csvLine.string(i);
+            }
+            Assert.assertArrayEquals(line, expected, actual);
+        }
+    }
+
+    @Test
+    public void parseNumbersLikeTheJdk() {
+        String[] doubles = {
+                "0", "-0", "4350.00", "2650.5", "0.1", "0.3", "1.005", "123456789.987654321", " 42 ", "+7.25",
+                "1e3", "9007199254740993", "0.000000000000000000000001", "1.7976931348623157E308", "NaN", "-Infinity", "5."
+        };
+        CsvLine csvLine = new CsvLine();
+        for (String value : doubles) {
+            ByteBuffer buffer = ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+            csvLine.split(buffer, 0, buffer.capacity());
+            Assert.assertEquals(value, Double.doubleToRawLongBits(Double.parseDouble(value)),
+                    Double.doubleToRawLongBits(csvLine.parseDouble(0)));
+        }
+
+        String[] ints = {"0", "7", "-12", "+3", "2147483647", "-2147483648"};
+        for (String value : ints) {
+            ByteBuffer buffer = ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+            csvLine.split(buffer, 0, buffer.capacity());
+            Assert.assertEquals(value, Integer.parseInt(value), csvLine.parseInt(0));
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parseIntOverflow() {
+        ByteBuffer buffer = ByteBuffer.wrap("2147483648".getBytes(StandardCharsets.UTF_8));
+        CsvLine csvLine = new CsvLine();
+        csvLine.split(buffer, 0, buffer.capacity());
+        csvLine.parseInt(0);
+    }
+
+    @Test
+    public void readLinesAcrossSmallWindows() throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), "first\r\nsecond\n\nthe last one".getBytes(StandardCharsets.UTF_8));
+
+        List<String> lines = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedLineReader.forEachLine(channel, 0, channel.size(), 13, (buffer, start, end) -> {
+                byte[] bytes = new byte[end - start];
+                for (int i = start; i < end; i++) {
+                    bytes[i - start] = buffer.get(i);
+                }
+                lines.add(new String(bytes, StandardCharsets.UTF_8));
+            });
+        }
+
+        Assert.assertEquals(Arrays.asList("first", "second", "", "the last one"), lines);
+    }
+}
@@ -0,0 +1,128 @@
+package com.jojos.report.jobs;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Tests that the report writer writes the same numbers as the formatter and escapes text per RFC 4180
+ *
+ * @author karanikasg@gmail.com
+ */
+public class CsvWriterTest {
+
+    private static final int RANDOM_VALUES = 100_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sameTwoDecimalsAsFormatter() throws IOException {
+        double[] values = {0, -0d, 0.001, 0.005, 0.015, 0.125, 0.135, 1.005, 2.675, 4470.005, 123456.785, -0.004,
+                -0.005, -2.675, 9999999.995, 1e7, 12345678.9, 1e300, Double.NaN, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.MIN_VALUE, Double.MAX_VALUE};
+        assertFormatted(values);
+
+        Random random = new Random(42);
+        double[] randoms = new double[RANDOM_VALUES];
+        for (int i = 0; i < randoms.length; i++) {
+            switch (i % 4) {
+                case 0:
+                    randoms[i] = random.nextDouble() * 200;
+                    break;
+                case 1:
+                    randoms[i] = (random.nextDouble() - 0.5) * 2e7;
+                    break;
+                case 2:
+                    // ties, exact or not in binary
+                    randoms[i] = random.nextInt(10_000_000) / 1000d + 0.005;
+                    break;
+                default:
+                    randoms[i] = random.nextInt(1_000_000) / 100d;
+            }
+        }
+        assertFormatted(randoms);
+    }
+
+    @Test
+    public void otherFormatsInRootLocale() throws IOException {
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(Locale.GERMANY);
+        try {
+            File file = folder.newFile();
+            try (CsvWriter writer = new CsvWriter(file)) {
+                writer.field(1234.5, "%.0f").field(1234.5, "%.3f").field(1234.5).endLine();
+            }
+            Assert.assertEquals("1235,1234.500,1234.50\n", read(file));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    public void escapeText() throws IOException {
+        File file = folder.newFile();
+        try (CsvWriter writer = new CsvWriter(file)) {
+            writer.fields("Research, Development", "The \"A\" team", "Line\nbreak", "Carriage\rreturn", "plain").endLine();
+            writer.fields("Ventes Île-de-France", "営業", "🚀 Launch", "").endLine();
+        }
+        Assert.assertEquals("\"Research, Development\",\"The \"\"A\"\" team\",\"Line\nbreak\",\"Carriage\rreturn\",plain\n"
+                + "Ventes Île-de-France,営業,🚀 Launch,\n", read(file));
+    }
+
+    @Test
+    public void writeMoreThanTheBuffer() throws IOException {
+        File file = folder.newFile();
+        StringBuilder expected = new StringBuilder();
+        try (CsvWriter writer = new CsvWriter(file)) {
+            for (int i = 0; i < 100_000; i++) {
+                writer.field("Département " + i).field(i / 3d).endLine();
+                expected.append("Département ").append(i).append(',')
+                        .append(String.format(Locale.ROOT, "%.2f", i / 3d)).append('\n');
+            }
+        }
+        Assert.assertEquals(expected.toString(), read(file));
+    }
+
+    @Test
+    public void closeTwiceReturnsTheBufferOnce() throws IOException {
+        CsvWriter closed = new CsvWriter(folder.newFile());
+        closed.field("closed").endLine();
+        closed.close();
+        closed.close();
+
+        // the writers open at once, each with a buffer of its own
+        File first = folder.newFile();
+        File second = folder.newFile();
+        try (CsvWriter one = new CsvWriter(first); CsvWriter other = new CsvWriter(second)) {
+            one.field("one").endLine();
+            other.field("other").endLine();
+        }
+        Assert.assertEquals("one\n", read(first));
+        Assert.assertEquals("other\n", read(second));
+    }
+
+    private void assertFormatted(double[] values) throws IOException {
+        File file = folder.newFile();
+        StringBuilder expected = new StringBuilder();
+        try (CsvWriter writer = new CsvWriter(file)) {
+            for (double value : values) {
+                writer.field(value).endLine();
+                expected.append(String.format(Locale.ROOT, "%.2f", value)).append('\n');
+            }
+        }
+        Assert.assertEquals(expected.toString(), read(file));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,29 @@
+package com.jojos.report.jobs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that the JSON values are escaped and that numbers JSON can't hold are written as null
+ *
+ * @author karanikasg@gmail.com
+ */
+public class JsonTest {
+
+    @Test
+    public void escapeStrings() {
+        StringBuilder json = new StringBuilder();
+        Json.appendString(json, "say \"hi\"\\\n\tÅ");
+        Assert.assertEquals("\"say \\\"hi\\\"\\\\\\u000a\\u0009Å\"", json.toString());
+    }
+
+    @Test
+    public void writeNumbers() {
+        StringBuilder json = new StringBuilder("{\"a\":1");
+        Json.appendNumber(json, "avg", 2.5);
+        Json.appendNumber(json, "rate", 1234.56, 1);
+        Json.appendNumber(json, "std", Double.NaN);
+        Json.appendNumber(json, "max", Double.POSITIVE_INFINITY, 1);
+        Assert.assertEquals("{\"a\":1,\"avg\":2.5,\"rate\":1234.6,\"std\":null,\"max\":null", json.toString());
+    }
+}
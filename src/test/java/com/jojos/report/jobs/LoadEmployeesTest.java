@@ -95,6 +95,17 @@ public class LoadEmployeesTest {
         Assert.assertTrue(loader.getAgeRanges().size() == AgeRange.values().length);
     }
 
+    @Test
+    public void loadEmployeesBeyondTheLastAgeRange() {
+        loader.load(new Employee(1, "Opal Ballard", Genre.FEMALE, 4350.00, 129));
+        loader.load(new Employee(1, "Otis Bell", Genre.MALE, 2650.50, 130));
+        loader.load(new Employee(1, "Lynne Ortiz", Genre.FEMALE, 2880.00, Integer.MAX_VALUE));
+
+        Assert.assertEquals(3, loader.employeesSize());
+        Assert.assertEquals(1, loader.getEmployeesIncomeForAgeRange(AgeRange.YEAR_120_130).size());
+        Assert.assertEquals(2, loader.getEmployeesIncomeForAgeRange(AgeRange.YEAR_130_PLUS).size());
+    }
+
     @Test
     public void loadEmployeesWithInvalidDepartment() {
         Employee employee1 = new Employee(0, "Opal Ballard", Genre.FEMALE, 4350.00, 23);
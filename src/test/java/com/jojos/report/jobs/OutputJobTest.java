@@ -0,0 +1,352 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.ApplicationException;
+import com.jojos.report.Util;
+import com.jojos.report.data.AgeBuckets;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Tests the generated reports of the test data against the expected ones
+ *
+ * @author karanikasg@gmail.com
+ */
+public class OutputJobTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void generateReportsFromLoader() throws URISyntaxException, IOException {
+        EmployeeStore store = new InputJob(ParseModesTest.testDataPath()).parseAndLoad();
+        File directory = folder.newFolder();
+
+        new OutputJob(store, directory.getPath()).generateReports();
+
+        assertExpectedReports(directory);
+    }
+
+    @Test
+    public void generateReportsFromColumnarStoreWithSelection() throws URISyntaxException, IOException {
+        EmployeeStore store = new InputJob(ParseModesTest.testDataPath(), ParseMode.MAPPED).parseAndLoad(StoreType.COLUMNAR);
+        File directory = folder.newFolder();
+
+        new OutputJob(store, directory.getPath(), PercentileStrategy.SELECT).generateReports();
+
+        assertExpectedReports(directory);
+    }
+
+    @Test
+    public void generateReportsConcurrently() throws URISyntaxException, IOException {
+        EmployeeStore store = new InputJob(ParseModesTest.testDataPath()).parseAndLoad(StoreType.COLUMNAR);
+        for (String threads : new String[]{"4", ReportExecutors.VIRTUAL}) {
+            File directory = folder.newFolder();
+            ExecutorService executor = ReportExecutors.create(threads);
+            try {
+                List<ReportOutcome> outcomes = new OutputJob(store, directory.getPath()).withExecutor(executor).generateReports();
+                Assert.assertEquals(ReportDefinition.DEFAULTS.size(), outcomes.size());
+            } finally {
+                executor.shutdownNow();
+            }
+
+            assertExpectedReports(directory);
+        }
+    }
+
+    @Test
+    public void failedReportIsReportedAfterTheOthers() throws URISyntaxException, IOException {
+        EmployeeStore store = new InputJob(ParseModesTest.testDataPath()).parseAndLoad();
+        File directory = folder.newFolder();
+        ReportDefinition unwritable = ReportDefinition.DEFAULTS.get(0);
+        Assert.assertTrue(new File(directory, unwritable.getFileName()).mkdir());
+
+        ExecutorService executor = ReportExecutors.create("2");
+        try {
+            new OutputJob(store, directory.getPath()).withExecutor(executor).generateReports();
+            Assert.fail("The report written onto a directory should fail");
+        } catch (ApplicationException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains(unwritable.getFileName()));
+            Assert.assertEquals(1, e.getSuppressed().length);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (ReportDefinition definition : ReportDefinition.DEFAULTS.subList(1, ReportDefinition.DEFAULTS.size())) {
+            Assert.assertTrue(definition.getFileName(), new File(directory, definition.getFileName()).isFile());
+        }
+    }
+
+    @Test
+    public void failFastStopsSequentialReports() throws URISyntaxException, IOException {
+        EmployeeStore store = new InputJob(ParseModesTest.testDataPath()).parseAndLoad();
+        File directory = folder.newFolder();
+        Assert.assertTrue(new File(directory, ReportDefinition.DEFAULTS.get(0).getFileName()).mkdir());
+
+        try {
+            new OutputJob(store, directory.getPath()).withFailurePolicy(FailurePolicy.FAIL_FAST).generateReports();
+            Assert.fail("The report written onto a directory should fail");
+        } catch (ApplicationException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("1 of 4"));
+        }
+
+        for (ReportDefinition definition : ReportDefinition.DEFAULTS.subList(1, ReportDefinition.DEFAULTS.size())) {
+            Assert.assertFalse(definition.getFileName(), new File(directory, definition.getFileName()).exists());
+        }
+    }
+
+    @Test
+    public void failFastPublishesOnlyTheReportsOfTheOutcomes() throws URISyntaxException, IOException {
+        EmployeeStore store = new InputJob(ParseModesTest.testDataPath()).parseAndLoad();
+        ReportDefinition unwritable = ReportDefinition.DEFAULTS.get(0);
+        for (Durability durability : Durability.values()) {
+            File directory = folder.newFolder();
+            Assert.assertTrue(new File(directory, unwritable.getFileName()).mkdir());
+            ExecutorService executor = ReportExecutors.create("2");
+            try {
+                new OutputJob(store, directory.getPath()).withExecutor(executor).withFailurePolicy(FailurePolicy.FAIL_FAST)
+                        .withDurability(durability).withManifest(true).generateReports();
+                Assert.fail("The report written onto a directory should fail");
+            } catch (ApplicationException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().contains(unwritable.getFileName()));
+            } finally {
+                executor.shutdownNow();
+            }
+
+            // whichever reports got cancelled, the manifest lists exactly the ones published and nothing is left behind
+            List<String> published = new ArrayList<>();
+            for (ReportDefinition definition : ReportDefinition.DEFAULTS) {
+                File report = new File(directory, definition.getFileName());
+                if (report.isFile()) {
+                    published.add(definition.getFileName() + "," + report.length());
+                }
+            }
+            List<String> manifest = Files.readAllLines(new File(directory, Util.REPORTS_MANIFEST).toPath());
+            Assert.assertEquals(published, manifest.subList(1, manifest.size()));
+            Assert.assertEquals(durability.name(), published.size() + 2, directory.list().length);
+        }
+    }
+
+    @Test
+    public void deleteTemporaryFilesLeftBehind() throws URISyntaxException, IOException {
+        EmployeeStore store = new InputJob(ParseModesTest.testDataPath()).parseAndLoad();
+        File directory = folder.newFolder();
+        File leftBehind = new File(directory, "." + ReportDefinition.DEFAULTS.get(0).getFileName() + ".3f9a0c12d4e5b6a7.tmp");
+        File manifestLeftBehind = new File(directory, "." + Util.REPORTS_MANIFEST + ".1.tmp");
+        File other = new File(directory, ".notes.txt.3f9a0c12d4e5b6a7.tmp");
+        for (File file : new File[]{leftBehind, manifestLeftBehind, other}) {
+            Assert.assertTrue(file.createNewFile());
+        }
+
+        new OutputJob(store, directory.getPath()).generateReports();
+
+        Assert.assertFalse(leftBehind.exists());
+        Assert.assertFalse(manifestLeftBehind.exists());
+        Assert.assertTrue(other.exists());
+        assertExpectedReports(directory);
+    }
+
+    @Test
+    public void publishReportsWithEveryDurability() throws URISyntaxException, IOException {
+        EmployeeStore store = new InputJob(ParseModesTest.testDataPath()).parseAndLoad(StoreType.COLUMNAR);
+        for (Durability durability : Durability.values()) {
+            File directory = folder.newFolder();
+            new OutputJob(store, directory.getPath()).withDurability(durability).withManifest(true).generateReports();
+
+            assertExpectedReports(directory);
+            List<String> manifest = new ArrayList<>(Collections.singletonList("FILE,BYTES"));
+            for (ReportDefinition definition : ReportDefinition.DEFAULTS) {
+                manifest.add(definition.getFileName() + "," + new File(directory, definition.getFileName()).length());
+            }
+            Assert.assertEquals(manifest, Files.readAllLines(new File(directory, Util.REPORTS_MANIFEST).toPath()));
+            Assert.assertEquals(ReportDefinition.DEFAULTS.size() + 1, directory.list().length);
+        }
+    }
+
+    @Test
+    public void unpublishedReportLeavesNothingBehind() throws URISyntaxException, IOException {
+        EmployeeStore store = new InputJob(ParseModesTest.testDataPath()).parseAndLoad();
+        File directory = folder.newFolder();
+        ReportDefinition unwritable = ReportDefinition.DEFAULTS.get(0);
+        Assert.assertTrue(new File(directory, unwritable.getFileName()).mkdir());
+
+        try {
+            new OutputJob(store, directory.getPath()).withDurability(Durability.BATCH).withManifest(true).generateReports();
+            Assert.fail("The report renamed onto a directory should fail");
+        } catch (ApplicationException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("1 of 4"));
+        }
+
+        List<String> manifest = Files.readAllLines(new File(directory, Util.REPORTS_MANIFEST).toPath());
+        Assert.assertEquals(ReportDefinition.DEFAULTS.size(), manifest.size());
+        Assert.assertFalse(manifest.toString(), manifest.toString().contains(unwritable.getFileName()));
+        Assert.assertEquals(ReportDefinition.DEFAULTS.size() + 1, directory.list().length);
+    }
+
+    @Test
+    public void generateReportsOfCustomAgeRanges() throws URISyntaxException, IOException {
+        EmployeeStore store = new InputJob(ParseModesTest.testDataPath()).parseAndLoad(StoreType.COLUMNAR);
+        ReportDefinition byAgeRange = ReportDefinition.DEFAULTS.get(2);
+        ReportPlan decades = ReportPlan.compile(Collections.singletonList(byAgeRange));
+        ReportPlan halves = ReportPlan.compile(Collections.singletonList(byAgeRange), AgeBuckets.parse("0,50+"));
+        File decadesDirectory = folder.newFolder();
+        File halvesDirectory = folder.newFolder();
+
+        new OutputJob(store, decadesDirectory.getPath(), PercentileStrategy.SORT, decades).generateReports();
+        new OutputJob(store, halvesDirectory.getPath(), PercentileStrategy.SORT, halves).generateReports();
+
+        List<String> lines = Files.readAllLines(new File(halvesDirectory, byAgeRange.getFileName()).toPath());
+        Assert.assertEquals(3, lines.size());
+        Assert.assertTrue(lines.get(1), lines.get(1).startsWith("0-49,"));
+        Assert.assertTrue(lines.get(2), lines.get(2).startsWith("50+,"));
+
+        // the average of the first half is the one of the first five decades, weighted by their employees
+        Statistics[] statistics = decades.execute(store, PercentileStrategy.SORT).statistics(byAgeRange.getAggregation());
+        double sum = 0;
+        int count = 0;
+        for (int decade = 0; decade < 5; decade++) {
+            sum += statistics[decade].getAvg() * statistics[decade].getObservations();
+            count += statistics[decade].getObservations();
+        }
+        Assert.assertEquals(String.format("0-49,%.2f", sum / count), lines.get(1));
+    }
+
+    @Test
+    public void generateApproximateReportsFromSketches() throws URISyntaxException, IOException {
+        double accuracy = 0.01;
+        ReportPlan plan = ReportPlan.compile(ReportDefinition.DEFAULTS);
+        SketchAggregation results = new InputJob(ParseModesTest.testDataPath(), ParseMode.MAPPED).parseAndAggregate(plan, accuracy);
+        File directory = folder.newFolder();
+
+        new OutputJob(results, directory.getPath(), plan).generateReports();
+
+        Assert.assertEquals(97, results.employeesSize());
+        for (ReportDefinition definition : ReportDefinition.DEFAULTS) {
+            List<String> expected = Files.readAllLines(new File(OutputJobTest.class.getResource("/expected/" + definition.getFileName()).toURI()).toPath());
+            List<String> actual = Files.readAllLines(new File(directory, definition.getFileName()).toPath());
+            Assert.assertEquals(definition.getFileName(), expected.size(), actual.size());
+            Assert.assertEquals(expected.get(0), actual.get(0));
+            for (int i = 1; i < expected.size(); i++) {
+                String[] expectedLine = expected.get(i).split(",");
+                String[] actualLine = actual.get(i).split(",");
+                Assert.assertEquals(expectedLine[0], actualLine[0]);
+                double exact = Double.parseDouble(expectedLine[1]);
+                // the reports are rounded to two decimals
+                Assert.assertEquals(actual.get(i), exact, Double.parseDouble(actualLine[1]), Math.abs(exact) * accuracy + 0.01);
+            }
+        }
+    }
+
+    @Test
+    public void generateReportsFromSpilledRuns() throws URISyntaxException, IOException {
+        ReportPlan plan = ReportPlan.compile(ReportDefinition.DEFAULTS);
+        SpillingAggregation results = new InputJob(ParseModesTest.testDataPath(), ParseMode.MAPPED)
+                .parseAndSpill(plan, 10 * SpillingAggregation.BYTES_PER_VALUE * plan.getAggregations().size(), folder.newFolder());
+        File directory = folder.newFolder();
+
+        try {
+            new OutputJob(results, directory.getPath(), plan).generateReports();
+        } finally {
+            results.close();
+        }
+
+        Assert.assertTrue(results.runFiles() > 0);
+        assertExpectedReports(directory);
+    }
+
+    @Test
+    public void generateReportsByCombinedDimensions() throws URISyntaxException, IOException {
+        EmployeeStore store = new InputJob(ParseModesTest.testDataPath()).parseAndLoad(StoreType.COLUMNAR);
+        ReportDefinition byDepartmentAndGenre = ReportDefinition.parse("count-by-department-and-genre.csv;department*genre;income;count");
+        ReportDefinition byGenre = ReportDefinition.parse("count-by-genre.csv;genre;income;count");
+        ReportPlan plan = ReportPlan.compile(ReportDefinition.withDefaults(Arrays.asList(byDepartmentAndGenre, byGenre)));
+        File directory = folder.newFolder();
+
+        new OutputJob(store, directory.getPath(), PercentileStrategy.SORT, plan).generateReports();
+
+        assertExpectedReports(directory);
+        List<String> combined = Files.readAllLines(new File(directory, byDepartmentAndGenre.getFileName()).toPath());
+        List<String> genres = Files.readAllLines(new File(directory, byGenre.getFileName()).toPath());
+        Assert.assertEquals("DEPARTMENT,GENRE,COUNT INCOME", combined.get(0));
+        Assert.assertEquals(1 + store.departmentsSize() * 3, combined.size());
+        Assert.assertTrue(combined.get(1), combined.get(1).startsWith(store.getDepartments().get(0).getName() + ",FEMALE,"));
+        // every genre sums up to the same count over all departments
+        for (String genreLine : genres.subList(1, genres.size())) {
+            String[] genre = genreLine.split(",");
+            double sum = 0;
+            for (String line : combined.subList(1, combined.size())) {
+                String[] fields = line.split(",");
+                if (fields[1].equals(genre[0])) {
+                    sum += Double.parseDouble(fields[2]);
+                }
+            }
+            Assert.assertEquals(genreLine, Double.parseDouble(genre[1]), sum, 0);
+        }
+    }
+
+    @Test(expected = ApplicationException.class)
+    public void rejectReportsOfTheSameFile() {
+        ReportDefinition.withDefaults(Collections.singletonList(
+                ReportDefinition.parse(ReportDefinition.DEFAULTS.get(0).getFileName() + ";genre;age;median")));
+    }
+
+    @Test
+    public void compileVariantsIntoSharedAggregations() throws URISyntaxException, IOException {
+        List<ReportDefinition> variants = new ArrayList<>();
+        for (Metric metric : Metric.values()) {
+            for (Measure measure : Measure.values()) {
+                variants.add(ReportDefinition.builder(metric + "-" + measure + "-by-department.csv")
+                        .withGrouping(Dimension.DEPARTMENT)
+                        .withMeasure(measure)
+                        .withMetric(metric)
+                        .withFormat(metric == Metric.COUNT ? "%.0f" : "%.3f")
+                        .build());
+            }
+        }
+        ReportPlan plan = ReportPlan.compile(variants);
+        Assert.assertEquals(Metric.values().length * Measure.values().length, plan.getDefinitions().size());
+        Assert.assertEquals(Measure.values().length, plan.getAggregations().size());
+
+        EmployeeStore store = new InputJob(ParseModesTest.testDataPath()).parseAndLoad();
+        File directory = folder.newFolder();
+        new OutputJob(store, directory.getPath(), PercentileStrategy.SORT, plan).generateReports();
+
+        List<String> counts = Files.readAllLines(new File(directory, "COUNT-INCOME-by-department.csv").toPath());
+        Assert.assertEquals("DEPARTMENT,COUNT INCOME", counts.get(0));
+        Assert.assertTrue(counts.get(1), counts.get(1).matches("[^,]+,\\d+"));
+        List<String> medians = Files.readAllLines(new File(directory, "MEDIAN-INCOME-by-department.csv").toPath());
+        Assert.assertTrue(medians.get(1), medians.get(1).matches("[^,]+,\\d+\\.\\d{3}"));
+    }
+
+    @Test(expected = ApplicationException.class)
+    public void rejectInvalidFormat() {
+        ReportDefinition.parse("income-by-genre.csv;genre;income;median;%d");
+    }
+
+    @Test
+    public void planSharesAggregations() {
+        ReportPlan plan = ReportPlan.compile(ReportDefinition.DEFAULTS);
+
+        Assert.assertEquals(4, plan.getDefinitions().size());
+        Assert.assertEquals(3, plan.getAggregations().size());
+    }
+
+    static void assertExpectedReports(File directory) throws URISyntaxException, IOException {
+        for (ReportDefinition definition : ReportDefinition.DEFAULTS) {
+            File expected = new File(OutputJobTest.class.getResource("/expected/" + definition.getFileName()).toURI());
+            File actual = new File(directory, definition.getFileName());
+            Assert.assertEquals(definition.getFileName(), Files.readAllLines(expected.toPath()), Files.readAllLines(actual.toPath()));
+        }
+    }
+}
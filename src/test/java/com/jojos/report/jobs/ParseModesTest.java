@@ -0,0 +1,229 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.ApplicationException;
+import com.jojos.report.TestInputs;
+import com.jojos.report.data.AgeRange;
+import com.jojos.report.data.Department;
+import com.jojos.report.data.Employee;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.jojos.report.Util.AGES_FILE;
+import static com.jojos.report.Util.DEPARTMENTS_FILE;
+import static com.jojos.report.Util.EMPLOYEES_FILE;
+
+/**
+ * Tests that every {@link ParseMode} loads exactly what the scanner based parsing loads
+ *
+ * @author karanikasg@gmail.com
+ */
+public class ParseModesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void mappedParsingOfTestData() throws URISyntaxException {
+        String path = testDataPath();
+
+        List<String> expected = describe(new InputJob(path, ParseMode.SCANNER).parseAndLoad());
+        List<String> actual = describe(new InputJob(path, ParseMode.MAPPED).parseAndLoad());
+
+        Assert.assertEquals(97, expected.size() - AgeRange.values().length);
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void mappedParsingOfIrregularLines() throws IOException {
+        String path = TestInputs.writeInputFiles(folder.newFolder(),
+                "B\r\nA\r\nC",
+                "Opal Ballard , 23\nOtis Bell,35\r\nLynne Ortiz,\t28\nbroken\n",
+                "2 ,  Opal Ballard,F,4350.00\r\n" +
+                        "1,Otis Bell , M ,2650.5,\n" +
+                        "x,Lynne Ortiz,f,2880\n" +
+                        "3,Lynne Ortiz,f,1e3\n" +
+                        "3,Maria Kalas,N/A, 5880.001 \n" +
+                        "3,Too,Many,Fields,Here\n" +
+                        "2,Unknown Age,m,-0");
+
+        List<String> expected = describe(new InputJob(path, ParseMode.SCANNER).parseAndLoad());
+        List<String> actual = describe(new InputJob(path, ParseMode.MAPPED).parseAndLoad());
+
+        Assert.assertEquals(5, expected.size() - AgeRange.values().length);
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void parallelParsingOfTestData() throws URISyntaxException {
+        String path = testDataPath();
+
+        List<String> expected = describe(new InputJob(path, ParseMode.SCANNER).parseAndLoad());
+        List<String> actual = describe(new InputJob(path, ParseMode.PARALLEL).parseAndLoad());
+
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void parallelParsingInSmallChunks() throws URISyntaxException, IOException {
+        File directory = new File(testDataPath());
+        ParallelParser parser = new ParallelParser(new ForkJoinPool(4), 64);
+        try (FileChannel channel = MappedParser.open(new File(directory, EMPLOYEES_FILE))) {
+            List<long[]> ranges = parser.split(channel);
+            Assert.assertTrue("expected the file to be split", ranges.size() > 1);
+            Assert.assertEquals(0, ranges.get(0)[0]);
+            Assert.assertEquals(channel.size(), ranges.get(ranges.size() - 1)[1]);
+            for (int i = 1; i < ranges.size(); i++) {
+                Assert.assertEquals(ranges.get(i - 1)[1], ranges.get(i)[0]);
+            }
+        }
+
+        Loader loader = new Loader();
+        new MappedParser().parseDepartments(new File(directory, DEPARTMENTS_FILE), loader::load);
+        AgeTable namesAges = new AgeTable();
+        parser.parseAges(new File(directory, AGES_FILE), namesAges);
+        parser.parseEmployees(new File(directory, EMPLOYEES_FILE), new HashJoin(namesAges), loader::load);
+
+        Assert.assertEquals(describe(new InputJob(directory.getPath(), ParseMode.SCANNER).parseAndLoad()), describe(loader));
+
+        // more ranges than are parsed ahead, handed over in the order of the file
+        List<String> expected = new ArrayList<>();
+        new MappedParser().parseEmployees(new File(directory, EMPLOYEES_FILE), new HashJoin(namesAges),
+                employee -> expected.add(employee.getName() + "|" + employee.getAge()));
+        List<String> actual = new ArrayList<>();
+        new ParallelParser(new ForkJoinPool(2), 64).parseEmployees(new File(directory, EMPLOYEES_FILE), new HashJoin(namesAges),
+                employee -> actual.add(employee.getName() + "|" + employee.getAge()));
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void pipelineParsingInSmallBatches() throws URISyntaxException, IOException {
+        File directory = new File(testDataPath());
+        AgeTable namesAges = new AgeTable();
+        new MappedParser().parseAges(new File(directory, AGES_FILE), namesAges);
+        List<String> expected = new ArrayList<>();
+        new MappedParser().parseEmployees(new File(directory, EMPLOYEES_FILE), new HashJoin(namesAges),
+                employee -> expected.add(employee.getName() + "|" + employee.getAge()));
+
+        // batches shorter than some lines and a single batch per queue, the stages wait for each other all the time
+        IngestPipeline pipeline = new IngestPipeline().withParsers(3).withBatchBytes(24).withQueueCapacity(1);
+        List<String> actual = new ArrayList<>();
+        pipeline.parseEmployees(new File(directory, EMPLOYEES_FILE), new HashJoin(namesAges),
+                employee -> actual.add(employee.getName() + "|" + employee.getAge()));
+
+        Assert.assertEquals(expected, actual);
+        Assert.assertEquals(new File(directory, EMPLOYEES_FILE).length(), pipeline.getReader().getRecords());
+        Assert.assertTrue(pipeline.getReader().getBatches() > 1);
+        Assert.assertEquals(pipeline.getReader().getBatches(), pipeline.getParser().getBatches());
+        Assert.assertEquals(expected.size(), pipeline.getParser().getRecords());
+        Assert.assertEquals(expected.size(), pipeline.getAggregator().getRecords());
+
+        String path = testDataPath();
+        Assert.assertEquals(describe(new InputJob(path, ParseMode.SCANNER).parseAndLoad()),
+                describe(new InputJob(path, ParseMode.PIPELINE).parseAndLoad()));
+    }
+
+    @Test(expected = ApplicationException.class)
+    public void pipelineFailsOnInvalidLine() throws IOException {
+        String path = TestInputs.writeInputFiles(folder.newFolder(), "A", "Ada Novak,41\n", "1,Ada Novak,F,3100.00\n\n1,Ada Novak,F,3100.00\n");
+        new InputJob(path, ParseMode.PIPELINE).withPipeline(new IngestPipeline().withParsers(2).withBatchBytes(8))
+                .parseAndLoad();
+    }
+
+    @Test
+    public void mergeJoinOfSortedFiles() throws IOException {
+        String path = TestInputs.writeInputFiles(folder.newFolder(),
+                "A\nB",
+                "Ada Novak,41\nBruno Rossi,30\nBruno Rossi,31\nClara Smith,25\nZoe Weber,60\n",
+                "1,Ada Novak,F,3100.00\n" +
+                        "2,Ada Novak,F,3200.00\n" +
+                        "1,Bruno Rossi,M,2900.50\n" +
+                        "2,Carl Meyer,M,2500\n" +
+                        "1,Clara Smith,F,4100\n" +
+                        "2,Dario Costa,M,2700\n");
+
+        for (ParseMode parseMode : new ParseMode[]{ParseMode.SCANNER, ParseMode.MAPPED}) {
+            InputJob hash = new InputJob(path, parseMode);
+            InputJob merge = new InputJob(path, parseMode).withJoinMode(JoinMode.MERGE);
+
+            List<String> expected = describe(hash.parseAndLoad());
+            Assert.assertEquals(expected, describe(merge.parseAndLoad()));
+            Assert.assertTrue(expected.contains("A|Bruno Rossi|MALE|" + Double.doubleToRawLongBits(2900.5) + "|31"));
+            Assert.assertEquals(2, hash.getJoinMisses());
+            Assert.assertEquals(2, merge.getJoinMisses());
+        }
+    }
+
+    @Test
+    public void mergeJoinFallsBackOnUnsortedFiles() throws URISyntaxException, IOException {
+        String unsortedEmployees = TestInputs.writeInputFiles(folder.newFolder(),
+                "A\nB",
+                "Ada Novak,41\nBruno Rossi,30\nClara Smith,25\n",
+                "1,Bruno Rossi,M,2900.50\n" +
+                        "2,Carl Meyer,M,2500\n" +
+                        "1,Ada Novak,F,3100.00\n" +
+                        "1,Clara Smith,F,4100\n");
+
+        for (String path : new String[]{unsortedEmployees, testDataPath()}) {
+            for (ParseMode parseMode : new ParseMode[]{ParseMode.SCANNER, ParseMode.MAPPED}) {
+                InputJob hash = new InputJob(path, parseMode);
+                InputJob merge = new InputJob(path, parseMode).withJoinMode(JoinMode.MERGE);
+
+                Assert.assertEquals(describe(hash.parseAndLoad()), describe(merge.parseAndLoad()));
+                Assert.assertEquals(hash.getJoinMisses(), merge.getJoinMisses());
+            }
+        }
+    }
+
+    @Test
+    public void mergeJoinComparesBytesInStringOrder() {
+        // ascii, latin, a surrogate pair and a char past the surrogates
+        String[] names = {"Ada", "Adam", "Zoe", "\u00c4rger", "\ud83d\ude00 Smile", "\uff21 Wide", "\uff21"};
+        for (String name : names) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            for (String other : names) {
+                byte[] otherBytes = other.getBytes(StandardCharsets.UTF_8);
+                Assert.assertEquals(name + " to " + other, Integer.signum(name.compareTo(other)),
+                        Integer.signum(MergeJoin.compare(ByteBuffer.wrap(bytes), 0, bytes.length, otherBytes, otherBytes.length)));
+            }
+        }
+    }
+
+    static String testDataPath() throws URISyntaxException {
+        return new File(ParseModesTest.class.getResource("/data").toURI()).getPath();
+    }
+
+    /**
+     * A comparable snapshot of everything a loader holds: one entry per employee of every department and
+     * one entry per age range with the sorted incomes of its employees.
+     */
+    static List<String> describe(Loader loader) {
+        List<String> description = new ArrayList<>();
+        for (Department department : loader.getDepartments()) {
+            for (Employee employee : loader.getEmployeesForDepartment(department)) {
+                description.add(String.format("%s|%s|%s|%s|%d", department.getName(), employee.getName(),
+                        employee.getGenre(), Double.doubleToRawLongBits(employee.getIncome()), employee.getAge()));
+            }
+        }
+        Collections.sort(description);
+        for (AgeRange ageRange : AgeRange.values()) {
+            List<Double> incomes = new ArrayList<>(loader.getEmployeesIncomeForAgeRange(ageRange));
+            Collections.sort(incomes);
+            description.add(ageRange + "|" + incomes);
+        }
+        return description;
+    }
+}
@@ -0,0 +1,89 @@
+package com.jojos.report.jobs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests the error bound of the quantile sketch against exact statistics
+ *
+ * @author karanikasg@gmail.com
+ */
+public class QuantileSketchTest {
+
+    @Test
+    public void quantilesWithinRelativeAccuracy() {
+        Random random = new Random(42);
+        for (double accuracy : new double[]{0.05, 0.01, 0.001}) {
+            for (int size : new int[]{1, 2, 3, 10, 99, 10_000}) {
+                double[] values = new double[size];
+                QuantileSketch sketch = new QuantileSketch(accuracy);
+                for (int i = 0; i < size; i++) {
+                    // log-normal, like incomes
+                    values[i] = Math.round(Math.exp(10 + random.nextGaussian()) * 100) / 100d;
+                    sketch.add(values[i]);
+                }
+
+                assertWithinAccuracy(accuracy, Statistics.calculate(values, 0, size), sketch.statistics());
+            }
+        }
+    }
+
+    @Test
+    public void negativesAndZeros() {
+        double[] values = {-5, -1, 0, 0, 0.5, 3, -1000, 42, 0, 7};
+        QuantileSketch sketch = new QuantileSketch(0.01);
+        Arrays.stream(values).forEach(sketch::add);
+
+        Statistics exact = Statistics.calculate(values, 0, values.length);
+        assertWithinAccuracy(0.01, exact, sketch.statistics());
+        Assert.assertEquals(-1000, sketch.quantile(0), 0d);
+        Assert.assertEquals(0, sketch.quantile(0.5), 0d);
+        Assert.assertEquals(42, sketch.quantile(1), 0d);
+    }
+
+    @Test
+    public void mergeEqualsSingleSketch() {
+        Random random = new Random(7);
+        QuantileSketch whole = new QuantileSketch(0.02);
+        QuantileSketch first = new QuantileSketch(0.02);
+        QuantileSketch second = new QuantileSketch(0.02);
+        for (int i = 0; i < 5_000; i++) {
+            double value = random.nextInt(1_000_000) / 100d;
+            whole.add(value);
+            (i % 3 == 0 ? first : second).add(value);
+        }
+        first.merge(second);
+
+        Assert.assertEquals(whole.getCount(), first.getCount());
+        for (double quantile = 0; quantile <= 1; quantile += 0.01) {
+            Assert.assertEquals(whole.quantile(quantile), first.quantile(quantile), 0d);
+        }
+    }
+
+    @Test
+    public void emptySketch() {
+        QuantileSketch sketch = new QuantileSketch();
+
+        Assert.assertTrue(Double.isNaN(sketch.quantile(0.5)));
+        Assert.assertEquals(0, sketch.statistics().getObservations());
+    }
+
+    private static void assertWithinAccuracy(double accuracy, Statistics exact, Statistics approximate) {
+        Assert.assertEquals(exact.getObservations(), approximate.getObservations());
+        Assert.assertEquals(exact.getMin(), approximate.getMin(), 0d);
+        Assert.assertEquals(exact.getMax(), approximate.getMax(), 0d);
+        Assert.assertEquals(exact.getAvg(), approximate.getAvg(), Math.abs(exact.getAvg()) * 1e-12);
+        assertRelative(accuracy, exact.getMedian(), approximate.getMedian());
+        assertRelative(accuracy, exact.get90thPercentile(), approximate.get90thPercentile());
+        assertRelative(accuracy, exact.get95thPercentile(), approximate.get95thPercentile());
+        assertRelative(accuracy, exact.get99thPercentile(), approximate.get99thPercentile());
+    }
+
+    private static void assertRelative(double accuracy, double expected, double actual) {
+        // a hair of slack for the rounding of the logarithms at the bucket boundaries
+        Assert.assertEquals(expected, actual, Math.abs(expected) * accuracy * (1 + 1e-9));
+    }
+}
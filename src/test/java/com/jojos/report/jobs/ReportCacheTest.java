@@ -0,0 +1,101 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.TestInputs;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Tests that incremental runs recalculate only the groups whose input changed, with the same outcome
+ *
+ * @author karanikasg@gmail.com
+ */
+public class ReportCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recalculateOnlyChangedGroups() throws IOException {
+        File directory = folder.newFolder();
+        String departments = "A\nB\nC";
+        String ages = "Ada Novak,41\nBruno Rossi,30\nClara Smith,25\nDario Costa,33\n";
+        String path = TestInputs.writeInputFiles(directory, departments, ages, "1,Ada Novak,F,3100.00\n" +
+                "2,Bruno Rossi,M,2900.50\n" +
+                "2,Clara Smith,F,4100\n" +
+                "3,Dario Costa,M,2700\n");
+        ReportPlan plan = ReportPlan.compile(ReportDefinition.DEFAULTS);
+        // the income and the age of 3 departments, the income of 13 age ranges
+        int groups = 2 * 3 + 13;
+
+        ReportCache first = generate(path, plan);
+        Assert.assertEquals(0, first.hits());
+        Assert.assertEquals(groups, first.misses());
+
+        ReportCache unchanged = generate(path, plan);
+        Assert.assertEquals(groups, unchanged.hits());
+        Assert.assertEquals(0, unchanged.misses());
+
+        // a raise in department C, in the age range 30-39
+        TestInputs.writeInputFiles(directory, departments, ages, "1,Ada Novak,F,3100.00\n" +
+                "2,Bruno Rossi,M,2900.50\n" +
+                "2,Clara Smith,F,4100\n" +
+                "3,Dario Costa,M,2800\n");
+        ReportCache changed = generate(path, plan);
+        // the income of C and of 30-39, the age of C is the same
+        Assert.assertEquals(2, changed.misses());
+        Assert.assertEquals(groups - 2, changed.hits());
+
+        File fresh = folder.newFolder();
+        new OutputJob(new InputJob(path).parseAndLoad(), fresh.getPath()).generateReports();
+        for (ReportDefinition definition : ReportDefinition.DEFAULTS) {
+            List<String> expected = Files.readAllLines(new File(fresh, definition.getFileName()).toPath());
+            Assert.assertEquals(expected, Files.readAllLines(new File(path, definition.getFileName()).toPath()));
+        }
+    }
+
+    @Test
+    public void discardCacheOfAnotherStrategy() throws IOException {
+        File directory = folder.newFolder();
+        ReportCache cache = ReportCache.load(directory, PercentileStrategy.SORT);
+        ReportPlan.Aggregation aggregation = ReportDefinition.DEFAULTS.get(0).getAggregation();
+        double[] values = {1, 2, 3};
+        ReportCache.Fingerprint fingerprint = ReportCache.Fingerprint.of(values, 0, values.length);
+        cache.put(aggregation, "A", fingerprint, Statistics.calculate(values, 0, values.length));
+        cache.save();
+
+        Assert.assertNotNull(ReportCache.load(directory, PercentileStrategy.SORT).get(aggregation, "A", fingerprint));
+        Assert.assertNull(ReportCache.load(directory, PercentileStrategy.SORT).get(aggregation, "A",
+                ReportCache.Fingerprint.of(new double[]{1, 2, 4}, 0, values.length)));
+        Assert.assertNull(ReportCache.load(directory, PercentileStrategy.SELECT).get(aggregation, "A", fingerprint));
+    }
+
+    @Test
+    public void keepCacheOfRunWithoutStatistics() {
+        File directory = folder.getRoot();
+        ReportPlan.Aggregation aggregation = ReportDefinition.DEFAULTS.get(0).getAggregation();
+        double[] values = {1, 2, 3};
+        ReportCache.Fingerprint fingerprint = ReportCache.Fingerprint.of(values, 0, values.length);
+        ReportCache cache = ReportCache.load(directory, PercentileStrategy.SORT);
+        cache.put(aggregation, "A", fingerprint, Statistics.calculate(values, 0, values.length));
+        cache.save();
+
+        // a run that failed before calculating anything
+        ReportCache.load(directory, PercentileStrategy.SORT).save();
+        Assert.assertNotNull(ReportCache.load(directory, PercentileStrategy.SORT).get(aggregation, "A", fingerprint));
+    }
+
+    private static ReportCache generate(String path, ReportPlan plan) throws IOException {
+        ReportCache cache = ReportCache.load(new File(path), PercentileStrategy.SORT);
+        EmployeeStore store = new InputJob(path).parseAndLoad();
+        new OutputJob(plan.execute(store, PercentileStrategy.SORT, cache), path, plan).generateReports();
+        cache.save();
+        return cache;
+    }
+}
@@ -0,0 +1,103 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.Util;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.jojos.report.Util.AGES_FILE;
+import static com.jojos.report.Util.DEPARTMENTS_FILE;
+import static com.jojos.report.Util.EMPLOYEES_FILE;
+
+/**
+ * Tests the metrics recorded while parsing the input and generating the reports, and their JSON summary
+ *
+ * @author karanikasg@gmail.com
+ */
+public class RunMetricsTest {
+
+    // an employee of the test data has an invalid income and another one too few fields
+    private static final int TEST_DATA_REJECTED_LINES = 2;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordPhasesReportsAndRejectedLinesInEveryParseMode() throws URISyntaxException, IOException {
+        File directory = folder.newFolder();
+        for (String name : new String[]{DEPARTMENTS_FILE, AGES_FILE, EMPLOYEES_FILE}) {
+            Files.copy(new File(ParseModesTest.testDataPath(), name).toPath(), new File(directory, name).toPath());
+        }
+        append(new File(directory, AGES_FILE), "Nobody\n");
+        append(new File(directory, EMPLOYEES_FILE), "1,Nobody\n1,Nobody,m,income\n");
+
+        for (ParseMode parseMode : ParseMode.values()) {
+            RunMetrics metrics = new RunMetrics();
+            EmployeeStore store = new InputJob(directory.getPath(), parseMode).withMetrics(metrics).parseAndLoad(StoreType.COLUMNAR);
+            File output = folder.newFolder();
+            new OutputJob(store, output.getPath()).withMetrics(metrics).generateReports();
+            metrics.complete(true);
+
+            Assert.assertEquals(parseMode.name(), TEST_DATA_REJECTED_LINES + 3, metrics.getRejectedLines());
+            Assert.assertEquals(parseMode.name(), store.employeesSize(), metrics.getRows());
+            Assert.assertEquals(parseMode.name(), store.departmentsSize(), metrics.phase(RunMetrics.DEPARTMENTS).getRows());
+            Assert.assertEquals(parseMode.name(), new File(directory, EMPLOYEES_FILE).length(),
+                    metrics.phase(RunMetrics.EMPLOYEES).getBytes());
+            Assert.assertTrue(parseMode.name(), metrics.phase(RunMetrics.AGES).getRows() > 0);
+            Assert.assertTrue(parseMode.name(), metrics.phase(RunMetrics.EMPLOYEES).getNanos() > 0);
+            Assert.assertTrue(parseMode.name(), metrics.getRowsPerSecond() > 0);
+
+            List<String> reports = metrics.getReports().stream().map(RunMetrics.Phase::getName).sorted().collect(Collectors.toList());
+            Assert.assertEquals(ReportDefinition.DEFAULTS.stream().map(ReportDefinition::getFileName).sorted().collect(Collectors.toList()), reports);
+            for (RunMetrics.Phase report : metrics.getReports()) {
+                Assert.assertEquals(report.getName(), new File(output, report.getName()).length(), report.getBytes());
+                Assert.assertTrue(report.getName(), report.getRows() > 0);
+                Assert.assertFalse(report.getName(), report.isFailed());
+            }
+            Assert.assertEquals(0, metrics.getFailedReports());
+        }
+    }
+
+    @Test
+    public void publishSummaryAfterTheReports() throws URISyntaxException, IOException {
+        RunMetrics metrics = new RunMetrics();
+        EmployeeStore store = new InputJob(ParseModesTest.testDataPath(), ParseMode.MAPPED).withMetrics(metrics).parseAndLoad();
+        File directory = folder.newFolder();
+
+        new OutputJob(store, directory.getPath()).withMetrics(metrics).withDurability(Durability.BATCH).generateReports();
+        metrics.complete(true);
+        metrics.publishSummary(directory, Durability.BATCH);
+
+        String summary = new String(Files.readAllBytes(new File(directory, Util.RUN_SUMMARY).toPath()), StandardCharsets.UTF_8);
+        Assert.assertTrue(summary, summary.startsWith("{\"startMillis\":"));
+        Assert.assertTrue(summary, summary.endsWith("]}"));
+        Assert.assertTrue(summary, summary.contains(",\"elapsedMillis\":" + metrics.getElapsedMillis() + ",\"succeeded\":true,"));
+        Assert.assertTrue(summary, summary.contains(",\"rows\":" + store.employeesSize() + ","));
+        Assert.assertTrue(summary, summary.contains(",\"rejectedLines\":" + TEST_DATA_REJECTED_LINES + ","));
+        Assert.assertTrue(summary, summary.contains("{\"name\":\"" + RunMetrics.EMPLOYEES + "\",\"millis\":"));
+        Assert.assertTrue(summary, summary.contains("{\"name\":\"" + RunMetrics.STATISTICS + "\",\"millis\":"));
+        for (ReportDefinition definition : ReportDefinition.DEFAULTS) {
+            Assert.assertTrue(summary, summary.contains("{\"name\":\"" + definition.getFileName() + "\",\"millis\":"));
+        }
+        Assert.assertTrue(summary, summary.contains(",\"heapUsedBytes\":"));
+        Assert.assertTrue(summary, summary.contains(",\"gcMillis\":"));
+        // only the published files are left behind
+        String[] files = directory.list();
+        Assert.assertNotNull(files);
+        Assert.assertEquals(ReportDefinition.DEFAULTS.size() + 1, files.length);
+    }
+
+    private static void append(File file, String lines) throws IOException {
+        Files.write(file.toPath(), lines.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+}
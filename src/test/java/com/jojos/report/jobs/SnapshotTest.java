@@ -0,0 +1,88 @@
+package com.jojos.report.jobs;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import static com.jojos.report.Util.AGES_FILE;
+import static com.jojos.report.Util.DEPARTMENTS_FILE;
+import static com.jojos.report.Util.EMPLOYEES_FILE;
+
+/**
+ * Tests that a store restored from a snapshot holds the same data as a parsed one
+ *
+ * @author karanikasg@gmail.com
+ */
+public class SnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void restoreUnchangedInput() throws URISyntaxException, IOException {
+        String path = copyTestData();
+        File snapshot = new File(path, Snapshot.FILE_NAME);
+        Loader parsed = new InputJob(path).parseAndLoad();
+
+        new InputJob(path).withSnapshot(true).parseAndLoad();
+        Assert.assertTrue(snapshot.isFile());
+
+        // both kinds of store restored from the same snapshot
+        Assert.assertEquals(ParseModesTest.describe(parsed), ParseModesTest.describe(new InputJob(path).withSnapshot(true).parseAndLoad()));
+        EmployeeStore restored = new InputJob(path).withSnapshot(true).parseAndLoad(StoreType.COLUMNAR);
+        Assert.assertTrue(restored instanceof ColumnarStore);
+        Assert.assertEquals(ParseModesTest.describe(parsed), ParseModesTest.describe(Snapshot.toLoader(restored)));
+    }
+
+    @Test
+    public void ignoreSnapshotOfChangedInput() throws URISyntaxException, IOException {
+        String path = copyTestData();
+        File snapshot = new File(path, Snapshot.FILE_NAME);
+        File employees = new File(path, EMPLOYEES_FILE);
+        new InputJob(path).withSnapshot(true).parseAndLoad(StoreType.COLUMNAR);
+        Assert.assertNotNull(Snapshot.read(snapshot, new File(path, DEPARTMENTS_FILE), new File(path, AGES_FILE), employees));
+
+        Files.write(employees.toPath(), Files.readAllLines(employees.toPath()).subList(0, 10));
+        Assert.assertNull(Snapshot.read(snapshot, new File(path, DEPARTMENTS_FILE), new File(path, AGES_FILE), employees));
+
+        Loader loader = new InputJob(path).withSnapshot(true).parseAndLoad();
+        Assert.assertEquals(10, loader.employeesSize());
+        Assert.assertEquals(10, Snapshot.read(snapshot, new File(path, DEPARTMENTS_FILE), new File(path, AGES_FILE), employees).getStore().employeesSize());
+    }
+
+    @Test
+    public void restoreJoinMissesAndRejectedLines() throws URISyntaxException, IOException {
+        String path = copyTestData();
+        File ages = new File(path, AGES_FILE);
+        Files.write(ages.toPath(), Files.readAllLines(ages.toPath()).subList(10, 100));
+        RunMetrics parsed = new RunMetrics();
+        InputJob parsing = new InputJob(path).withSnapshot(true).withMetrics(parsed);
+        parsing.parseAndLoad();
+        Assert.assertTrue(parsing.getJoinMisses() > 0);
+        Assert.assertTrue(parsed.getRejectedLines() > 0);
+
+        RunMetrics restored = new RunMetrics();
+        InputJob restoring = new InputJob(path).withSnapshot(true).withMetrics(restored);
+        restoring.parseAndLoad(StoreType.COLUMNAR);
+        Assert.assertTrue(restored.phase(RunMetrics.SNAPSHOT).getRows() > 0);
+        Assert.assertEquals(parsing.getJoinMisses(), restoring.getJoinMisses());
+        Assert.assertEquals(parsed.getJoinMisses(), restored.getJoinMisses());
+        Assert.assertEquals(parsed.getRejectedLines(), restored.getRejectedLines());
+    }
+
+    private String copyTestData() throws URISyntaxException, IOException {
+        File directory = folder.newFolder();
+        for (String fileName : new String[]{AGES_FILE, DEPARTMENTS_FILE, EMPLOYEES_FILE}) {
+            Files.copy(new File(ParseModesTest.testDataPath(), fileName).toPath(), new File(directory, fileName).toPath(),
+                    StandardCopyOption.COPY_ATTRIBUTES);
+        }
+        return directory.getPath();
+    }
+}
@@ -0,0 +1,78 @@
+package com.jojos.report.jobs;
+
+import com.jojos.report.data.Department;
+import com.jojos.report.data.Employee;
+import com.jojos.report.data.Genre;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Random;
+
+/**
+ * Tests that the statistics merged from spilled runs are identical to the ones calculated in memory
+ *
+ * @author karanikasg@gmail.com
+ */
+public class SpillingAggregationTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void spilledLikeInMemory() throws IOException {
+        Random random = new Random(42);
+        ColumnarStore.Builder builder = ColumnarStore.builder();
+        for (int i = 0; i < 5; i++) {
+            builder.load(new Department("Department " + i));
+        }
+        ColumnarStore store = builder.build();
+        ReportPlan plan = ReportPlan.compile(ReportDefinition.DEFAULTS);
+        File parent = folder.newFolder();
+        // room for 50 values per aggregation
+        SpillingAggregation spilling = plan.spill(store.getDepartments(), 50L * SpillingAggregation.BYTES_PER_VALUE * plan.getAggregations().size(), parent);
+
+        builder = ColumnarStore.builder();
+        store.getDepartments().forEach(builder::load);
+        for (int i = 0; i < 5_000; i++) {
+            // few distinct incomes, so that runs hold many equal values
+            Employee employee = new Employee(1 + random.nextInt(5), "employee " + i, Genre.NA,
+                    random.nextInt(300) * 10.5, 18 + random.nextInt(60));
+            builder.load(employee);
+            spilling.load(employee);
+        }
+        AggregationResults inMemory = plan.execute(builder.build(), PercentileStrategy.SORT);
+
+        // more runs than are merged at once
+        Assert.assertTrue(spilling.runFiles() > SpillingAggregation.MAX_FAN_IN * plan.getAggregations().size());
+        for (ReportPlan.Aggregation aggregation : plan.getAggregations()) {
+            Statistics[] expected = inMemory.statistics(aggregation);
+            Statistics[] actual = spilling.statistics(aggregation);
+            Assert.assertEquals(expected.length, actual.length);
+            for (int key = 0; key < expected.length; key++) {
+                StatisticsTest.assertSameStatistics(expected[key], actual[key]);
+            }
+        }
+
+        spilling.close();
+        Assert.assertArrayEquals(new String[0], parent.list());
+    }
+
+    @Test
+    public void nothingSpilledWithinBudget() throws URISyntaxException, IOException {
+        ReportPlan plan = ReportPlan.compile(ReportDefinition.DEFAULTS);
+        File parent = folder.newFolder();
+        SpillingAggregation spilling = new InputJob(ParseModesTest.testDataPath()).parseAndSpill(plan, 1 << 20, parent);
+        File directory = folder.newFolder();
+
+        new OutputJob(spilling, directory.getPath(), plan).generateReports();
+        spilling.close();
+
+        Assert.assertEquals(0, spilling.runFiles());
+        OutputJobTest.assertExpectedReports(directory);
+    }
+}
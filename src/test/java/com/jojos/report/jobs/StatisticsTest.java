@@ -0,0 +1,200 @@
+package com.jojos.report.jobs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests that every way of calculating statistics agrees with the calculation over a collection
+ *
+ * @author karanikasg@gmail.com
+ */
+public class StatisticsTest {
+
+    @Test
+    public void calculateKnownValues() {
+        Statistics stats = Statistics.calculate(new double[]{5, 1, 4, 2, 3, 6}, 0, 6);
+
+        Assert.assertEquals(1, stats.getMin(), 0d);
+        Assert.assertEquals(6, stats.getMax(), 0d);
+        Assert.assertEquals(3.5, stats.getAvg(), 0d);
+        Assert.assertEquals(3.5, stats.getMedian(), 0d);
+        Assert.assertEquals(6, stats.get95thPercentile(), 0d);
+        Assert.assertEquals(6, stats.getObservations());
+    }
+
+    @Test
+    public void calculateEmpty() {
+        Assert.assertEquals(0, Statistics.calculate(new double[0], 0, 0).getObservations());
+        Assert.assertEquals(0, Statistics.calculate(Collections.<Double>emptyList()).getObservations());
+    }
+
+    @Test
+    public void primitiveDoublesLikeCollection() {
+        Random random = new Random(42);
+        for (int size : new int[]{1, 2, 3, 10, 99, 1000}) {
+            double[] values = new double[size + 10];
+            List<Double> collection = new ArrayList<>();
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Math.round(random.nextDouble() * 1_000_000) / 100d;
+                if (i >= 5 && i < size + 5) {
+                    collection.add(values[i]);
+                }
+            }
+            double[] untouched = values.clone();
+            Statistics expected = Statistics.calculate(collection);
+
+            assertSameStatistics(expected, Statistics.calculate(values, 5, size));
+            Assert.assertArrayEquals(untouched, values, 0d);
+            assertSameStatistics(expected, Statistics.calculate(values, 5, size, new double[size + 3]));
+            assertSameStatistics(expected, Statistics.calculateInPlace(values, 5, size));
+        }
+    }
+
+    @Test
+    public void primitiveIntegersLikeCollection() {
+        Random random = new Random(7);
+        int[] values = new int[501];
+        List<Integer> collection = new ArrayList<>();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(130) - 1;
+            collection.add(values[i]);
+        }
+        Statistics expected = Statistics.calculate(collection);
+
+        assertSameStatistics(expected, Statistics.calculate(values, 0, values.length));
+        assertSameStatistics(expected, Statistics.calculate(values, 0, values.length, new double[values.length]));
+        Assert.assertEquals(collection, toList(values));
+    }
+
+    @Test
+    public void selectionLikeSorting() {
+        Random random = new Random(11);
+        for (int size = 1; size < 300; size++) {
+            double[] values = new double[size];
+            for (int i = 0; i < size; i++) {
+                // plenty of duplicates, signed zeros and the occasional NaN
+                switch (random.nextInt(20)) {
+                    case 0:
+                        values[i] = -0.0d;
+                        break;
+                    case 1:
+                        values[i] = 0.0d;
+                        break;
+                    case 2:
+                        values[i] = Double.NaN;
+                        break;
+                    default:
+                        values[i] = random.nextInt(50) - 10;
+                }
+            }
+            Statistics sorted = Statistics.calculateInPlace(values.clone(), 0, size, PercentileStrategy.SORT);
+            Statistics selected = Statistics.calculateInPlace(values.clone(), 0, size, PercentileStrategy.SELECT);
+
+            String message = Arrays.toString(values);
+            Assert.assertEquals(message, bits(sorted.getMin()), bits(selected.getMin()));
+            Assert.assertEquals(message, bits(sorted.getMax()), bits(selected.getMax()));
+            Assert.assertEquals(message, bits(sorted.getMedian()), bits(selected.getMedian()));
+            Assert.assertEquals(message, bits(sorted.get90thPercentile()), bits(selected.get90thPercentile()));
+            Assert.assertEquals(message, bits(sorted.get95thPercentile()), bits(selected.get95thPercentile()));
+            Assert.assertEquals(message, bits(sorted.get99thPercentile()), bits(selected.get99thPercentile()));
+            Assert.assertEquals(sorted.getObservations(), selected.getObservations());
+        }
+    }
+
+    @Test
+    public void selectionOfBigRange() {
+        Random random = new Random(3);
+        double[] values = new double[100_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.round(random.nextGaussian() * 100_000) / 100d;
+        }
+        Statistics sorted = Statistics.calculate(values, 0, values.length);
+        Statistics selected = Statistics.calculateInPlace(values, 0, values.length, PercentileStrategy.SELECT);
+
+        Assert.assertEquals(sorted.getMedian(), selected.getMedian(), 0d);
+        Assert.assertEquals(sorted.get99thPercentile(), selected.get99thPercentile(), 0d);
+        Assert.assertEquals(sorted.getAvg(), selected.getAvg(), 1e-9);
+        Assert.assertEquals(sorted.getStd(), selected.getStd(), 1e-9);
+    }
+
+    @Test
+    public void selectionWithinBoundsOfSorting() {
+        Random random = new Random(5);
+        // the unit roundoff, half of the distance from 1 to the next double
+        double u = Math.ulp(1d) / 2;
+        for (int range = 0; range < 10_000; range++) {
+            int size = 1 + (range % 4 == 0 ? random.nextInt(2_000) : random.nextInt(20));
+            double[] values = new double[size];
+            for (int i = 0; i < size; i++) {
+                switch (range % 5) {
+                    case 0:
+                        values[i] = Math.round(random.nextDouble() * 1_000_000) / 100d;
+                        break;
+                    case 1:
+                        values[i] = random.nextInt(100);
+                        break;
+                    case 2:
+                        values[i] = random.nextGaussian() * 1_000;
+                        break;
+                    case 3:
+                        // a small deviation relative to the values, most digits cancel out
+                        values[i] = 1_000_000 + Math.round(random.nextDouble() * 100) / 100d;
+                        break;
+                    default:
+                        values[i] = Math.round((2_000 + random.nextDouble() * 200) * 100) / 100d;
+                }
+            }
+            Statistics sorted = Statistics.calculateInPlace(values.clone(), 0, size, PercentileStrategy.SORT);
+            Statistics selected = Statistics.calculateInPlace(values.clone(), 0, size, PercentileStrategy.SELECT);
+
+            String message = Arrays.toString(values);
+            Assert.assertEquals(message, bits(sorted.getMin()), bits(selected.getMin()));
+            Assert.assertEquals(message, bits(sorted.getMax()), bits(selected.getMax()));
+            Assert.assertEquals(message, bits(sorted.getMedian()), bits(selected.getMedian()));
+            Assert.assertEquals(message, bits(sorted.get90thPercentile()), bits(selected.get90thPercentile()));
+            Assert.assertEquals(message, bits(sorted.get95thPercentile()), bits(selected.get95thPercentile()));
+            Assert.assertEquals(message, bits(sorted.get99thPercentile()), bits(selected.get99thPercentile()));
+            Assert.assertEquals(message, sorted.getObservations(), selected.getObservations());
+
+            double meanOfMagnitudes = Arrays.stream(values).map(Math::abs).sum() / size;
+            double meanOfSquares = Arrays.stream(values).map(value -> value * value).sum() / size;
+            Assert.assertEquals(message, sorted.getAvg(), selected.getAvg(), 2 * size * u * meanOfMagnitudes);
+            double varianceBound = 6 * (size + 1) * u * meanOfSquares;
+            if (Double.isNaN(sorted.getStd()) || Double.isNaN(selected.getStd())) {
+                // the variance cancelled below zero in one order, so it's within the bound of zero in the other
+                double other = Double.isNaN(sorted.getStd()) ? selected.getStd() : sorted.getStd();
+                Assert.assertTrue(message, Double.isNaN(other) || other * other <= varianceBound);
+            } else {
+                double sortedVariance = sorted.getStd() * sorted.getStd();
+                double selectedVariance = selected.getStd() * selected.getStd();
+                Assert.assertEquals(message, sortedVariance, selectedVariance, varianceBound);
+            }
+        }
+    }
+
+    private static long bits(double value) {
+        return Double.doubleToRawLongBits(value);
+    }
+
+    static void assertSameStatistics(Statistics expected, Statistics actual) {
+        Assert.assertEquals(expected.machineReadable(), actual.machineReadable());
+        Assert.assertEquals(expected.getObservations(), actual.getObservations());
+        double[] expectedValues = {expected.getMin(), expected.getMax(), expected.getAvg(), expected.getStd(),
+                expected.getMedian(), expected.get90thPercentile(), expected.get95thPercentile(), expected.get99thPercentile()};
+        double[] actualValues = {actual.getMin(), actual.getMax(), actual.getAvg(), actual.getStd(),
+                actual.getMedian(), actual.get90thPercentile(), actual.get95thPercentile(), actual.get99thPercentile()};
+        Assert.assertArrayEquals(expectedValues, actualValues, 0d);
+    }
+
+    private static List<Integer> toList(int[] values) {
+        List<Integer> list = new ArrayList<>();
+        Arrays.stream(values).forEach(list::add);
+        return list;
+    }
+}